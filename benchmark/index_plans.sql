@@ -0,0 +1,100 @@
+-- Query plans of the main access paths without and with the V3 indexes.
+--
+-- Run against a database migrated to the latest version:
+--   psql -d <database> -v customers=20000 -v logs_per_customer=50 -f benchmark/index_plans.sql
+--
+-- The data is seeded into copies of the application tables in a scratch schema named bench, which shadows the
+-- application tables through the search path, and the indexes are dropped on those copies only. The application
+-- tables are only read for their definitions, which takes no lock that blocks their reads or writes.
+-- Everything runs in one transaction that is rolled back at the end, so the database is left unchanged. The
+-- seeded rows all fall into the current month.
+
+\set ON_ERROR_STOP on
+\if :{?customers}
+\else
+\set customers 20000
+\endif
+\if :{?logs_per_customer}
+\else
+\set logs_per_customer 50
+\endif
+
+BEGIN;
+
+CREATE SCHEMA bench;
+CREATE TABLE bench.customers (LIKE public.customers);
+CREATE TABLE bench.addresses (LIKE public.addresses);
+CREATE TABLE bench.notification_preferences (LIKE public.notification_preferences);
+CREATE TABLE bench.notification_logs (LIKE public.notification_logs) PARTITION BY RANGE (created_at);
+SELECT format('CREATE TABLE bench.notification_logs_current PARTITION OF bench.notification_logs FOR VALUES FROM (%L) TO (%L)',
+              date_trunc('month', LOCALTIMESTAMP), date_trunc('month', LOCALTIMESTAMP) + INTERVAL '1 month') \gexec
+SET LOCAL search_path = bench, public;
+
+\echo 'Seeding' :customers 'customers with' :logs_per_customer 'notifications each'
+
+-- the copies have no id defaults, so ids are derived from the customer number: address k of customer n is
+-- (n - 1) * 3 + k, with the EMAIL address first
+INSERT INTO customers (id, first_name, last_name, created_at, updated_at)
+SELECT n, 'bench-' || n, 'customer-' || n, LOCALTIMESTAMP, LOCALTIMESTAMP
+FROM generate_series(1, :customers) n;
+
+INSERT INTO addresses (id, type, value, customer_id, verified, is_primary, created_at, updated_at)
+SELECT (c.id - 1) * 3 + t.k, t.type, 'bench-' || c.id || '-' || lower(t.type), c.id, true, true, LOCALTIMESTAMP, LOCALTIMESTAMP
+FROM customers c
+CROSS JOIN (VALUES (1, 'EMAIL'), (2, 'SMS'), (3, 'PUSH')) AS t(k, type);
+
+INSERT INTO notification_preferences (id, type, channel_type, opted_in, customer_id, created_at, updated_at)
+SELECT (c.id - 1) * 3 + t.k, t.type, 'EMAIL', c.id % 4 <> 0, c.id, LOCALTIMESTAMP, LOCALTIMESTAMP
+FROM customers c
+CROSS JOIN (VALUES (1, 'MARKETING'), (2, 'TRANSACTIONAL'), (3, 'ALERTS')) AS t(k, type);
+
+-- random() in the select list of the inner query is evaluated per row, so the rows spread over the month so far
+INSERT INTO notification_logs (id, customer_id, address_id, type, status, subject, content, sent_at, failure_reason,
+                               attempt_count, max_attempts, next_attempt_at, created_at, updated_at)
+SELECT s.n * :logs_per_customer + s.g,
+       s.n,
+       (s.n - 1) * 3 + 1,
+       (ARRAY ['MARKETING', 'MARKETING', 'MARKETING', 'TRANSACTIONAL', 'SYSTEM', 'ALERTS'])[1 + (s.g % 6)],
+       (ARRAY ['DELIVERED', 'DELIVERED', 'DELIVERED', 'DELIVERED', 'SENT', 'PENDING', 'FAILED'])[1 + ((s.n + s.g) % 7)],
+       'subject', 'content', s.ts, CASE WHEN (s.n + s.g) % 7 = 6 THEN 'reason-' || (s.g % 5) END,
+       1, 3, CASE WHEN (s.n + s.g) % 70 = 6 THEN s.ts + INTERVAL '1 hour' END,
+       s.ts, s.ts
+FROM (SELECT n, g, date_trunc('month', LOCALTIMESTAMP) + random() * (LOCALTIMESTAMP - date_trunc('month', LOCALTIMESTAMP)) AS ts
+      FROM generate_series(1, :customers) n
+      CROSS JOIN generate_series(1, :logs_per_customer) g) s;
+
+-- the indexes of the application tables, primary keys included, built on the copies under the same names
+SELECT regexp_replace(indexdef, ' ON (ONLY )?public\.', ' ON bench.')
+FROM pg_indexes
+WHERE schemaname = 'public' AND tablename IN ('customers', 'addresses', 'notification_preferences', 'notification_logs') \gexec
+
+ANALYZE customers;
+ANALYZE addresses;
+ANALYZE notification_preferences;
+ANALYZE notification_logs;
+
+SELECT :customers / 2 AS bench_customer \gset
+SELECT date_trunc('day', LOCALTIMESTAMP) - INTERVAL '3 days' AS bench_from, LOCALTIMESTAMP AS bench_to \gset
+
+\echo
+\echo '==================== WITHOUT access path indexes ===================='
+
+SAVEPOINT without_indexes;
+
+DROP INDEX bench.idx_notification_logs_status_created;
+DROP INDEX bench.idx_notification_logs_type_status_created;
+DROP INDEX bench.idx_notification_logs_type_created;
+DROP INDEX bench.idx_notification_logs_next_attempt_at;
+DROP INDEX bench.idx_addresses_customer_type_primary;
+DROP INDEX bench.idx_notification_preferences_customer_type;
+
+\ir index_plans_queries.sql
+
+ROLLBACK TO SAVEPOINT without_indexes;
+
+\echo
+\echo '==================== WITH access path indexes ===================='
+
+\ir index_plans_queries.sql
+
+ROLLBACK;
@@ -0,0 +1,54 @@
+-- Access paths measured by index_plans.sql; expects :bench_customer, :bench_from and :bench_to to be set.
+
+\echo
+\echo '--- status counts in a date range (countByStatusGrouped)'
+EXPLAIN (ANALYZE, BUFFERS, COSTS OFF, SUMMARY ON)
+SELECT status, COUNT(*) FROM notification_logs
+WHERE created_at >= :'bench_from' AND created_at <= :'bench_to'
+GROUP BY status;
+
+\echo
+\echo '--- counts by type and status for one status (getSuccessRateByType / stats)'
+EXPLAIN (ANALYZE, BUFFERS, COSTS OFF, SUMMARY ON)
+SELECT type, COUNT(*) FROM notification_logs
+WHERE status = 'DELIVERED' AND created_at >= :'bench_from' AND created_at <= :'bench_to'
+GROUP BY type;
+
+\echo
+\echo '--- top failure reasons per type (getTopFailureReasonsByType)'
+EXPLAIN (ANALYZE, BUFFERS, COSTS OFF, SUMMARY ON)
+SELECT type, failure_reason, COUNT(*) FROM notification_logs
+WHERE status = 'FAILED' AND created_at >= :'bench_from' AND created_at <= :'bench_to'
+GROUP BY type, failure_reason;
+
+\echo
+\echo '--- customer history, first page (findPageAfter)'
+EXPLAIN (ANALYZE, BUFFERS, COSTS OFF, SUMMARY ON)
+SELECT id, created_at FROM notification_logs
+WHERE customer_id = :bench_customer
+ORDER BY created_at DESC, id DESC LIMIT 21;
+
+\echo
+\echo '--- search by type, first page (findPageAfter)'
+EXPLAIN (ANALYZE, BUFFERS, COSTS OFF, SUMMARY ON)
+SELECT id, created_at FROM notification_logs
+WHERE type = 'ALERTS'
+ORDER BY created_at DESC, id DESC LIMIT 21;
+
+\echo
+\echo '--- pending retries reloaded on startup (RetryScheduler)'
+EXPLAIN (ANALYZE, BUFFERS, COSTS OFF, SUMMARY ON)
+SELECT id, next_attempt_at FROM notification_logs
+WHERE status = 'FAILED' AND next_attempt_at IS NOT NULL;
+
+\echo
+\echo '--- primary address of a type (findByCustomerIdAndTypeAndPrimaryTrue)'
+EXPLAIN (ANALYZE, BUFFERS, COSTS OFF, SUMMARY ON)
+SELECT * FROM addresses
+WHERE customer_id = :bench_customer AND type = 'EMAIL' AND is_primary;
+
+\echo
+\echo '--- preferences of a customer (findByCustomerId)'
+EXPLAIN (ANALYZE, BUFFERS, COSTS OFF, SUMMARY ON)
+SELECT * FROM notification_preferences
+WHERE customer_id = :bench_customer;
@@ -0,0 +1,11 @@
+package croco.prjcustomernotification.callback;
+
+import java.util.Set;
+
+/**
+ * @param updated the keys of the notifications the callbacks were applied to
+ * @param ignored the keys of the notifications found whose callback was older than their current status, or was
+ *                a read of a notification not delivered
+ */
+public record AppliedCallbacks<K>(Set<K> updated, Set<K> ignored) {
+}
@@ -0,0 +1,79 @@
+package croco.prjcustomernotification.callback;
+
+import croco.prjcustomernotification.dto.NotificationStatusCallbackDto;
+import croco.prjcustomernotification.enums.NotificationStatus;
+import croco.prjcustomernotification.exception.ReadTrackingBufferFullException;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Buffers read events in memory and applies them periodically as READ callbacks through the
+ * {@link StatusCallbackWriter}, so a burst of opens costs one set-based update per flush instead of a transaction
+ * per open. Repeated opens of a notification between flushes coalesce into one, keeping the first. Events still
+ * buffered when a node dies are lost, which can only understate engagement.
+ */
+@Slf4j
+@Component
+public class ReadEventBuffer {
+
+    private final StatusCallbackWriter statusCallbackWriter;
+    private final int capacity;
+    private final Map<Long, LocalDateTime> pending = new ConcurrentHashMap<>();
+
+    public ReadEventBuffer(StatusCallbackWriter statusCallbackWriter,
+                           @Value("${notification.read-tracking.capacity:100000}") int capacity) {
+        this.statusCallbackWriter = statusCallbackWriter;
+        this.capacity = capacity;
+    }
+
+    public void record(Long notificationId, LocalDateTime readAt) {
+        if (pending.size() >= capacity && !pending.containsKey(notificationId)) {
+            throw new ReadTrackingBufferFullException("Read tracking buffer is full, retry later");
+        }
+        pending.merge(notificationId, readAt, ReadEventBuffer::earlier);
+    }
+
+    @Scheduled(fixedDelayString = "${notification.read-tracking.flush-interval:1s}")
+    public void flush() {
+        List<NotificationStatusCallbackDto> events = new ArrayList<>();
+        for (Long notificationId : pending.keySet()) {
+            LocalDateTime readAt = pending.remove(notificationId);
+            if (readAt != null) {
+                events.add(NotificationStatusCallbackDto.builder().id(notificationId).status(NotificationStatus.READ).timestamp(readAt).build());
+            }
+        }
+        if (events.isEmpty()) {
+            return;
+        }
+
+        try {
+            statusCallbackWriter.applyById(events);
+        } catch (RuntimeException e) {
+            log.warn("Could not apply {} read events, keeping them for the next flush", events.size(), e);
+            // applying an event twice changes nothing, so events from chunks that did commit can go back as well
+            events.forEach(event -> pending.merge(event.getId(), event.getTimestamp(), ReadEventBuffer::earlier));
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            log.warn("Could not flush read events on shutdown", e);
+        }
+    }
+
+    private static LocalDateTime earlier(LocalDateTime a, LocalDateTime b) {
+        return a.isBefore(b) ? a : b;
+    }
+}
@@ -0,0 +1,56 @@
+package croco.prjcustomernotification.callback;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Base64;
+
+/**
+ * Signs notification ids for the unauthenticated read tracking link, so a read can only be recorded by someone
+ * holding the message and not by counting through ids. A token is the first 128 bits of an HMAC-SHA256 over the
+ * id, base64url-encoded; it never expires, like the message it is embedded in.
+ */
+@Component
+public class ReadTrackingTokens {
+
+    private static final String ALGORITHM = "HmacSHA256";
+    private static final int TOKEN_BYTES = 16;
+
+    private final SecretKeySpec key;
+
+    public ReadTrackingTokens(@Value("${notification.read-tracking.secret}") String secret) {
+        this.key = new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), ALGORITHM);
+    }
+
+    public String tokenFor(Long notificationId) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(sign(notificationId));
+    }
+
+    public boolean isValid(Long notificationId, String token) {
+        byte[] presented;
+        try {
+            presented = Base64.getUrlDecoder().decode(token);
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+        // constant time, so the token cannot be guessed byte by byte from response times
+        return MessageDigest.isEqual(sign(notificationId), presented);
+    }
+
+    private byte[] sign(Long notificationId) {
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(key);
+            // prefixed, so the signature is of no use anywhere else the secret might be shared
+            return Arrays.copyOf(mac.doFinal(("read:" + notificationId).getBytes(StandardCharsets.UTF_8)), TOKEN_BYTES);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
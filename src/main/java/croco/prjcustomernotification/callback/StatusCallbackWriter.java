@@ -0,0 +1,214 @@
+package croco.prjcustomernotification.callback;
+
+import croco.prjcustomernotification.dto.NotificationStatusCallbackDto;
+import croco.prjcustomernotification.enums.AddressType;
+import croco.prjcustomernotification.enums.NotificationStatus;
+import croco.prjcustomernotification.enums.NotificationType;
+import croco.prjcustomernotification.failure.FailureReasonTracker;
+import croco.prjcustomernotification.latency.DeliveryLatencyHistograms;
+import croco.prjcustomernotification.live.LiveNotificationCounters;
+import croco.prjcustomernotification.retry.NotificationRetryScheduledEvent;
+import croco.prjcustomernotification.retry.RetryPolicy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Applies provider status callbacks with one set-based UPDATE per chunk. The callbacks are passed as parallel
+ * arrays and joined through {@code unnest}, and the same statement queues a STATUS_CHANGED outbox row for every
+ * notification whose status changed, carrying the status the row had under its lock. A late DELIVERED callback does not move a notification
+ * back from READ, and only a delivered notification can be read; a READ for any other is ignored. A callback reported
+ * before the last one applied to the notification arrived out of order and is ignored as well, so a slow FAILED cannot
+ * overwrite a DELIVERED that overtook it. Rows are locked in id order, so concurrent chunks touching the same
+ * notifications wait on each other instead of deadlocking. Failures with attempts left get their next attempt in a second batched statement.
+ * The in-memory counters, failure reasons and latency histograms are updated once the chunk commits, so a rolled
+ * back chunk leaves no trace in them.
+ */
+@Component
+public class StatusCallbackWriter {
+
+    private static final String UPDATE_SQL = "WITH v AS (" +
+            "  SELECT * FROM unnest(?::%2$s[], ?::text[], ?::text[], ?::timestamp[]) AS v(ref_key, status, failure_reason, ts)" +
+            "), locked AS (" +
+            "  SELECT o.id, o.created_at, o.status AS previous_status, v.*, " +
+            "  (v.status <> 'READ' OR o.status IN ('DELIVERED', 'READ')) AND (o.status_changed_at IS NULL OR v.ts >= o.status_changed_at) AS applies " +
+            "  FROM v %1$s " +
+            "  ORDER BY o.id FOR UPDATE OF o" +
+            "), updated AS (" +
+            "  UPDATE notification_logs n SET status = CASE WHEN l.status = 'DELIVERED' AND n.status = 'READ' THEN n.status ELSE l.status END, " +
+            "  delivered_at = CASE WHEN l.status IN ('DELIVERED', 'READ') THEN COALESCE(n.delivered_at, l.ts) ELSE n.delivered_at END, " +
+            "  read_at = CASE WHEN l.status = 'READ' THEN COALESCE(n.read_at, l.ts) ELSE n.read_at END, " +
+            "  failure_reason = CASE WHEN l.status = 'FAILED' THEN l.failure_reason ELSE n.failure_reason END, " +
+            "  status_changed_at = l.ts, next_attempt_at = NULL, updated_at = ? " +
+            "  FROM locked l WHERE n.id = l.id AND n.created_at = l.created_at AND l.applies " +
+            "  RETURNING n.id, n.created_at, n.type, n.status, l.previous_status, n.failure_reason, n.sent_at, n.delivered_at, n.address_id, n.attempt_count, n.max_attempts" +
+            "), outbox AS (" +
+            "  INSERT INTO notification_outbox (notification_id, type, event_type, status, previous_status, attempts, created_at) " +
+            "  SELECT id, type, 'STATUS_CHANGED', status, previous_status, 0, ? FROM updated WHERE status <> previous_status" +
+            ") " +
+            "SELECT l.ref_key, u.id IS NOT NULL AS applied, u.id, u.created_at, u.type, u.status, u.previous_status, u.failure_reason, u.sent_at, u.delivered_at, " +
+            "a.type AS channel, u.attempt_count, u.max_attempts " +
+            "FROM locked l LEFT JOIN updated u ON u.id = l.id LEFT JOIN addresses a ON a.id = u.address_id";
+
+    // both joins bound created_at, so every callback only looks into the partition its notification is in
+    private static final String UPDATE_BY_ID_SQL = UPDATE_SQL.formatted("JOIN notification_logs o ON o.id = v.ref_key " +
+            "AND o.created_at >= notification_created_from(v.ref_key) AND o.created_at < notification_created_before(v.ref_key)", "bigint");
+    private static final String UPDATE_BY_EXTERNAL_REFERENCE_SQL = UPDATE_SQL.formatted("JOIN notification_external_references r ON r.external_reference_id = v.ref_key " +
+            "JOIN notification_logs o ON o.id = r.notification_id AND o.created_at = r.created_at", "text");
+
+    private static final String SCHEDULE_RETRY_SQL = "UPDATE notification_logs SET next_attempt_at = ? WHERE id = ? AND created_at = ? AND status = 'FAILED'";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final RetryPolicy retryPolicy;
+    private final ApplicationEventPublisher eventPublisher;
+    private final LiveNotificationCounters liveCounters;
+    private final FailureReasonTracker failureReasonTracker;
+    private final DeliveryLatencyHistograms latencyHistograms;
+    private final int batchSize;
+    private final int maxBulkSize;
+
+    public StatusCallbackWriter(JdbcTemplate jdbcTemplate,
+                                TransactionTemplate transactionTemplate,
+                                RetryPolicy retryPolicy,
+                                ApplicationEventPublisher eventPublisher,
+                                LiveNotificationCounters liveCounters,
+                                FailureReasonTracker failureReasonTracker,
+                                DeliveryLatencyHistograms latencyHistograms,
+                                @Value("${notification.callback.batch-size:1000}") int batchSize,
+                                @Value("${notification.callback.max-bulk-size:10000}") int maxBulkSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.retryPolicy = retryPolicy;
+        this.eventPublisher = eventPublisher;
+        this.liveCounters = liveCounters;
+        this.failureReasonTracker = failureReasonTracker;
+        this.latencyHistograms = latencyHistograms;
+        this.batchSize = batchSize;
+        this.maxBulkSize = maxBulkSize;
+    }
+
+    /**
+     * Applies callbacks keyed by notification id. Each notification must appear at most once.
+     *
+     * @return the ids that were found, split into those updated and those whose callback was ignored
+     */
+    public AppliedCallbacks<Long> applyById(List<NotificationStatusCallbackDto> callbacks) {
+        return apply(UPDATE_BY_ID_SQL, "bigint", callbacks, NotificationStatusCallbackDto::getId, key -> ((Number) key).longValue());
+    }
+
+    /**
+     * Applies callbacks keyed by provider reference. Each reference must appear at most once.
+     *
+     * @return the references that were found, split into those updated and those whose callback was ignored
+     */
+    public AppliedCallbacks<String> applyByExternalReference(List<NotificationStatusCallbackDto> callbacks) {
+        return apply(UPDATE_BY_EXTERNAL_REFERENCE_SQL, "text", callbacks, NotificationStatusCallbackDto::getExternalReferenceId, key -> (String) key);
+    }
+
+    /**
+     * @return the most callbacks one request may carry
+     */
+    public int getMaxBulkSize() {
+        return maxBulkSize;
+    }
+
+    private <K> AppliedCallbacks<K> apply(String sql, String keyType, List<NotificationStatusCallbackDto> callbacks,
+                                          Function<NotificationStatusCallbackDto, Object> keyOf, Function<Object, K> keyFrom) {
+        AppliedCallbacks<K> applied = new AppliedCallbacks<>(new HashSet<>(), new HashSet<>());
+        for (int from = 0; from < callbacks.size(); from += batchSize) {
+            List<NotificationStatusCallbackDto> chunk = callbacks.subList(from, Math.min(from + batchSize, callbacks.size()));
+            transactionTemplate.executeWithoutResult(_ -> applyChunk(sql, keyType, chunk, keyOf, keyFrom, applied));
+        }
+        return applied;
+    }
+
+    private <K> void applyChunk(String sql, String keyType, List<NotificationStatusCallbackDto> chunk, Function<NotificationStatusCallbackDto, Object> keyOf,
+                                Function<Object, K> keyFrom, AppliedCallbacks<K> applied) {
+        LocalDateTime now = LocalDateTime.now();
+        Object[] keys = new Object[chunk.size()];
+        String[] statuses = new String[chunk.size()];
+        String[] failureReasons = new String[chunk.size()];
+        Timestamp[] timestamps = new Timestamp[chunk.size()];
+        for (int i = 0; i < chunk.size(); i++) {
+            NotificationStatusCallbackDto callback = chunk.get(i);
+            keys[i] = keyOf.apply(callback);
+            statuses[i] = callback.getStatus().name();
+            failureReasons[i] = callback.getFailureReason();
+            timestamps[i] = Timestamp.valueOf(callback.getTimestamp() != null ? callback.getTimestamp() : now);
+        }
+
+        List<Object[]> retries = new ArrayList<>();
+        List<NotificationRetryScheduledEvent> retryEvents = new ArrayList<>();
+        List<Runnable> afterCommit = new ArrayList<>();
+        jdbcTemplate.query(connection -> {
+            PreparedStatement statement = connection.prepareStatement(sql);
+            statement.setArray(1, connection.createArrayOf(keyType, keys));
+            statement.setArray(2, connection.createArrayOf("text", statuses));
+            statement.setArray(3, connection.createArrayOf("text", failureReasons));
+            statement.setArray(4, connection.createArrayOf("timestamp", timestamps));
+            statement.setTimestamp(5, Timestamp.valueOf(now));
+            statement.setTimestamp(6, Timestamp.valueOf(now));
+            return statement;
+        }, rs -> {
+            K key = keyFrom.apply(rs.getObject("ref_key"));
+            if (!rs.getBoolean("applied")) {
+                applied.ignored().add(key);
+                return;
+            }
+            applied.updated().add(key);
+            NotificationStatus status = NotificationStatus.valueOf(rs.getString("status"));
+            if (!status.name().equals(rs.getString("previous_status"))) {
+                NotificationType type = NotificationType.valueOf(rs.getString("type"));
+                AddressType channel = AddressType.valueOf(rs.getString("channel"));
+                String failureReason = rs.getString("failure_reason");
+                LocalDateTime sentAt = toLocalDateTime(rs.getTimestamp("sent_at"));
+                LocalDateTime deliveredAt = toLocalDateTime(rs.getTimestamp("delivered_at"));
+                afterCommit.add(() -> {
+                    liveCounters.recordStatus(status, type, channel);
+                    if (status == NotificationStatus.FAILED) {
+                        failureReasonTracker.record(type, failureReason);
+                    } else if (status == NotificationStatus.DELIVERED) {
+                        latencyHistograms.record(type, channel, sentAt, deliveredAt);
+                    }
+                });
+            }
+            if (status == NotificationStatus.FAILED) {
+                LocalDateTime nextAttemptAt = retryPolicy.nextAttemptAt(rs.getInt("attempt_count"), rs.getInt("max_attempts"), now);
+                if (nextAttemptAt != null) {
+                    retries.add(new Object[]{Timestamp.valueOf(nextAttemptAt), rs.getLong("id"), rs.getTimestamp("created_at")});
+                    retryEvents.add(new NotificationRetryScheduledEvent(rs.getLong("id"), nextAttemptAt));
+                }
+            }
+        });
+
+        if (!retries.isEmpty()) {
+            jdbcTemplate.batchUpdate(SCHEDULE_RETRY_SQL, retries);
+            retryEvents.forEach(eventPublisher::publishEvent);
+        }
+        if (!afterCommit.isEmpty()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    afterCommit.forEach(Runnable::run);
+                }
+            });
+        }
+    }
+
+    private static LocalDateTime toLocalDateTime(Timestamp timestamp) {
+        return timestamp != null ? timestamp.toLocalDateTime() : null;
+    }
+}
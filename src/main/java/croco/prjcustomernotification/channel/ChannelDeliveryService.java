@@ -0,0 +1,171 @@
+package croco.prjcustomernotification.channel;
+
+import croco.prjcustomernotification.enums.AddressType;
+import croco.prjcustomernotification.enums.LiveEvent;
+import croco.prjcustomernotification.enums.NotificationStatus;
+import croco.prjcustomernotification.enums.OutboxEventType;
+import croco.prjcustomernotification.failure.FailureReasonTracker;
+import croco.prjcustomernotification.lane.LaneProperties;
+import croco.prjcustomernotification.latency.DeliveryLatencyHistograms;
+import croco.prjcustomernotification.live.LiveNotificationCounters;
+import croco.prjcustomernotification.model.OutboxEvent;
+import croco.prjcustomernotification.repository.NotificationLogRepository;
+import croco.prjcustomernotification.repository.OutboxEventRepository;
+import croco.prjcustomernotification.retry.NotificationRetryScheduledEvent;
+import croco.prjcustomernotification.retry.RetryPolicy;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Routes messages to the {@link ChannelExecutor} of their channel and records each send result on the
+ * notification log, including the provider's reference for the message. The result, the removal of the DELIVERY outbox row and a STATUS_CHANGED outbox row commit
+ * together. A provider callback that committed before the result wins, and the result then only adds the reference. Failures with attempts left get their next attempt scheduled. Per-channel in-flight, queued and rejected counts are published as
+ * {@code notifications.channel.*} meters tagged with the channel.
+ */
+@Slf4j
+@Component
+public class ChannelDeliveryService {
+
+    private final NotificationLogRepository notificationLogRepository;
+    private final OutboxEventRepository outboxEventRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final RetryPolicy retryPolicy;
+    private final ApplicationEventPublisher eventPublisher;
+    private final LiveNotificationCounters liveCounters;
+    private final FailureReasonTracker failureReasonTracker;
+    private final DeliveryLatencyHistograms latencyHistograms;
+    private final Map<AddressType, ChannelExecutor> executors = new EnumMap<>(AddressType.class);
+    private final Map<AddressType, Counter> deliveredCounters = new EnumMap<>(AddressType.class);
+    private final Map<AddressType, Counter> failedCounters = new EnumMap<>(AddressType.class);
+
+    public ChannelDeliveryService(List<ChannelSender> senders,
+                                  ChannelProperties channelProperties,
+                                  LaneProperties laneProperties,
+                                  NotificationLogRepository notificationLogRepository,
+                                  OutboxEventRepository outboxEventRepository,
+                                  TransactionTemplate transactionTemplate,
+                                  RetryPolicy retryPolicy,
+                                  ApplicationEventPublisher eventPublisher,
+                                  LiveNotificationCounters liveCounters,
+                                  FailureReasonTracker failureReasonTracker,
+                                  DeliveryLatencyHistograms latencyHistograms,
+                                  MeterRegistry meterRegistry) {
+        this.notificationLogRepository = notificationLogRepository;
+        this.outboxEventRepository = outboxEventRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.retryPolicy = retryPolicy;
+        this.eventPublisher = eventPublisher;
+        this.liveCounters = liveCounters;
+        this.failureReasonTracker = failureReasonTracker;
+        this.latencyHistograms = latencyHistograms;
+
+        for (ChannelSender sender : senders) {
+            AddressType channel = sender.channel();
+            ChannelExecutor executor = new ChannelExecutor(sender, channelProperties.settingsFor(channel), laneProperties, meterRegistry, this::recordResult);
+            executors.put(channel, executor);
+
+            Tags tags = Tags.of("channel", channel.name());
+            Gauge.builder("notifications.channel.in_flight", executor, ChannelExecutor::getInFlight).tags(tags).register(meterRegistry);
+            Gauge.builder("notifications.channel.queued", executor, ChannelExecutor::getQueued).tags(tags).register(meterRegistry);
+            FunctionCounter.builder("notifications.channel.rejected", executor, ChannelExecutor::getRejected).tags(tags).register(meterRegistry);
+        }
+
+        for (AddressType channel : AddressType.values()) {
+            deliveredCounters.put(channel, meterRegistry.counter("notifications.channel.delivered", "channel", channel.name()));
+            failedCounters.put(channel, meterRegistry.counter("notifications.channel.failed", "channel", channel.name()));
+        }
+    }
+
+    @PostConstruct
+    public void start() {
+        executors.values().forEach(ChannelExecutor::start);
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        for (ChannelExecutor executor : executors.values()) {
+            executor.stop();
+        }
+    }
+
+    /**
+     * Hands the message to its channel without waiting.
+     *
+     * @return false if the channel is saturated and the message should be offered again later
+     */
+    public boolean offer(ChannelMessage message) {
+        ChannelExecutor executor = executors.get(message.channel());
+        if (executor == null) {
+            recordResult(message, ChannelSendResult.failed("No sender configured for channel " + message.channel()));
+            return true;
+        }
+        return executor.trySubmit(message);
+    }
+
+    public ChannelExecutor getExecutor(AddressType channel) {
+        return executors.get(channel);
+    }
+
+    private void recordResult(ChannelMessage message, ChannelSendResult result) {
+        LocalDateTime now = LocalDateTime.now();
+        NotificationStatus status = result.delivered() ? NotificationStatus.DELIVERED : NotificationStatus.FAILED;
+        LocalDateTime nextAttemptAt = result.delivered() ? null : retryPolicy.nextAttemptAt(message.attempt(), message.maxAttempts(), now);
+
+        Boolean recorded = transactionTemplate.execute(_ -> {
+            Optional<NotificationStatus> previousStatus = notificationLogRepository.lockStatusById(message.notificationId()).map(NotificationStatus::valueOf);
+            if (previousStatus.isEmpty()) {
+                log.warn("Notification {} is gone, dropping its {} send result", message.notificationId(), message.channel());
+                return false;
+            }
+            // a reference is stored only on the notification that claimed it first
+            String reference = result.providerReference();
+            if (reference != null && notificationLogRepository.claimExternalReference(message.notificationId(), reference) == 0) {
+                log.warn("{} provider reference {} of notification {} belongs to another notification", message.channel(), reference, message.notificationId());
+                reference = null;
+            }
+            outboxEventRepository.deleteByNotificationIdAndEventType(message.notificationId(), OutboxEventType.DELIVERY);
+
+            int updated = result.delivered()
+                    ? notificationLogRepository.updateDeliveryResult(message.notificationId(), status, reference, now, null, null, now)
+                    : notificationLogRepository.updateDeliveryResult(message.notificationId(), status, reference, null, result.failureReason(), nextAttemptAt, now);
+            if (updated == 0) {
+                // a provider callback overtook the send result and already set the status
+                if (reference != null) {
+                    notificationLogRepository.updateExternalReference(message.notificationId(), reference);
+                }
+                return false;
+            }
+            outboxEventRepository.save(OutboxEvent.builder().notificationId(message.notificationId()).type(message.type()).eventType(OutboxEventType.STATUS_CHANGED).status(status).previousStatus(previousStatus.get()).build());
+            if (nextAttemptAt != null) {
+                eventPublisher.publishEvent(new NotificationRetryScheduledEvent(message.notificationId(), nextAttemptAt));
+            }
+            return true;
+        });
+        if (!Boolean.TRUE.equals(recorded)) {
+            return;
+        }
+
+        (result.delivered() ? deliveredCounters : failedCounters).get(message.channel()).increment();
+        liveCounters.record(result.delivered() ? LiveEvent.DELIVERED : LiveEvent.FAILED, message.type(), message.channel());
+        if (result.delivered()) {
+            latencyHistograms.record(message.type(), message.channel(), message.sentAt(), now);
+        } else {
+            failureReasonTracker.record(message.type(), result.failureReason());
+        }
+    }
+}
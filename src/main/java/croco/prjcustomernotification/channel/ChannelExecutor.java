@@ -0,0 +1,143 @@
+package croco.prjcustomernotification.channel;
+
+import croco.prjcustomernotification.enums.AddressType;
+import croco.prjcustomernotification.enums.NotificationType;
+import croco.prjcustomernotification.lane.LaneProperties;
+import croco.prjcustomernotification.lane.LaneQueue;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+
+/**
+ * Bounded queue plus a fixed set of virtual-thread workers for a single channel. Every send first takes a
+ * token from the channel's rate limiter, so a slow or throttled channel only ever occupies its own workers.
+ * The queue has one lane per notification type, drained by weight, and lanes with reserved workers get
+ * workers of their own on top of the channel's concurrency.
+ */
+@Slf4j
+public class ChannelExecutor {
+
+    private final ChannelSender sender;
+    private final TokenBucket rateLimiter;
+    private final BiConsumer<ChannelMessage, ChannelSendResult> resultHandler;
+    private final LaneProperties laneProperties;
+    private final LaneQueue<ChannelMessage> queue;
+    private final int concurrency;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final LongAdder rejected = new LongAdder();
+    private final List<Thread> workers = new ArrayList<>();
+    private volatile boolean running;
+
+    public ChannelExecutor(ChannelSender sender, ChannelProperties.Settings settings, LaneProperties laneProperties,
+                           MeterRegistry meterRegistry, BiConsumer<ChannelMessage, ChannelSendResult> resultHandler) {
+        this.sender = sender;
+        this.rateLimiter = settings.ratePerSecond() > 0 ? new TokenBucket(settings.ratePerSecond(), settings.burst()) : null;
+        this.resultHandler = resultHandler;
+        this.laneProperties = laneProperties;
+        // the channel's capacity is split across the lanes in proportion to their dispatch queue capacity
+        long laneCapacities = 0;
+        for (NotificationType type : NotificationType.values()) {
+            laneCapacities += laneProperties.settingsFor(type).queueCapacity();
+        }
+        long totalLaneCapacity = Math.max(1, laneCapacities);
+        this.queue = new LaneQueue<>("channel-" + sender.channel().name().toLowerCase(), laneProperties,
+                capacity -> (int) Math.max(1, (long) settings.queueCapacity() * capacity / totalLaneCapacity), meterRegistry);
+        this.concurrency = settings.concurrency();
+    }
+
+    public AddressType channel() {
+        return sender.channel();
+    }
+
+    public void start() {
+        running = true;
+        Thread.Builder builder = Thread.ofVirtual().name("channel-" + sender.channel().name().toLowerCase() + "-", 0);
+        for (int i = 0; i < concurrency; i++) {
+            workers.add(builder.start(() -> work(null)));
+        }
+        for (NotificationType type : NotificationType.values()) {
+            for (int i = 0; i < laneProperties.settingsFor(type).reservedWorkers(); i++) {
+                workers.add(builder.start(() -> work(type)));
+            }
+        }
+    }
+
+    public void stop() throws InterruptedException {
+        running = false;
+        for (Thread worker : workers) {
+            worker.join(Duration.ofSeconds(10));
+        }
+    }
+
+    /**
+     * Queues the message if there is room, otherwise counts it as rejected.
+     */
+    public boolean trySubmit(ChannelMessage message) {
+        if (queue.offer(message.type(), message)) {
+            return true;
+        }
+        rejected.increment();
+        return false;
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    public int getQueued() {
+        return queue.size();
+    }
+
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    // serves every lane by weight, or only the given lane for a reserved worker
+    private void work(NotificationType lane) {
+        while (running || !queue.isEmpty()) {
+            ChannelMessage message;
+            try {
+                message = lane == null
+                        ? queue.poll(200, TimeUnit.MILLISECONDS)
+                        : queue.poll(lane, 200, TimeUnit.MILLISECONDS);
+                if (message == null) {
+                    if (lane != null && !running) {
+                        return;
+                    }
+                    continue;
+                }
+                if (rateLimiter != null) {
+                    rateLimiter.acquire();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+
+            inFlight.incrementAndGet();
+            ChannelSendResult result;
+            try {
+                result = sender.send(message);
+            } catch (RuntimeException e) {
+                log.warn("{} sender failed for notification {}", sender.channel(), message.notificationId(), e);
+                result = ChannelSendResult.failed(e.getMessage());
+            } finally {
+                inFlight.decrementAndGet();
+            }
+
+            try {
+                resultHandler.accept(message, result);
+            } catch (RuntimeException e) {
+                log.error("Failed to record {} result for notification {}", sender.channel(), message.notificationId(), e);
+            }
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package croco.prjcustomernotification.channel;
+
+import croco.prjcustomernotification.enums.AddressType;
+import croco.prjcustomernotification.enums.NotificationType;
+
+import java.time.LocalDateTime;
+
+/**
+ * @param readTrackingToken signs the notification id for the read tracking link a sender may embed in the message
+ */
+public record ChannelMessage(Long notificationId, Long customerId, NotificationType type, AddressType channel, String addressValue, String subject, String content,
+                             LocalDateTime sentAt, int attempt, int maxAttempts, String readTrackingToken) {
+}
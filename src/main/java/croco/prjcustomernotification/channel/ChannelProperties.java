@@ -0,0 +1,30 @@
+package croco.prjcustomernotification.channel;
+
+import croco.prjcustomernotification.enums.AddressType;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.Map;
+
+@ConfigurationProperties(prefix = "notification.channel")
+public record ChannelProperties(Map<AddressType, Settings> settings) {
+
+    private static final Settings DEFAULT_SETTINGS = new Settings(8, 1000, 0, 0, 0, 0, 0.0);
+
+    public Settings settingsFor(AddressType channel) {
+        return settings != null ? settings.getOrDefault(channel, DEFAULT_SETTINGS) : DEFAULT_SETTINGS;
+    }
+
+    /**
+     * @param concurrency       number of workers sending on the channel at the same time
+     * @param queueCapacity     messages that may wait for a worker before submissions are rejected, split across the
+     *                          lanes in proportion to their queue capacity
+     * @param ratePerSecond     sustained send rate, {@code 0} for unlimited
+     * @param burst             sends allowed back to back before the rate applies
+     * @param stubMinLatencyMs  lower bound of the latency simulated by the stub sender
+     * @param stubMaxLatencyMs  upper bound of the latency simulated by the stub sender
+     * @param stubFailureRate   share of stub sends that fail, between {@code 0} and {@code 1}
+     */
+    public record Settings(int concurrency, int queueCapacity, double ratePerSecond, int burst,
+                           long stubMinLatencyMs, long stubMaxLatencyMs, double stubFailureRate) {
+    }
+}
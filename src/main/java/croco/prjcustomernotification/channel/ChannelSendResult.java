@@ -0,0 +1,12 @@
+package croco.prjcustomernotification.channel;
+
+public record ChannelSendResult(boolean delivered, String providerReference, String failureReason) {
+
+    public static ChannelSendResult delivered(String providerReference) {
+        return new ChannelSendResult(true, providerReference, null);
+    }
+
+    public static ChannelSendResult failed(String failureReason) {
+        return new ChannelSendResult(false, null, failureReason);
+    }
+}
@@ -0,0 +1,14 @@
+package croco.prjcustomernotification.channel;
+
+import croco.prjcustomernotification.enums.AddressType;
+
+/**
+ * Delivers notifications over one channel. Implementations are discovered as Spring beans, one per
+ * {@link AddressType}; {@link #send} may block and is always called from that channel's own workers.
+ */
+public interface ChannelSender {
+
+    AddressType channel();
+
+    ChannelSendResult send(ChannelMessage message);
+}
@@ -0,0 +1,46 @@
+package croco.prjcustomernotification.channel;
+
+import croco.prjcustomernotification.enums.AddressType;
+
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Local stand-in for a provider gateway: waits for a random latency within the configured bounds and fails a
+ * configured share of sends.
+ */
+public class StubChannelSender implements ChannelSender {
+
+    private final AddressType channel;
+    private final ChannelProperties.Settings settings;
+
+    public StubChannelSender(AddressType channel, ChannelProperties.Settings settings) {
+        this.channel = channel;
+        this.settings = settings;
+    }
+
+    @Override
+    public AddressType channel() {
+        return channel;
+    }
+
+    @Override
+    public ChannelSendResult send(ChannelMessage message) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long latencyMs = settings.stubMaxLatencyMs() > settings.stubMinLatencyMs()
+                ? random.nextLong(settings.stubMinLatencyMs(), settings.stubMaxLatencyMs() + 1)
+                : settings.stubMinLatencyMs();
+
+        try {
+            Thread.sleep(latencyMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return ChannelSendResult.failed("Interrupted while sending");
+        }
+
+        if (random.nextDouble() < settings.stubFailureRate()) {
+            return ChannelSendResult.failed("Simulated " + channel + " gateway failure");
+        }
+        return ChannelSendResult.delivered("stub-" + channel.name().toLowerCase() + "-" + UUID.randomUUID());
+    }
+}
@@ -0,0 +1,38 @@
+package croco.prjcustomernotification.channel;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token-bucket rate limiter. Callers that find the bucket empty still take a token and go into debt, then
+ * wait for the time it takes to refill, so waiting callers are served in arrival order.
+ */
+public class TokenBucket {
+
+    private final double tokensPerNano;
+    private final double capacity;
+    private double tokens;
+    private long lastRefillNanos;
+
+    public TokenBucket(double ratePerSecond, int burst) {
+        this.tokensPerNano = ratePerSecond / TimeUnit.SECONDS.toNanos(1);
+        this.capacity = Math.max(1, burst);
+        this.tokens = capacity;
+        this.lastRefillNanos = System.nanoTime();
+    }
+
+    public void acquire() throws InterruptedException {
+        long waitNanos = reserve();
+        if (waitNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+    }
+
+    private synchronized long reserve() {
+        long now = System.nanoTime();
+        tokens = Math.min(capacity, tokens + (now - lastRefillNanos) * tokensPerNano);
+        lastRefillNanos = now;
+
+        tokens -= 1;
+        return tokens >= 0 ? 0 : (long) (-tokens / tokensPerNano);
+    }
+}
@@ -0,0 +1,36 @@
+package croco.prjcustomernotification.config;
+
+import croco.prjcustomernotification.channel.ChannelProperties;
+import croco.prjcustomernotification.channel.ChannelSender;
+import croco.prjcustomernotification.channel.StubChannelSender;
+import croco.prjcustomernotification.enums.AddressType;
+import croco.prjcustomernotification.lane.LaneProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+// local stub senders; replace a bean with a real gateway client to deliver over that channel
+@Configuration
+@EnableConfigurationProperties({ChannelProperties.class, LaneProperties.class})
+public class ChannelConfig {
+
+    @Bean
+    public ChannelSender emailSender(ChannelProperties channelProperties) {
+        return new StubChannelSender(AddressType.EMAIL, channelProperties.settingsFor(AddressType.EMAIL));
+    }
+
+    @Bean
+    public ChannelSender smsSender(ChannelProperties channelProperties) {
+        return new StubChannelSender(AddressType.SMS, channelProperties.settingsFor(AddressType.SMS));
+    }
+
+    @Bean
+    public ChannelSender postalSender(ChannelProperties channelProperties) {
+        return new StubChannelSender(AddressType.POSTAL, channelProperties.settingsFor(AddressType.POSTAL));
+    }
+
+    @Bean
+    public ChannelSender pushSender(ChannelProperties channelProperties) {
+        return new StubChannelSender(AddressType.PUSH, channelProperties.settingsFor(AddressType.PUSH));
+    }
+}
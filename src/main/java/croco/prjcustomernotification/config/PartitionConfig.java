@@ -0,0 +1,10 @@
+package croco.prjcustomernotification.config;
+
+import croco.prjcustomernotification.partition.PartitionProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@EnableConfigurationProperties(PartitionProperties.class)
+public class PartitionConfig {
+}
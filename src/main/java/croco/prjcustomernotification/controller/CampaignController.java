@@ -0,0 +1,47 @@
+package croco.prjcustomernotification.controller;
+
+import croco.prjcustomernotification.dto.CampaignCreationDto;
+import croco.prjcustomernotification.dto.CampaignDto;
+import croco.prjcustomernotification.service.interfaces.CampaignService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.validation.Valid;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+
+@RestController
+@RequestMapping("/api/campaigns")
+@RequiredArgsConstructor
+@Tag(name = "Campaigns", description = "Operations related to bulk notification campaigns")
+public class CampaignController {
+
+    private final CampaignService campaignService;
+
+    @PostMapping
+    @Operation(summary = "Start a campaign", description = "Sends a notification to every customer matching the given filters. Customers are processed in the background; poll the campaign for progress")
+    @ApiResponses(value = {@ApiResponse(responseCode = "202", description = "Campaign accepted for processing"), @ApiResponse(responseCode = "400", description = "Invalid campaign data", content = @Content)})
+    public ResponseEntity<CampaignDto> startCampaign(@Parameter(description = "Campaign details and customer filters") @Valid @RequestBody CampaignCreationDto campaignDto) {
+        return ResponseEntity.accepted().body(campaignService.startCampaign(campaignDto));
+    }
+
+    @GetMapping("/{id}")
+    @Operation(summary = "Get campaign progress", description = "Retrieves progress and throughput of a campaign")
+    @ApiResponses(value = {@ApiResponse(responseCode = "200", description = "Campaign found"), @ApiResponse(responseCode = "404", description = "Campaign not found", content = @Content)})
+    public ResponseEntity<CampaignDto> getCampaign(@Parameter(description = "ID of the campaign") @PathVariable Long id) {
+        return ResponseEntity.ok(campaignService.getCampaignById(id));
+    }
+
+    @GetMapping
+    @Operation(summary = "Get all campaigns", description = "Retrieves all campaigns with their progress")
+    @ApiResponse(responseCode = "200", description = "Campaigns retrieved successfully")
+    public ResponseEntity<List<CampaignDto>> getAllCampaigns() {
+        return ResponseEntity.ok(campaignService.getAllCampaigns());
+    }
+}
@@ -0,0 +1,39 @@
+package croco.prjcustomernotification.controller;
+
+import croco.prjcustomernotification.live.LiveNotificationCounters;
+import croco.prjcustomernotification.live.LiveSnapshot;
+import croco.prjcustomernotification.live.LiveSnapshotBroadcaster;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+@RestController
+@RequestMapping("/api/notifications/live")
+@RequiredArgsConstructor
+@Tag(name = "Live Notification Counters", description = "Per-second send, delivery and failure counts of this node, without database queries")
+public class LiveNotificationController {
+
+    private final LiveNotificationCounters liveCounters;
+    private final LiveSnapshotBroadcaster broadcaster;
+
+    @GetMapping(produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @Operation(summary = "Stream live counters", description = "Server-Sent Events stream with one 'snapshot' event per second, holding the counts of the last second and of the sliding window by event, type and channel")
+    @ApiResponse(responseCode = "200", description = "Stream opened")
+    public SseEmitter streamLiveCounters() {
+        return broadcaster.subscribe(liveCounters.getLatest());
+    }
+
+    @GetMapping("/snapshot")
+    @Operation(summary = "Get live counters", description = "Returns the latest per-second snapshot")
+    @ApiResponse(responseCode = "200", description = "Snapshot retrieved successfully")
+    public ResponseEntity<LiveSnapshot> getLiveSnapshot() {
+        return ResponseEntity.ok(liveCounters.getLatest());
+    }
+}
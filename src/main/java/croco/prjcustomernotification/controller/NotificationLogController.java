@@ -1,6 +1,13 @@
 package croco.prjcustomernotification.controller;
 
+import croco.prjcustomernotification.dto.CustomerNotificationStatsDto;
+import croco.prjcustomernotification.dto.DeliveryLatencyDto;
+import croco.prjcustomernotification.dto.FailureReasonCountDto;
+import croco.prjcustomernotification.dto.NotificationLogCursorPageDto;
 import croco.prjcustomernotification.dto.NotificationLogDto;
+import croco.prjcustomernotification.dto.NotificationStatusCallbackDto;
+import croco.prjcustomernotification.dto.StatusCallbackResultDto;
+import croco.prjcustomernotification.enums.CountMode;
 import croco.prjcustomernotification.enums.NotificationStatus;
 import croco.prjcustomernotification.enums.NotificationType;
 import croco.prjcustomernotification.service.interfaces.NotificationLogService;
@@ -11,13 +18,16 @@ import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import lombok.RequiredArgsConstructor;
-import org.springframework.data.domain.Page;
-import org.springframework.data.domain.Pageable;
 import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.CacheControl;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.time.Duration;
 import java.time.LocalDateTime;
+import java.util.Base64;
+import java.util.List;
 import java.util.Map;
 
 @RestController
@@ -26,24 +36,27 @@ import java.util.Map;
 @Tag(name = "Notification Logs", description = "Operations related to notification tracking and statistics")
 public class NotificationLogController {
 
+    private static final byte[] TRACKING_PIXEL = Base64.getDecoder().decode("R0lGODlhAQABAIAAAAAAAP///yH5BAEAAAAALAAAAAABAAEAAAIBRAA7");
+
     private final NotificationLogService notificationLogService;
 
     // placeholder method, this should be a part of different microservice
     @PostMapping("/send")
-    @Operation(summary = "Send a new notification", description = "Sends a new notification to a customer and logs the attempt")
+    @Operation(summary = "Send a new notification", description = "Sends a new notification to a customer and logs the attempt. Repeating a request with the same Idempotency-Key returns the original notification instead of sending it again")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "202", description = "Notification accepted for processing"),
             @ApiResponse(responseCode = "400", description = "Invalid notification request", content = @Content),
-            @ApiResponse(responseCode = "404", description = "Customer not found", content = @Content)
+            @ApiResponse(responseCode = "404", description = "Customer not found", content = @Content),
+            @ApiResponse(responseCode = "422", description = "Customer has no address the notification type may be sent to", content = @Content)
     })
     public ResponseEntity<NotificationLogDto> sendNotification(
             @Parameter(description = "Customer ID to send notification to") @RequestParam Long customerId,
             @Parameter(description = "Type of notification to send") @RequestParam NotificationType type,
             @Parameter(description = "Subject of the notification") @RequestParam String subject,
-            @Parameter(description = "Content of the notification") @RequestParam String content) {
-
+            @Parameter(description = "Content of the notification") @RequestParam String content,
+            @Parameter(description = "Client-chosen key that makes retries of this request safe") @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey) {
 
-        NotificationLogDto notification = notificationLogService.logNotificationSent(customerId, type, subject, content);
+        NotificationLogDto notification = notificationLogService.logNotificationSent(customerId, type, subject, content, idempotencyKey);
 
         return ResponseEntity.accepted().body(notification);
     }
@@ -55,29 +68,32 @@ public class NotificationLogController {
         return ResponseEntity.ok(notificationLogService.getNotificationById(id));
     }
 
+    @GetMapping("/external/{externalReferenceId}")
+    @Operation(summary = "Get notification by external reference ID", description = "Retrieves a notification by the message reference its channel provider returned")
+    @ApiResponses(value = {@ApiResponse(responseCode = "200", description = "Notification found"), @ApiResponse(responseCode = "404", description = "Notification not found", content = @Content)})
+    public ResponseEntity<NotificationLogDto> getNotificationByExternalReferenceId(@Parameter(description = "Provider reference of the notification") @PathVariable String externalReferenceId) {
+        return ResponseEntity.ok(notificationLogService.getNotificationByExternalReferenceId(externalReferenceId));
+    }
+
     @GetMapping("/customer/{customerId}")
-    @Operation(summary = "Get notifications by customer ID", description = "Retrieves all notifications for a specific customer with pagination")
-    @ApiResponses(value = {@ApiResponse(responseCode = "200", description = "Notifications retrieved successfully"), @ApiResponse(responseCode = "400", description = "Invalid customer ID", content = @Content)})
-    public ResponseEntity<Page<NotificationLogDto>> getNotificationsByCustomerId(@Parameter(description = "ID of the customer") @PathVariable Long customerId, @Parameter(description = "Pagination and sorting parameters") Pageable pageable) {
-        return ResponseEntity.ok(notificationLogService.getNotificationsByCustomerId(customerId, pageable));
+    @Operation(summary = "Get notifications by customer ID", description = "Retrieves a customer's notifications, newest first. Pass the returned nextCursor to get the following page")
+    @ApiResponses(value = {@ApiResponse(responseCode = "200", description = "Notifications retrieved successfully"), @ApiResponse(responseCode = "400", description = "Invalid customer ID or cursor", content = @Content)})
+    public ResponseEntity<NotificationLogCursorPageDto> getNotificationsByCustomerId(@Parameter(description = "ID of the customer") @PathVariable Long customerId, @Parameter(description = "Cursor returned with the previous page") @RequestParam(required = false) String cursor, @Parameter(description = "Page size") @RequestParam(defaultValue = "20") int size, @Parameter(description = "Whether to include an exact or estimated total count") @RequestParam(defaultValue = "NONE") CountMode count) {
+        return ResponseEntity.ok(notificationLogService.getNotificationsByCustomerId(customerId, cursor, size, count));
     }
 
     @GetMapping("/search")
-    @Operation(summary = "Search notifications", description = "Searches notifications with various filters and pagination")
-    @ApiResponse(responseCode = "200", description = "Search results retrieved successfully")
-    public ResponseEntity<Page<NotificationLogDto>> searchNotifications(@Parameter(description = "Filter by customer ID") @RequestParam(required = false) Long customerId, @Parameter(description = "Filter by notification type") @RequestParam(required = false) NotificationType type, @Parameter(description = "Filter by notification status") @RequestParam(required = false) NotificationStatus status, @Parameter(description = "Filter by start date") @RequestParam(required = false) LocalDateTime startDate, @Parameter(description = "Filter by end date") @RequestParam(required = false) LocalDateTime endDate, @Parameter(description = "Pagination and sorting parameters") Pageable pageable) {
-        return ResponseEntity.ok(notificationLogService.searchNotifications(customerId, type, status, startDate, endDate, pageable));
+    @Operation(summary = "Search notifications", description = "Searches notifications with various filters, newest first. Pass the returned nextCursor to get the following page")
+    @ApiResponses(value = {@ApiResponse(responseCode = "200", description = "Search results retrieved successfully"), @ApiResponse(responseCode = "400", description = "Invalid cursor", content = @Content)})
+    public ResponseEntity<NotificationLogCursorPageDto> searchNotifications(@Parameter(description = "Filter by customer ID") @RequestParam(required = false) Long customerId, @Parameter(description = "Filter by notification type") @RequestParam(required = false) NotificationType type, @Parameter(description = "Filter by notification status") @RequestParam(required = false) NotificationStatus status, @Parameter(description = "Filter by start date") @RequestParam(required = false) LocalDateTime startDate, @Parameter(description = "Filter by end date") @RequestParam(required = false) LocalDateTime endDate, @Parameter(description = "Cursor returned with the previous page") @RequestParam(required = false) String cursor, @Parameter(description = "Page size") @RequestParam(defaultValue = "20") int size, @Parameter(description = "Whether to include an exact or estimated total count") @RequestParam(defaultValue = "NONE") CountMode count) {
+        return ResponseEntity.ok(notificationLogService.searchNotifications(customerId, type, status, startDate, endDate, cursor, size, count));
     }
 
     @GetMapping("/customer/{customerId}/stats")
-    @Operation(summary = "Get notification statistics for a customer", description = "Retrieves statistics about notifications for a specific customer within a given date range")
-    @ApiResponse(responseCode = "200", description = "Statistics retrieved successfully")
-    public ResponseEntity<Map<String, Object>> getCustomerNotificationStatistics(@Parameter(description = "ID of the customer") @PathVariable Long customerId, @Parameter(description = "Start date for statistics (format: yyyy-MM-ddTHH:mm:ss)") @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime startDate, @Parameter(description = "End date for statistics (format: yyyy-MM-ddTHH:mm:ss)") @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime endDate) {
-        Map<String, Object> stats = notificationLogService.getNotificationStatistics(startDate, endDate);
-
-        stats.put("customerId", customerId);
-
-        return ResponseEntity.ok(stats);
+    @Operation(summary = "Get notification statistics for a customer", description = "Retrieves counts by type and status and the latest send and delivery times of a customer's notifications. Without a date range the customer's maintained lifetime counters are returned")
+    @ApiResponses(value = {@ApiResponse(responseCode = "200", description = "Statistics retrieved successfully"), @ApiResponse(responseCode = "404", description = "Customer not found", content = @Content)})
+    public ResponseEntity<CustomerNotificationStatsDto> getCustomerNotificationStatistics(@Parameter(description = "ID of the customer") @PathVariable Long customerId, @Parameter(description = "Start date for statistics (format: yyyy-MM-ddTHH:mm:ss)") @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime startDate, @Parameter(description = "End date for statistics (format: yyyy-MM-ddTHH:mm:ss)") @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime endDate) {
+        return ResponseEntity.ok(notificationLogService.getCustomerNotificationStatistics(customerId, startDate, endDate));
     }
 
     @GetMapping("/stats")
@@ -93,13 +109,43 @@ public class NotificationLogController {
     @PutMapping("/{id}/status")
     @Operation(summary = "Update notification status", description = "Updates the status of a notification, often used for webhook callbacks")
     @ApiResponses(value = {@ApiResponse(responseCode = "200", description = "Status updated successfully"), @ApiResponse(responseCode = "404", description = "Notification not found", content = @Content)})
-    public ResponseEntity<NotificationLogDto> updateNotificationStatus(@Parameter(description = "ID of the notification") @PathVariable Long id, @Parameter(description = "New notification status") @RequestParam NotificationStatus status, @Parameter(description = "Reason for failure (if applicable)") @RequestParam(required = false) String failureReason) {
-        return ResponseEntity.ok(notificationLogService.updateNotificationStatus(id, status, failureReason));
+    public ResponseEntity<NotificationLogDto> updateNotificationStatus(@Parameter(description = "ID of the notification") @PathVariable Long id, @Parameter(description = "New notification status") @RequestParam NotificationStatus status, @Parameter(description = "Reason for failure (if applicable)") @RequestParam(required = false) String failureReason, @Parameter(description = "When the provider reported the status (format: yyyy-MM-ddTHH:mm:ss); an update reported before the last one applied is ignored") @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime timestamp) {
+        return ResponseEntity.ok(notificationLogService.updateNotificationStatus(id, status, failureReason, timestamp));
+    }
+
+    @PutMapping("/external/{externalReferenceId}/status")
+    @Operation(summary = "Update notification status by external reference ID", description = "Updates the status of a notification identified by its provider reference, for provider webhooks")
+    @ApiResponses(value = {@ApiResponse(responseCode = "200", description = "Status updated successfully"), @ApiResponse(responseCode = "404", description = "Notification not found", content = @Content)})
+    public ResponseEntity<NotificationLogDto> updateNotificationStatusByExternalReferenceId(@Parameter(description = "Provider reference of the notification") @PathVariable String externalReferenceId, @Parameter(description = "New notification status") @RequestParam NotificationStatus status, @Parameter(description = "Reason for failure (if applicable)") @RequestParam(required = false) String failureReason, @Parameter(description = "When the provider reported the status (format: yyyy-MM-ddTHH:mm:ss); an update reported before the last one applied is ignored") @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime timestamp) {
+        return ResponseEntity.ok(notificationLogService.updateNotificationStatusByExternalReferenceId(externalReferenceId, status, failureReason, timestamp));
+    }
+
+    @PostMapping("/status/bulk")
+    @Operation(summary = "Apply delivery status callbacks in bulk", description = "Applies provider delivery receipts keyed by notification ID or external reference ID and returns one result per item, in request order")
+    @ApiResponses(value = {@ApiResponse(responseCode = "200", description = "Callbacks processed"), @ApiResponse(responseCode = "400", description = "Invalid request body", content = @Content), @ApiResponse(responseCode = "413", description = "Too many callbacks in one request", content = @Content)})
+    public ResponseEntity<List<StatusCallbackResultDto>> applyStatusCallbacks(@RequestBody List<NotificationStatusCallbackDto> callbacks) {
+        return ResponseEntity.ok(notificationLogService.applyStatusCallbacks(callbacks));
+    }
+
+    @PostMapping("/{id}/read")
+    @Operation(summary = "Track a notification read", description = "Records that the recipient opened the notification. Reads are buffered and applied in batches within a few seconds; unknown IDs are ignored")
+    @ApiResponses(value = {@ApiResponse(responseCode = "202", description = "Read accepted"), @ApiResponse(responseCode = "503", description = "Too many reads waiting to be applied", content = @Content)})
+    public ResponseEntity<Void> recordNotificationRead(@Parameter(description = "ID of the notification") @PathVariable Long id) {
+        notificationLogService.recordNotificationRead(id);
+        return ResponseEntity.accepted().build();
+    }
+
+    @GetMapping(value = "/{id}/read", produces = MediaType.IMAGE_GIF_VALUE)
+    @Operation(summary = "Track a notification read from the message", description = "Unauthenticated tracking link, e.g. an image embedded in an email, signed with the notification's read tracking token. Responds with a transparent 1x1 GIF; a wrong token is answered like an unknown notification")
+    @ApiResponses(value = {@ApiResponse(responseCode = "200", description = "Read accepted"), @ApiResponse(responseCode = "404", description = "Unknown notification or wrong token", content = @Content), @ApiResponse(responseCode = "503", description = "Too many reads waiting to be applied", content = @Content)})
+    public ResponseEntity<byte[]> trackNotificationRead(@Parameter(description = "ID of the notification") @PathVariable Long id, @Parameter(description = "Read tracking token of the notification") @RequestParam String token) {
+        notificationLogService.recordTrackedNotificationRead(id, token);
+        return ResponseEntity.ok().cacheControl(CacheControl.noStore()).body(TRACKING_PIXEL);
     }
 
     @GetMapping("/opt-in-report")
     @Operation(summary = "Generate customer opt-in report",
-            description = "Retrieves statistics about customer opt-in rates and notification success rates within a given date range")
+            description = "Retrieves statistics about customer opt-in rates and notification success rates within a given date range. Distinct customers per type are estimated from daily sketches (within about 1%) unless distinctCount=EXACT")
     @ApiResponse(responseCode = "200", description = "Report generated successfully")
     public ResponseEntity<Map<String, Object>> generateCustomerOptInReport(
             @Parameter(description = "Start date for report (format: yyyy-MM-ddTHH:mm:ss)")
@@ -110,8 +156,26 @@ public class NotificationLogController {
             @Parameter(description = "End date for report (format: yyyy-MM-ddTHH:mm:ss)")
             @RequestParam(required = false)
             @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME)
-            LocalDateTime endDate) {
+            LocalDateTime endDate,
+
+            @Parameter(description = "How distinct customers per type are counted: ESTIMATED, EXACT, or NONE to leave them out")
+            @RequestParam(defaultValue = "ESTIMATED")
+            CountMode distinctCount) {
+
+        return ResponseEntity.ok(notificationLogService.generateCustomerOptInReport(startDate, endDate, distinctCount));
+    }
+
+    @GetMapping("/latency")
+    @Operation(summary = "Get recent delivery latency", description = "Returns accept-to-delivered latency percentiles in milliseconds over the most recent window on this node, overall, by type and by channel. Latency runs from when the notification was accepted (sentAt) to its delivery, so retries and queueing count towards it. Date range reports across all nodes are part of the statistics endpoint")
+    @ApiResponse(responseCode = "200", description = "Latency retrieved successfully")
+    public ResponseEntity<DeliveryLatencyDto> getRecentDeliveryLatency(@Parameter(description = "Window length as an ISO-8601 duration, e.g. PT5M; capped at the retained window") @RequestParam(defaultValue = "PT5M") Duration window) {
+        return ResponseEntity.ok(notificationLogService.getRecentDeliveryLatency(window));
+    }
 
-        return ResponseEntity.ok(notificationLogService.generateCustomerOptInReport(startDate, endDate));
+    @GetMapping("/failure-reasons")
+    @Operation(summary = "Get current top failure reasons", description = "Returns the most frequent failure reasons of the current hour for a notification type, as tracked in memory by this node. Counts may be overestimated by at most their error")
+    @ApiResponse(responseCode = "200", description = "Failure reasons retrieved successfully")
+    public ResponseEntity<List<FailureReasonCountDto>> getCurrentTopFailureReasons(@Parameter(description = "Notification type") @RequestParam NotificationType type) {
+        return ResponseEntity.ok(notificationLogService.getCurrentTopFailureReasons(type));
     }
 }
\ No newline at end of file
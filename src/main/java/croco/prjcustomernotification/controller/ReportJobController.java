@@ -0,0 +1,65 @@
+package croco.prjcustomernotification.controller;
+
+import croco.prjcustomernotification.dto.ReportJobDto;
+import croco.prjcustomernotification.enums.CountMode;
+import croco.prjcustomernotification.enums.ReportType;
+import croco.prjcustomernotification.service.interfaces.ReportJobService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.RequiredArgsConstructor;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.UUID;
+
+@RestController
+@RequestMapping("/api/report-jobs")
+@RequiredArgsConstructor
+@Tag(name = "Report Jobs", description = "Statistics and opt-in reports generated in the background, for long date ranges")
+public class ReportJobController {
+
+    private final ReportJobService reportJobService;
+
+    @PostMapping
+    @Operation(summary = "Submit a report job", description = "Queues a statistics or opt-in report and returns its job. Submitting a report identical to one still queued or running returns that job")
+    @ApiResponses(value = {@ApiResponse(responseCode = "202", description = "Report job accepted"), @ApiResponse(responseCode = "503", description = "Too many report jobs queued", content = @Content)})
+    public ResponseEntity<ReportJobDto> submitReportJob(
+            @Parameter(description = "Report to generate") @RequestParam ReportType report,
+            @Parameter(description = "Start date for report (format: yyyy-MM-ddTHH:mm:ss)") @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime startDate,
+            @Parameter(description = "End date for report (format: yyyy-MM-ddTHH:mm:ss)") @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime endDate,
+            @Parameter(description = "How distinct customers per type are counted in the opt-in report: ESTIMATED, EXACT, or NONE to leave them out") @RequestParam(defaultValue = "ESTIMATED") CountMode distinctCount) {
+        return ResponseEntity.accepted().body(reportJobService.submitReportJob(report, startDate, endDate, distinctCount));
+    }
+
+    @GetMapping("/{id}")
+    @Operation(summary = "Get report job status", description = "Retrieves the status of a report job")
+    @ApiResponses(value = {@ApiResponse(responseCode = "200", description = "Report job found"), @ApiResponse(responseCode = "404", description = "Report job not found", content = @Content)})
+    public ResponseEntity<ReportJobDto> getReportJob(@Parameter(description = "ID of the report job") @PathVariable UUID id) {
+        return ResponseEntity.ok(reportJobService.getReportJob(id));
+    }
+
+    @GetMapping("/{id}/result")
+    @Operation(summary = "Get report job result", description = "Retrieves the report of a completed job, in the same form as the synchronous report endpoints")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Report retrieved successfully"),
+            @ApiResponse(responseCode = "404", description = "Report job not found", content = @Content),
+            @ApiResponse(responseCode = "409", description = "Report job has not completed", content = @Content)
+    })
+    public ResponseEntity<Map<String, Object>> getReportJobResult(@Parameter(description = "ID of the report job") @PathVariable UUID id) {
+        return ResponseEntity.ok(reportJobService.getReportJobResult(id));
+    }
+
+    @DeleteMapping("/{id}")
+    @Operation(summary = "Cancel a report job", description = "Cancels a queued or running report job, also for everyone else who submitted the same report")
+    @ApiResponses(value = {@ApiResponse(responseCode = "200", description = "Report job cancelled, or already finished"), @ApiResponse(responseCode = "404", description = "Report job not found", content = @Content)})
+    public ResponseEntity<ReportJobDto> cancelReportJob(@Parameter(description = "ID of the report job") @PathVariable UUID id) {
+        return ResponseEntity.ok(reportJobService.cancelReportJob(id));
+    }
+}
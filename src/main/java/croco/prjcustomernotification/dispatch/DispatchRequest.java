@@ -0,0 +1,16 @@
+package croco.prjcustomernotification.dispatch;
+
+import croco.prjcustomernotification.enums.NotificationType;
+import croco.prjcustomernotification.routing.Route;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * @param sentAt  when the request was accepted; the notification is created at this time and its id encodes it
+ * @param written completes once the batch holding the request is written: with {@code true} when its row was
+ *                committed, {@code false} when it was skipped, exceptionally when the batch could not be written
+ */
+public record DispatchRequest(Long id, Route route, NotificationType type, String subject, String content, LocalDateTime sentAt, int maxAttempts, String idempotencyKey,
+                              CompletableFuture<Boolean> written) {
+}
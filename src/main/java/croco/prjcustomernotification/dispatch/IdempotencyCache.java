@@ -0,0 +1,138 @@
+package croco.prjcustomernotification.dispatch;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import croco.prjcustomernotification.dto.NotificationLogDto;
+import croco.prjcustomernotification.enums.NotificationType;
+import croco.prjcustomernotification.exception.IdempotencyKeyReusedException;
+import croco.prjcustomernotification.exception.NotificationNotStoredException;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+
+/**
+ * Remembers the response of recently accepted sends by their {@code Idempotency-Key}, together with a hash of
+ * the request that used the key. Concurrent requests with the same key on this node wait for the first one and
+ * get its response; the {@code notification_idempotency_keys} table catches what falls out of the cache or
+ * arrives on another node. A response is only kept once its notification is committed, so a send that was never
+ * written can be retried with the same key.
+ */
+@Component
+public class IdempotencyCache {
+
+    public static final int MAX_KEY_LENGTH = 255;
+
+    private final AsyncCache<String, Entry> cache;
+    private final Duration writeTimeout;
+
+    public IdempotencyCache(MeterRegistry meterRegistry,
+                            @Value("${notification.idempotency.cache-size:100000}") long cacheSize,
+                            @Value("${notification.idempotency.cache-ttl:24h}") Duration cacheTtl,
+                            @Value("${notification.idempotency.write-timeout:10s}") Duration writeTimeout) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(cacheSize)
+                .expireAfterWrite(cacheTtl)
+                .recordStats()
+                .buildAsync();
+        this.writeTimeout = writeTimeout;
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "notification.idempotency");
+    }
+
+    /**
+     * Returns the cached response for the key, or computes and caches it. A failed computation is not cached,
+     * so the request can be retried with the same key.
+     *
+     * @throws IdempotencyKeyReusedException if the key was used for a request with a different hash
+     */
+    public NotificationLogDto get(String idempotencyKey, String requestHash, Function<String, Entry> loader) {
+        if (idempotencyKey.isBlank() || idempotencyKey.length() > MAX_KEY_LENGTH) {
+            throw new IllegalArgumentException("Idempotency-Key must be between 1 and " + MAX_KEY_LENGTH + " characters");
+        }
+
+        // loaded on the calling thread; a failed future is removed from the cache by Caffeine
+        CompletableFuture<Entry> loading = new CompletableFuture<>();
+        CompletableFuture<Entry> existing = cache.asMap().putIfAbsent(idempotencyKey, loading);
+        Entry entry;
+        if (existing == null) {
+            try {
+                entry = loader.apply(idempotencyKey);
+                loading.complete(entry);
+            } catch (RuntimeException e) {
+                loading.completeExceptionally(e);
+                throw e;
+            }
+        } else {
+            try {
+                entry = existing.join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException cause ? cause : e;
+            }
+        }
+
+        if (entry.requestHash() != null && !entry.requestHash().equals(requestHash)) {
+            throw new IdempotencyKeyReusedException("Idempotency-Key was already used for a different notification");
+        }
+        return entry.response();
+    }
+
+    /**
+     * Waits for the batch holding the request to be written.
+     *
+     * @return whether the request's row was committed; {@code false} when it was skipped because its address was
+     * removed or its key claimed by another request
+     * @throws NotificationNotStoredException if the batch failed or took longer than the write timeout
+     */
+    public boolean awaitWritten(DispatchRequest request) {
+        try {
+            return request.written().get(writeTimeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (ExecutionException | TimeoutException e) {
+            throw new NotificationNotStoredException("Notification could not be stored, retry later with the same Idempotency-Key");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new NotificationNotStoredException("Interrupted while storing the notification");
+        }
+    }
+
+    /**
+     * @return a hash over everything that makes up a send request, stored with its idempotency key
+     */
+    public static String requestHash(Long customerId, NotificationType type, String subject, String content) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(ByteBuffer.allocate(Long.BYTES).putLong(customerId).array());
+            update(digest, type.name());
+            update(digest, subject);
+            update(digest, content);
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // length-prefixed, so moving text between fields changes the hash
+    private static void update(MessageDigest digest, String value) {
+        byte[] bytes = value != null ? value.getBytes(StandardCharsets.UTF_8) : new byte[0];
+        digest.update(ByteBuffer.allocate(Integer.BYTES).putInt(value != null ? bytes.length : -1).array());
+        digest.update(bytes);
+    }
+
+    /**
+     * @param requestHash the hash of the request that used the key, or {@code null} when it is not known
+     */
+    public record Entry(String requestHash, NotificationLogDto response) {
+    }
+}
@@ -0,0 +1,121 @@
+package croco.prjcustomernotification.dispatch;
+
+import croco.prjcustomernotification.enums.NotificationStatus;
+import croco.prjcustomernotification.routing.Route;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+@Component
+@RequiredArgsConstructor
+public class NotificationBatchWriter {
+
+    // routes are resolved from a cache, so the address may have been deleted since; such rows are skipped
+    private static final String INSERT_SQL = "INSERT INTO notification_logs " +
+            "(id, customer_id, address_id, type, status, subject, content, sent_at, attempt_count, max_attempts, created_at, updated_at) " +
+            "SELECT ?, ?, ?, ?, ?, ?, ?, ?, 1, ?, ?, ? " +
+            "WHERE EXISTS (SELECT 1 FROM addresses a WHERE a.id = ? AND a.customer_id = ?)";
+
+    // claims the keys; a key already claimed by an earlier request, on any node, is not returned
+    private static final String CLAIM_KEYS_SQL = "INSERT INTO notification_idempotency_keys (idempotency_key, notification_id, request_hash, created_at) " +
+            "SELECT k.idempotency_key, k.notification_id, k.request_hash, ? FROM unnest(?::text[], ?::bigint[], ?::text[]) AS k(idempotency_key, notification_id, request_hash) " +
+            "ON CONFLICT DO NOTHING RETURNING idempotency_key";
+
+    private static final String RELEASE_KEYS_SQL = "DELETE FROM notification_idempotency_keys WHERE idempotency_key = ANY (?::text[])";
+
+    // the STATUS_CHANGED row without a previous status counts the new notification into the hourly rollup
+    private static final String OUTBOX_SQL = "INSERT INTO notification_outbox (notification_id, type, event_type, status, attempts, created_at) " +
+            "VALUES (?, ?, 'DELIVERY', NULL, 0, ?), (?, ?, 'STATUS_CHANGED', 'PENDING', 0, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Inserts the requests in a single JDBC batch, together with a DELIVERY and a STATUS_CHANGED outbox row for
+     * each written notification. Requests whose idempotency key was already used are skipped. A row is created at
+     * the request's {@code sentAt}, the time its id encodes, so lookups bounded by the id's month find it even when
+     * the request waited in the queue across the end of a month.
+     *
+     * @return the requests whose rows were written
+     */
+    @Transactional
+    public List<DispatchRequest> write(List<DispatchRequest> requests) {
+        if (requests.isEmpty()) {
+            return List.of();
+        }
+
+        LocalDateTime now = LocalDateTime.now();
+
+        Set<String> claimedKeys = claimKeys(requests, now);
+        List<DispatchRequest> candidates = new ArrayList<>(requests.size());
+        for (DispatchRequest request : requests) {
+            if (request.idempotencyKey() == null || claimedKeys.remove(request.idempotencyKey())) {
+                candidates.add(request);
+            }
+        }
+
+        List<Object[]> rows = new ArrayList<>(candidates.size());
+        for (DispatchRequest request : candidates) {
+            Route route = request.route();
+            rows.add(new Object[]{request.id(), route.customerId(), route.addressId(), request.type().name(), NotificationStatus.PENDING.name(), request.subject(), request.content(), request.sentAt(), request.maxAttempts(), request.sentAt(), now, route.addressId(), route.customerId()});
+        }
+
+        int[] counts = jdbcTemplate.batchUpdate(INSERT_SQL, rows);
+        List<DispatchRequest> written = new ArrayList<>(candidates.size());
+        List<Object[]> outboxRows = new ArrayList<>(candidates.size());
+        List<String> unusedKeys = new ArrayList<>();
+        for (int i = 0; i < counts.length; i++) {
+            DispatchRequest request = candidates.get(i);
+            if (counts[i] > 0) {
+                written.add(request);
+                outboxRows.add(new Object[]{request.id(), request.type().name(), now, request.id(), request.type().name(), now});
+            } else if (request.idempotencyKey() != null) {
+                unusedKeys.add(request.idempotencyKey());
+            }
+        }
+        if (!outboxRows.isEmpty()) {
+            jdbcTemplate.batchUpdate(OUTBOX_SQL, outboxRows);
+        }
+        if (!unusedKeys.isEmpty()) {
+            jdbcTemplate.update(connection -> {
+                PreparedStatement statement = connection.prepareStatement(RELEASE_KEYS_SQL);
+                statement.setArray(1, connection.createArrayOf("text", unusedKeys.toArray()));
+                return statement;
+            });
+        }
+        return written;
+    }
+
+    private Set<String> claimKeys(List<DispatchRequest> requests, LocalDateTime now) {
+        List<String> keys = new ArrayList<>();
+        List<Long> ids = new ArrayList<>();
+        List<String> hashes = new ArrayList<>();
+        for (DispatchRequest request : requests) {
+            if (request.idempotencyKey() != null) {
+                keys.add(request.idempotencyKey());
+                ids.add(request.id());
+                hashes.add(IdempotencyCache.requestHash(request.route().customerId(), request.type(), request.subject(), request.content()));
+            }
+        }
+        if (keys.isEmpty()) {
+            return new HashSet<>();
+        }
+
+        return new HashSet<>(jdbcTemplate.query(connection -> {
+            PreparedStatement statement = connection.prepareStatement(CLAIM_KEYS_SQL);
+            statement.setTimestamp(1, Timestamp.valueOf(now));
+            statement.setArray(2, connection.createArrayOf("text", keys.toArray()));
+            statement.setArray(3, connection.createArrayOf("bigint", ids.toArray()));
+            statement.setArray(4, connection.createArrayOf("text", hashes.toArray()));
+            return statement;
+        }, (rs, _) -> rs.getString("idempotency_key")));
+    }
+}
@@ -0,0 +1,224 @@
+package croco.prjcustomernotification.dispatch;
+
+import croco.prjcustomernotification.enums.LiveEvent;
+import croco.prjcustomernotification.enums.NotificationType;
+import croco.prjcustomernotification.exception.DispatchQueueFullException;
+import croco.prjcustomernotification.lane.LaneProperties;
+import croco.prjcustomernotification.lane.LaneQueue;
+import croco.prjcustomernotification.live.LiveNotificationCounters;
+import croco.prjcustomernotification.retry.RetryPolicy;
+import croco.prjcustomernotification.routing.Route;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Accepts notification send requests into a bounded in-memory queue with one lane per notification type. A
+ * small, fixed number of shared virtual-thread workers drain the lanes by weight and hand whole batches to
+ * {@link NotificationBatchWriter}, so the number of database connections used for ingest never exceeds the
+ * worker count; lanes with reserved workers additionally get workers of their own. Delivery is picked up from the outbox
+ * rows written with each batch.
+ */
+@Slf4j
+@Component
+public class NotificationDispatcher {
+
+    private final NotificationBatchWriter batchWriter;
+    private final NotificationIdAllocator idAllocator;
+    private final RetryPolicy retryPolicy;
+    private final LaneProperties laneProperties;
+    private final LiveNotificationCounters liveCounters;
+    private final LaneQueue<DispatchRequest> queue;
+    private final int workerCount;
+    private final int batchSize;
+    private final long pollTimeoutMs;
+    private final int writeAttempts;
+    private final Duration writeBackoff;
+
+    private final Counter acceptedCounter;
+    private final Counter rejectedCounter;
+    private final Counter droppedCounter;
+    private final Counter failedCounter;
+    private final Counter retriedCounter;
+    private final DistributionSummary batchSizeSummary;
+
+    private final List<Thread> workers = new ArrayList<>();
+    private volatile boolean running;
+
+    public NotificationDispatcher(NotificationBatchWriter batchWriter,
+                                  NotificationIdAllocator idAllocator,
+                                  RetryPolicy retryPolicy,
+                                  LaneProperties laneProperties,
+                                  LiveNotificationCounters liveCounters,
+                                  MeterRegistry meterRegistry,
+                                  @Value("${notification.dispatch.workers:2}") int workerCount,
+                                  @Value("${notification.dispatch.batch-size:500}") int batchSize,
+                                  @Value("${notification.dispatch.poll-timeout-ms:200}") long pollTimeoutMs,
+                                  @Value("${notification.dispatch.write-attempts:3}") int writeAttempts,
+                                  @Value("${notification.dispatch.write-backoff:100ms}") Duration writeBackoff) {
+        this.batchWriter = batchWriter;
+        this.idAllocator = idAllocator;
+        this.retryPolicy = retryPolicy;
+        this.laneProperties = laneProperties;
+        this.liveCounters = liveCounters;
+        this.queue = new LaneQueue<>("dispatch", laneProperties, capacity -> capacity, meterRegistry);
+        this.workerCount = workerCount;
+        this.batchSize = batchSize;
+        this.pollTimeoutMs = pollTimeoutMs;
+        this.writeAttempts = writeAttempts;
+        this.writeBackoff = writeBackoff;
+
+        Gauge.builder("notifications.dispatch.queue.depth", queue, LaneQueue::size).register(meterRegistry);
+        this.acceptedCounter = meterRegistry.counter("notifications.dispatch.accepted");
+        this.rejectedCounter = meterRegistry.counter("notifications.dispatch.rejected");
+        this.droppedCounter = meterRegistry.counter("notifications.dispatch.dropped");
+        this.failedCounter = meterRegistry.counter("notifications.dispatch.failed");
+        this.retriedCounter = meterRegistry.counter("notifications.dispatch.retried");
+        this.batchSizeSummary = DistributionSummary.builder("notifications.dispatch.batch.size").register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        running = true;
+        Thread.Builder builder = Thread.ofVirtual().name("notification-dispatch-", 0);
+        for (int i = 0; i < workerCount; i++) {
+            workers.add(builder.start(() -> drain(null)));
+        }
+        for (NotificationType type : NotificationType.values()) {
+            for (int i = 0; i < laneProperties.settingsFor(type).reservedWorkers(); i++) {
+                workers.add(builder.start(() -> drain(type)));
+            }
+        }
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        for (Thread worker : workers) {
+            worker.join(Duration.ofSeconds(10));
+        }
+    }
+
+    public DispatchRequest submit(Route route, NotificationType type, String subject, String content, String idempotencyKey) {
+        LocalDateTime now = LocalDateTime.now();
+        DispatchRequest request = new DispatchRequest(idAllocator.nextId(now), route, type, subject, content, now, retryPolicy.maxAttemptsFor(type), idempotencyKey, new CompletableFuture<>());
+
+        if (!queue.offer(type, request)) {
+            rejectedCounter.increment();
+            throw new DispatchQueueFullException(type + " notification queue is full, retry later");
+        }
+
+        acceptedCounter.increment();
+        return request;
+    }
+
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    // drains every lane by weight, or only the given lane for a reserved worker
+    private void drain(NotificationType lane) {
+        List<DispatchRequest> batch = new ArrayList<>(batchSize);
+
+        while (running || !queue.isEmpty()) {
+            try {
+                DispatchRequest first = lane == null
+                        ? queue.poll(pollTimeoutMs, TimeUnit.MILLISECONDS)
+                        : queue.poll(lane, pollTimeoutMs, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    if (lane != null && !running) {
+                        return;
+                    }
+                    continue;
+                }
+                batch.add(first);
+                if (lane == null) {
+                    queue.drainTo(batch, batchSize - 1);
+                } else {
+                    queue.drainTo(lane, batch, batchSize - 1);
+                }
+                flush(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                for (DispatchRequest request : batch) {
+                    request.written().completeExceptionally(e);
+                }
+                return;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void flush(List<DispatchRequest> batch) throws InterruptedException {
+        batchSizeSummary.record(batch.size());
+        List<DispatchRequest> written;
+        try {
+            written = writeWithRetry(batch);
+        } catch (RuntimeException e) {
+            // one bad row must not fail the rest of the batch, so what still fails is written row by row
+            log.warn("Failed to write batch of {} notification(s), writing them one by one", batch.size(), e);
+            written = new ArrayList<>(batch.size());
+            for (DispatchRequest request : batch) {
+                try {
+                    written.addAll(batchWriter.write(List.of(request)));
+                } catch (RuntimeException rowFailure) {
+                    failedCounter.increment();
+                    log.error("Failed to write notification {}", request.id(), rowFailure);
+                    request.written().completeExceptionally(rowFailure);
+                }
+            }
+        }
+
+        Set<Long> writtenIds = new HashSet<>();
+        for (DispatchRequest request : written) {
+            writtenIds.add(request.id());
+            liveCounters.record(LiveEvent.SENT, request.type(), request.route().channel());
+        }
+        int skipped = 0;
+        for (DispatchRequest request : batch) {
+            if (!request.written().isDone()) {
+                boolean rowWritten = writtenIds.contains(request.id());
+                request.written().complete(rowWritten);
+                skipped += rowWritten ? 0 : 1;
+            }
+        }
+        if (skipped > 0) {
+            droppedCounter.increment(skipped);
+            log.warn("Dropped {} notification(s) whose address was removed after routing or whose idempotency key was already used", skipped);
+        }
+    }
+
+    // transient failures such as a lost connection or a serialization failure usually pass within a few backoffs
+    private List<DispatchRequest> writeWithRetry(List<DispatchRequest> batch) throws InterruptedException {
+        long backoffMs = writeBackoff.toMillis();
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return batchWriter.write(batch);
+            } catch (RuntimeException e) {
+                if (attempt >= writeAttempts) {
+                    throw e;
+                }
+                retriedCounter.increment();
+                log.warn("Failed to write batch of {} notification(s), attempt {} of {}", batch.size(), attempt, writeAttempts, e);
+                Thread.sleep(backoffMs);
+                backoffMs *= 2;
+            }
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package croco.prjcustomernotification.dispatch;
+
+import croco.prjcustomernotification.model.NotificationLog;
+import croco.prjcustomernotification.partition.NotificationIds;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Hands out notification log ids from blocks reserved on {@code notification_logs_seq}, so accepting a
+ * request only touches the database once per {@link NotificationLog#ID_ALLOCATION_SIZE} ids: a block is the
+ * sequence value and the values up to the next increment. Every id is encoded with the month of the creation time
+ * it must be stored with, see {@link NotificationIds}, which also keeps it apart from any id Hibernate generates
+ * from the same sequence, as those carry no month.
+ */
+@Component
+@RequiredArgsConstructor
+public class NotificationIdAllocator {
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ReentrantLock lock = new ReentrantLock();
+    private long next;
+    private long limit;
+
+    public long nextId(LocalDateTime createdAt) {
+        lock.lock();
+        try {
+            if (next >= limit) {
+                Long low = jdbcTemplate.queryForObject("SELECT nextval('notification_logs_seq')", Long.class);
+                next = low;
+                limit = low + NotificationLog.ID_ALLOCATION_SIZE;
+            }
+            return NotificationIds.encode(next++, createdAt);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Reserves {@code count} ids, fetching all missing blocks in a single round trip.
+     */
+    public long[] nextIds(int count, LocalDateTime createdAt) {
+        long[] ids = new long[count];
+        lock.lock();
+        try {
+            int filled = 0;
+            while (filled < count && next < limit) {
+                ids[filled++] = NotificationIds.encode(next++, createdAt);
+            }
+
+            if (filled < count) {
+                int blocks = Math.ceilDiv(count - filled, NotificationLog.ID_ALLOCATION_SIZE);
+                List<Long> lows = jdbcTemplate.queryForList("SELECT nextval('notification_logs_seq') FROM generate_series(1, ?)", Long.class, blocks);
+                for (Long low : lows) {
+                    next = low;
+                    limit = low + NotificationLog.ID_ALLOCATION_SIZE;
+                    while (filled < count && next < limit) {
+                        ids[filled++] = NotificationIds.encode(next++, createdAt);
+                    }
+                }
+            }
+            return ids;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
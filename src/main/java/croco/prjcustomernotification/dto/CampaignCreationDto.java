@@ -0,0 +1,29 @@
+package croco.prjcustomernotification.dto;
+
+import croco.prjcustomernotification.enums.NotificationType;
+import jakarta.validation.constraints.NotBlank;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Set;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class CampaignCreationDto {
+    private NotificationType type;
+
+    @NotBlank(message = "Subject is required")
+    private String subject;
+
+    @NotBlank(message = "Content is required")
+    private String content;
+
+    private String name;
+    private String email;
+    private String phone;
+    private Set<NotificationType> optedInTypes;
+}
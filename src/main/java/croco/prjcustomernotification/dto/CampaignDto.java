@@ -0,0 +1,27 @@
+package croco.prjcustomernotification.dto;
+
+import croco.prjcustomernotification.enums.CampaignStatus;
+import croco.prjcustomernotification.enums.NotificationType;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class CampaignDto {
+    private Long id;
+    private NotificationType type;
+    private String subject;
+    private CampaignStatus status;
+    private long matchedCustomers;
+    private long notificationsCreated;
+    private double notificationsPerSecond;
+    private String failureReason;
+    private LocalDateTime startedAt;
+    private LocalDateTime completedAt;
+}
@@ -0,0 +1,24 @@
+package croco.prjcustomernotification.dto;
+
+import croco.prjcustomernotification.enums.NotificationStatus;
+import croco.prjcustomernotification.enums.NotificationType;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class CustomerNotificationStatsDto {
+    private Long customerId;
+    private long total;
+    private Map<NotificationStatus, Long> statusCounts;
+    private Map<NotificationType, Map<NotificationStatus, Long>> typeStatistics;
+    private LocalDateTime lastSentAt;
+    private LocalDateTime lastDeliveredAt;
+}
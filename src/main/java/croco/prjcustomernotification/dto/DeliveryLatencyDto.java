@@ -0,0 +1,20 @@
+package croco.prjcustomernotification.dto;
+
+import croco.prjcustomernotification.enums.AddressType;
+import croco.prjcustomernotification.enums.NotificationType;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Map;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class DeliveryLatencyDto {
+    private LatencySummaryDto overall;
+    private Map<NotificationType, LatencySummaryDto> byType;
+    private Map<AddressType, LatencySummaryDto> byChannel;
+}
@@ -0,0 +1,17 @@
+package croco.prjcustomernotification.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class FailureReasonCountDto {
+    private String reason;
+    private long count;
+    // how much of count may be overestimated by the sketch
+    private long error;
+}
@@ -0,0 +1,21 @@
+package croco.prjcustomernotification.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// latencies in milliseconds
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class LatencySummaryDto {
+    private long count;
+    private long p50;
+    private long p90;
+    private long p99;
+    private long p999;
+    private long max;
+    private double mean;
+}
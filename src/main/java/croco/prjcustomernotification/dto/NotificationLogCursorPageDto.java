@@ -0,0 +1,22 @@
+package croco.prjcustomernotification.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class NotificationLogCursorPageDto {
+    private List<NotificationLogDto> notifications;
+    private int size;
+    private String nextCursor;
+    private Long totalElements;
+    private Boolean totalEstimated;
+}
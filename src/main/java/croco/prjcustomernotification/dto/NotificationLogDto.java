@@ -26,7 +26,11 @@ public class NotificationLogDto {
     private String content;
     private LocalDateTime sentAt;
     private LocalDateTime deliveredAt;
+    private LocalDateTime readAt;
     private String failureReason;
+    private int attemptCount;
+    private int maxAttempts;
+    private LocalDateTime nextAttemptAt;
     private LocalDateTime createdAt;
     private LocalDateTime updatedAt;
 }
@@ -0,0 +1,21 @@
+package croco.prjcustomernotification.dto;
+
+import croco.prjcustomernotification.enums.NotificationStatus;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class NotificationStatusCallbackDto {
+    private Long id;
+    private String externalReferenceId;
+    private NotificationStatus status;
+    private String failureReason;
+    private LocalDateTime timestamp;
+}
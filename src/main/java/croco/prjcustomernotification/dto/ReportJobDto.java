@@ -0,0 +1,29 @@
+package croco.prjcustomernotification.dto;
+
+import croco.prjcustomernotification.enums.CountMode;
+import croco.prjcustomernotification.enums.ReportJobStatus;
+import croco.prjcustomernotification.enums.ReportType;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ReportJobDto {
+    private UUID id;
+    private ReportType report;
+    private LocalDateTime startDate;
+    private LocalDateTime endDate;
+    private CountMode distinctCount;
+    private ReportJobStatus status;
+    private String failureReason;
+    private LocalDateTime submittedAt;
+    private LocalDateTime startedAt;
+    private LocalDateTime completedAt;
+}
@@ -0,0 +1,19 @@
+package croco.prjcustomernotification.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import croco.prjcustomernotification.enums.StatusCallbackOutcome;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class StatusCallbackResultDto {
+    private Long id;
+    private String externalReferenceId;
+    private StatusCallbackOutcome outcome;
+}
@@ -0,0 +1,7 @@
+package croco.prjcustomernotification.enums;
+
+public enum CountMode {
+    NONE,
+    ESTIMATED,
+    EXACT
+}
@@ -0,0 +1,6 @@
+package croco.prjcustomernotification.enums;
+
+public enum OutboxEventType {
+    DELIVERY,
+    STATUS_CHANGED
+}
@@ -0,0 +1,9 @@
+package croco.prjcustomernotification.enums;
+
+public enum ReportJobStatus {
+    QUEUED,
+    RUNNING,
+    COMPLETED,
+    FAILED,
+    CANCELLED
+}
@@ -0,0 +1,6 @@
+package croco.prjcustomernotification.enums;
+
+public enum ReportType {
+    STATISTICS,
+    OPT_IN
+}
@@ -0,0 +1,8 @@
+package croco.prjcustomernotification.enums;
+
+public enum StatusCallbackOutcome {
+    UPDATED,
+    NOT_FOUND,
+    SUPERSEDED,
+    INVALID
+}
@@ -0,0 +1,11 @@
+package croco.prjcustomernotification.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(HttpStatus.PAYLOAD_TOO_LARGE)
+public class CallbackBatchTooLargeException extends RuntimeException {
+    public CallbackBatchTooLargeException(String message) {
+        super(message);
+    }
+}
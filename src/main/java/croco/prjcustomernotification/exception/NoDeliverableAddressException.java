@@ -0,0 +1,11 @@
+package croco.prjcustomernotification.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(HttpStatus.UNPROCESSABLE_ENTITY)
+public class NoDeliverableAddressException extends RuntimeException {
+    public NoDeliverableAddressException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,11 @@
+package croco.prjcustomernotification.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+public class NotificationNotStoredException extends RuntimeException {
+    public NotificationNotStoredException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,11 @@
+package croco.prjcustomernotification.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(HttpStatus.CONFLICT)
+public class ReportJobNotCompletedException extends RuntimeException {
+    public ReportJobNotCompletedException(String message) {
+        super(message);
+    }
+}
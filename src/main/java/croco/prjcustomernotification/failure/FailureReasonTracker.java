@@ -0,0 +1,266 @@
+package croco.prjcustomernotification.failure;
+
+import croco.prjcustomernotification.dto.FailureReasonCountDto;
+import croco.prjcustomernotification.enums.NotificationType;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Tracks the most frequent failure reasons per notification type with one bounded {@link SpaceSavingSketch} per
+ * type and hour, so free-text reasons never have to be grouped over the failed rows. Every failed channel attempt
+ * is counted, as is every callback or status update that moves a notification to FAILED.
+ * <p>
+ * The sketches are flushed periodically into {@code failure_reason_counts} as the growth since the previous flush,
+ * added to what other nodes flushed for the same hour; reports over a date range merge those hourly rows. The first
+ * record or flush of a new hour swaps in a fresh window atomically; the flush closes the old one before taking its
+ * last delta, and a failure that still picked the old window is counted in the new one instead of being lost.
+ */
+@Slf4j
+@Component
+public class FailureReasonTracker {
+
+    private static final int MAX_REASON_LENGTH = 255;
+    private static final String UNSPECIFIED = "unspecified";
+
+    private static final String FLUSH_SQL = "INSERT INTO failure_reason_counts (window_start, type, reason, count, error) " +
+            "SELECT ?, ?, * FROM unnest(?::text[], ?::bigint[], ?::bigint[]) " +
+            "ON CONFLICT (window_start, type, reason) DO UPDATE SET " +
+            "count = failure_reason_counts.count + EXCLUDED.count, error = failure_reason_counts.error + EXCLUDED.error";
+
+    private static final String PURGE_SQL = "DELETE FROM failure_reason_counts WHERE window_start < ?";
+
+    private static final String RANGE_SQL = "SELECT type, reason, SUM(count) AS count, SUM(error) AS error " +
+            "FROM failure_reason_counts " +
+            "WHERE window_start >= date_trunc('hour', ?::timestamp) AND window_start <= ? " +
+            "GROUP BY type, reason";
+
+    private static final String DAYS_SQL = "SELECT CAST(window_start AS date) AS day, type, reason, SUM(count) AS count, SUM(error) AS error " +
+            "FROM failure_reason_counts " +
+            "WHERE window_start >= ? AND window_start < ? " +
+            "GROUP BY 1, 2, 3";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final int capacity;
+    private final int top;
+    private final Duration retention;
+    private final AtomicReference<Window> current;
+    private final Queue<Window> closing = new ConcurrentLinkedQueue<>();
+
+    public FailureReasonTracker(JdbcTemplate jdbcTemplate,
+                                TransactionTemplate transactionTemplate,
+                                @Value("${notification.failure-reasons.capacity:100}") int capacity,
+                                @Value("${notification.failure-reasons.top:10}") int top,
+                                @Value("${notification.failure-reasons.retention:90d}") Duration retention) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.capacity = capacity;
+        this.top = top;
+        this.retention = retention;
+        this.current = new AtomicReference<>(new Window(currentWindow(), capacity));
+    }
+
+    public void record(NotificationType type, String failureReason) {
+        String reason = normalize(failureReason);
+        // a window the flush closed after we picked it has had its last delta taken, so the failure goes to the next
+        while (true) {
+            Window window = window();
+            SpaceSavingSketch sketch = window.sketches.get(type);
+            synchronized (sketch) {
+                if (!window.closed) {
+                    sketch.offer(reason);
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the most frequent reasons of the current hour on this node, including what was not flushed yet
+     */
+    public List<FailureReasonCountDto> currentTop(NotificationType type) {
+        SpaceSavingSketch sketch = window().sketches.get(type);
+        synchronized (sketch) {
+            return sketch.top(top).stream().map(FailureReasonTracker::toDto).toList();
+        }
+    }
+
+    /**
+     * @return every reason counted per type over the hours overlapping the range, merged across nodes
+     */
+    public Map<NotificationType, List<FailureReasonCountDto>> countsInRange(LocalDateTime startDate, LocalDateTime endDate) {
+        Map<NotificationType, List<FailureReasonCountDto>> result = new EnumMap<>(NotificationType.class);
+        jdbcTemplate.query(RANGE_SQL, rs -> {
+            result.computeIfAbsent(NotificationType.valueOf(rs.getString("type")), _ -> new ArrayList<>())
+                    .add(new FailureReasonCountDto(rs.getString("reason"), rs.getLong("count"), rs.getLong("error")));
+        }, Timestamp.valueOf(startDate), Timestamp.valueOf(endDate));
+        return result;
+    }
+
+    /**
+     * @return every reason counted per type of every day from the first to the last day, both included, by day;
+     * days without failures are left out
+     */
+    public Map<LocalDate, Map<NotificationType, List<FailureReasonCountDto>>> countsByDay(LocalDate firstDay, LocalDate lastDay) {
+        Map<LocalDate, Map<NotificationType, List<FailureReasonCountDto>>> byDay = new TreeMap<>();
+        jdbcTemplate.query(DAYS_SQL, rs -> {
+            byDay.computeIfAbsent(rs.getDate("day").toLocalDate(), _ -> new EnumMap<>(NotificationType.class))
+                    .computeIfAbsent(NotificationType.valueOf(rs.getString("type")), _ -> new ArrayList<>())
+                    .add(new FailureReasonCountDto(rs.getString("reason"), rs.getLong("count"), rs.getLong("error")));
+        }, Timestamp.valueOf(firstDay.atStartOfDay()), Timestamp.valueOf(lastDay.plusDays(1).atStartOfDay()));
+        return byDay;
+    }
+
+    /**
+     * Adds up the counts of several ranges, e.g. one per day, without modifying them.
+     *
+     * @return the most frequent reasons per type
+     */
+    public Map<NotificationType, List<FailureReasonCountDto>> top(Collection<Map<NotificationType, List<FailureReasonCountDto>>> parts) {
+        Map<NotificationType, Map<String, long[]>> sums = new EnumMap<>(NotificationType.class);
+        for (Map<NotificationType, List<FailureReasonCountDto>> part : parts) {
+            part.forEach((type, counts) -> {
+                Map<String, long[]> reasons = sums.computeIfAbsent(type, _ -> new HashMap<>());
+                for (FailureReasonCountDto count : counts) {
+                    long[] sum = reasons.computeIfAbsent(count.getReason(), _ -> new long[2]);
+                    sum[0] += count.getCount();
+                    sum[1] += count.getError();
+                }
+            });
+        }
+
+        Map<NotificationType, List<FailureReasonCountDto>> result = new EnumMap<>(NotificationType.class);
+        sums.forEach((type, reasons) -> result.put(type, reasons.entrySet().stream()
+                .sorted(Comparator.comparingLong((Map.Entry<String, long[]> reason) -> reason.getValue()[0]).reversed())
+                .limit(top)
+                .map(reason -> new FailureReasonCountDto(reason.getKey(), reason.getValue()[0], reason.getValue()[1]))
+                .toList()));
+        return result;
+    }
+
+    @Scheduled(fixedDelayString = "${notification.failure-reasons.flush-interval:10s}")
+    public void flush() {
+        Window open = window();
+        // past hours receive no more failures once they are closed, so their last delta is final
+        Window closed;
+        boolean purge = false;
+        while ((closed = closing.poll()) != null) {
+            closed.closed = true;
+            drain(closed);
+            purge = true;
+        }
+        drain(open);
+        if (purge) {
+            jdbcTemplate.update(PURGE_SQL, Timestamp.valueOf(open.start.minus(retention)));
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            log.warn("Could not flush failure reason counts on shutdown", e);
+        }
+    }
+
+    private void drain(Window window) {
+        for (Map.Entry<NotificationType, SpaceSavingSketch> sketch : window.sketches.entrySet()) {
+            List<SpaceSavingSketch.Counter> deltas;
+            synchronized (sketch.getValue()) {
+                deltas = sketch.getValue().drainDeltas();
+            }
+            if (!deltas.isEmpty()) {
+                write(window.start, sketch.getKey(), deltas);
+            }
+        }
+    }
+
+    // the window of the current hour; the first caller in a new hour swaps it in and queues the old one for closing
+    private Window window() {
+        LocalDateTime hour = currentWindow();
+        Window window = current.get();
+        while (window.start.isBefore(hour)) {
+            Window next = new Window(hour, capacity);
+            if (current.compareAndSet(window, next)) {
+                closing.add(window);
+                return next;
+            }
+            window = current.get();
+        }
+        return window;
+    }
+
+    private void write(LocalDateTime windowStart, NotificationType type, List<SpaceSavingSketch.Counter> deltas) {
+        String[] reasons = new String[deltas.size()];
+        Long[] counts = new Long[deltas.size()];
+        Long[] errors = new Long[deltas.size()];
+        for (int i = 0; i < deltas.size(); i++) {
+            reasons[i] = deltas.get(i).key();
+            counts[i] = deltas.get(i).count();
+            errors[i] = deltas.get(i).error();
+        }
+        transactionTemplate.executeWithoutResult(_ -> jdbcTemplate.update(connection -> {
+            PreparedStatement statement = connection.prepareStatement(FLUSH_SQL);
+            statement.setTimestamp(1, Timestamp.valueOf(windowStart));
+            statement.setString(2, type.name());
+            statement.setArray(3, connection.createArrayOf("text", reasons));
+            statement.setArray(4, connection.createArrayOf("bigint", counts));
+            statement.setArray(5, connection.createArrayOf("bigint", errors));
+            return statement;
+        }));
+    }
+
+    private static LocalDateTime currentWindow() {
+        return LocalDateTime.now().truncatedTo(ChronoUnit.HOURS);
+    }
+
+    private static String normalize(String failureReason) {
+        if (failureReason == null || failureReason.isBlank()) {
+            return UNSPECIFIED;
+        }
+        String reason = failureReason.strip();
+        return reason.length() > MAX_REASON_LENGTH ? reason.substring(0, MAX_REASON_LENGTH) : reason;
+    }
+
+    private static FailureReasonCountDto toDto(SpaceSavingSketch.Counter counter) {
+        return new FailureReasonCountDto(counter.key(), counter.count(), counter.error());
+    }
+
+    private static final class Window {
+        private final LocalDateTime start;
+        private final Map<NotificationType, SpaceSavingSketch> sketches = new EnumMap<>(NotificationType.class);
+        // set by the flush before it takes the last delta, read under the lock of a sketch
+        private volatile boolean closed;
+
+        private Window(LocalDateTime start, int capacity) {
+            this.start = start;
+            for (NotificationType type : NotificationType.values()) {
+                sketches.put(type, new SpaceSavingSketch(capacity));
+            }
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package croco.prjcustomernotification.failure;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Space-Saving heavy-hitter summary over a stream of keys, holding at most {@code capacity} counters. When a new
+ * key arrives and every counter is taken, the key takes over the smallest counter and inherits its count as
+ * error, so a key's count is never underestimated and overestimated by at most its error. Any key occurring
+ * more than n / capacity times out of n is guaranteed to be tracked.
+ * <p>
+ * Not thread-safe; callers synchronize.
+ */
+class SpaceSavingSketch {
+
+    private final int capacity;
+    private final Map<String, Counter> counters;
+    private final Map<String, Counter> evicted = new HashMap<>();
+
+    SpaceSavingSketch(int capacity) {
+        this.capacity = capacity;
+        this.counters = new HashMap<>(capacity * 2);
+    }
+
+    void offer(String key) {
+        Counter counter = counters.get(key);
+        if (counter == null) {
+            if (counters.size() < capacity) {
+                counter = new Counter(key, 0);
+            } else {
+                Counter smallest = null;
+                for (Counter candidate : counters.values()) {
+                    if (smallest == null || candidate.count < smallest.count) {
+                        smallest = candidate;
+                    }
+                }
+                counters.remove(smallest.key);
+                // the growth of the evicted key since the last flush still belongs to it
+                if (smallest.count > smallest.flushedCount) {
+                    merge(evicted, smallest.delta());
+                }
+                counter = new Counter(key, smallest.count);
+            }
+            counters.put(key, counter);
+        }
+        counter.count++;
+    }
+
+    /**
+     * @return the tracked keys by descending count, at most {@code limit} of them
+     */
+    List<Counter> top(int limit) {
+        List<Counter> sorted = new ArrayList<>(counters.values());
+        sorted.sort(Comparator.comparingLong((Counter counter) -> counter.count).reversed());
+        return sorted.subList(0, Math.min(limit, sorted.size()));
+    }
+
+    /**
+     * Returns the growth of every counter since the previous call, and marks the counters as flushed. A counter
+     * that took over an evicted key reports its whole count, including the inherited error; the evicted key
+     * reports what it grew by between the previous flush and its eviction, so no count is lost. Every key appears
+     * at most once.
+     */
+    List<Counter> drainDeltas() {
+        Map<String, Counter> deltas = new HashMap<>(evicted);
+        evicted.clear();
+        for (Counter counter : counters.values()) {
+            if (counter.count > counter.flushedCount) {
+                merge(deltas, counter.delta());
+            }
+        }
+        return new ArrayList<>(deltas.values());
+    }
+
+    // a key evicted and tracked again before the flush grew in both counters
+    private static void merge(Map<String, Counter> deltas, Counter delta) {
+        deltas.merge(delta.key, delta, (a, b) -> {
+            Counter sum = new Counter(a.key, a.error + b.error);
+            sum.count = a.count + b.count;
+            return sum;
+        });
+    }
+
+    static final class Counter {
+        private final String key;
+        private final long error;
+        private long count;
+        private long flushedCount;
+        private long flushedError;
+
+        private Counter(String key, long error) {
+            this.key = key;
+            this.error = error;
+            this.count = error;
+        }
+
+        // the growth since the last flush, which is marked flushed
+        private Counter delta() {
+            Counter delta = new Counter(key, error - flushedError);
+            delta.count = count - flushedCount;
+            flushedCount = count;
+            flushedError = error;
+            return delta;
+        }
+
+        String key() {
+            return key;
+        }
+
+        long count() {
+            return count;
+        }
+
+        long error() {
+            return error;
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package croco.prjcustomernotification.lane;
+
+import croco.prjcustomernotification.enums.NotificationType;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.Map;
+
+@ConfigurationProperties(prefix = "notification.lanes")
+public record LaneProperties(Map<NotificationType, Settings> settings) {
+
+    private static final Settings DEFAULT_SETTINGS = new Settings(1, 10000, 0, Duration.ofSeconds(5));
+
+    public Settings settingsFor(NotificationType type) {
+        return settings != null ? settings.getOrDefault(type, DEFAULT_SETTINGS) : DEFAULT_SETTINGS;
+    }
+
+    /**
+     * @param weight          share of the shared workers the lane gets while other lanes are busy too
+     * @param queueCapacity   notifications that may wait in the lane of the dispatch queue
+     * @param reservedWorkers extra workers per stage that only ever serve this lane
+     * @param latencyBudget   queue wait the lane is expected to stay under; slower waits are counted
+     */
+    public record Settings(int weight, int queueCapacity, int reservedWorkers, Duration latencyBudget) {
+    }
+}
@@ -0,0 +1,214 @@
+package croco.prjcustomernotification.lane;
+
+import croco.prjcustomernotification.enums.NotificationType;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Bounded queue with one lane per {@link NotificationType}. Shared consumers take from the non-empty lanes by
+ * smooth weighted round-robin, so a full MARKETING lane only gets its weighted share and never delays the other
+ * lanes by more than that. Consumers may also be bound to a single lane.
+ * <p>
+ * The time every element spends queued is recorded as {@code notifications.lane.queue.wait}, tagged with the
+ * stage and lane, with percentiles and the lane's latency budget as a service level objective.
+ */
+public class LaneQueue<T> {
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Map<NotificationType, Lane<T>> lanes = new EnumMap<>(NotificationType.class);
+    private int size;
+
+    /**
+     * @param capacity capacity of each lane, given its configured queue capacity
+     */
+    public LaneQueue(String stage, LaneProperties laneProperties, IntUnaryOperator capacity, MeterRegistry meterRegistry) {
+        for (NotificationType type : NotificationType.values()) {
+            LaneProperties.Settings settings = laneProperties.settingsFor(type);
+            Tags tags = Tags.of("stage", stage, "type", type.name());
+            Timer waitTimer = Timer.builder("notifications.lane.queue.wait")
+                    .tags(tags)
+                    .publishPercentiles(0.5, 0.9, 0.99, 0.999)
+                    .serviceLevelObjectives(settings.latencyBudget())
+                    .register(meterRegistry);
+            Counter overBudget = Counter.builder("notifications.lane.budget.exceeded").tags(tags).register(meterRegistry);
+
+            Lane<T> lane = new Lane<>(Math.max(1, settings.weight()), capacity.applyAsInt(settings.queueCapacity()),
+                    settings.latencyBudget().toNanos(), lock.newCondition(), waitTimer, overBudget);
+            lanes.put(type, lane);
+            Gauge.builder("notifications.lane.queue.depth", lane, l -> l.queue.size()).tags(tags).register(meterRegistry);
+        }
+    }
+
+    public boolean offer(NotificationType type, T item) {
+        Lane<T> lane = lanes.get(type);
+        lock.lock();
+        try {
+            if (lane.queue.size() >= lane.capacity) {
+                return false;
+            }
+            lane.queue.add(new Entry<>(item, System.nanoTime()));
+            size++;
+            notEmpty.signal();
+            lane.notEmpty.signal();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Takes the next element across all lanes, waiting up to the timeout for one to arrive.
+     */
+    public T poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        try {
+            while (size == 0) {
+                if (nanos <= 0) {
+                    return null;
+                }
+                nanos = notEmpty.awaitNanos(nanos);
+            }
+            return take(nextLane());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Takes the next element of a single lane, waiting up to the timeout for one to arrive.
+     */
+    public T poll(NotificationType type, long timeout, TimeUnit unit) throws InterruptedException {
+        Lane<T> lane = lanes.get(type);
+        long nanos = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        try {
+            while (lane.queue.isEmpty()) {
+                if (nanos <= 0) {
+                    return null;
+                }
+                nanos = lane.notEmpty.awaitNanos(nanos);
+            }
+            return take(lane);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Moves up to {@code maxElements} elements across all lanes into the collection, in weighted order.
+     */
+    public int drainTo(Collection<? super T> target, int maxElements) {
+        lock.lock();
+        try {
+            int drained = 0;
+            while (drained < maxElements && size > 0) {
+                target.add(take(nextLane()));
+                drained++;
+            }
+            return drained;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Moves up to {@code maxElements} elements of a single lane into the collection.
+     */
+    public int drainTo(NotificationType type, Collection<? super T> target, int maxElements) {
+        Lane<T> lane = lanes.get(type);
+        lock.lock();
+        try {
+            int drained = 0;
+            while (drained < maxElements && !lane.queue.isEmpty()) {
+                target.add(take(lane));
+                drained++;
+            }
+            return drained;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int size() {
+        lock.lock();
+        try {
+            return size;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    // smooth weighted round-robin over the non-empty lanes
+    private Lane<T> nextLane() {
+        Lane<T> selected = null;
+        int totalWeight = 0;
+        for (Lane<T> lane : lanes.values()) {
+            if (lane.queue.isEmpty()) {
+                continue;
+            }
+            lane.currentWeight += lane.weight;
+            totalWeight += lane.weight;
+            if (selected == null || lane.currentWeight > selected.currentWeight) {
+                selected = lane;
+            }
+        }
+        selected.currentWeight -= totalWeight;
+        return selected;
+    }
+
+    private T take(Lane<T> lane) {
+        Entry<T> entry = lane.queue.poll();
+        size--;
+        // a lane that runs empty starts over when it fills again, instead of keeping credit or debt from its last burst
+        if (lane.queue.isEmpty()) {
+            lane.currentWeight = 0;
+        }
+        long waitedNanos = System.nanoTime() - entry.enqueuedAtNanos();
+        lane.waitTimer.record(waitedNanos, TimeUnit.NANOSECONDS);
+        if (waitedNanos > lane.latencyBudgetNanos) {
+            lane.overBudget.increment();
+        }
+        return entry.item();
+    }
+
+    private static final class Lane<T> {
+        private final ArrayDeque<Entry<T>> queue = new ArrayDeque<>();
+        private final int weight;
+        private final int capacity;
+        private final long latencyBudgetNanos;
+        private final Condition notEmpty;
+        private final Timer waitTimer;
+        private final Counter overBudget;
+        private int currentWeight;
+
+        private Lane(int weight, int capacity, long latencyBudgetNanos, Condition notEmpty, Timer waitTimer, Counter overBudget) {
+            this.weight = weight;
+            this.capacity = capacity;
+            this.latencyBudgetNanos = latencyBudgetNanos;
+            this.notEmpty = notEmpty;
+            this.waitTimer = waitTimer;
+            this.overBudget = overBudget;
+        }
+    }
+
+    private record Entry<T>(T item, long enqueuedAtNanos) {
+    }
+}
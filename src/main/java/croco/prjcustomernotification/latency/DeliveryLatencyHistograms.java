@@ -0,0 +1,315 @@
+package croco.prjcustomernotification.latency;
+
+import croco.prjcustomernotification.dto.DeliveryLatencyDto;
+import croco.prjcustomernotification.dto.LatencySummaryDto;
+import croco.prjcustomernotification.enums.AddressType;
+import croco.prjcustomernotification.enums.NotificationType;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.ByteBuffer;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.DataFormatException;
+
+/**
+ * Accept-to-delivered latency histograms per notification type and channel. Latency runs from {@code sent_at}, when
+ * the notification was accepted, which a retry keeps, so queueing and failed attempts count towards it. Deliveries are recorded into HdrHistogram
+ * {@link Recorder}s, which writers update without locks. Once per slot a ticker takes the interval histograms
+ * into a ring buffer that serves rolling windows on this node, and merges them into the hourly rows of
+ * {@code delivery_latency_histograms}, where the histograms of all nodes combine for date range reports. Intervals
+ * whose merge fails are kept by hour and merged again with the next slot's, for up to a day.
+ */
+@Slf4j
+@Component
+public class DeliveryLatencyHistograms {
+
+    private static final int SIGNIFICANT_DIGITS = 2;
+    private static final NotificationType[] TYPES = NotificationType.values();
+    private static final AddressType[] CHANNELS = AddressType.values();
+    private static final int CELLS = TYPES.length * CHANNELS.length;
+    private static final int MAX_UNPERSISTED_HOURS = 24;
+
+    private static final String ENSURE_SQL = "INSERT INTO delivery_latency_histograms (hour, type, channel, histogram) VALUES (?, ?, ?, ?) ON CONFLICT DO NOTHING";
+
+    private static final String LOCK_SQL = "SELECT histogram FROM delivery_latency_histograms WHERE hour = ? AND type = ? AND channel = ? FOR UPDATE";
+
+    private static final String UPDATE_SQL = "UPDATE delivery_latency_histograms SET histogram = ? WHERE hour = ? AND type = ? AND channel = ?";
+
+    private static final String RANGE_SQL = "SELECT type, channel, histogram FROM delivery_latency_histograms " +
+            "WHERE hour >= date_trunc('hour', ?::timestamp) AND hour <= ?";
+
+    private static final String DAYS_SQL = "SELECT CAST(hour AS date) AS day, type, channel, histogram FROM delivery_latency_histograms " +
+            "WHERE hour >= ? AND hour < ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final Duration slot;
+    private final Recorder[] recorders = new Recorder[CELLS];
+    private final Histogram[][] ring;
+    private final TreeMap<LocalDateTime, Histogram[]> unpersisted = new TreeMap<>();
+
+    private int head;
+    private Thread ticker;
+    private volatile boolean running;
+
+    public DeliveryLatencyHistograms(JdbcTemplate jdbcTemplate,
+                                     TransactionTemplate transactionTemplate,
+                                     @Value("${notification.latency.slot:1m}") Duration slot,
+                                     @Value("${notification.latency.window:1h}") Duration window) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.slot = slot;
+        this.ring = new Histogram[(int) Math.max(1, window.toMillis() / slot.toMillis())][CELLS];
+        for (int i = 0; i < CELLS; i++) {
+            recorders[i] = new Recorder(SIGNIFICANT_DIGITS);
+        }
+    }
+
+    @PostConstruct
+    public void start() {
+        running = true;
+        ticker = Thread.ofVirtual().name("latency-histograms").start(this::run);
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        ticker.interrupt();
+        ticker.join(Duration.ofSeconds(5));
+        try {
+            tick(LocalDateTime.now());
+        } catch (RuntimeException e) {
+            log.warn("Could not flush latency histograms on shutdown", e);
+        }
+    }
+
+    /**
+     * Records one delivery; nothing is recorded without both times.
+     */
+    public void record(NotificationType type, AddressType channel, LocalDateTime sentAt, LocalDateTime deliveredAt) {
+        if (sentAt == null || deliveredAt == null) {
+            return;
+        }
+        // provider timestamps may run slightly behind ours
+        long latencyMs = Math.max(0, Duration.between(sentAt, deliveredAt).toMillis());
+        recorders[cell(type, channel)].recordValue(latencyMs);
+    }
+
+    /**
+     * @return this node's latencies over the most recent slots covering the window, at most the configured window
+     */
+    public DeliveryLatencyDto window(Duration window) {
+        int slots = (int) Math.min(ring.length, Math.max(1, (window.toMillis() + slot.toMillis() - 1) / slot.toMillis()));
+        Histogram[] merged = new Histogram[CELLS];
+        synchronized (ring) {
+            for (int back = 1; back <= slots; back++) {
+                Histogram[] slotHistograms = ring[Math.floorMod(head - back, ring.length)];
+                for (int i = 0; i < CELLS; i++) {
+                    merged[i] = add(merged[i], slotHistograms[i]);
+                }
+            }
+        }
+        return summarize(merged);
+    }
+
+    /**
+     * @return the histograms of all nodes per type and channel over the hours overlapping the range, to be
+     * passed to {@link #summarize(Collection)}
+     */
+    public Histogram[] histograms(LocalDateTime startDate, LocalDateTime endDate) {
+        Histogram[] merged = new Histogram[CELLS];
+        jdbcTemplate.query(RANGE_SQL, rs -> {
+            int cell = cell(NotificationType.valueOf(rs.getString("type")), AddressType.valueOf(rs.getString("channel")));
+            merged[cell] = add(merged[cell], decode(rs.getBytes("histogram")));
+        }, Timestamp.valueOf(startDate), Timestamp.valueOf(endDate));
+        return merged;
+    }
+
+    /**
+     * @return the histograms per type and channel of every day from the first to the last day, both included, by
+     * day; days without deliveries are left out
+     */
+    public Map<LocalDate, Histogram[]> histogramsByDay(LocalDate firstDay, LocalDate lastDay) {
+        Map<LocalDate, Histogram[]> byDay = new TreeMap<>();
+        jdbcTemplate.query(DAYS_SQL, rs -> {
+            Histogram[] day = byDay.computeIfAbsent(rs.getDate("day").toLocalDate(), _ -> new Histogram[CELLS]);
+            int cell = cell(NotificationType.valueOf(rs.getString("type")), AddressType.valueOf(rs.getString("channel")));
+            day[cell] = add(day[cell], decode(rs.getBytes("histogram")));
+        }, Timestamp.valueOf(firstDay.atStartOfDay()), Timestamp.valueOf(lastDay.plusDays(1).atStartOfDay()));
+        return byDay;
+    }
+
+    /**
+     * @return the parts of a range without deliveries
+     */
+    public Histogram[] noHistograms() {
+        return new Histogram[CELLS];
+    }
+
+    /**
+     * Merges the histograms of several ranges, e.g. one per day, without modifying them.
+     */
+    public DeliveryLatencyDto summarize(Collection<Histogram[]> parts) {
+        Histogram[] merged = new Histogram[CELLS];
+        for (Histogram[] part : parts) {
+            for (int i = 0; i < CELLS; i++) {
+                merged[i] = add(merged[i], part[i]);
+            }
+        }
+        return summarize(merged);
+    }
+
+    private void run() {
+        while (running) {
+            try {
+                long now = System.currentTimeMillis();
+                Thread.sleep(slot.toMillis() - now % slot.toMillis());
+                tick(LocalDateTime.now().minus(slot));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                log.error("Latency histogram tick failed", e);
+            }
+        }
+    }
+
+    private void tick(LocalDateTime slotStart) {
+        Histogram[] intervals = new Histogram[CELLS];
+        for (int i = 0; i < CELLS; i++) {
+            Histogram interval = recorders[i].getIntervalHistogram();
+            intervals[i] = interval.getTotalCount() > 0 ? interval : null;
+        }
+        synchronized (ring) {
+            ring[head] = intervals;
+            head = (head + 1) % ring.length;
+        }
+        persistPending(slotStart.truncatedTo(ChronoUnit.HOURS), intervals);
+    }
+
+    // the ticker and the final flush on shutdown may overlap, so the pending hours are persisted under a lock
+    private synchronized void persistPending(LocalDateTime hour, Histogram[] intervals) {
+        Histogram[] pending = unpersisted.computeIfAbsent(hour, _ -> new Histogram[CELLS]);
+        for (int i = 0; i < CELLS; i++) {
+            pending[i] = add(pending[i], intervals[i]);
+        }
+        while (unpersisted.size() > MAX_UNPERSISTED_HOURS) {
+            log.warn("Dropping latency histograms of {}, which could not be persisted", unpersisted.firstKey());
+            unpersisted.pollFirstEntry();
+        }
+
+        Iterator<Map.Entry<LocalDateTime, Histogram[]>> hours = unpersisted.entrySet().iterator();
+        while (hours.hasNext()) {
+            Map.Entry<LocalDateTime, Histogram[]> entry = hours.next();
+            persist(entry.getKey(), entry.getValue());
+            hours.remove();
+        }
+    }
+
+    // read-modify-write under a row lock, in a fixed order so concurrent nodes do not deadlock
+    private void persist(LocalDateTime hour, Histogram[] intervals) {
+        Timestamp hourStart = Timestamp.valueOf(hour);
+        transactionTemplate.executeWithoutResult(_ -> {
+            for (int i = 0; i < CELLS; i++) {
+                if (intervals[i] == null) {
+                    continue;
+                }
+                String type = TYPES[i / CHANNELS.length].name();
+                String channel = CHANNELS[i % CHANNELS.length].name();
+                jdbcTemplate.update(ENSURE_SQL, hourStart, type, channel, encode(new Histogram(SIGNIFICANT_DIGITS)));
+                Histogram stored = decode(jdbcTemplate.queryForObject(LOCK_SQL, byte[].class, hourStart, type, channel));
+                stored.add(intervals[i]);
+                jdbcTemplate.update(UPDATE_SQL, encode(stored), hourStart, type, channel);
+            }
+        });
+    }
+
+    private static DeliveryLatencyDto summarize(Histogram[] histograms) {
+        Histogram overall = null;
+        Map<NotificationType, Histogram> byType = new EnumMap<>(NotificationType.class);
+        Map<AddressType, Histogram> byChannel = new EnumMap<>(AddressType.class);
+        for (int i = 0; i < CELLS; i++) {
+            if (histograms[i] == null) {
+                continue;
+            }
+            NotificationType type = TYPES[i / CHANNELS.length];
+            AddressType channel = CHANNELS[i % CHANNELS.length];
+            overall = add(overall, histograms[i]);
+            byType.put(type, add(byType.get(type), histograms[i]));
+            byChannel.put(channel, add(byChannel.get(channel), histograms[i]));
+        }
+
+        Map<NotificationType, LatencySummaryDto> typeSummaries = new EnumMap<>(NotificationType.class);
+        byType.forEach((type, histogram) -> typeSummaries.put(type, summary(histogram)));
+        Map<AddressType, LatencySummaryDto> channelSummaries = new EnumMap<>(AddressType.class);
+        byChannel.forEach((channel, histogram) -> channelSummaries.put(channel, summary(histogram)));
+        return DeliveryLatencyDto.builder()
+                .overall(overall != null ? summary(overall) : null)
+                .byType(typeSummaries)
+                .byChannel(channelSummaries)
+                .build();
+    }
+
+    private static LatencySummaryDto summary(Histogram histogram) {
+        return LatencySummaryDto.builder()
+                .count(histogram.getTotalCount())
+                .p50(histogram.getValueAtPercentile(50))
+                .p90(histogram.getValueAtPercentile(90))
+                .p99(histogram.getValueAtPercentile(99))
+                .p999(histogram.getValueAtPercentile(99.9))
+                .max(histogram.getMaxValue())
+                .mean(histogram.getMean())
+                .build();
+    }
+
+    // copies the first histogram instead of adding to it, since ring slots are shared between readers
+    private static Histogram add(Histogram sum, Histogram histogram) {
+        if (histogram == null) {
+            return sum;
+        }
+        if (sum == null) {
+            return histogram.copy();
+        }
+        sum.add(histogram);
+        return sum;
+    }
+
+    private static byte[] encode(Histogram histogram) {
+        ByteBuffer buffer = ByteBuffer.allocate(histogram.getNeededByteBufferCapacity());
+        int length = histogram.encodeIntoCompressedByteBuffer(buffer);
+        byte[] bytes = new byte[length];
+        buffer.flip();
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    private static Histogram decode(byte[] bytes) {
+        try {
+            Histogram histogram = Histogram.decodeFromCompressedByteBuffer(ByteBuffer.wrap(bytes), 0);
+            histogram.setAutoResize(true);
+            return histogram;
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("Corrupt latency histogram", e);
+        }
+    }
+
+    private static int cell(NotificationType type, AddressType channel) {
+        return type.ordinal() * CHANNELS.length + channel.ordinal();
+    }
+}
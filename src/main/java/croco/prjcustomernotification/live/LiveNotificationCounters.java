@@ -0,0 +1,133 @@
+package croco.prjcustomernotification.live;
+
+import croco.prjcustomernotification.enums.AddressType;
+import croco.prjcustomernotification.enums.LiveEvent;
+import croco.prjcustomernotification.enums.NotificationStatus;
+import croco.prjcustomernotification.enums.NotificationType;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * In-process counters of sends, deliveries and failures by type and channel. Recording is a {@link LongAdder}
+ * increment on a fixed cell, so hot paths neither contend nor allocate. Once a second a ticker moves the adders
+ * into a ring buffer of per-second counts and hands a snapshot of the last second and the window to the
+ * {@link LiveSnapshotBroadcaster}. The counters are per node and start from zero on restart.
+ */
+@Slf4j
+@Component
+public class LiveNotificationCounters {
+
+    private static final LiveEvent[] EVENTS = LiveEvent.values();
+    private static final NotificationType[] TYPES = NotificationType.values();
+    private static final AddressType[] CHANNELS = AddressType.values();
+    private static final int CELLS = EVENTS.length * TYPES.length * CHANNELS.length;
+
+    private final LongAdder[] adders = new LongAdder[CELLS];
+    private final long[][] ring;
+    private final LiveSnapshotBroadcaster broadcaster;
+
+    private int head;
+    private volatile LiveSnapshot latest;
+    private Thread ticker;
+    private volatile boolean running;
+
+    public LiveNotificationCounters(LiveSnapshotBroadcaster broadcaster,
+                                    @Value("${notification.live.window:60s}") Duration window) {
+        this.broadcaster = broadcaster;
+        this.ring = new long[(int) Math.max(1, window.toSeconds())][CELLS];
+        for (int i = 0; i < CELLS; i++) {
+            adders[i] = new LongAdder();
+        }
+        this.latest = new LiveSnapshot(System.currentTimeMillis() / 1000, ring.length, List.of());
+    }
+
+    @PostConstruct
+    public void start() {
+        running = true;
+        ticker = Thread.ofVirtual().name("live-counters").start(this::run);
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        ticker.interrupt();
+        ticker.join(Duration.ofSeconds(5));
+    }
+
+    public void record(LiveEvent event, NotificationType type, AddressType channel) {
+        adders[cell(event, type, channel)].increment();
+    }
+
+    public void record(LiveEvent event, NotificationType type, AddressType channel, long count) {
+        adders[cell(event, type, channel)].add(count);
+    }
+
+    /**
+     * Records a notification reaching DELIVERED or FAILED; other statuses are not counted.
+     */
+    public void recordStatus(NotificationStatus status, NotificationType type, AddressType channel) {
+        switch (status) {
+            case DELIVERED -> record(LiveEvent.DELIVERED, type, channel);
+            case FAILED -> record(LiveEvent.FAILED, type, channel);
+            default -> {
+            }
+        }
+    }
+
+    public LiveSnapshot getLatest() {
+        return latest;
+    }
+
+    private void run() {
+        while (running) {
+            try {
+                // wake up on second boundaries, so each slot covers one wall-clock second
+                long now = System.currentTimeMillis();
+                Thread.sleep(1000 - now % 1000);
+                tick(now / 1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                log.error("Live counter tick failed", e);
+            }
+        }
+    }
+
+    private void tick(long epochSecond) {
+        long[] slot = ring[head];
+        for (int i = 0; i < CELLS; i++) {
+            slot[i] = adders[i].sumThenReset();
+        }
+
+        List<LiveSnapshot.Rate> rates = new ArrayList<>();
+        for (int i = 0; i < CELLS; i++) {
+            long window = 0;
+            for (long[] second : ring) {
+                window += second[i];
+            }
+            if (window > 0) {
+                int channel = i % CHANNELS.length;
+                int type = (i / CHANNELS.length) % TYPES.length;
+                int event = i / (CHANNELS.length * TYPES.length);
+                rates.add(new LiveSnapshot.Rate(EVENTS[event], TYPES[type], CHANNELS[channel], slot[i], window));
+            }
+        }
+        head = (head + 1) % ring.length;
+
+        latest = new LiveSnapshot(epochSecond, ring.length, rates);
+        broadcaster.broadcast(latest);
+    }
+
+    private static int cell(LiveEvent event, NotificationType type, AddressType channel) {
+        return (event.ordinal() * TYPES.length + type.ordinal()) * CHANNELS.length + channel.ordinal();
+    }
+}
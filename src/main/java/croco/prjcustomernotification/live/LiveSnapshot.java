@@ -0,0 +1,17 @@
+package croco.prjcustomernotification.live;
+
+import croco.prjcustomernotification.enums.AddressType;
+import croco.prjcustomernotification.enums.LiveEvent;
+import croco.prjcustomernotification.enums.NotificationType;
+
+import java.util.List;
+
+/**
+ * Counts of the last completed second and of the sliding window ending with it. Only combinations with activity
+ * in the window are listed.
+ */
+public record LiveSnapshot(long epochSecond, int windowSeconds, List<Rate> rates) {
+
+    public record Rate(LiveEvent event, NotificationType type, AddressType channel, long lastSecond, long window) {
+    }
+}
@@ -0,0 +1,112 @@
+package croco.prjcustomernotification.live;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Pushes live snapshots to Server-Sent Events subscribers. Each snapshot is serialized once, whatever the number
+ * of subscribers. Every subscriber is served by its own virtual thread holding at most one pending snapshot, so
+ * a slow client only skips snapshots and never delays the ticker or the other subscribers.
+ */
+@Slf4j
+@Component
+public class LiveSnapshotBroadcaster {
+
+    private final ObjectMapper objectMapper;
+    private final long timeoutMs;
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+
+    public LiveSnapshotBroadcaster(ObjectMapper objectMapper,
+                                   @Value("${notification.live.subscription-timeout:30m}") Duration timeout) {
+        this.objectMapper = objectMapper;
+        this.timeoutMs = timeout.toMillis();
+    }
+
+    public SseEmitter subscribe(LiveSnapshot current) {
+        SseEmitter emitter = new SseEmitter(timeoutMs);
+        Subscriber subscriber = new Subscriber(emitter);
+        subscribers.add(subscriber);
+        emitter.onCompletion(subscriber::close);
+        emitter.onTimeout(subscriber::close);
+        emitter.onError(_ -> subscriber.close());
+
+        subscriber.offer(serialize(current));
+        subscriber.thread = Thread.ofVirtual().name("live-subscriber").start(subscriber::run);
+        return emitter;
+    }
+
+    public int getSubscriberCount() {
+        return subscribers.size();
+    }
+
+    void broadcast(LiveSnapshot snapshot) {
+        if (subscribers.isEmpty()) {
+            return;
+        }
+        String payload = serialize(snapshot);
+        for (Subscriber subscriber : subscribers) {
+            subscriber.offer(payload);
+        }
+    }
+
+    private String serialize(LiveSnapshot snapshot) {
+        try {
+            return objectMapper.writeValueAsString(snapshot);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Could not serialize live snapshot", e);
+        }
+    }
+
+    private final class Subscriber {
+
+        private final SseEmitter emitter;
+        private final BlockingQueue<String> pending = new ArrayBlockingQueue<>(1);
+        private volatile Thread thread;
+
+        private Subscriber(SseEmitter emitter) {
+            this.emitter = emitter;
+        }
+
+        // keeps only the newest snapshot
+        private void offer(String payload) {
+            while (!pending.offer(payload)) {
+                pending.poll();
+            }
+        }
+
+        private void run() {
+            try {
+                while (subscribers.contains(this)) {
+                    emitter.send(SseEmitter.event().name("snapshot").data(pending.take(), MediaType.APPLICATION_JSON));
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (IOException | IllegalStateException e) {
+                log.debug("Live subscriber disconnected: {}", e.getMessage());
+                emitter.completeWithError(e);
+            } finally {
+                subscribers.remove(this);
+            }
+        }
+
+        private void close() {
+            subscribers.remove(this);
+            Thread running = thread;
+            if (running != null) {
+                running.interrupt();
+            }
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package croco.prjcustomernotification.model;
 
+import croco.prjcustomernotification.security.AdminChangeListener;
 import jakarta.persistence.*;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
@@ -12,6 +13,7 @@ import java.time.LocalDateTime;
 
 @Entity
 @Table(name = "admins")
+@EntityListeners(AdminChangeListener.class)
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -0,0 +1,57 @@
+package croco.prjcustomernotification.model;
+
+import croco.prjcustomernotification.enums.CampaignStatus;
+import croco.prjcustomernotification.enums.NotificationType;
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.CreationTimestamp;
+import org.hibernate.annotations.UpdateTimestamp;
+
+import java.time.LocalDateTime;
+import java.util.Set;
+
+@Entity
+@Table(name = "campaigns")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class Campaign {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Enumerated(EnumType.STRING)
+    private NotificationType type;
+
+    private String subject;
+    private String content;
+
+    private String nameFilter;
+    private String emailFilter;
+    private String phoneFilter;
+
+    @ElementCollection(fetch = FetchType.EAGER)
+    @CollectionTable(name = "campaign_opted_in_types", joinColumns = @JoinColumn(name = "campaign_id"))
+    @Enumerated(EnumType.STRING)
+    @Column(name = "type")
+    private Set<NotificationType> optedInTypes;
+
+    @Enumerated(EnumType.STRING)
+    private CampaignStatus status;
+
+    private long lastCustomerId;
+    private long matchedCustomers;
+    private long notificationsCreated;
+    private String failureReason;
+    private LocalDateTime startedAt;
+    private LocalDateTime completedAt;
+
+    @CreationTimestamp
+    private LocalDateTime createdAt;
+    @UpdateTimestamp
+    private LocalDateTime updatedAt;
+}
@@ -19,8 +19,11 @@ import java.time.LocalDateTime;
 @AllArgsConstructor
 @Builder
 public class NotificationLog {
+    public static final int ID_ALLOCATION_SIZE = 50;
+
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "notification_logs_seq")
+    @SequenceGenerator(name = "notification_logs_seq", sequenceName = "notification_logs_seq", allocationSize = ID_ALLOCATION_SIZE)
     private Long id;
 
     @ManyToOne
@@ -37,14 +40,23 @@ public class NotificationLog {
     @Enumerated(EnumType.STRING)
     private NotificationStatus status;
 
+    @Column(name = "external_reference_id")
     private String externalReferenceId;
     private String subject;
     private String content;
     private LocalDateTime sentAt;
     private LocalDateTime deliveredAt;
+    private LocalDateTime readAt;
+    private LocalDateTime statusChangedAt;
     private String failureReason;
 
+    private int attemptCount;
+    private int maxAttempts;
+    private LocalDateTime nextAttemptAt;
+
+    // partition key of the monthly range partitions
     @CreationTimestamp
+    @Column(nullable = false, updatable = false)
     private LocalDateTime createdAt;
     @UpdateTimestamp
     private LocalDateTime updatedAt;
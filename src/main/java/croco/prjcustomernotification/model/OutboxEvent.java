@@ -0,0 +1,48 @@
+package croco.prjcustomernotification.model;
+
+import croco.prjcustomernotification.enums.NotificationStatus;
+import croco.prjcustomernotification.enums.NotificationType;
+import croco.prjcustomernotification.enums.OutboxEventType;
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.CreationTimestamp;
+
+import java.time.LocalDateTime;
+
+@Entity
+@Table(name = "notification_outbox")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class OutboxEvent {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "notification_id", nullable = false)
+    private Long notificationId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private NotificationType type;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private OutboxEventType eventType;
+
+    @Enumerated(EnumType.STRING)
+    private NotificationStatus status;
+
+    @Enumerated(EnumType.STRING)
+    private NotificationStatus previousStatus;
+
+    private LocalDateTime lockedUntil;
+    private int attempts;
+
+    @CreationTimestamp
+    private LocalDateTime createdAt;
+}
@@ -0,0 +1,6 @@
+package croco.prjcustomernotification.outbox;
+
+import croco.prjcustomernotification.enums.NotificationStatus;
+
+public record NotificationStatusChangedEvent(Long notificationId, NotificationStatus status) {
+}
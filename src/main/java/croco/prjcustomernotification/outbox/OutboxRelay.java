@@ -0,0 +1,372 @@
+package croco.prjcustomernotification.outbox;
+
+import croco.prjcustomernotification.callback.ReadTrackingTokens;
+import croco.prjcustomernotification.channel.ChannelDeliveryService;
+import croco.prjcustomernotification.channel.ChannelMessage;
+import croco.prjcustomernotification.enums.AddressType;
+import croco.prjcustomernotification.enums.NotificationStatus;
+import croco.prjcustomernotification.enums.NotificationType;
+import croco.prjcustomernotification.enums.OutboxEventType;
+import croco.prjcustomernotification.lane.LaneProperties;
+import croco.prjcustomernotification.report.ReportCache;
+import croco.prjcustomernotification.rollup.CustomerNotificationStats;
+import croco.prjcustomernotification.rollup.CustomerReachSketches;
+import croco.prjcustomernotification.rollup.NotificationStatsRollup;
+import croco.prjcustomernotification.rollup.StatusChange;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Drains {@code notification_outbox}. Each worker claims a batch with {@code FOR UPDATE SKIP LOCKED} and puts a
+ * lease on it, so any number of workers on any number of nodes can drain the table without processing a row
+ * twice. DELIVERY rows stay leased until the channel result is recorded, which deletes them in the same
+ * transaction; a row whose node dies is picked up again once its lease runs out. Rows a saturated channel cannot
+ * take are released right away. STATUS_CHANGED rows are consumed together with the update of the hourly stats
+ * rollup, the per-customer counters and the customer reach sketches they feed. Rows whose notification or address
+ * is gone are dropped and counted as {@code notifications.outbox.orphaned}. A row claimed {@code max-attempts} times
+ * without being consumed, e.g. because its consumer keeps failing, moves to {@code notification_outbox_dead_letters}
+ * and is counted as {@code notifications.outbox.dead_lettered}; rows a saturated channel refused do not use up
+ * an attempt.
+ * <p>
+ * Every pass claims from each notification type separately, each type getting a share of the batch size by its
+ * lane weight, so a campaign backlog never holds up TRANSACTIONAL or ALERTS rows queued behind it. The share a type
+ * leaves unused goes to the types with more rows waiting in the same pass, so a lone backlog still drains at the
+ * full batch size.
+ */
+@Slf4j
+@Component
+public class OutboxRelay {
+
+    // rows claimed max-attempts times without being consumed move to the dead letters instead of being claimed again
+    private static final String CLAIM_SQL = "WITH candidates AS (" +
+            "  SELECT id, attempts FROM notification_outbox " +
+            "  WHERE type = :type AND (locked_until IS NULL OR locked_until < :now) " +
+            "  ORDER BY id LIMIT :limit FOR UPDATE SKIP LOCKED" +
+            "), dead AS (" +
+            "  DELETE FROM notification_outbox o WHERE o.id IN (SELECT id FROM candidates WHERE attempts >= :maxAttempts) " +
+            "  RETURNING o.*" +
+            "), dead_lettered AS (" +
+            "  INSERT INTO notification_outbox_dead_letters (id, notification_id, type, event_type, status, previous_status, attempts, created_at, dead_lettered_at) " +
+            "  SELECT id, notification_id, type, event_type, status, previous_status, attempts, created_at, :now FROM dead" +
+            "), claimed AS (" +
+            "  UPDATE notification_outbox o SET locked_until = :leaseUntil, attempts = o.attempts + 1 " +
+            "  WHERE o.id IN (SELECT id FROM candidates WHERE attempts < :maxAttempts) " +
+            "  RETURNING o.id, o.notification_id, o.event_type, o.status, o.previous_status" +
+            ") " +
+            "SELECT c.id AS outbox_id, c.notification_id, c.event_type, c.status AS event_status, c.previous_status, " +
+            "n.customer_id, n.type, n.created_at, n.delivered_at, a.type AS channel, a.value AS address_value, n.subject, n.content, n.sent_at, n.attempt_count, n.max_attempts, " +
+            "FALSE AS dead_lettered " +
+            "FROM claimed c " +
+            "LEFT JOIN notification_logs n ON n.id = c.notification_id " +
+            "AND n.created_at >= notification_created_from(c.notification_id) AND n.created_at < notification_created_before(c.notification_id) " +
+            "LEFT JOIN addresses a ON a.id = n.address_id " +
+            "UNION ALL " +
+            "SELECT d.id, d.notification_id, d.event_type, d.status, d.previous_status, " +
+            "NULL, NULL, NULL, NULL, NULL, NULL, NULL, NULL, NULL, NULL, NULL, TRUE FROM dead d";
+
+    // a row a saturated channel refused was not attempted
+    private static final String RELEASE_SQL = "UPDATE notification_outbox SET locked_until = NULL, attempts = attempts - 1 WHERE id IN (:ids)";
+
+    private static final String DELETE_SQL = "DELETE FROM notification_outbox WHERE id IN (:ids)";
+
+    private static final String CONSUME_SQL = "DELETE FROM notification_outbox WHERE id IN (:ids) RETURNING id";
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final ChannelDeliveryService channelDeliveryService;
+    private final NotificationStatsRollup statsRollup;
+    private final CustomerNotificationStats customerStats;
+    private final CustomerReachSketches customerReach;
+    private final ReportCache reportCache;
+    private final ReadTrackingTokens readTrackingTokens;
+    private final TransactionTemplate transactionTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+    private final int workerCount;
+    private final long pollIntervalMs;
+    private final Duration lease;
+    private final int maxAttempts;
+    private final Map<NotificationType, Integer> quotas = new EnumMap<>(NotificationType.class);
+    private final Map<NotificationType, Integer> weights = new EnumMap<>(NotificationType.class);
+
+    private final Counter relayedCounter;
+    private final Counter releasedCounter;
+    private final Counter orphanedCounter;
+    private final Counter deadLetteredCounter;
+    private final DistributionSummary batchSizeSummary;
+
+    private final List<Thread> workers = new ArrayList<>();
+    private volatile boolean running;
+
+    public OutboxRelay(NamedParameterJdbcTemplate jdbcTemplate,
+                       ChannelDeliveryService channelDeliveryService,
+                       NotificationStatsRollup statsRollup,
+                       CustomerNotificationStats customerStats,
+                       CustomerReachSketches customerReach,
+                       ReportCache reportCache,
+                       ReadTrackingTokens readTrackingTokens,
+                       TransactionTemplate transactionTemplate,
+                       ApplicationEventPublisher eventPublisher,
+                       LaneProperties laneProperties,
+                       MeterRegistry meterRegistry,
+                       @Value("${notification.outbox.workers:2}") int workerCount,
+                       @Value("${notification.outbox.batch-size:500}") int batchSize,
+                       @Value("${notification.outbox.poll-interval-ms:100}") long pollIntervalMs,
+                       @Value("${notification.outbox.lease:5m}") Duration lease,
+                       @Value("${notification.outbox.max-attempts:10}") int maxAttempts) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.channelDeliveryService = channelDeliveryService;
+        this.statsRollup = statsRollup;
+        this.customerStats = customerStats;
+        this.customerReach = customerReach;
+        this.reportCache = reportCache;
+        this.readTrackingTokens = readTrackingTokens;
+        this.transactionTemplate = transactionTemplate;
+        this.eventPublisher = eventPublisher;
+        this.workerCount = workerCount;
+        this.pollIntervalMs = pollIntervalMs;
+        this.lease = lease;
+        this.maxAttempts = maxAttempts;
+
+        int totalWeight = 0;
+        for (NotificationType type : NotificationType.values()) {
+            weights.put(type, Math.max(1, laneProperties.settingsFor(type).weight()));
+            totalWeight += weights.get(type);
+        }
+        for (NotificationType type : NotificationType.values()) {
+            quotas.put(type, Math.max(1, batchSize * weights.get(type) / totalWeight));
+        }
+
+        this.relayedCounter = meterRegistry.counter("notifications.outbox.relayed");
+        this.releasedCounter = meterRegistry.counter("notifications.outbox.released");
+        this.orphanedCounter = meterRegistry.counter("notifications.outbox.orphaned");
+        this.deadLetteredCounter = meterRegistry.counter("notifications.outbox.dead_lettered");
+        this.batchSizeSummary = DistributionSummary.builder("notifications.outbox.batch.size").register(meterRegistry);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        running = true;
+        Thread.Builder builder = Thread.ofVirtual().name("outbox-relay-", 0);
+        for (int i = 0; i < workerCount; i++) {
+            workers.add(builder.start(this::run));
+        }
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        for (Thread worker : workers) {
+            worker.join(Duration.ofSeconds(10));
+        }
+    }
+
+    private void run() {
+        while (running) {
+            try {
+                if (!relayPass()) {
+                    Thread.sleep(pollIntervalMs);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                log.error("Outbox relay failed", e);
+                sleepQuietly();
+            }
+        }
+    }
+
+    /**
+     * Claims every type up to its quota, then hands the quota the types without that many rows left unused to the
+     * types that used all of theirs, split by weight.
+     *
+     * @return whether any type used all of its quota, so more rows are likely waiting
+     */
+    boolean relayPass() {
+        int spare = 0;
+        int backlogWeight = 0;
+        List<NotificationType> backlog = new ArrayList<>();
+        for (Map.Entry<NotificationType, Integer> quota : quotas.entrySet()) {
+            int relayed = relayBatch(quota.getKey(), quota.getValue());
+            if (relayed == quota.getValue()) {
+                backlog.add(quota.getKey());
+                backlogWeight += weights.get(quota.getKey());
+            } else {
+                spare += quota.getValue() - relayed;
+            }
+        }
+        if (spare > 0) {
+            for (NotificationType type : backlog) {
+                relayBatch(type, Math.max(1, spare * weights.get(type) / backlogWeight));
+            }
+        }
+        return !backlog.isEmpty();
+    }
+
+    /**
+     * @return the number of claimed outbox rows that were handed on; rows a saturated channel refused are not counted
+     */
+    private int relayBatch(NotificationType type, int limit) {
+        LocalDateTime now = LocalDateTime.now();
+        Map<String, Object> params = Map.of(
+                "type", type.name(),
+                "now", Timestamp.valueOf(now),
+                "leaseUntil", Timestamp.valueOf(now.plus(lease)),
+                "limit", limit,
+                "maxAttempts", maxAttempts);
+
+        List<ClaimedRow> rows = jdbcTemplate.query(CLAIM_SQL, params, (rs, rowNum) -> {
+            Timestamp sentAt = rs.getTimestamp("sent_at");
+            ChannelMessage message = rs.getString("channel") == null ? null : new ChannelMessage(
+                    rs.getLong("notification_id"),
+                    rs.getLong("customer_id"),
+                    NotificationType.valueOf(rs.getString("type")),
+                    AddressType.valueOf(rs.getString("channel")),
+                    rs.getString("address_value"),
+                    rs.getString("subject"),
+                    rs.getString("content"),
+                    sentAt != null ? sentAt.toLocalDateTime() : null,
+                    rs.getInt("attempt_count"),
+                    rs.getInt("max_attempts"),
+                    readTrackingTokens.tokenFor(rs.getLong("notification_id")));
+            String eventStatus = rs.getString("event_status");
+            String previousStatus = rs.getString("previous_status");
+            Timestamp createdAt = rs.getTimestamp("created_at");
+            Timestamp deliveredAt = rs.getTimestamp("delivered_at");
+            return new ClaimedRow(rs.getLong("outbox_id"), rs.getLong("notification_id"),
+                    OutboxEventType.valueOf(rs.getString("event_type")),
+                    eventStatus != null ? NotificationStatus.valueOf(eventStatus) : null,
+                    previousStatus != null ? NotificationStatus.valueOf(previousStatus) : null,
+                    createdAt != null ? createdAt.toLocalDateTime() : null,
+                    deliveredAt != null ? deliveredAt.toLocalDateTime() : null,
+                    message,
+                    rs.getBoolean("dead_lettered"));
+        });
+        if (rows.isEmpty()) {
+            return 0;
+        }
+        batchSizeSummary.record(rows.size());
+
+        List<Long> completed = new ArrayList<>();
+        List<Long> released = new ArrayList<>();
+        List<ClaimedRow> statusChanges = new ArrayList<>();
+        int deadLettered = 0;
+        for (ClaimedRow row : rows) {
+            if (row.deadLettered()) {
+                deadLettered++;
+                continue;
+            }
+            switch (row.eventType()) {
+                case DELIVERY -> {
+                    if (row.message() == null) {
+                        completed.add(row.outboxId());
+                        orphanedCounter.increment();
+                    } else if (!channelDeliveryService.offer(row.message())) {
+                        released.add(row.outboxId());
+                    }
+                }
+                case STATUS_CHANGED -> statusChanges.add(row);
+            }
+        }
+        if (!statusChanges.isEmpty()) {
+            consumeStatusChanges(statusChanges);
+        }
+
+        if (!completed.isEmpty()) {
+            jdbcTemplate.update(DELETE_SQL, Map.of("ids", completed));
+        }
+        if (!released.isEmpty()) {
+            jdbcTemplate.update(RELEASE_SQL, Map.of("ids", released));
+            releasedCounter.increment(released.size());
+        }
+        if (deadLettered > 0) {
+            log.warn("Moved {} {} outbox rows to the dead letters after {} attempts", deadLettered, type, maxAttempts);
+            deadLetteredCounter.increment(deadLettered);
+        }
+        relayedCounter.increment(rows.size() - released.size() - deadLettered);
+
+        return rows.size() - released.size();
+    }
+
+    /**
+     * Deletes the rows and applies them to the hourly rollup, the per-customer counters and the customer reach
+     * sketches in one transaction. Only the rows this worker actually deleted are counted, so a row whose lease
+     * ran out and was claimed again is counted once.
+     */
+    private void consumeStatusChanges(List<ClaimedRow> rows) {
+        Map<Long, ClaimedRow> byId = new HashMap<>();
+        for (ClaimedRow row : rows) {
+            byId.put(row.outboxId(), row);
+        }
+
+        List<Long> consumed = transactionTemplate.execute(_ -> {
+            List<Long> deleted = jdbcTemplate.queryForList(CONSUME_SQL, Map.of("ids", byId.keySet()), Long.class);
+            List<StatusChange> changes = new ArrayList<>(deleted.size());
+            int orphaned = 0;
+            for (Long id : deleted) {
+                ClaimedRow row = byId.get(id);
+                // the notification may already be gone with its partition, or its address with it
+                if (row.message() == null) {
+                    orphaned++;
+                    continue;
+                }
+                ChannelMessage message = row.message();
+                changes.add(new StatusChange(row.notificationId(), message.customerId(), message.type(), message.channel(),
+                        row.createdAt(), message.sentAt(), row.deliveredAt(), row.previousStatus(), row.status()));
+            }
+            if (orphaned > 0) {
+                log.warn("Dropped {} status changes of notifications without an address or channel", orphaned);
+                orphanedCounter.increment(orphaned);
+            }
+            statsRollup.apply(changes);
+            customerStats.apply(changes);
+            customerReach.apply(changes);
+            return deleted;
+        });
+
+        // a late change, such as a read, alters a day whose report sections may already be cached
+        Set<LocalDate> changedDays = new HashSet<>();
+        for (Long id : consumed) {
+            ClaimedRow row = byId.get(id);
+            if (row.createdAt() != null) {
+                changedDays.add(row.createdAt().toLocalDate());
+            }
+            eventPublisher.publishEvent(new NotificationStatusChangedEvent(row.notificationId(), row.status()));
+        }
+        reportCache.invalidateDays(changedDays);
+    }
+
+    private void sleepQuietly() {
+        try {
+            Thread.sleep(pollIntervalMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private record ClaimedRow(Long outboxId, Long notificationId, OutboxEventType eventType, NotificationStatus status,
+                              NotificationStatus previousStatus, LocalDateTime createdAt, LocalDateTime deliveredAt,
+                              ChannelMessage message, boolean deadLettered) {
+    }
+}
@@ -0,0 +1,50 @@
+package croco.prjcustomernotification.partition;
+
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.temporal.ChronoUnit;
+
+/**
+ * Notification ids carry the month they were created in above a value of {@code notification_logs_seq}, so a lookup
+ * by id knows the one partition to look in. The SQL functions {@code notification_created_from} and
+ * {@code notification_created_before} decode ids the same way. Ids from before the encoding have no month and may
+ * be in any partition.
+ */
+public final class NotificationIds {
+
+    private static final int SEQUENCE_BITS = 40;
+    private static final long MAX_SEQUENCE = (1L << SEQUENCE_BITS) - 1;
+    private static final YearMonth EPOCH = YearMonth.of(2000, 1);
+    private static final LocalDateTime EARLIEST = LocalDateTime.of(1970, 1, 1, 0, 0);
+    private static final LocalDateTime LATEST = LocalDateTime.of(9999, 12, 31, 23, 59, 59);
+
+    private NotificationIds() {
+    }
+
+    /**
+     * @return the id of a notification created at {@code createdAt} for a value of the sequence
+     */
+    public static long encode(long sequenceValue, LocalDateTime createdAt) {
+        if (sequenceValue < 0 || sequenceValue > MAX_SEQUENCE) {
+            throw new IllegalStateException("notification_logs_seq is out of range for notification ids: " + sequenceValue);
+        }
+        long month = EPOCH.until(YearMonth.from(createdAt), ChronoUnit.MONTHS) + 1;
+        return month << SEQUENCE_BITS | sequenceValue;
+    }
+
+    /**
+     * @return the earliest creation time the notification can have
+     */
+    public static LocalDateTime createdFrom(long id) {
+        long month = id >>> SEQUENCE_BITS;
+        return month == 0 ? EARLIEST : EPOCH.plusMonths(month - 1).atDay(1).atStartOfDay();
+    }
+
+    /**
+     * @return a time the notification was created before
+     */
+    public static LocalDateTime createdBefore(long id) {
+        long month = id >>> SEQUENCE_BITS;
+        return month == 0 ? LATEST : EPOCH.plusMonths(month).atDay(1).atStartOfDay();
+    }
+}
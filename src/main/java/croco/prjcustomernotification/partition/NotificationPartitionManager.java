@@ -0,0 +1,166 @@
+package croco.prjcustomernotification.partition;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Keeps the monthly partitions of {@code notification_logs} in shape: partitions for the coming months are
+ * created ahead of time, since a row without a matching partition cannot be inserted, and partitions past the
+ * retention period are detached or dropped as a whole instead of deleting their rows. Runs on startup and then
+ * periodically. Every step commits on its own under a transaction-scoped advisory lock, which keeps concurrent
+ * nodes from doing the same work, so a step that fails does not hold back the others.
+ * <p>
+ * Rows outside every monthly partition go to {@code notification_logs_default} rather than failing. They point at a
+ * clock or partition problem, so their number is exported as {@code notifications.partitions.default.rows} and
+ * logged as an error. A month cannot be partitioned while the default partition holds rows of it, so those rows are
+ * moved into the month's partition as it is created.
+ */
+@Slf4j
+@Component
+public class NotificationPartitionManager {
+
+    private static final String TABLE = "notification_logs";
+    private static final Pattern PARTITION_NAME = Pattern.compile(TABLE + "_p(\\d{4})_(\\d{2})");
+    private static final DateTimeFormatter SUFFIX = DateTimeFormatter.ofPattern("yyyy_MM");
+    private static final long ADVISORY_LOCK_KEY = 0x4e4c5041525449L;
+
+    private static final String DEFAULT_PARTITION = TABLE + "_default";
+    private static final String DEFAULT_ROWS_SQL = "SELECT COUNT(*) FROM " + DEFAULT_PARTITION;
+    private static final String DEFAULT_ROWS_IN_RANGE_SQL = "SELECT EXISTS (SELECT 1 FROM " + DEFAULT_PARTITION + " WHERE created_at >= ? AND created_at < ?)";
+    private static final String MOVED_ROWS = "notification_logs_moved";
+
+    private static final String PARTITIONS_SQL = "SELECT c.relname FROM pg_inherits i " +
+            "JOIN pg_class c ON c.oid = i.inhrelid " +
+            "WHERE i.inhparent = 'notification_logs'::regclass";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final PartitionProperties properties;
+    private final AtomicLong defaultPartitionRows = new AtomicLong();
+
+    public NotificationPartitionManager(JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate, PartitionProperties properties,
+                                        MeterRegistry meterRegistry) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.properties = properties;
+        Gauge.builder("notifications.partitions.default.rows", defaultPartitionRows, AtomicLong::get).register(meterRegistry);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onStartup() {
+        maintain();
+    }
+
+    @Scheduled(cron = "${notification.partitions.cron:0 0 * * * *}")
+    public void maintain() {
+        YearMonth current = YearMonth.now();
+        for (int i = 0; i <= properties.monthsAhead(); i++) {
+            YearMonth month = current.plusMonths(i);
+            step("creating the partition of " + month, () -> createPartition(month));
+        }
+        step("applying retention", () -> applyRetention(current));
+        step("purging idempotency keys", this::purgeIdempotencyKeys);
+        step("purging external references", () -> purgeExternalReferences(current));
+        step("checking the default partition", this::checkDefaultPartition);
+    }
+
+    private void step(String description, Runnable step) {
+        try {
+            transactionTemplate.executeWithoutResult(_ -> {
+                Boolean locked = jdbcTemplate.queryForObject("SELECT pg_try_advisory_xact_lock(?)", Boolean.class, ADVISORY_LOCK_KEY);
+                if (Boolean.TRUE.equals(locked)) {
+                    step.run();
+                }
+            });
+        } catch (RuntimeException e) {
+            log.error("Partition maintenance failed {}", description, e);
+        }
+    }
+
+    private void checkDefaultPartition() {
+        Long rows = jdbcTemplate.queryForObject(DEFAULT_ROWS_SQL, Long.class);
+        defaultPartitionRows.set(rows);
+        if (rows > 0) {
+            log.error("{} notifications are in {}, outside every monthly partition", rows, DEFAULT_PARTITION);
+        }
+    }
+
+    private void createPartition(YearMonth month) {
+        String partition = partitionName(month);
+        if (Boolean.TRUE.equals(jdbcTemplate.queryForObject("SELECT to_regclass(?) IS NOT NULL", Boolean.class, partition))) {
+            return;
+        }
+        LocalDate from = month.atDay(1);
+        LocalDate to = month.plusMonths(1).atDay(1);
+        Timestamp fromTime = Timestamp.valueOf(from.atStartOfDay());
+        Timestamp toTime = Timestamp.valueOf(to.atStartOfDay());
+
+        // the partition cannot be created while the default partition holds rows of its month, so they are set aside
+        // and inserted again once it exists
+        int moved = 0;
+        if (Boolean.TRUE.equals(jdbcTemplate.queryForObject(DEFAULT_ROWS_IN_RANGE_SQL, Boolean.class, fromTime, toTime))) {
+            jdbcTemplate.execute("CREATE TEMPORARY TABLE " + MOVED_ROWS + " (LIKE " + TABLE + ") ON COMMIT DROP");
+            moved = jdbcTemplate.update("WITH moved AS (DELETE FROM " + DEFAULT_PARTITION + " WHERE created_at >= ? AND created_at < ? RETURNING *) " +
+                    "INSERT INTO " + MOVED_ROWS + " SELECT * FROM moved", fromTime, toTime);
+        }
+        jdbcTemplate.execute("CREATE TABLE " + partition + " PARTITION OF " + TABLE +
+                " FOR VALUES FROM ('" + from + "') TO ('" + to + "')");
+        if (moved > 0) {
+            jdbcTemplate.update("INSERT INTO " + TABLE + " SELECT * FROM " + MOVED_ROWS);
+            log.warn("Moved {} notifications from {} into the new partition {}", moved, DEFAULT_PARTITION, partition);
+        }
+    }
+
+    private void applyRetention(YearMonth current) {
+        YearMonth oldestKept = current.minusMonths(properties.retentionMonths());
+        List<String> partitions = jdbcTemplate.queryForList(PARTITIONS_SQL, String.class);
+        for (String partition : partitions) {
+            Matcher matcher = PARTITION_NAME.matcher(partition);
+            if (!matcher.matches()) {
+                continue;
+            }
+            YearMonth month = YearMonth.of(Integer.parseInt(matcher.group(1)), Integer.parseInt(matcher.group(2)));
+            if (!month.isBefore(oldestKept)) {
+                continue;
+            }
+
+            jdbcTemplate.execute("ALTER TABLE " + TABLE + " DETACH PARTITION " + partition);
+            if (properties.retentionAction() == PartitionProperties.RetentionAction.DROP) {
+                jdbcTemplate.execute("DROP TABLE " + partition);
+            }
+            log.info("Retention: {} partition {}", properties.retentionAction() == PartitionProperties.RetentionAction.DROP ? "dropped" : "detached", partition);
+        }
+    }
+
+    // references of notifications past retention are gone with their partition
+    private void purgeExternalReferences(YearMonth current) {
+        LocalDateTime cutoff = current.minusMonths(properties.retentionMonths()).atDay(1).atStartOfDay();
+        jdbcTemplate.update("DELETE FROM notification_external_references WHERE created_at < ?", Timestamp.valueOf(cutoff));
+    }
+
+    private void purgeIdempotencyKeys() {
+        LocalDateTime cutoff = LocalDateTime.now().minus(properties.idempotencyKeyRetention());
+        jdbcTemplate.update("DELETE FROM notification_idempotency_keys WHERE created_at < ?", Timestamp.valueOf(cutoff));
+    }
+
+    private static String partitionName(YearMonth month) {
+        return TABLE + "_p" + month.format(SUFFIX);
+    }
+}
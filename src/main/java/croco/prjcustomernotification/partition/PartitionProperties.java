@@ -0,0 +1,26 @@
+package croco.prjcustomernotification.partition;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * @param monthsAhead             monthly partitions kept created beyond the current month
+ * @param retentionMonths         full months of notifications kept before the current one; older partitions are
+ *                                removed as a whole
+ * @param retentionAction         whether expired partitions are detached, leaving a standalone table to archive,
+ *                                or dropped
+ * @param idempotencyKeyRetention how long idempotency keys are remembered in the database
+ */
+@ConfigurationProperties(prefix = "notification.partitions")
+public record PartitionProperties(@DefaultValue("3") int monthsAhead,
+                                  @DefaultValue("12") int retentionMonths,
+                                  @DefaultValue("DETACH") RetentionAction retentionAction,
+                                  @DefaultValue("7d") Duration idempotencyKeyRetention) {
+
+    public enum RetentionAction {
+        DETACH,
+        DROP
+    }
+}
@@ -0,0 +1,358 @@
+package croco.prjcustomernotification.report;
+
+import croco.prjcustomernotification.dto.FailureReasonCountDto;
+import croco.prjcustomernotification.enums.CountMode;
+import croco.prjcustomernotification.enums.NotificationStatus;
+import croco.prjcustomernotification.enums.NotificationType;
+import croco.prjcustomernotification.exception.ReportTimeoutException;
+import croco.prjcustomernotification.failure.FailureReasonTracker;
+import croco.prjcustomernotification.latency.DeliveryLatencyHistograms;
+import croco.prjcustomernotification.repository.NotificationLogRepository;
+import croco.prjcustomernotification.rollup.CustomerReachSketches;
+import croco.prjcustomernotification.rollup.DailyStatusCount;
+import croco.prjcustomernotification.rollup.HyperLogLog;
+import croco.prjcustomernotification.rollup.NotificationStatsRollup;
+import org.HdrHistogram.Histogram;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * Builds the statistics and opt-in reports. Every section is read per day through the {@link ReportCache} and
+ * merged, so a report over a long range only reads the days that are still open or not cached yet.
+ * <p>
+ * The sections of a report are independent and read concurrently on virtual threads, each in a read-only
+ * transaction of its own connection, so a report takes as long as its slowest section. They share one deadline:
+ * every statement is limited to the time left, and when a section fails or the deadline passes the others are
+ * cancelled. Sections of all reports on a node share a small number of connections and wait for one within the
+ * deadline, so reports cannot drain the pool the sends and callbacks need.
+ */
+@Component
+public class NotificationReports {
+
+    private final NotificationStatsRollup statsRollup;
+    private final CustomerReachSketches customerReachSketches;
+    private final FailureReasonTracker failureReasonTracker;
+    private final DeliveryLatencyHistograms latencyHistograms;
+    private final NotificationLogRepository notificationLogRepository;
+    private final ReportCache reportCache;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate readOnlyTransaction;
+    private final Duration timeout;
+    private final Semaphore connections;
+    private final ReportCache.Section<List<DailyStatusCount>> statusCountsSection;
+    private final ReportCache.Section<Map<NotificationType, HyperLogLog>> customerReachSection;
+    private final ReportCache.Section<Map<NotificationType, List<FailureReasonCountDto>>> failureReasonsSection;
+    private final ReportCache.Section<Histogram[]> deliveryLatencySection;
+
+    public NotificationReports(NotificationStatsRollup statsRollup,
+                               CustomerReachSketches customerReachSketches,
+                               FailureReasonTracker failureReasonTracker,
+                               DeliveryLatencyHistograms latencyHistograms,
+                               NotificationLogRepository notificationLogRepository,
+                               ReportCache reportCache,
+                               JdbcTemplate jdbcTemplate,
+                               PlatformTransactionManager transactionManager,
+                               @Value("${notification.reports.timeout:30s}") Duration timeout,
+                               @Value("${notification.reports.max-connections:4}") int maxConnections) {
+        this.statsRollup = statsRollup;
+        this.customerReachSketches = customerReachSketches;
+        this.failureReasonTracker = failureReasonTracker;
+        this.latencyHistograms = latencyHistograms;
+        this.notificationLogRepository = notificationLogRepository;
+        this.reportCache = reportCache;
+        this.jdbcTemplate = jdbcTemplate;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.timeout = timeout;
+        this.connections = new Semaphore(maxConnections);
+        this.statusCountsSection = new ReportCache.Section<>("status-counts", statsRollup::countByDay, statsRollup::countByDays,
+                List.of(), rows -> 64 + rows.size() * 48);
+        this.customerReachSection = new ReportCache.Section<>("customer-reach", customerReachSketches::sketches, customerReachSketches::sketchesByDay,
+                Map.of(), sketch -> 64 + sketch.values().stream().mapToInt(hll -> 64 + hll.sizeInBytes()).sum());
+        this.failureReasonsSection = new ReportCache.Section<>("failure-reasons", failureReasonTracker::countsInRange, failureReasonTracker::countsByDay,
+                Map.of(), NotificationReports::weighFailureReasons);
+        this.deliveryLatencySection = new ReportCache.Section<>("delivery-latency", latencyHistograms::histograms, latencyHistograms::histogramsByDay,
+                latencyHistograms.noHistograms(), NotificationReports::weighHistograms);
+    }
+
+    public Map<String, Object> statistics(LocalDateTime startDate, LocalDateTime endDate) {
+        return statistics(startDate, endDate, timeout);
+    }
+
+    /**
+     * @param startDate start of the range, or null for no limit
+     * @param endDate   end of the range, or null for no limit
+     * @param timeout   how long the report may take
+     */
+    public Map<String, Object> statistics(LocalDateTime startDate, LocalDateTime endDate, Duration timeout) {
+        Range range = clamp(startDate, endDate);
+        Map<String, Object> stats = new HashMap<>();
+
+        List<List<DailyStatusCount>> days;
+        List<Histogram[]> latencies;
+        try (Sections sections = new Sections(timeout)) {
+            Future<List<List<DailyStatusCount>>> statusCountsFuture = sections.fork(() -> statusCounts(range, sections));
+            Future<List<Histogram[]>> latenciesFuture = sections.fork(() -> reportCache.perDay(deliveryLatencySection, range.start(), range.end(), sections::checkDeadline));
+            days = sections.join(statusCountsFuture);
+            latencies = sections.join(latenciesFuture);
+        }
+
+        Map<NotificationStatus, Long> statusCounts = new EnumMap<>(NotificationStatus.class);
+        Map<NotificationType, Map<NotificationStatus, Long>> typeStats = new EnumMap<>(NotificationType.class);
+        // total, delivered (read included), failed and read per day
+        Map<LocalDate, long[]> dailyCounts = new TreeMap<>();
+        for (List<DailyStatusCount> day : days) {
+            for (DailyStatusCount row : day) {
+                statusCounts.merge(row.status(), row.count(), Long::sum);
+                typeStats.computeIfAbsent(row.type(), _ -> new EnumMap<>(NotificationStatus.class)).merge(row.status(), row.count(), Long::sum);
+
+                long[] counts = dailyCounts.computeIfAbsent(row.day(), _ -> new long[4]);
+                counts[0] += row.count();
+                if (row.status() == NotificationStatus.DELIVERED || row.status() == NotificationStatus.READ) {
+                    counts[1] += row.count();
+                }
+                if (row.status() == NotificationStatus.READ) {
+                    counts[3] += row.count();
+                } else if (row.status() == NotificationStatus.FAILED) {
+                    counts[2] += row.count();
+                }
+            }
+        }
+        stats.put("statusCounts", statusCounts);
+        stats.put("typeStatistics", typeStats);
+
+        List<Map<String, Object>> dailyStatistics = new ArrayList<>(dailyCounts.size());
+        dailyCounts.forEach((date, counts) -> {
+            Map<String, Object> day = new LinkedHashMap<>();
+            day.put("date", date);
+            day.put("total", counts[0]);
+            day.put("delivered", counts[1]);
+            day.put("failed", counts[2]);
+            day.put("read", counts[3]);
+            dailyStatistics.add(day);
+        });
+        stats.put("dailyStatistics", dailyStatistics);
+
+        stats.put("deliveryLatency", latencyHistograms.summarize(latencies));
+
+        return stats;
+    }
+
+    public Map<String, Object> optInReport(LocalDateTime startDate, LocalDateTime endDate, CountMode distinctCount) {
+        return optInReport(startDate, endDate, distinctCount, timeout);
+    }
+
+    /**
+     * @param startDate start of the range, or null for no limit
+     * @param endDate   end of the range, or null for no limit
+     * @param timeout   how long the report may take
+     */
+    public Map<String, Object> optInReport(LocalDateTime startDate, LocalDateTime endDate, CountMode distinctCount, Duration timeout) {
+        Range range = clamp(startDate, endDate);
+        Map<String, Object> report = new HashMap<>();
+
+        List<List<DailyStatusCount>> days;
+        List<Map<NotificationType, List<FailureReasonCountDto>>> failureReasons;
+        try (Sections sections = new Sections(timeout)) {
+            // distinct customers are estimated from the daily sketches unless an exact count is asked for, e.g. for audits
+            Future<Map<NotificationType, Long>> optInCountsFuture = switch (distinctCount) {
+                case EXACT -> sections.fork(() -> notificationLogRepository.countCustomersByNotificationType(range.start(), range.end()));
+                case ESTIMATED -> sections.fork(() -> customerReachSketches.estimateDistinctCustomers(
+                        reportCache.perDay(customerReachSection, range.start(), range.end(), sections::checkDeadline)));
+                case NONE -> null;
+            };
+            Future<List<List<DailyStatusCount>>> statusCountsFuture = sections.fork(() -> statusCounts(range, sections));
+            Future<List<Map<NotificationType, List<FailureReasonCountDto>>>> failureReasonsFuture =
+                    sections.fork(() -> reportCache.perDay(failureReasonsSection, range.start(), range.end(), sections::checkDeadline));
+
+            if (optInCountsFuture != null) {
+                report.put("optInCountsByType", sections.join(optInCountsFuture));
+                report.put("optInCountsEstimated", distinctCount == CountMode.ESTIMATED);
+            }
+            days = sections.join(statusCountsFuture);
+            failureReasons = sections.join(failureReasonsFuture);
+        }
+
+        // a read notification was delivered as well
+        Map<NotificationType, Long> totalByType = new EnumMap<>(NotificationType.class);
+        Map<NotificationType, Long> deliveredByType = new EnumMap<>(NotificationType.class);
+        Map<NotificationType, Long> readByType = new EnumMap<>(NotificationType.class);
+        for (List<DailyStatusCount> day : days) {
+            for (DailyStatusCount row : day) {
+                totalByType.merge(row.type(), row.count(), Long::sum);
+                if (row.status() == NotificationStatus.DELIVERED || row.status() == NotificationStatus.READ) {
+                    deliveredByType.merge(row.type(), row.count(), Long::sum);
+                }
+                if (row.status() == NotificationStatus.READ) {
+                    readByType.merge(row.type(), row.count(), Long::sum);
+                }
+            }
+        }
+        Map<NotificationType, Double> successRateByType = new EnumMap<>(NotificationType.class);
+        totalByType.forEach((type, total) -> {
+            if (total > 0) {
+                successRateByType.put(type, deliveredByType.getOrDefault(type, 0L) * 100.0 / total);
+            }
+        });
+        report.put("successRateByType", successRateByType);
+
+        report.put("topFailureReasons", failureReasonTracker.top(failureReasons));
+
+        Map<NotificationType, Double> engagementRateByType = new EnumMap<>(NotificationType.class);
+        deliveredByType.forEach((type, delivered) -> {
+            if (delivered > 0) {
+                engagementRateByType.put(type, readByType.getOrDefault(type, 0L) * 100.0 / delivered);
+            }
+        });
+        report.put("engagementRateByType", engagementRateByType);
+
+        return report;
+    }
+
+    private List<List<DailyStatusCount>> statusCounts(Range range, Sections sections) {
+        return reportCache.perDay(statusCountsSection, range.start(), range.end(), sections::checkDeadline);
+    }
+
+    // nothing is counted before the first notification or after today, so open ranges do not walk every day up to them
+    private Range clamp(LocalDateTime startDate, LocalDateTime endDate) {
+        LocalDateTime endOfToday = LocalDate.now().plusDays(1).atStartOfDay().minusNanos(1000);
+        LocalDateTime earliest = statsRollup.earliestBucket().map(bucket -> bucket.toLocalDate().atStartOfDay()).orElse(endOfToday);
+        return new Range(startDate == null || startDate.isBefore(earliest) ? earliest : startDate,
+                endDate == null || endDate.isAfter(endOfToday) ? endOfToday : endDate);
+    }
+
+    private static int weighHistograms(Histogram[] histograms) {
+        long bytes = 64;
+        for (Histogram histogram : histograms) {
+            if (histogram != null) {
+                bytes += histogram.getEstimatedFootprintInBytes();
+            }
+        }
+        return (int) Math.min(Integer.MAX_VALUE, bytes);
+    }
+
+    private static int weighFailureReasons(Map<NotificationType, List<FailureReasonCountDto>> reasons) {
+        long bytes = 64;
+        for (List<FailureReasonCountDto> counts : reasons.values()) {
+            for (FailureReasonCountDto count : counts) {
+                bytes += 96 + 2L * count.getReason().length();
+            }
+        }
+        return (int) Math.min(Integer.MAX_VALUE, bytes);
+    }
+
+    private record Range(LocalDateTime start, LocalDateTime end) {
+    }
+
+    /**
+     * The sections of one report, which end with it: closing cancels what is still running and waits for it.
+     */
+    private final class Sections implements AutoCloseable {
+
+        private static final String QUERY_CANCELED = "57014";
+
+        private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+        private final List<Future<?>> futures = new ArrayList<>();
+        private final Duration timeout;
+        private final long deadline;
+
+        Sections(Duration timeout) {
+            this.timeout = timeout;
+            this.deadline = System.nanoTime() + timeout.toNanos();
+        }
+
+        <T> Future<T> fork(Supplier<T> section) {
+            Future<T> future = executor.submit(() -> {
+                // all reports together hold no more than a few connections, however many run at once
+                if (!connections.tryAcquire(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+                    throw new ReportTimeoutException("Report did not complete within " + timeout);
+                }
+                try {
+                    return readOnlyTransaction.execute(_ -> {
+                        long remainingMs = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                        if (remainingMs <= 0) {
+                            throw new ReportTimeoutException("Report did not complete within " + timeout);
+                        }
+                        // interrupting a thread does not cancel its query, the server has to give up on its own
+                        jdbcTemplate.execute("SET LOCAL statement_timeout = " + remainingMs);
+                        return section.get();
+                    });
+                } finally {
+                    connections.release();
+                }
+            });
+            futures.add(future);
+            return future;
+        }
+
+        <T> T join(Future<T> future) {
+            try {
+                return future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            } catch (TimeoutException e) {
+                throw new ReportTimeoutException("Report did not complete within " + timeout);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ReportTimeoutException("Report was interrupted");
+            } catch (ExecutionException e) {
+                if (isStatementTimeout(e.getCause())) {
+                    throw new ReportTimeoutException("Report did not complete within " + timeout);
+                }
+                if (e.getCause() instanceof RuntimeException cause) {
+                    throw cause;
+                }
+                throw new IllegalStateException("Report section failed", e.getCause());
+            }
+        }
+
+        /**
+         * Fails the section once the report is out of time, so a section made of many queries stops between them.
+         */
+        void checkDeadline() {
+            if (System.nanoTime() - deadline >= 0 || Thread.currentThread().isInterrupted()) {
+                throw new ReportTimeoutException("Report did not complete within " + timeout);
+            }
+        }
+
+        // a cancelled statement may arrive as a QueryTimeoutException or wrapped in another DataAccessException,
+        // e.g. DataAccessResourceFailureException, depending on the driver and translator
+        private static boolean isStatementTimeout(Throwable failure) {
+            for (Throwable cause = failure; cause != null; cause = cause.getCause()) {
+                if (cause instanceof QueryTimeoutException
+                        || cause instanceof SQLException sqlException && QUERY_CANCELED.equals(sqlException.getSQLState())) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public void close() {
+            futures.forEach(future -> future.cancel(true));
+            executor.close();
+        }
+    }
+}
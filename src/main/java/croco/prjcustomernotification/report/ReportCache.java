@@ -0,0 +1,138 @@
+package croco.prjcustomernotification.report;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiFunction;
+import java.util.function.ToIntFunction;
+
+/**
+ * Caches report sections by day. A day is closed once it ended at least the settle period ago, by when most of its
+ * notifications are done retrying and their callbacks are in; the section of a closed day is then cached until it
+ * is evicted by size or expires. Late changes to a closed day, such as reads, invalidate it on the node whose
+ * outbox relay applies them, and reach the other nodes when their entry expires. The days still open, and the days
+ * a range only partly covers, are loaded on every report and merged with the cached ones.
+ */
+@Component
+public class ReportCache {
+
+    private final Cache<Key, Entry> cache;
+    private final Duration settlePeriod;
+
+    public ReportCache(MeterRegistry meterRegistry,
+                       @Value("${notification.report-cache.max-size:64MB}") DataSize maxSize,
+                       @Value("${notification.report-cache.settle-period:2d}") Duration settlePeriod,
+                       @Value("${notification.report-cache.ttl:1h}") Duration ttl) {
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(maxSize.toBytes())
+                .weigher((Key _, Entry entry) -> entry.weight())
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        this.settlePeriod = settlePeriod;
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "notification.reports");
+    }
+
+    /**
+     * Splits the range into days and returns one part of the section per day. Closed days entirely in range come
+     * from the cache; those not cached yet are loaded together with one query and cached.
+     *
+     * @param beforeLoad runs before every query, e.g. to give up once the report is out of time
+     */
+    @SuppressWarnings("unchecked")
+    public <T> List<T> perDay(Section<T> section, LocalDateTime startDate, LocalDateTime endDate, Runnable beforeLoad) {
+        LocalDateTime closedBefore = LocalDateTime.now().minus(settlePeriod);
+        List<T> parts = new ArrayList<>();
+        List<Integer> missing = new ArrayList<>();
+        LocalDate firstDay = startDate.toLocalDate();
+        for (LocalDate day = firstDay; !day.isAfter(endDate.toLocalDate()); day = day.plusDays(1)) {
+            LocalDateTime dayStart = day.atStartOfDay();
+            LocalDateTime dayEnd = endOfDay(day);
+
+            if (!dayStart.isBefore(startDate) && !dayEnd.isAfter(endDate) && dayEnd.isBefore(closedBefore)) {
+                Entry entry = cache.getIfPresent(new Key(section.name(), day));
+                if (entry == null) {
+                    missing.add(parts.size());
+                }
+                parts.add(entry != null ? (T) entry.value() : null);
+            } else {
+                beforeLoad.run();
+                parts.add(section.loader().apply(dayStart.isBefore(startDate) ? startDate : dayStart, dayEnd.isAfter(endDate) ? endDate : dayEnd));
+            }
+        }
+
+        if (!missing.isEmpty()) {
+            // one query from the first to the last missing day, which may also cover cached days in between
+            LocalDate first = firstDay.plusDays(missing.getFirst());
+            LocalDate last = firstDay.plusDays(missing.getLast());
+            beforeLoad.run();
+            Map<LocalDate, T> loaded = section.daysLoader().apply(first, last);
+            for (int index : missing) {
+                LocalDate day = firstDay.plusDays(index);
+                T part = loaded.getOrDefault(day, section.empty());
+                cache.put(new Key(section.name(), day), new Entry(part, section.weigher().applyAsInt(part)));
+                parts.set(index, part);
+            }
+        }
+        return parts;
+    }
+
+    /**
+     * Drops every section cached for the days, after changes to them were applied.
+     */
+    public void invalidateDays(Collection<LocalDate> days) {
+        // most changes are to open days, which are never cached
+        LocalDateTime closedBefore = LocalDateTime.now().minus(settlePeriod);
+        Set<LocalDate> closedDays = new HashSet<>();
+        for (LocalDate day : days) {
+            if (endOfDay(day).isBefore(closedBefore)) {
+                closedDays.add(day);
+            }
+        }
+        if (!closedDays.isEmpty()) {
+            cache.asMap().keySet().removeIf(key -> closedDays.contains(key.day()));
+        }
+    }
+
+    // the last microsecond, as timestamps are stored in microseconds and would round up to the next day
+    static LocalDateTime endOfDay(LocalDate day) {
+        return day.plusDays(1).atStartOfDay().minusNanos(1000);
+    }
+
+    /**
+     * A section of a report and how to load it.
+     *
+     * @param name       names what the loaders return
+     * @param loader     loads the part of a range within one day
+     * @param daysLoader loads the parts of every day from the first to the last day, both included, with one query;
+     *                   days without data may be left out
+     * @param empty      the part of a day without data
+     * @param weigher    estimates the heap a part takes up, in bytes
+     */
+    public record Section<T>(String name,
+                             BiFunction<LocalDateTime, LocalDateTime, T> loader,
+                             BiFunction<LocalDate, LocalDate, Map<LocalDate, T>> daysLoader,
+                             T empty,
+                             ToIntFunction<T> weigher) {
+    }
+
+    private record Key(String section, LocalDate day) {
+    }
+
+    private record Entry(Object value, int weight) {
+    }
+}
@@ -0,0 +1,56 @@
+package croco.prjcustomernotification.repository;
+
+import croco.prjcustomernotification.enums.CampaignStatus;
+import croco.prjcustomernotification.model.Campaign;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+public interface CampaignRepository extends JpaRepository<Campaign, Long> {
+
+    List<Campaign> findByStatus(CampaignStatus status);
+
+    /**
+     * Takes the lease on a running campaign nobody holds, or whose holder let it run out.
+     *
+     * @return 1 when the lease was taken
+     */
+    @Modifying
+    @Query(value = "UPDATE campaigns SET lease_token = :token, lease_until = :until " +
+            "WHERE id = :id AND status = 'RUNNING' AND (lease_until IS NULL OR lease_until < :now)", nativeQuery = true)
+    int claimLease(@Param("id") Long id,
+                   @Param("token") String token,
+                   @Param("now") LocalDateTime now,
+                   @Param("until") LocalDateTime until);
+
+    /**
+     * @return 1 when the lease is still held with the token and was extended, 0 when it was lost
+     */
+    @Modifying
+    @Query(value = "UPDATE campaigns SET lease_until = :until WHERE id = :id AND lease_token = :token", nativeQuery = true)
+    int renewLease(@Param("id") Long id,
+                   @Param("token") String token,
+                   @Param("until") LocalDateTime until);
+
+    /**
+     * Gives up a lease still held with the token, so the next resume pass can take the campaign over at once.
+     */
+    @Modifying
+    @Query(value = "UPDATE campaigns SET lease_token = NULL, lease_until = NULL WHERE id = :id AND lease_token = :token", nativeQuery = true)
+    int releaseLease(@Param("id") Long id,
+                     @Param("token") String token);
+
+    @Modifying
+    @Query("UPDATE Campaign c SET c.lastCustomerId = :lastCustomerId, " +
+            "c.matchedCustomers = c.matchedCustomers + :matched, " +
+            "c.notificationsCreated = c.notificationsCreated + :created " +
+            "WHERE c.id = :id")
+    int recordProgress(@Param("id") Long id,
+                       @Param("lastCustomerId") long lastCustomerId,
+                       @Param("matched") long matched,
+                       @Param("created") long created);
+}
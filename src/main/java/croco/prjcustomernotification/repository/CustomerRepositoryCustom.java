@@ -0,0 +1,15 @@
+package croco.prjcustomernotification.repository;
+
+import croco.prjcustomernotification.model.Customer;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.util.List;
+
+public interface CustomerRepositoryCustom {
+
+    /**
+     * Returns up to {@code limit} ids of customers matching {@code spec} with an id greater than {@code afterId},
+     * in ascending id order. Used to walk large customer segments with a keyset cursor.
+     */
+    List<Long> findIdsAfter(Specification<Customer> spec, long afterId, int limit);
+}
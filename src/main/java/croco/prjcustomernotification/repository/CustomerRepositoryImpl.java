@@ -0,0 +1,34 @@
+package croco.prjcustomernotification.repository;
+
+import croco.prjcustomernotification.model.Customer;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.util.List;
+
+@RequiredArgsConstructor
+public class CustomerRepositoryImpl implements CustomerRepositoryCustom {
+
+    private final EntityManager entityManager;
+
+    @Override
+    public List<Long> findIdsAfter(Specification<Customer> spec, long afterId, int limit) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Long> query = cb.createQuery(Long.class);
+        Root<Customer> root = query.from(Customer.class);
+
+        Predicate after = cb.greaterThan(root.<Long>get("id"), afterId);
+        Predicate filter = spec.toPredicate(root, query, cb);
+
+        query.select(root.<Long>get("id"))
+                .where(filter == null ? after : cb.and(filter, after))
+                .orderBy(cb.asc(root.get("id")));
+
+        return entityManager.createQuery(query).setMaxResults(limit).getResultList();
+    }
+}
@@ -0,0 +1,57 @@
+package croco.prjcustomernotification.repository;
+
+import croco.prjcustomernotification.enums.AddressType;
+import croco.prjcustomernotification.enums.NotificationType;
+import croco.prjcustomernotification.model.Address;
+import croco.prjcustomernotification.model.Customer;
+import croco.prjcustomernotification.model.NotificationPreference;
+import jakarta.persistence.criteria.Join;
+import jakarta.persistence.criteria.JoinType;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.util.Set;
+
+public final class CustomerSpecifications {
+
+    private CustomerSpecifications() {
+    }
+
+    public static Specification<Customer> matching(String name, String email, String phone, Set<NotificationType> optedInTypes) {
+        Specification<Customer> spec = Specification.allOf();
+
+        if (name != null && !name.isEmpty()) {
+            spec = spec.and((root, _, cb) -> cb.or(cb.like(cb.lower(root.get("firstName")), "%" + name.toLowerCase() + "%"), cb.like(cb.lower(root.get("lastName")), "%" + name.toLowerCase() + "%")));
+        }
+
+        if (email != null && !email.isEmpty()) {
+            spec = spec.and((root, _, cb) -> {
+                Join<Customer, Address> addressJoin = root.join("addresses", JoinType.LEFT);
+                return cb.and(cb.equal(addressJoin.get("type"), AddressType.EMAIL), cb.like(cb.lower(addressJoin.get("value")), "%" + email.toLowerCase() + "%"));
+            });
+        }
+
+        if (phone != null && !phone.isEmpty()) {
+            spec = spec.and((root, _, cb) -> {
+                Join<Customer, Address> addressJoin = root.join("addresses", JoinType.LEFT);
+                return cb.and(cb.equal(addressJoin.get("type"), AddressType.SMS), cb.like(addressJoin.get("value"), "%" + phone + "%"));
+            });
+        }
+
+        if (optedInTypes != null && !optedInTypes.isEmpty()) {
+            spec = spec.and((root, _, cb) -> {
+                Join<Customer, NotificationPreference> preferenceJoin = root.join("preferences", JoinType.LEFT);
+                return cb.and(preferenceJoin.get("type").in(optedInTypes), cb.isTrue(preferenceJoin.get("optedIn")));
+            });
+        }
+
+        if ((email != null && !email.isEmpty()) || (phone != null && !phone.isEmpty()) || (optedInTypes != null && !optedInTypes.isEmpty())) {
+            spec = spec.and((_, query, cb) -> {
+                assert query != null;
+                query.distinct(true);
+                return cb.conjunction();
+            });
+        }
+
+        return spec;
+    }
+}
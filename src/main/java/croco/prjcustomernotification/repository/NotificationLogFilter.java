@@ -0,0 +1,13 @@
+package croco.prjcustomernotification.repository;
+
+import croco.prjcustomernotification.enums.NotificationStatus;
+import croco.prjcustomernotification.enums.NotificationType;
+
+import java.time.LocalDateTime;
+
+/**
+ * Filters of the notification history and search endpoints; {@code null} fields do not filter.
+ */
+public record NotificationLogFilter(Long customerId, NotificationType type, NotificationStatus status,
+                                    LocalDateTime startDate, LocalDateTime endDate) {
+}
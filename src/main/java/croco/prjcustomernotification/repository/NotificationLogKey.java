@@ -0,0 +1,9 @@
+package croco.prjcustomernotification.repository;
+
+import java.time.LocalDateTime;
+
+/**
+ * Position of a notification in the newest-first (createdAt, id) order used for keyset pagination.
+ */
+public record NotificationLogKey(LocalDateTime createdAt, Long id) {
+}
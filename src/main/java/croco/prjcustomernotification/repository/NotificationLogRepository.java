@@ -3,88 +3,103 @@ package croco.prjcustomernotification.repository;
 import croco.prjcustomernotification.enums.NotificationStatus;
 import croco.prjcustomernotification.enums.NotificationType;
 import croco.prjcustomernotification.model.NotificationLog;
-import org.springframework.data.domain.Page;
-import org.springframework.data.domain.Pageable;
+import croco.prjcustomernotification.partition.NotificationIds;
+import jakarta.persistence.LockModeType;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 
-public interface NotificationLogRepository extends JpaRepository<NotificationLog, Long>, JpaSpecificationExecutor<NotificationLog> {
+// report queries take both date bounds so that only the partitions in range are scanned, and lookups by id bound
+// created_at by the month the id carries
+public interface NotificationLogRepository extends JpaRepository<NotificationLog, Long>, JpaSpecificationExecutor<NotificationLog>, NotificationLogRepositoryCustom {
 
-    @Query("SELECT n.status as status, COUNT(n) as count FROM NotificationLog n " +
-            "WHERE (CAST(:startDate AS timestamp) IS NULL OR n.createdAt >= :startDate) " +
-            "AND (CAST(:endDate AS timestamp) IS NULL OR n.createdAt <= :endDate) " +
-            "GROUP BY n.status")
-    Map<NotificationStatus, Long> countByStatusGrouped(@Param("startDate") LocalDateTime startDate,
-                                                       @Param("endDate") LocalDateTime endDate);
+    // status updates lock the row first, so the STATUS_CHANGED outbox row records the status it actually replaced
+    default Optional<NotificationLog> findByIdForUpdate(Long id) {
+        return findByIdForUpdate(id, NotificationIds.createdFrom(id), NotificationIds.createdBefore(id));
+    }
 
-    @Query("SELECT n.type as type, n.status as status, COUNT(n) as count FROM NotificationLog n " +
-            "WHERE (CAST(:startDate AS timestamp) IS NULL OR n.createdAt >= :startDate) " +
-            "AND (CAST(:endDate AS timestamp) IS NULL OR n.createdAt <= :endDate) " +
-            "GROUP BY n.type, n.status")
-    Map<NotificationType, Map<NotificationStatus, Long>> countByTypeAndStatusGrouped(@Param("startDate") LocalDateTime startDate,
-                                                                                     @Param("endDate") LocalDateTime endDate);
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT n FROM NotificationLog n WHERE n.id = :id AND n.createdAt >= :createdFrom AND n.createdAt < :createdBefore")
+    Optional<NotificationLog> findByIdForUpdate(@Param("id") Long id,
+                                                @Param("createdFrom") LocalDateTime createdFrom,
+                                                @Param("createdBefore") LocalDateTime createdBefore);
 
+    @Query(value = "SELECT n.* FROM notification_external_references r " +
+            "JOIN notification_logs n ON n.id = r.notification_id AND n.created_at = r.created_at " +
+            "WHERE r.external_reference_id = :externalReferenceId FOR UPDATE OF n", nativeQuery = true)
+    Optional<NotificationLog> findByExternalReferenceIdForUpdate(@Param("externalReferenceId") String externalReferenceId);
 
-    @Query("SELECT CAST(n.createdAt as date) as date, " +
-            "COUNT(n) as total, " +
-            "SUM(CASE WHEN n.status = 'DELIVERED' THEN 1 ELSE 0 END) as delivered, " +
-            "SUM(CASE WHEN n.status = 'FAILED' THEN 1 ELSE 0 END) as failed " +
-            "FROM NotificationLog n " +
-            "WHERE n.createdAt BETWEEN :startDate AND :endDate " +
-            "GROUP BY CAST(n.createdAt as date) " +
-            "ORDER BY CAST(n.createdAt as date)")
-    List<Map<String, Object>> countByDayInRange(@Param("startDate") LocalDateTime startDate,
-                                                @Param("endDate") LocalDateTime endDate);
+    @Query(value = "SELECT status FROM notification_logs " +
+            "WHERE id = :id AND created_at >= notification_created_from(:id) AND created_at < notification_created_before(:id) FOR UPDATE", nativeQuery = true)
+    Optional<String> lockStatusById(@Param("id") Long id);
+
+    /**
+     * Claims a provider reference for the notification, unless another notification holds it already.
+     *
+     * @return 1 if the notification holds the reference
+     */
+    @Modifying
+    @Query(value = "INSERT INTO notification_external_references (external_reference_id, notification_id, created_at) " +
+            "SELECT :externalReferenceId, id, created_at FROM notification_logs " +
+            "WHERE id = :id AND created_at >= notification_created_from(:id) AND created_at < notification_created_before(:id) " +
+            "ON CONFLICT (external_reference_id) DO UPDATE SET notification_id = EXCLUDED.notification_id " +
+            "WHERE notification_external_references.notification_id = EXCLUDED.notification_id", nativeQuery = true)
+    int claimExternalReference(@Param("id") Long id, @Param("externalReferenceId") String externalReferenceId);
 
     @Query("SELECT n.type as type, COUNT(DISTINCT n.customer.id) as count " +
             "FROM NotificationLog n " +
-            "WHERE (CAST(:startDate AS timestamp) IS NULL OR n.createdAt >= :startDate) " +
-            "AND (CAST(:endDate AS timestamp) IS NULL OR n.createdAt <= :endDate) " +
+            "WHERE n.createdAt >= :startDate AND n.createdAt <= :endDate " +
             "GROUP BY n.type")
     Map<NotificationType, Long> countCustomersByNotificationType(@Param("startDate") LocalDateTime startDate,
                                                                  @Param("endDate") LocalDateTime endDate);
 
-    @Query("SELECT n.type as type, " +
-            "SUM(CASE WHEN n.status = 'DELIVERED' THEN 1 ELSE 0 END) * 100.0 / COUNT(n) as successRate " +
-            "FROM NotificationLog n " +
-            "WHERE (CAST(:startDate AS timestamp) IS NULL OR n.createdAt >= :startDate) " +
-            "AND (CAST(:endDate AS timestamp) IS NULL OR n.createdAt <= :endDate) " +
-            "GROUP BY n.type")
-    Map<NotificationType, Double> getSuccessRateByType(@Param("startDate") LocalDateTime startDate,
-                                                       @Param("endDate") LocalDateTime endDate);
-
-
-    @Query(value = "SELECT failures.type::text as type_key, " +
-            "jsonb_agg(json_build_object('reason', failures.reason, 'count', failures.count)) as reasons " +
-            "FROM (SELECT n.type as type, n.failure_reason as reason, COUNT(n.id) as count " +
-            "      FROM notification_logs n " +
-            "      WHERE n.status = 'FAILED' " +
-            "      AND (n.created_at >= COALESCE(:startDate, '-infinity'::timestamp)) " +
-            "      AND (n.created_at <= COALESCE(:endDate, 'infinity'::timestamp)) " +
-            "      GROUP BY n.type, n.failure_reason " +
-            "      ORDER BY n.type, COUNT(n.id) DESC) as failures " +
-            "GROUP BY failures.type",
-            nativeQuery = true)
-    List<Map<String, Object>> getTopFailureReasonsByType(@Param("startDate") LocalDateTime startDate,
-                                                         @Param("endDate") LocalDateTime endDate);
+    /**
+     * Records the result of a send, unless a provider callback already reported on the attempt: the provider
+     * knows better than the sender's response, and its callback may commit first.
+     *
+     * @return 1 if the result was recorded
+     */
+    default int updateDeliveryResult(Long id, NotificationStatus status, String externalReferenceId, LocalDateTime deliveredAt,
+                                     String failureReason, LocalDateTime nextAttemptAt, LocalDateTime updatedAt) {
+        return updateDeliveryResult(id, NotificationIds.createdFrom(id), NotificationIds.createdBefore(id), status, externalReferenceId,
+                deliveredAt, failureReason, nextAttemptAt, updatedAt);
+    }
 
-    @Query("SELECT n.type as type, " +
-            "COUNT(n) as deliveredCount, " +
-            "0.0 as engagementRate " +
-            "FROM NotificationLog n " +
-            "WHERE (CAST(:startDate AS timestamp) IS NULL OR n.createdAt >= :startDate) " +
-            "AND (CAST(:endDate AS timestamp) IS NULL OR n.createdAt <= :endDate) " +
-            "AND n.status = 'DELIVERED' " +
-            "GROUP BY n.type")
-    Map<NotificationType, Double> getEngagementRateByType(@Param("startDate") LocalDateTime startDate,
-                                                          @Param("endDate") LocalDateTime endDate);
+    @Modifying
+    @Transactional
+    @Query("UPDATE NotificationLog n SET n.status = :status, n.deliveredAt = :deliveredAt, " +
+            "n.failureReason = :failureReason, n.nextAttemptAt = :nextAttemptAt, n.updatedAt = :updatedAt, " +
+            "n.externalReferenceId = COALESCE(:externalReferenceId, n.externalReferenceId) " +
+            "WHERE n.id = :id AND n.createdAt >= :createdFrom AND n.createdAt < :createdBefore AND n.statusChangedAt IS NULL")
+    int updateDeliveryResult(@Param("id") Long id,
+                             @Param("createdFrom") LocalDateTime createdFrom,
+                             @Param("createdBefore") LocalDateTime createdBefore,
+                             @Param("status") NotificationStatus status,
+                             @Param("externalReferenceId") String externalReferenceId,
+                             @Param("deliveredAt") LocalDateTime deliveredAt,
+                             @Param("failureReason") String failureReason,
+                             @Param("nextAttemptAt") LocalDateTime nextAttemptAt,
+                             @Param("updatedAt") LocalDateTime updatedAt);
 
-    Page<NotificationLog> findByCustomerId(Long customerId, Pageable pageable);
+    default void updateExternalReference(Long id, String externalReferenceId) {
+        updateExternalReference(id, NotificationIds.createdFrom(id), NotificationIds.createdBefore(id), externalReferenceId);
+    }
 
-}
\ No newline at end of file
+    @Modifying
+    @Transactional
+    @Query("UPDATE NotificationLog n SET n.externalReferenceId = :externalReferenceId " +
+            "WHERE n.id = :id AND n.createdAt >= :createdFrom AND n.createdAt < :createdBefore")
+    void updateExternalReference(@Param("id") Long id,
+                                 @Param("createdFrom") LocalDateTime createdFrom,
+                                 @Param("createdBefore") LocalDateTime createdBefore,
+                                 @Param("externalReferenceId") String externalReferenceId);
+}
@@ -0,0 +1,37 @@
+package croco.prjcustomernotification.repository;
+
+import croco.prjcustomernotification.dto.NotificationLogDto;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Read path for {@link NotificationLogDto}: every lookup is a single query joining the customer and address
+ * columns the DTO needs, mapped straight from the result set without loading entities.
+ */
+public interface NotificationLogRepositoryCustom {
+
+    Optional<NotificationLogDto> findDtoById(Long id);
+
+    Optional<NotificationLogDto> findDtoByExternalReferenceId(String externalReferenceId);
+
+    Optional<NotificationLogDto> findDtoByIdempotencyKey(String idempotencyKey);
+
+    /**
+     * Returns the hash of the request that claimed the idempotency key, empty for keys claimed without one.
+     */
+    Optional<String> findRequestHashByIdempotencyKey(String idempotencyKey);
+
+    /**
+     * Returns up to {@code limit} matching notifications that come after {@code after} in newest-first
+     * (createdAt, id) order, or from the newest one when {@code after} is {@code null}.
+     */
+    List<NotificationLogDto> findPageAfter(NotificationLogFilter filter, NotificationLogKey after, int limit);
+
+    long countMatching(NotificationLogFilter filter);
+
+    /**
+     * Returns the planner's row estimate for the filter, which costs no more than planning the query.
+     */
+    long estimateMatching(NotificationLogFilter filter);
+}
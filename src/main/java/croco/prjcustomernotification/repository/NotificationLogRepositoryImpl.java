@@ -0,0 +1,146 @@
+package croco.prjcustomernotification.repository;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import croco.prjcustomernotification.dto.NotificationLogDto;
+import croco.prjcustomernotification.enums.NotificationStatus;
+import croco.prjcustomernotification.enums.NotificationType;
+import croco.prjcustomernotification.partition.NotificationIds;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+
+@RequiredArgsConstructor
+public class NotificationLogRepositoryImpl implements NotificationLogRepositoryCustom {
+
+    private static final String SELECT_DTO = "SELECT n.id, n.customer_id, c.first_name, c.last_name, n.address_id, a.value AS address_value, " +
+            "n.type, n.status, n.external_reference_id, n.subject, n.content, n.sent_at, n.delivered_at, n.read_at, n.failure_reason, " +
+            "n.attempt_count, n.max_attempts, n.next_attempt_at, n.created_at, n.updated_at " +
+            "FROM notification_logs n " +
+            "JOIN customers c ON c.id = n.customer_id " +
+            "JOIN addresses a ON a.id = n.address_id ";
+
+    private static final RowMapper<NotificationLogDto> DTO_MAPPER = (rs, _) -> NotificationLogDto.builder()
+            .id(rs.getLong("id"))
+            .customerId(rs.getLong("customer_id"))
+            .customerName(rs.getString("first_name") + " " + rs.getString("last_name"))
+            .addressId(rs.getLong("address_id"))
+            .addressValue(rs.getString("address_value"))
+            .type(NotificationType.valueOf(rs.getString("type")))
+            .status(NotificationStatus.valueOf(rs.getString("status")))
+            .externalReferenceId(rs.getString("external_reference_id"))
+            .subject(rs.getString("subject"))
+            .content(rs.getString("content"))
+            .sentAt(toLocalDateTime(rs.getTimestamp("sent_at")))
+            .deliveredAt(toLocalDateTime(rs.getTimestamp("delivered_at")))
+            .readAt(toLocalDateTime(rs.getTimestamp("read_at")))
+            .failureReason(rs.getString("failure_reason"))
+            .attemptCount(rs.getInt("attempt_count"))
+            .maxAttempts(rs.getInt("max_attempts"))
+            .nextAttemptAt(toLocalDateTime(rs.getTimestamp("next_attempt_at")))
+            .createdAt(toLocalDateTime(rs.getTimestamp("created_at")))
+            .updatedAt(toLocalDateTime(rs.getTimestamp("updated_at")))
+            .build();
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final ObjectMapper objectMapper;
+
+    @Override
+    public Optional<NotificationLogDto> findDtoById(Long id) {
+        return findOne("n.id = :id AND n.created_at >= :createdFrom AND n.created_at < :createdBefore",
+                Map.of("id", id, "createdFrom", NotificationIds.createdFrom(id), "createdBefore", NotificationIds.createdBefore(id)));
+    }
+
+    @Override
+    public Optional<NotificationLogDto> findDtoByExternalReferenceId(String externalReferenceId) {
+        return findOne("(n.id, n.created_at) = (SELECT r.notification_id, r.created_at FROM notification_external_references r WHERE r.external_reference_id = :value)",
+                Map.of("value", externalReferenceId));
+    }
+
+    @Override
+    public Optional<NotificationLogDto> findDtoByIdempotencyKey(String idempotencyKey) {
+        return jdbcTemplate.queryForList("SELECT notification_id FROM notification_idempotency_keys WHERE idempotency_key = :value",
+                Map.of("value", idempotencyKey), Long.class).stream().findFirst().flatMap(this::findDtoById);
+    }
+
+    @Override
+    public Optional<String> findRequestHashByIdempotencyKey(String idempotencyKey) {
+        return jdbcTemplate.queryForList("SELECT request_hash FROM notification_idempotency_keys WHERE idempotency_key = :value",
+                Map.of("value", idempotencyKey), String.class).stream().filter(Objects::nonNull).findFirst();
+    }
+
+    @Override
+    public List<NotificationLogDto> findPageAfter(NotificationLogFilter filter, NotificationLogKey after, int limit) {
+        MapSqlParameterSource params = new MapSqlParameterSource("limit", limit);
+        StringBuilder sql = new StringBuilder(SELECT_DTO).append("WHERE ")
+                .append(where(filter, params));
+        if (after != null) {
+            // row comparison lets the (customer_id, created_at, id) and (created_at, id) indexes seek straight to the page
+            sql.append(" AND (n.created_at, n.id) < (:afterCreatedAt, :afterId)");
+            params.addValue("afterCreatedAt", Timestamp.valueOf(after.createdAt()));
+            params.addValue("afterId", after.id());
+        }
+        sql.append(" ORDER BY n.created_at DESC, n.id DESC LIMIT :limit");
+
+        return jdbcTemplate.query(sql.toString(), params, DTO_MAPPER);
+    }
+
+    @Override
+    public long countMatching(NotificationLogFilter filter) {
+        MapSqlParameterSource params = new MapSqlParameterSource();
+        Long count = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM notification_logs n WHERE " + where(filter, params), params, Long.class);
+        return count != null ? count : 0;
+    }
+
+    @Override
+    public long estimateMatching(NotificationLogFilter filter) {
+        MapSqlParameterSource params = new MapSqlParameterSource();
+        String plan = jdbcTemplate.queryForObject("EXPLAIN (FORMAT JSON) SELECT 1 FROM notification_logs n WHERE " + where(filter, params), params, String.class);
+        try {
+            return objectMapper.readTree(plan).path(0).path("Plan").path("Plan Rows").asLong();
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Unexpected query plan output", e);
+        }
+    }
+
+    private Optional<NotificationLogDto> findOne(String condition, Map<String, ?> params) {
+        return jdbcTemplate.query(SELECT_DTO + "WHERE " + condition, params, DTO_MAPPER).stream().findFirst();
+    }
+
+    private static LocalDateTime toLocalDateTime(Timestamp timestamp) {
+        return timestamp != null ? timestamp.toLocalDateTime() : null;
+    }
+
+    private String where(NotificationLogFilter filter, MapSqlParameterSource params) {
+        StringBuilder where = new StringBuilder("TRUE");
+        if (filter.customerId() != null) {
+            where.append(" AND n.customer_id = :customerId");
+            params.addValue("customerId", filter.customerId());
+        }
+        if (filter.type() != null) {
+            where.append(" AND n.type = :type");
+            params.addValue("type", filter.type().name());
+        }
+        if (filter.status() != null) {
+            where.append(" AND n.status = :status");
+            params.addValue("status", filter.status().name());
+        }
+        if (filter.startDate() != null) {
+            where.append(" AND n.created_at >= :startDate");
+            params.addValue("startDate", Timestamp.valueOf(filter.startDate()));
+        }
+        if (filter.endDate() != null) {
+            where.append(" AND n.created_at <= :endDate");
+            params.addValue("endDate", Timestamp.valueOf(filter.endDate()));
+        }
+        return where.toString();
+    }
+}
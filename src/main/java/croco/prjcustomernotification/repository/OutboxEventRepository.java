@@ -0,0 +1,16 @@
+package croco.prjcustomernotification.repository;
+
+import croco.prjcustomernotification.enums.OutboxEventType;
+import croco.prjcustomernotification.model.OutboxEvent;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+public interface OutboxEventRepository extends JpaRepository<OutboxEvent, Long> {
+
+    @Modifying
+    @Query("DELETE FROM OutboxEvent o WHERE o.notificationId = :notificationId AND o.eventType = :eventType")
+    int deleteByNotificationIdAndEventType(@Param("notificationId") Long notificationId,
+                                           @Param("eventType") OutboxEventType eventType);
+}
@@ -0,0 +1,6 @@
+package croco.prjcustomernotification.retry;
+
+import java.time.LocalDateTime;
+
+public record NotificationRetryScheduledEvent(Long notificationId, LocalDateTime nextAttemptAt) {
+}
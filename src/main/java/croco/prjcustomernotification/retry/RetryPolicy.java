@@ -0,0 +1,48 @@
+package croco.prjcustomernotification.retry;
+
+import croco.prjcustomernotification.enums.NotificationType;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Exponential backoff with ±20% jitter, capped at the configured maximum delay.
+ */
+@Component
+@EnableConfigurationProperties(RetryProperties.class)
+public class RetryPolicy {
+
+    private static final int DEFAULT_MAX_ATTEMPTS = 3;
+
+    private final RetryProperties retryProperties;
+
+    public RetryPolicy(RetryProperties retryProperties) {
+        this.retryProperties = retryProperties;
+    }
+
+    public int maxAttemptsFor(NotificationType type) {
+        if (retryProperties.maxAttempts() == null) {
+            return DEFAULT_MAX_ATTEMPTS;
+        }
+        return retryProperties.maxAttempts().getOrDefault(type, DEFAULT_MAX_ATTEMPTS);
+    }
+
+    /**
+     * @return when the next attempt is due, or {@code null} if all attempts are used up
+     */
+    public LocalDateTime nextAttemptAt(int attemptCount, int maxAttempts, LocalDateTime now) {
+        if (attemptCount >= maxAttempts) {
+            return null;
+        }
+
+        long baseMs = retryProperties.baseDelay().toMillis();
+        long maxMs = retryProperties.maxDelay().toMillis();
+        int exponent = Math.min(Math.max(attemptCount - 1, 0), 30);
+        long delayMs = Math.min(maxMs, baseMs << exponent);
+        long jitteredMs = (long) (delayMs * ThreadLocalRandom.current().nextDouble(0.8, 1.2));
+
+        return now.plusNanos(jitteredMs * 1_000_000);
+    }
+}
@@ -0,0 +1,23 @@
+package croco.prjcustomernotification.retry;
+
+import croco.prjcustomernotification.enums.NotificationType;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+import java.util.Map;
+
+/**
+ * @param baseDelay   delay before the first retry; doubles with every further attempt
+ * @param maxDelay    upper bound for the delay between two attempts
+ * @param maxAttempts total attempts, including the first send, allowed per notification type
+ * @param batchSize   due retries claimed with a single statement
+ * @param claimRetryDelay delay before a batch whose claim failed is tried again
+ */
+@ConfigurationProperties(prefix = "notification.retry")
+public record RetryProperties(@DefaultValue("30s") Duration baseDelay,
+                              @DefaultValue("1h") Duration maxDelay,
+                              Map<NotificationType, Integer> maxAttempts,
+                              @DefaultValue("500") int batchSize,
+                              @DefaultValue("5s") Duration claimRetryDelay) {
+}
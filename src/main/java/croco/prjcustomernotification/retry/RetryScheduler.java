@@ -0,0 +1,149 @@
+package croco.prjcustomernotification.retry;
+
+import croco.prjcustomernotification.partition.NotificationIds;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fires due retries of FAILED notifications. Scheduled attempts wait in a {@link DelayQueue}; a single worker
+ * takes the first due entry, drains every other due entry with it and claims the whole batch with one UPDATE
+ * that moves the rows back to PENDING, bumps their attempt count and queues a DELIVERY outbox row for each. On
+ * startup only rows with a pending {@code next_attempt_at} are reloaded.
+ */
+@Slf4j
+@Component
+public class RetryScheduler {
+
+    private static final String PENDING_RETRIES_SQL = "SELECT id, next_attempt_at FROM notification_logs " +
+            "WHERE status = 'FAILED' AND next_attempt_at IS NOT NULL";
+
+    private static final String CLAIM_SQL = "WITH claimed AS (" +
+            "  UPDATE notification_logs n " +
+            "  SET status = 'PENDING', attempt_count = n.attempt_count + 1, next_attempt_at = NULL, failure_reason = NULL, updated_at = :now, status_changed_at = NULL " +
+            "  WHERE n.id IN (:ids) AND n.created_at >= :createdFrom AND n.created_at < :createdBefore " +
+            "  AND n.status = 'FAILED' AND n.next_attempt_at <= :now " +
+            "  RETURNING n.id, n.type" +
+            "), status_changed AS (" +
+            "  INSERT INTO notification_outbox (notification_id, type, event_type, status, previous_status, attempts, created_at) " +
+            "  SELECT id, type, 'STATUS_CHANGED', 'PENDING', 'FAILED', 0, :now FROM claimed" +
+            ") " +
+            "INSERT INTO notification_outbox (notification_id, type, event_type, attempts, created_at) " +
+            "SELECT id, type, 'DELIVERY', 0, :now FROM claimed";
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final int batchSize;
+    private final Duration claimRetryDelay;
+    private final DelayQueue<DueRetry> queue = new DelayQueue<>();
+    private final Counter dispatchedCounter;
+    private final DistributionSummary batchSizeSummary;
+
+    private volatile Thread worker;
+
+    public RetryScheduler(NamedParameterJdbcTemplate jdbcTemplate,
+                          RetryProperties retryProperties,
+                          MeterRegistry meterRegistry) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.batchSize = retryProperties.batchSize();
+        this.claimRetryDelay = retryProperties.claimRetryDelay();
+
+        Gauge.builder("notifications.retry.scheduled", queue, DelayQueue::size).register(meterRegistry);
+        this.dispatchedCounter = meterRegistry.counter("notifications.retry.dispatched");
+        this.batchSizeSummary = DistributionSummary.builder("notifications.retry.batch.size").register(meterRegistry);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        jdbcTemplate.getJdbcTemplate().query(PENDING_RETRIES_SQL, rs -> {
+            schedule(rs.getLong("id"), rs.getTimestamp("next_attempt_at").toLocalDateTime());
+        });
+        log.info("Reloaded {} pending notification retries", queue.size());
+
+        worker = Thread.ofVirtual().name("notification-retry").start(this::run);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (worker != null) {
+            worker.interrupt();
+        }
+    }
+
+    // runs after the failure is committed, or right away when it was recorded outside a transaction
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onRetryScheduled(NotificationRetryScheduledEvent event) {
+        schedule(event.notificationId(), event.nextAttemptAt());
+    }
+
+    public void schedule(Long notificationId, LocalDateTime nextAttemptAt) {
+        long dueAtMillis = nextAttemptAt.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        queue.add(new DueRetry(notificationId, dueAtMillis));
+    }
+
+    private void run() {
+        List<DueRetry> batch = new ArrayList<>(batchSize);
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                batch.add(queue.take());
+                queue.drainTo(batch, batchSize - 1);
+                dispatch(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (RuntimeException e) {
+                // the rows are still FAILED with their attempt due, so the batch is simply claimed again later
+                log.error("Failed to dispatch {} notification retries, trying again in {}", batch.size(), claimRetryDelay, e);
+                long dueAtMillis = System.currentTimeMillis() + claimRetryDelay.toMillis();
+                for (DueRetry retry : batch) {
+                    queue.add(new DueRetry(retry.notificationId(), dueAtMillis));
+                }
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void dispatch(List<DueRetry> batch) {
+        batchSizeSummary.record(batch.size());
+        List<Long> ids = batch.stream().map(DueRetry::notificationId).toList();
+        // the batch only spans the partitions between the months of its oldest and newest id
+        LocalDateTime createdFrom = ids.stream().map(NotificationIds::createdFrom).min(Comparator.naturalOrder()).orElseThrow();
+        LocalDateTime createdBefore = ids.stream().map(NotificationIds::createdBefore).max(Comparator.naturalOrder()).orElseThrow();
+
+        int claimed = jdbcTemplate.update(CLAIM_SQL, Map.of("ids", ids, "now", Timestamp.valueOf(LocalDateTime.now()),
+                "createdFrom", Timestamp.valueOf(createdFrom), "createdBefore", Timestamp.valueOf(createdBefore)));
+        dispatchedCounter.increment(claimed);
+    }
+
+    private record DueRetry(Long notificationId, long dueAtMillis) implements Delayed {
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(dueAtMillis - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            return Long.compare(dueAtMillis, ((DueRetry) other).dueAtMillis);
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package croco.prjcustomernotification.rollup;
+
+import croco.prjcustomernotification.dto.CustomerNotificationStatsDto;
+import croco.prjcustomernotification.enums.NotificationStatus;
+import croco.prjcustomernotification.enums.NotificationType;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Maintains per-customer notification counters by type and status, and each customer's latest send and delivery.
+ * Reading them costs a primary key lookup, however many notifications the customer has. Counts are lifetime
+ * totals and keep notifications whose partitions were dropped by retention.
+ */
+@Component
+@RequiredArgsConstructor
+public class CustomerNotificationStats {
+
+    private static final String APPLY_COUNTS_SQL = "INSERT INTO customer_notification_stats (customer_id, type, status, count) " +
+            "SELECT * FROM unnest(?::bigint[], ?::text[], ?::text[], ?::bigint[]) " +
+            "ON CONFLICT (customer_id, type, status) DO UPDATE SET count = customer_notification_stats.count + EXCLUDED.count";
+
+    private static final String APPLY_ACTIVITY_SQL = "INSERT INTO customer_notification_activity (customer_id, last_sent_at, last_delivered_at) " +
+            "SELECT * FROM unnest(?::bigint[], ?::timestamp[], ?::timestamp[]) " +
+            "ON CONFLICT (customer_id) DO UPDATE SET " +
+            "last_sent_at = GREATEST(customer_notification_activity.last_sent_at, EXCLUDED.last_sent_at), " +
+            "last_delivered_at = GREATEST(customer_notification_activity.last_delivered_at, EXCLUDED.last_delivered_at)";
+
+    private static final String COUNTS_SQL = "SELECT type, status, count FROM customer_notification_stats WHERE customer_id = ? AND count <> 0";
+
+    private static final String ACTIVITY_SQL = "SELECT last_sent_at, last_delivered_at FROM customer_notification_activity WHERE customer_id = ?";
+
+    // ranged requests cannot use the lifetime counters and count the customer's rows in range instead
+    private static final String COUNTS_IN_RANGE_SQL = "SELECT type, status, COUNT(*) AS count FROM notification_logs " +
+            "WHERE customer_id = ? AND created_at >= ? AND created_at <= ? GROUP BY type, status";
+
+    private static final String ACTIVITY_IN_RANGE_SQL = "SELECT MAX(sent_at) AS last_sent_at, MAX(delivered_at) AS last_delivered_at " +
+            "FROM notification_logs WHERE customer_id = ? AND created_at >= ? AND created_at <= ?";
+
+    private static final Comparator<CountKey> COUNT_ORDER = Comparator.comparing(CountKey::customerId)
+            .thenComparing(CountKey::type)
+            .thenComparing(CountKey::status);
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Applies the changes to the counters. Must run in the transaction that consumes the outbox rows the changes
+     * were read from, like {@link NotificationStatsRollup#apply}.
+     */
+    public void apply(List<StatusChange> changes) {
+        // fixed row orders keep concurrent relay workers from deadlocking on the same customers
+        Map<CountKey, Long> counts = new TreeMap<>(COUNT_ORDER);
+        Map<Long, LocalDateTime[]> activity = new TreeMap<>();
+        for (StatusChange change : changes) {
+            if (change.previousStatus() != null) {
+                counts.merge(new CountKey(change.customerId(), change.type(), change.previousStatus()), -1L, Long::sum);
+            }
+            counts.merge(new CountKey(change.customerId(), change.type(), change.status()), 1L, Long::sum);
+
+            LocalDateTime sentAt = change.previousStatus() == null ? change.sentAt() : null;
+            LocalDateTime deliveredAt = change.status() == NotificationStatus.DELIVERED ? change.deliveredAt() : null;
+            if (sentAt != null || deliveredAt != null) {
+                LocalDateTime[] latest = activity.computeIfAbsent(change.customerId(), _ -> new LocalDateTime[2]);
+                latest[0] = max(latest[0], sentAt);
+                latest[1] = max(latest[1], deliveredAt);
+            }
+        }
+        counts.values().removeIf(delta -> delta == 0);
+
+        if (!counts.isEmpty()) {
+            List<Long> customerIds = new ArrayList<>(counts.size());
+            List<String> types = new ArrayList<>(counts.size());
+            List<String> statuses = new ArrayList<>(counts.size());
+            List<Long> deltas = new ArrayList<>(counts.size());
+            counts.forEach((key, delta) -> {
+                customerIds.add(key.customerId());
+                types.add(key.type().name());
+                statuses.add(key.status().name());
+                deltas.add(delta);
+            });
+            jdbcTemplate.update(connection -> {
+                PreparedStatement statement = connection.prepareStatement(APPLY_COUNTS_SQL);
+                statement.setArray(1, connection.createArrayOf("bigint", customerIds.toArray()));
+                statement.setArray(2, connection.createArrayOf("text", types.toArray()));
+                statement.setArray(3, connection.createArrayOf("text", statuses.toArray()));
+                statement.setArray(4, connection.createArrayOf("bigint", deltas.toArray()));
+                return statement;
+            });
+        }
+
+        if (!activity.isEmpty()) {
+            List<Long> customerIds = new ArrayList<>(activity.size());
+            List<Timestamp> sentAts = new ArrayList<>(activity.size());
+            List<Timestamp> deliveredAts = new ArrayList<>(activity.size());
+            activity.forEach((customerId, latest) -> {
+                customerIds.add(customerId);
+                sentAts.add(latest[0] != null ? Timestamp.valueOf(latest[0]) : null);
+                deliveredAts.add(latest[1] != null ? Timestamp.valueOf(latest[1]) : null);
+            });
+            jdbcTemplate.update(connection -> {
+                PreparedStatement statement = connection.prepareStatement(APPLY_ACTIVITY_SQL);
+                statement.setArray(1, connection.createArrayOf("bigint", customerIds.toArray()));
+                statement.setArray(2, connection.createArrayOf("timestamp", sentAts.toArray()));
+                statement.setArray(3, connection.createArrayOf("timestamp", deliveredAts.toArray()));
+                return statement;
+            });
+        }
+    }
+
+    /**
+     * @param startDate inclusive lower bound on the creation time, or null together with endDate for lifetime counters
+     * @param endDate   inclusive upper bound on the creation time
+     */
+    public CustomerNotificationStatsDto find(Long customerId, LocalDateTime startDate, LocalDateTime endDate) {
+        boolean lifetime = startDate == null && endDate == null;
+        Object[] args = lifetime
+                ? new Object[]{customerId}
+                : new Object[]{customerId, Timestamp.valueOf(startDate), Timestamp.valueOf(endDate)};
+
+        Map<NotificationStatus, Long> statusCounts = new EnumMap<>(NotificationStatus.class);
+        Map<NotificationType, Map<NotificationStatus, Long>> typeStatistics = new EnumMap<>(NotificationType.class);
+        long[] total = new long[1];
+        jdbcTemplate.query(lifetime ? COUNTS_SQL : COUNTS_IN_RANGE_SQL, rs -> {
+            NotificationType type = NotificationType.valueOf(rs.getString("type"));
+            NotificationStatus status = NotificationStatus.valueOf(rs.getString("status"));
+            long count = rs.getLong("count");
+            statusCounts.merge(status, count, Long::sum);
+            typeStatistics.computeIfAbsent(type, _ -> new EnumMap<>(NotificationStatus.class)).put(status, count);
+            total[0] += count;
+        }, args);
+
+        CustomerNotificationStatsDto.CustomerNotificationStatsDtoBuilder stats = CustomerNotificationStatsDto.builder()
+                .customerId(customerId)
+                .total(total[0])
+                .statusCounts(statusCounts)
+                .typeStatistics(typeStatistics);
+        jdbcTemplate.query(lifetime ? ACTIVITY_SQL : ACTIVITY_IN_RANGE_SQL, rs -> {
+            Timestamp lastSentAt = rs.getTimestamp("last_sent_at");
+            Timestamp lastDeliveredAt = rs.getTimestamp("last_delivered_at");
+            stats.lastSentAt(lastSentAt != null ? lastSentAt.toLocalDateTime() : null);
+            stats.lastDeliveredAt(lastDeliveredAt != null ? lastDeliveredAt.toLocalDateTime() : null);
+        }, args);
+        return stats.build();
+    }
+
+    private static LocalDateTime max(LocalDateTime a, LocalDateTime b) {
+        if (a == null) {
+            return b;
+        }
+        return b == null || a.isAfter(b) ? a : b;
+    }
+
+    private record CountKey(Long customerId, NotificationType type, NotificationStatus status) {
+    }
+}
@@ -0,0 +1,129 @@
+package croco.prjcustomernotification.rollup;
+
+import croco.prjcustomernotification.enums.NotificationType;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Maintains one {@link HyperLogLog} per day and notification type over the customers notified, so the distinct
+ * customers of any range of days is estimated by merging a handful of fixed-size sketches instead of a
+ * {@code COUNT(DISTINCT)} over the notifications. Ranges are matched by whole days.
+ * <p>
+ * A day and type is stored as up to {@code notification.customer-reach.shards} rows. Each {@link #apply} picks one
+ * shard, so relay workers adding today's customers at the same time rarely wait on each other's row lock, and
+ * readers merge the shards like any other sketches.
+ */
+@Component
+public class CustomerReachSketches {
+
+    private static final String ENSURE_SQL = "INSERT INTO customer_reach_sketches (day, type, shard, registers) VALUES (?, ?, ?, ?) ON CONFLICT DO NOTHING";
+
+    private static final String LOCK_SQL = "SELECT registers FROM customer_reach_sketches WHERE day = ? AND type = ? AND shard = ? FOR UPDATE";
+
+    private static final String UPDATE_SQL = "UPDATE customer_reach_sketches SET registers = ? WHERE day = ? AND type = ? AND shard = ?";
+
+    private static final String RANGE_SQL = "SELECT type, registers FROM customer_reach_sketches WHERE day >= ? AND day <= ?";
+
+    private static final String DAYS_SQL = "SELECT day, type, registers FROM customer_reach_sketches WHERE day >= ? AND day <= ?";
+
+    private static final Comparator<SketchKey> KEY_ORDER = Comparator.comparing(SketchKey::day).thenComparing(SketchKey::type);
+
+    private static final byte[] EMPTY = new HyperLogLog().toBytes();
+
+    private final JdbcTemplate jdbcTemplate;
+    private final int shards;
+
+    public CustomerReachSketches(JdbcTemplate jdbcTemplate,
+                                 @Value("${notification.customer-reach.shards:8}") int shards) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.shards = shards;
+    }
+
+    /**
+     * Adds the customers of new notifications to the sketches of their creation day. Adding a customer again is
+     * harmless, so unlike the counters this would tolerate a change being applied twice.
+     */
+    public void apply(List<StatusChange> changes) {
+        // a fixed row order keeps concurrent relay workers from deadlocking on the same sketches
+        Map<SketchKey, HyperLogLog> additions = new TreeMap<>(KEY_ORDER);
+        for (StatusChange change : changes) {
+            if (change.previousStatus() == null) {
+                additions.computeIfAbsent(new SketchKey(change.createdAt().toLocalDate(), change.type()), _ -> new HyperLogLog())
+                        .add(change.customerId());
+            }
+        }
+
+        // one shard for the whole batch, so the rows are still locked in key order
+        int shard = ThreadLocalRandom.current().nextInt(shards);
+        additions.forEach((key, addition) -> {
+            Date day = Date.valueOf(key.day());
+            jdbcTemplate.update(ENSURE_SQL, day, key.type().name(), shard, EMPTY);
+            HyperLogLog sketch = HyperLogLog.fromBytes(jdbcTemplate.queryForObject(LOCK_SQL, byte[].class, day, key.type().name(), shard));
+            // most notifications go to customers the day has already seen
+            if (sketch.merge(addition)) {
+                jdbcTemplate.update(UPDATE_SQL, sketch.toBytes(), day, key.type().name(), shard);
+            }
+        });
+    }
+
+    /**
+     * @return the sketches per type merged over the days of the range
+     */
+    public Map<NotificationType, HyperLogLog> sketches(LocalDateTime startDate, LocalDateTime endDate) {
+        Map<NotificationType, HyperLogLog> merged = new EnumMap<>(NotificationType.class);
+        jdbcTemplate.query(RANGE_SQL, rs -> {
+            merged.computeIfAbsent(NotificationType.valueOf(rs.getString("type")), _ -> new HyperLogLog())
+                    .merge(HyperLogLog.fromBytes(rs.getBytes("registers")));
+        }, Date.valueOf(startDate.toLocalDate()), Date.valueOf(endDate.toLocalDate()));
+        return merged;
+    }
+
+    /**
+     * @return the sketches per type of every day from the first to the last day, both included, by day, with the
+     * shards of a day merged; days without notifications are left out
+     */
+    public Map<LocalDate, Map<NotificationType, HyperLogLog>> sketchesByDay(LocalDate firstDay, LocalDate lastDay) {
+        Map<LocalDate, Map<NotificationType, HyperLogLog>> byDay = new TreeMap<>();
+        jdbcTemplate.query(DAYS_SQL, rs -> {
+            byDay.computeIfAbsent(rs.getDate("day").toLocalDate(), _ -> new EnumMap<>(NotificationType.class))
+                    .computeIfAbsent(NotificationType.valueOf(rs.getString("type")), _ -> new HyperLogLog())
+                    .merge(HyperLogLog.fromBytes(rs.getBytes("registers")));
+        }, Date.valueOf(firstDay), Date.valueOf(lastDay));
+        return byDay;
+    }
+
+    /**
+     * Merges the sketches of several ranges, e.g. one per day, without modifying them.
+     *
+     * @return the estimated number of distinct customers notified per type over all of them
+     */
+    public Map<NotificationType, Long> estimateDistinctCustomers(Collection<Map<NotificationType, HyperLogLog>> parts) {
+        Map<NotificationType, HyperLogLog> merged = new EnumMap<>(NotificationType.class);
+        for (Map<NotificationType, HyperLogLog> part : parts) {
+            part.forEach((type, sketch) -> merged.computeIfAbsent(type, _ -> new HyperLogLog()).merge(sketch));
+        }
+
+        Map<NotificationType, Long> estimates = new EnumMap<>(NotificationType.class);
+        merged.forEach((type, sketch) -> {
+            if (!sketch.isEmpty()) {
+                estimates.put(type, sketch.estimate());
+            }
+        });
+        return estimates;
+    }
+
+    private record SketchKey(LocalDate day, NotificationType type) {
+    }
+}
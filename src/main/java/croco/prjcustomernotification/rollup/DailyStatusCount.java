@@ -0,0 +1,9 @@
+package croco.prjcustomernotification.rollup;
+
+import croco.prjcustomernotification.enums.NotificationStatus;
+import croco.prjcustomernotification.enums.NotificationType;
+
+import java.time.LocalDate;
+
+public record DailyStatusCount(LocalDate day, NotificationType type, NotificationStatus status, long count) {
+}
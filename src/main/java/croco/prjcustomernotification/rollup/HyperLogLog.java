@@ -0,0 +1,217 @@
+package croco.prjcustomernotification.rollup;
+
+import java.util.Arrays;
+
+/**
+ * HyperLogLog distinct counter over long values with 2^14 one-byte registers, a standard error of about 0.8%.
+ * Adding a value twice changes nothing, and two sketches merge by taking the larger of each register, so the
+ * sketch of a range is the merge of the sketches of its days.
+ * <p>
+ * Most days of most types reach far fewer customers than there are registers, so a sketch starts sparse, keeping
+ * only its set registers, and turns dense once a quarter of them are set. {@link #toBytes()} writes a sparse
+ * sketch as a tag byte of 1 followed by three bytes per set register (index high, index low, rank) and a
+ * dense one as its {@link #REGISTERS} raw registers, which is also the layout of sketches stored before the
+ * sparse form existed.
+ */
+public final class HyperLogLog {
+
+    public static final int PRECISION = 14;
+    public static final int REGISTERS = 1 << PRECISION;
+
+    private static final byte SPARSE = 1;
+    // 4 bytes per entry in memory, so a full sparse sketch is still a quarter of a dense one
+    private static final int SPARSE_LIMIT = REGISTERS / 4;
+    private static final double ALPHA = 0.7213 / (1 + 1.079 / REGISTERS);
+
+    // null while sparse
+    private byte[] registers;
+    // set registers ordered by index, each as index << 8 | rank
+    private int[] entries;
+    private int entryCount;
+
+    public HyperLogLog() {
+        this.entries = new int[8];
+    }
+
+    private HyperLogLog(byte[] registers) {
+        this.registers = registers;
+    }
+
+    public static HyperLogLog fromBytes(byte[] bytes) {
+        if (bytes.length == REGISTERS) {
+            return new HyperLogLog(bytes.clone());
+        }
+        if (bytes.length == 0 || bytes[0] != SPARSE || (bytes.length - 1) % 3 != 0) {
+            throw new IllegalArgumentException("Expected " + REGISTERS + " registers or a sparse sketch, got " + bytes.length + " bytes");
+        }
+        HyperLogLog sketch = new HyperLogLog();
+        for (int i = 1; i < bytes.length; i += 3) {
+            int index = (bytes[i] & 0xff) << 8 | bytes[i + 1] & 0xff;
+            if (index >= REGISTERS || bytes[i + 2] <= 0) {
+                throw new IllegalArgumentException("Invalid sparse register " + index + " of rank " + bytes[i + 2]);
+            }
+            sketch.set(index, bytes[i + 2]);
+        }
+        return sketch;
+    }
+
+    public byte[] toBytes() {
+        if (registers != null) {
+            return registers.clone();
+        }
+        byte[] bytes = new byte[1 + entryCount * 3];
+        bytes[0] = SPARSE;
+        for (int i = 0; i < entryCount; i++) {
+            int index = entries[i] >>> 8;
+            bytes[1 + i * 3] = (byte) (index >>> 8);
+            bytes[2 + i * 3] = (byte) index;
+            bytes[3 + i * 3] = (byte) entries[i];
+        }
+        return bytes;
+    }
+
+    /**
+     * @return whether the sketch changed
+     */
+    public boolean add(long value) {
+        long hash = mix(value);
+        int index = (int) (hash >>> (64 - PRECISION));
+        // the remaining bits plus a stop bit, so the rank is at most 64 - PRECISION + 1
+        byte rank = (byte) (Long.numberOfLeadingZeros((hash << PRECISION) | (1L << (PRECISION - 1))) + 1);
+        return set(index, rank);
+    }
+
+    /**
+     * @return whether the sketch changed
+     */
+    public boolean merge(HyperLogLog other) {
+        boolean changed = false;
+        if (other.registers == null) {
+            for (int i = 0; i < other.entryCount; i++) {
+                changed |= set(other.entries[i] >>> 8, (byte) other.entries[i]);
+            }
+            return changed;
+        }
+        // a dense sketch has more registers set than a sparse one can hold
+        if (registers == null) {
+            toDense();
+        }
+        for (int i = 0; i < REGISTERS; i++) {
+            if (other.registers[i] != 0) {
+                changed |= set(i, other.registers[i]);
+            }
+        }
+        return changed;
+    }
+
+    public long estimate() {
+        double sum = 0;
+        int zeros = 0;
+        if (registers == null) {
+            zeros = REGISTERS - entryCount;
+            sum = zeros;
+            for (int i = 0; i < entryCount; i++) {
+                sum += 1.0 / (1L << (byte) entries[i]);
+            }
+        } else {
+            for (byte register : registers) {
+                sum += 1.0 / (1L << register);
+                if (register == 0) {
+                    zeros++;
+                }
+            }
+        }
+        double estimate = ALPHA * REGISTERS * REGISTERS / sum;
+        // linear counting is more accurate while many registers are still empty
+        if (estimate <= 2.5 * REGISTERS && zeros > 0) {
+            estimate = REGISTERS * Math.log((double) REGISTERS / zeros);
+        }
+        return Math.round(estimate);
+    }
+
+    public boolean isEmpty() {
+        if (registers == null) {
+            return entryCount == 0;
+        }
+        for (byte register : registers) {
+            if (register != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the approximate heap size of the sketch in bytes
+     */
+    public int sizeInBytes() {
+        return 32 + (registers != null ? registers.length : entries.length * 4);
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof HyperLogLog sketch && Arrays.equals(denseRegisters(), sketch.denseRegisters());
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(denseRegisters());
+    }
+
+    private boolean set(int index, byte rank) {
+        if (registers != null) {
+            if (rank > registers[index]) {
+                registers[index] = rank;
+                return true;
+            }
+            return false;
+        }
+
+        // ranks are at least 1, so the key itself is never found and the insertion point is the register's slot
+        int slot = -Arrays.binarySearch(entries, 0, entryCount, index << 8) - 1;
+        if (slot < entryCount && entries[slot] >>> 8 == index) {
+            if (rank > (byte) entries[slot]) {
+                entries[slot] = index << 8 | rank;
+                return true;
+            }
+            return false;
+        }
+        if (entryCount == SPARSE_LIMIT) {
+            toDense();
+            registers[index] = rank;
+            return true;
+        }
+        if (entryCount == entries.length) {
+            entries = Arrays.copyOf(entries, Math.min(entries.length * 2, SPARSE_LIMIT));
+        }
+        System.arraycopy(entries, slot, entries, slot + 1, entryCount - slot);
+        entries[slot] = index << 8 | rank;
+        entryCount++;
+        return true;
+    }
+
+    private void toDense() {
+        registers = denseRegisters();
+        entries = null;
+        entryCount = 0;
+    }
+
+    private byte[] denseRegisters() {
+        if (registers != null) {
+            return registers;
+        }
+        byte[] dense = new byte[REGISTERS];
+        for (int i = 0; i < entryCount; i++) {
+            dense[entries[i] >>> 8] = (byte) entries[i];
+        }
+        return dense;
+    }
+
+    // SplitMix64 finalizer; customer ids are sequential, so they need a full avalanche before bucketing
+    private static long mix(long value) {
+        long z = value + 0x9e3779b97f4a7c15L;
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,112 @@
+package croco.prjcustomernotification.rollup;
+
+import croco.prjcustomernotification.enums.NotificationStatus;
+import croco.prjcustomernotification.enums.NotificationType;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+
+/**
+ * Reads and maintains {@code notification_stats_hourly}. Report queries over it cost one row per hour, type,
+ * status and channel in range instead of one per notification. Ranges are matched by whole hours: a bucket is
+ * included when its hour starts within the range, or when the range starts inside it.
+ */
+@Component
+@RequiredArgsConstructor
+public class NotificationStatsRollup {
+
+    private static final String APPLY_SQL = "INSERT INTO notification_stats_hourly (bucket, type, status, channel, count) " +
+            "SELECT * FROM unnest(?::timestamp[], ?::text[], ?::text[], ?::text[], ?::bigint[]) " +
+            "ON CONFLICT (bucket, type, status, channel) DO UPDATE SET count = notification_stats_hourly.count + EXCLUDED.count";
+
+    private static final String COUNT_BY_DAY_SQL = "SELECT CAST(bucket AS date) AS day, type, status, SUM(count) AS count " +
+            "FROM notification_stats_hourly " +
+            "WHERE bucket >= date_trunc('hour', ?::timestamp) AND bucket <= ? " +
+            "GROUP BY 1, 2, 3 " +
+            "HAVING SUM(count) <> 0 " +
+            "ORDER BY 1";
+
+    private static final String EARLIEST_SQL = "SELECT MIN(bucket) FROM notification_stats_hourly";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Moves each changed notification from its previous status to its new one. Must run in the transaction that
+     * consumes the outbox rows the changes were read from, so each change is counted exactly once.
+     */
+    public void apply(List<StatusChange> changes) {
+        // a fixed row order keeps concurrent relay workers from deadlocking on the same buckets
+        Map<RollupKey, Long> sorted = new TreeMap<>();
+        for (StatusChange change : changes) {
+            if (change.previousStatus() != null) {
+                sorted.merge(RollupKey.of(change.createdAt(), change.type(), change.previousStatus(), change.channel()), -1L, Long::sum);
+            }
+            sorted.merge(RollupKey.of(change.createdAt(), change.type(), change.status(), change.channel()), 1L, Long::sum);
+        }
+        sorted.values().removeIf(delta -> delta == 0);
+        if (sorted.isEmpty()) {
+            return;
+        }
+
+        List<Timestamp> buckets = new ArrayList<>(sorted.size());
+        List<String> types = new ArrayList<>(sorted.size());
+        List<String> statuses = new ArrayList<>(sorted.size());
+        List<String> channels = new ArrayList<>(sorted.size());
+        List<Long> counts = new ArrayList<>(sorted.size());
+        sorted.forEach((key, delta) -> {
+            buckets.add(Timestamp.valueOf(key.bucket()));
+            types.add(key.type().name());
+            statuses.add(key.status().name());
+            channels.add(key.channel().name());
+            counts.add(delta);
+        });
+
+        jdbcTemplate.update(connection -> {
+            PreparedStatement statement = connection.prepareStatement(APPLY_SQL);
+            statement.setArray(1, connection.createArrayOf("timestamp", buckets.toArray()));
+            statement.setArray(2, connection.createArrayOf("text", types.toArray()));
+            statement.setArray(3, connection.createArrayOf("text", statuses.toArray()));
+            statement.setArray(4, connection.createArrayOf("text", channels.toArray()));
+            statement.setArray(5, connection.createArrayOf("bigint", counts.toArray()));
+            return statement;
+        });
+    }
+
+    public List<DailyStatusCount> countByDay(LocalDateTime startDate, LocalDateTime endDate) {
+        return jdbcTemplate.query(COUNT_BY_DAY_SQL, (rs, _) -> new DailyStatusCount(
+                        rs.getDate("day").toLocalDate(),
+                        NotificationType.valueOf(rs.getString("type")),
+                        NotificationStatus.valueOf(rs.getString("status")),
+                        rs.getLong("count")),
+                Timestamp.valueOf(startDate), Timestamp.valueOf(endDate));
+    }
+
+    /**
+     * @return the counts of every day from the first to the last day, both included, by day; days without
+     * notifications are left out
+     */
+    public Map<LocalDate, List<DailyStatusCount>> countByDays(LocalDate firstDay, LocalDate lastDay) {
+        Map<LocalDate, List<DailyStatusCount>> byDay = new TreeMap<>();
+        for (DailyStatusCount row : countByDay(firstDay.atStartOfDay(), lastDay.plusDays(1).atStartOfDay().minusNanos(1000))) {
+            byDay.computeIfAbsent(row.day(), _ -> new ArrayList<>()).add(row);
+        }
+        return byDay;
+    }
+
+    /**
+     * @return the hour of the oldest notification counted, or empty before the first one
+     */
+    public Optional<LocalDateTime> earliestBucket() {
+        return Optional.ofNullable(jdbcTemplate.queryForObject(EARLIEST_SQL, Timestamp.class)).map(Timestamp::toLocalDateTime);
+    }
+}
@@ -0,0 +1,29 @@
+package croco.prjcustomernotification.rollup;
+
+import croco.prjcustomernotification.enums.AddressType;
+import croco.prjcustomernotification.enums.NotificationStatus;
+import croco.prjcustomernotification.enums.NotificationType;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.Comparator;
+
+/**
+ * One row of {@code notification_stats_hourly}: the creation hour, type, current status and channel of a notification.
+ */
+public record RollupKey(LocalDateTime bucket, NotificationType type, NotificationStatus status, AddressType channel) implements Comparable<RollupKey> {
+
+    private static final Comparator<RollupKey> ORDER = Comparator.comparing(RollupKey::bucket)
+            .thenComparing(RollupKey::type)
+            .thenComparing(RollupKey::status)
+            .thenComparing(RollupKey::channel);
+
+    public static RollupKey of(LocalDateTime createdAt, NotificationType type, NotificationStatus status, AddressType channel) {
+        return new RollupKey(createdAt.truncatedTo(ChronoUnit.HOURS), type, status, channel);
+    }
+
+    @Override
+    public int compareTo(RollupKey other) {
+        return ORDER.compare(this, other);
+    }
+}
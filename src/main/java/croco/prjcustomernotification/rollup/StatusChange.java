@@ -0,0 +1,22 @@
+package croco.prjcustomernotification.rollup;
+
+import croco.prjcustomernotification.enums.AddressType;
+import croco.prjcustomernotification.enums.NotificationStatus;
+import croco.prjcustomernotification.enums.NotificationType;
+
+import java.time.LocalDateTime;
+
+/**
+ * A consumed STATUS_CHANGED outbox row together with the notification it belongs to. A change without a previous
+ * status is a new notification.
+ */
+public record StatusChange(Long notificationId,
+                           Long customerId,
+                           NotificationType type,
+                           AddressType channel,
+                           LocalDateTime createdAt,
+                           LocalDateTime sentAt,
+                           LocalDateTime deliveredAt,
+                           NotificationStatus previousStatus,
+                           NotificationStatus status) {
+}
@@ -0,0 +1,175 @@
+package croco.prjcustomernotification.routing;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import croco.prjcustomernotification.enums.AddressType;
+import croco.prjcustomernotification.enums.NotificationType;
+import croco.prjcustomernotification.exception.NoDeliverableAddressException;
+import croco.prjcustomernotification.exception.ResourceNotFoundException;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Resolves the address a notification of a given type should go to. A customer's routes are computed once
+ * from their preferences and addresses and kept in a bounded cache; writes to addresses, preferences or the
+ * customer itself must call {@link #invalidate(Long)}, which also reaches the caches of the other nodes through
+ * {@link RouteCacheInvalidations}.
+ * <p>
+ * For each type, an explicit opt-out blocks delivery, opted-in preferences restrict the allowed channels, and
+ * a type without preferences may use any channel. Among the allowed addresses primary ones win, then verified
+ * ones, then the oldest.
+ */
+@Component
+public class NotificationRouter {
+
+    private static final Comparator<AddressRow> ADDRESS_RANK = Comparator.comparing((AddressRow a) -> !a.primary())
+            .thenComparing(a -> !a.verified())
+            .thenComparingLong(AddressRow::id);
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final Cache<Long, CustomerRoutes> cache;
+
+    public NotificationRouter(NamedParameterJdbcTemplate jdbcTemplate,
+                              MeterRegistry meterRegistry,
+                              @Value("${notification.routing.cache-size:100000}") long cacheSize,
+                              @Value("${notification.routing.cache-ttl-minutes:30}") long cacheTtlMinutes) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(cacheSize)
+                .expireAfterWrite(Duration.ofMinutes(cacheTtlMinutes))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "notification.routing");
+    }
+
+    public Route resolve(Long customerId, NotificationType type) {
+        CustomerRoutes routes = cache.get(customerId, id -> load(Set.of(id)).get(id));
+        if (routes == null) {
+            throw new ResourceNotFoundException("Customer not found");
+        }
+
+        Route route = routes.byType().get(type);
+        if (route == null) {
+            throw new NoDeliverableAddressException("No suitable address found for this notification type");
+        }
+        return route;
+    }
+
+    /**
+     * Resolves routes for many customers at once, loading all cache misses with one query per table.
+     * Customers that do not exist or have no deliverable address are absent from the result.
+     */
+    public Map<Long, Route> resolveAll(Collection<Long> customerIds, NotificationType type) {
+        Map<Long, Route> routes = new HashMap<>();
+        cache.getAll(customerIds, this::load).forEach((customerId, customerRoutes) -> {
+            Route route = customerRoutes.byType().get(type);
+            if (route != null) {
+                routes.put(customerId, route);
+            }
+        });
+        return routes;
+    }
+
+    /**
+     * Drops the customer's routes on every node. Within a transaction the other nodes are told on commit.
+     */
+    public void invalidate(Long customerId) {
+        cache.invalidate(customerId);
+        jdbcTemplate.getJdbcTemplate().query("SELECT pg_notify(?, ?)", _ -> {
+        }, RouteCacheInvalidations.CHANNEL, customerId.toString());
+
+        // a concurrent miss may reload the old rows before the writing transaction commits
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    cache.invalidate(customerId);
+                }
+            });
+        }
+    }
+
+    void evict(Long customerId) {
+        cache.invalidate(customerId);
+    }
+
+    void evictAll() {
+        cache.invalidateAll();
+    }
+
+    private Map<Long, CustomerRoutes> load(Set<? extends Long> customerIds) {
+        Map<String, Object> params = Map.of("customerIds", customerIds);
+
+        Map<Long, String> names = new HashMap<>();
+        jdbcTemplate.query("SELECT id, first_name, last_name FROM customers WHERE id IN (:customerIds)", params, rs -> {
+            names.put(rs.getLong("id"), rs.getString("first_name") + " " + rs.getString("last_name"));
+        });
+
+        Map<Long, List<AddressRow>> addresses = new HashMap<>();
+        jdbcTemplate.query("SELECT id, customer_id, type, value, verified, is_primary FROM addresses WHERE customer_id IN (:customerIds)", params, rs -> {
+            addresses.computeIfAbsent(rs.getLong("customer_id"), _ -> new ArrayList<>())
+                    .add(new AddressRow(rs.getLong("id"), AddressType.valueOf(rs.getString("type")), rs.getString("value"), rs.getBoolean("verified"), rs.getBoolean("is_primary")));
+        });
+
+        Map<Long, List<PreferenceRow>> preferences = new HashMap<>();
+        jdbcTemplate.query("SELECT customer_id, type, channel_type, opted_in FROM notification_preferences WHERE customer_id IN (:customerIds)", params, rs -> {
+            preferences.computeIfAbsent(rs.getLong("customer_id"), _ -> new ArrayList<>())
+                    .add(new PreferenceRow(NotificationType.valueOf(rs.getString("type")), AddressType.valueOf(rs.getString("channel_type")), rs.getBoolean("opted_in")));
+        });
+
+        Map<Long, CustomerRoutes> loaded = new HashMap<>();
+        names.forEach((customerId, name) -> loaded.put(customerId, computeRoutes(customerId, name,
+                addresses.getOrDefault(customerId, List.of()), preferences.getOrDefault(customerId, List.of()))));
+        return loaded;
+    }
+
+    private static CustomerRoutes computeRoutes(Long customerId, String customerName, List<AddressRow> addresses, List<PreferenceRow> preferences) {
+        Map<NotificationType, Route> byType = new EnumMap<>(NotificationType.class);
+
+        for (NotificationType type : NotificationType.values()) {
+            boolean hasPreference = false;
+            Set<AddressType> optedInChannels = EnumSet.noneOf(AddressType.class);
+            for (PreferenceRow preference : preferences) {
+                if (preference.type() == type) {
+                    hasPreference = true;
+                    if (preference.optedIn()) {
+                        optedInChannels.add(preference.channel());
+                    }
+                }
+            }
+
+            Set<AddressType> channels = hasPreference ? optedInChannels : EnumSet.allOf(AddressType.class);
+            addresses.stream()
+                    .filter(address -> channels.contains(address.type()))
+                    .min(ADDRESS_RANK)
+                    .ifPresent(address -> byType.put(type, new Route(customerId, customerName, address.id(), address.type(), address.value())));
+        }
+
+        return new CustomerRoutes(byType);
+    }
+
+    private record CustomerRoutes(Map<NotificationType, Route> byType) {
+    }
+
+    private record AddressRow(long id, AddressType type, String value, boolean verified, boolean primary) {
+    }
+
+    private record PreferenceRow(NotificationType type, AddressType channel, boolean optedIn) {
+    }
+}
@@ -0,0 +1,6 @@
+package croco.prjcustomernotification.routing;
+
+import croco.prjcustomernotification.enums.AddressType;
+
+public record Route(Long customerId, String customerName, Long addressId, AddressType channel, String addressValue) {
+}
@@ -0,0 +1,92 @@
+package croco.prjcustomernotification.routing;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+
+/**
+ * Listens for route invalidations sent by {@link NotificationRouter#invalidate(Long)} on any node and drops the
+ * customer from this node's route cache, so an opt-out or a deleted address stops being routed everywhere within a
+ * second instead of when the cache TTL runs out. Works like the principal cache invalidations: one pooled
+ * connection holds the {@code LISTEN}, and the whole cache is cleared whenever it is (re)opened, since
+ * notifications sent while it was lost are gone.
+ */
+@Slf4j
+@Component
+public class RouteCacheInvalidations {
+
+    static final String CHANNEL = "route_cache_invalidated";
+
+    private static final int POLL_TIMEOUT_MS = 1000;
+    private static final Duration RECONNECT_DELAY = Duration.ofSeconds(5);
+
+    private final DataSource dataSource;
+    private final NotificationRouter notificationRouter;
+
+    private Thread listener;
+    private volatile boolean running;
+
+    public RouteCacheInvalidations(DataSource dataSource, NotificationRouter notificationRouter) {
+        this.dataSource = dataSource;
+        this.notificationRouter = notificationRouter;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        running = true;
+        listener = Thread.ofVirtual().name("route-cache-invalidations").start(this::run);
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        if (listener != null) {
+            listener.join(Duration.ofSeconds(5));
+        }
+    }
+
+    private void run() {
+        while (running) {
+            try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+                connection.setAutoCommit(true);
+                statement.execute("LISTEN " + CHANNEL);
+                notificationRouter.evictAll();
+                PGConnection pgConnection = connection.unwrap(PGConnection.class);
+                while (running) {
+                    PGNotification[] notifications = pgConnection.getNotifications(POLL_TIMEOUT_MS);
+                    if (notifications != null) {
+                        for (PGNotification notification : notifications) {
+                            evict(notification.getParameter());
+                        }
+                    }
+                }
+            } catch (SQLException e) {
+                log.warn("Lost the route cache invalidation listener, reconnecting in {}", RECONNECT_DELAY, e);
+                try {
+                    Thread.sleep(RECONNECT_DELAY);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    private void evict(String customerId) {
+        try {
+            notificationRouter.evict(Long.valueOf(customerId));
+        } catch (NumberFormatException e) {
+            log.warn("Ignoring route cache invalidation with payload '{}'", customerId);
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package croco.prjcustomernotification.security;
+
+import croco.prjcustomernotification.model.Admin;
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Drops the cached principals whenever an admin is created, changed or removed through JPA. The whole cache goes,
+ * since an update may have renamed the admin and there are few admins to reload. Other nodes are told with a
+ * {@code NOTIFY} on {@link PrincipalCacheInvalidations#CHANNEL}, which PostgreSQL only delivers once the change
+ * commits. Bulk JPQL statements bypass entity listeners and are only caught by the cache TTL.
+ * <p>
+ * The principal cache is looked up lazily: Hibernate creates this listener while the entity manager factory is
+ * being built, before the user details service and the repository behind it can exist.
+ */
+@Component
+public class AdminChangeListener {
+
+    private final ObjectProvider<PrincipalCache> principalCache;
+    private final JdbcTemplate jdbcTemplate;
+
+    public AdminChangeListener(ObjectProvider<PrincipalCache> principalCache, JdbcTemplate jdbcTemplate) {
+        this.principalCache = principalCache;
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @PostPersist
+    @PostUpdate
+    @PostRemove
+    public void adminChanged(Admin admin) {
+        PrincipalCache cache = principalCache.getObject();
+        cache.invalidateAll();
+        jdbcTemplate.execute("NOTIFY " + PrincipalCacheInvalidations.CHANNEL);
+        // again after commit, in case a request cached the old state in between
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    cache.invalidateAll();
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package croco.prjcustomernotification.security;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Caches the principals of authenticated requests by username, so a request with a valid token does not have to
+ * load its admin from the database. Entries expire after the TTL, which bounds how long a change made outside the
+ * application goes unnoticed; changes through JPA invalidate the cache right after they commit, on every node
+ * through {@link PrincipalCacheInvalidations}. The cached
+ * principals carry no password, and login still loads the admin directly.
+ */
+@Component
+public class PrincipalCache {
+
+    private final Cache<String, UserDetails> cache;
+    private final UserDetailsService userDetailsService;
+
+    public PrincipalCache(UserDetailsService userDetailsService,
+                          MeterRegistry meterRegistry,
+                          @Value("${jwt.principal-cache.size:10000}") long cacheSize,
+                          @Value("${jwt.principal-cache.ttl:5m}") Duration cacheTtl) {
+        this.userDetailsService = userDetailsService;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(cacheSize)
+                .expireAfterWrite(cacheTtl)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "security.principals");
+    }
+
+    /**
+     * @throws org.springframework.security.core.userdetails.UsernameNotFoundException if there is no such admin,
+     *                                                                                  which is not cached
+     */
+    public UserDetails get(String username) {
+        return cache.get(username, name -> User.withUserDetails(userDetailsService.loadUserByUsername(name)).password("").build());
+    }
+
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+}
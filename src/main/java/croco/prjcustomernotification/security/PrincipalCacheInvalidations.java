@@ -0,0 +1,81 @@
+package croco.prjcustomernotification.security;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+
+/**
+ * Listens for admin changes made on any node and drops this node's cached principals, so a removed or changed
+ * admin stops authenticating everywhere within a second instead of when the cache TTL runs out. Holds one
+ * connection of the pool for the {@code LISTEN}; while it is lost and being reopened the TTL still applies, and the
+ * cache is cleared once it is back, since notifications sent in between are gone.
+ */
+@Slf4j
+@Component
+public class PrincipalCacheInvalidations {
+
+    static final String CHANNEL = "principal_cache_invalidated";
+
+    private static final int POLL_TIMEOUT_MS = 1000;
+    private static final Duration RECONNECT_DELAY = Duration.ofSeconds(5);
+
+    private final DataSource dataSource;
+    private final PrincipalCache principalCache;
+
+    private Thread listener;
+    private volatile boolean running;
+
+    public PrincipalCacheInvalidations(DataSource dataSource, PrincipalCache principalCache) {
+        this.dataSource = dataSource;
+        this.principalCache = principalCache;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        running = true;
+        listener = Thread.ofVirtual().name("principal-cache-invalidations").start(this::run);
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        if (listener != null) {
+            listener.join(Duration.ofSeconds(5));
+        }
+    }
+
+    private void run() {
+        while (running) {
+            try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+                connection.setAutoCommit(true);
+                statement.execute("LISTEN " + CHANNEL);
+                principalCache.invalidateAll();
+                PGConnection pgConnection = connection.unwrap(PGConnection.class);
+                while (running) {
+                    PGNotification[] notifications = pgConnection.getNotifications(POLL_TIMEOUT_MS);
+                    if (notifications != null && notifications.length > 0) {
+                        principalCache.invalidateAll();
+                    }
+                }
+            } catch (SQLException e) {
+                log.warn("Lost the principal cache invalidation listener, reconnecting in {}", RECONNECT_DELAY, e);
+                try {
+                    Thread.sleep(RECONNECT_DELAY);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+}
@@ -8,6 +8,7 @@ import croco.prjcustomernotification.model.Address;
 import croco.prjcustomernotification.model.Customer;
 import croco.prjcustomernotification.repository.AddressRepository;
 import croco.prjcustomernotification.repository.CustomerRepository;
+import croco.prjcustomernotification.routing.NotificationRouter;
 import croco.prjcustomernotification.service.interfaces.AddressService;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
@@ -22,6 +23,7 @@ public class AddressServiceImpl implements AddressService {
 
     private final AddressRepository addressRepository;
     private final CustomerRepository customerRepository;
+    private final NotificationRouter notificationRouter;
 
     @Override
     public List<AddressDto> getAddressesByCustomerId(Long customerId) {
@@ -54,6 +56,7 @@ public class AddressServiceImpl implements AddressService {
         Address address = Address.builder().type(addressDto.getType()).value(addressDto.getValue()).customer(customer).primary(addressDto.isPrimary()).verified(false).build();
 
         Address savedAddress = addressRepository.save(address);
+        notificationRouter.invalidate(customerId);
         return mapToDto(savedAddress);
     }
 
@@ -72,6 +75,7 @@ public class AddressServiceImpl implements AddressService {
         address.setPrimary(addressDto.isPrimary());
 
         Address updatedAddress = addressRepository.save(address);
+        notificationRouter.invalidate(customerId);
         return mapToDto(updatedAddress);
     }
 
@@ -85,6 +89,7 @@ public class AddressServiceImpl implements AddressService {
             resetPrimaryAddresses(customerId, address.getType());
             address.setPrimary(true);
             address = addressRepository.save(address);
+            notificationRouter.invalidate(customerId);
         }
 
         return mapToDto(address);
@@ -98,6 +103,7 @@ public class AddressServiceImpl implements AddressService {
 
         address.setVerified(verified);
         Address updatedAddress = addressRepository.save(address);
+        notificationRouter.invalidate(customerId);
         return mapToDto(updatedAddress);
     }
 
@@ -109,6 +115,7 @@ public class AddressServiceImpl implements AddressService {
             throw new ResourceNotFoundException("Address not found with id: " + id);
         }
         addressRepository.deleteById(id);
+        notificationRouter.invalidate(customerId);
     }
 
     private void resetPrimaryAddresses(Long customerId, AddressType type) {
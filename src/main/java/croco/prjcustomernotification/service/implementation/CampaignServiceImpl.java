@@ -0,0 +1,241 @@
+package croco.prjcustomernotification.service.implementation;
+
+import croco.prjcustomernotification.dispatch.DispatchRequest;
+import croco.prjcustomernotification.dispatch.NotificationBatchWriter;
+import croco.prjcustomernotification.dispatch.NotificationIdAllocator;
+import croco.prjcustomernotification.dto.CampaignCreationDto;
+import croco.prjcustomernotification.dto.CampaignDto;
+import croco.prjcustomernotification.enums.CampaignStatus;
+import croco.prjcustomernotification.enums.NotificationType;
+import croco.prjcustomernotification.exception.ResourceNotFoundException;
+import croco.prjcustomernotification.model.Campaign;
+import croco.prjcustomernotification.model.Customer;
+import croco.prjcustomernotification.repository.CampaignRepository;
+import croco.prjcustomernotification.repository.CustomerRepository;
+import croco.prjcustomernotification.repository.CustomerSpecifications;
+import croco.prjcustomernotification.retry.RetryPolicy;
+import croco.prjcustomernotification.routing.NotificationRouter;
+import croco.prjcustomernotification.routing.Route;
+import croco.prjcustomernotification.service.interfaces.CampaignService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.RecoverableDataAccessException;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.CannotCreateTransactionException;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+
+@Slf4j
+@Service
+public class CampaignServiceImpl implements CampaignService {
+
+    private final CampaignRepository campaignRepository;
+    private final CustomerRepository customerRepository;
+    private final NotificationBatchWriter batchWriter;
+    private final NotificationIdAllocator idAllocator;
+    private final NotificationRouter notificationRouter;
+    private final RetryPolicy retryPolicy;
+    private final TransactionTemplate transactionTemplate;
+    private final int chunkSize;
+    private final Duration lease;
+    private final Semaphore runners;
+
+    public CampaignServiceImpl(CampaignRepository campaignRepository,
+                               CustomerRepository customerRepository,
+                               NotificationBatchWriter batchWriter,
+                               NotificationIdAllocator idAllocator,
+                               NotificationRouter notificationRouter,
+                               RetryPolicy retryPolicy,
+                               TransactionTemplate transactionTemplate,
+                               @Value("${notification.campaign.chunk-size:1000}") int chunkSize,
+                               @Value("${notification.campaign.lease:5m}") Duration lease,
+                               @Value("${notification.campaign.max-running:4}") int maxRunning) {
+        this.campaignRepository = campaignRepository;
+        this.customerRepository = customerRepository;
+        this.batchWriter = batchWriter;
+        this.idAllocator = idAllocator;
+        this.notificationRouter = notificationRouter;
+        this.retryPolicy = retryPolicy;
+        this.transactionTemplate = transactionTemplate;
+        this.chunkSize = chunkSize;
+        this.lease = lease;
+        this.runners = new Semaphore(maxRunning);
+    }
+
+    @Override
+    public CampaignDto startCampaign(CampaignCreationDto campaignDto) {
+        Campaign campaign = Campaign.builder()
+                .type(campaignDto.getType() != null ? campaignDto.getType() : NotificationType.MARKETING)
+                .subject(campaignDto.getSubject())
+                .content(campaignDto.getContent())
+                .nameFilter(campaignDto.getName())
+                .emailFilter(campaignDto.getEmail())
+                .phoneFilter(campaignDto.getPhone())
+                .optedInTypes(campaignDto.getOptedInTypes())
+                .status(CampaignStatus.RUNNING)
+                .startedAt(LocalDateTime.now())
+                .build();
+
+        Campaign savedCampaign = campaignRepository.save(campaign);
+        // with every runner busy, the campaign waits for the next resume pass
+        tryLaunch(savedCampaign.getId());
+
+        return mapToDto(savedCampaign);
+    }
+
+    @Override
+    public CampaignDto getCampaignById(Long id) {
+        Campaign campaign = campaignRepository.findById(id).orElseThrow(() -> new ResourceNotFoundException("Campaign not found with id: " + id));
+        return mapToDto(campaign);
+    }
+
+    @Override
+    public List<CampaignDto> getAllCampaigns() {
+        return campaignRepository.findAll().stream().map(this::mapToDto).toList();
+    }
+
+    /**
+     * Starts the running campaigns no node holds a lease on, as far as this node has runners free: campaigns
+     * interrupted by a shutdown continue from their last committed cursor, those of a node that died once its lease
+     * ran out, and those started while every runner was busy once one is free.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(initialDelayString = "${notification.campaign.resume-interval:1m}", fixedDelayString = "${notification.campaign.resume-interval:1m}")
+    public void resumeRunningCampaigns() {
+        for (Campaign campaign : campaignRepository.findByStatus(CampaignStatus.RUNNING)) {
+            if (!tryLaunch(campaign.getId())) {
+                return;
+            }
+        }
+    }
+
+    // false when no runner is free; a campaign whose lease another runner holds is skipped
+    private boolean tryLaunch(Long campaignId) {
+        if (!runners.tryAcquire()) {
+            return false;
+        }
+        try {
+            String token = UUID.randomUUID().toString();
+            LocalDateTime now = LocalDateTime.now();
+            Integer claimed = transactionTemplate.execute(_ -> campaignRepository.claimLease(campaignId, token, now, now.plus(lease)));
+            if (claimed == null || claimed == 0) {
+                runners.release();
+                return true;
+            }
+            // read after the claim, so the cursor is the one the previous holder last committed
+            Campaign campaign = campaignRepository.findById(campaignId).orElseThrow();
+            Thread.ofVirtual().name("campaign-" + campaignId).start(() -> {
+                try {
+                    run(campaign, token);
+                } finally {
+                    runners.release();
+                }
+            });
+            return true;
+        } catch (RuntimeException e) {
+            runners.release();
+            throw e;
+        }
+    }
+
+    private void run(Campaign campaign, String leaseToken) {
+        Specification<Customer> spec = CustomerSpecifications.matching(campaign.getNameFilter(), campaign.getEmailFilter(), campaign.getPhoneFilter(), campaign.getOptedInTypes());
+        long cursor = campaign.getLastCustomerId();
+
+        try {
+            List<Long> customerIds;
+            do {
+                customerIds = customerRepository.findIdsAfter(spec, cursor, chunkSize);
+                if (customerIds.isEmpty()) {
+                    break;
+                }
+                cursor = writeChunk(campaign, leaseToken, customerIds);
+            } while (customerIds.size() == chunkSize);
+
+            campaign.setStatus(CampaignStatus.COMPLETED);
+        } catch (LeaseLostException e) {
+            log.warn("Campaign {} lost its lease after customer {}, leaving it to the new holder", campaign.getId(), cursor);
+            return;
+        } catch (RuntimeException e) {
+            if (isTransient(e)) {
+                // the cursor of the last committed chunk is kept, so the next resume pass continues from there
+                log.warn("Campaign {} stopped after customer {}, releasing it to be resumed", campaign.getId(), cursor, e);
+                releaseLease(campaign.getId(), leaseToken);
+                return;
+            }
+            log.error("Campaign {} failed after customer {}", campaign.getId(), cursor, e);
+            campaign.setStatus(CampaignStatus.FAILED);
+            campaign.setFailureReason(e.getMessage());
+        }
+
+        Campaign finished = campaignRepository.findById(campaign.getId()).orElse(campaign);
+        finished.setStatus(campaign.getStatus());
+        finished.setFailureReason(campaign.getFailureReason());
+        finished.setCompletedAt(LocalDateTime.now());
+        campaignRepository.save(finished);
+    }
+
+    private void releaseLease(Long campaignId, String leaseToken) {
+        try {
+            transactionTemplate.executeWithoutResult(_ -> campaignRepository.releaseLease(campaignId, leaseToken));
+        } catch (RuntimeException e) {
+            log.warn("Could not release the lease on campaign {}, it is resumed once the lease runs out", campaignId, e);
+        }
+    }
+
+    // errors a later attempt may not run into: timeouts, lock conflicts and a database that could not be reached
+    private static boolean isTransient(RuntimeException e) {
+        return e instanceof TransientDataAccessException || e instanceof RecoverableDataAccessException
+                || e instanceof DataAccessResourceFailureException || e instanceof CannotCreateTransactionException;
+    }
+
+    // the rows, their outbox entries and the cursor advance commit together, so a resumed campaign never re-sends a chunk
+    private long writeChunk(Campaign campaign, String leaseToken, List<Long> customerIds) {
+        Map<Long, Route> routes = notificationRouter.resolveAll(customerIds, campaign.getType());
+        // one clock reading for the ids and the creation time, so the month an id encodes is the partition of its row
+        LocalDateTime now = LocalDateTime.now();
+        long[] ids = idAllocator.nextIds(routes.size(), now);
+        int maxAttempts = retryPolicy.maxAttemptsFor(campaign.getType());
+
+        List<DispatchRequest> requests = new ArrayList<>(routes.size());
+        for (Route route : routes.values()) {
+            requests.add(new DispatchRequest(ids[requests.size()], route, campaign.getType(), campaign.getSubject(), campaign.getContent(), now, maxAttempts, null, new CompletableFuture<>()));
+        }
+
+        long lastCustomerId = customerIds.getLast();
+        transactionTemplate.executeWithoutResult(_ -> {
+            // the lease row stays locked until commit, so nobody can take over halfway through the chunk
+            if (campaignRepository.renewLease(campaign.getId(), leaseToken, LocalDateTime.now().plus(lease)) == 0) {
+                throw new LeaseLostException();
+            }
+            List<DispatchRequest> rows = batchWriter.write(requests);
+            campaignRepository.recordProgress(campaign.getId(), lastCustomerId, customerIds.size(), rows.size());
+        });
+        return lastCustomerId;
+    }
+
+    private CampaignDto mapToDto(Campaign campaign) {
+        LocalDateTime end = campaign.getCompletedAt() != null ? campaign.getCompletedAt() : LocalDateTime.now();
+        double seconds = Duration.between(campaign.getStartedAt(), end).toMillis() / 1000.0;
+        double notificationsPerSecond = seconds > 0 ? campaign.getNotificationsCreated() / seconds : 0.0;
+
+        return CampaignDto.builder().id(campaign.getId()).type(campaign.getType()).subject(campaign.getSubject()).status(campaign.getStatus()).matchedCustomers(campaign.getMatchedCustomers()).notificationsCreated(campaign.getNotificationsCreated()).notificationsPerSecond(notificationsPerSecond).failureReason(campaign.getFailureReason()).startedAt(campaign.getStartedAt()).completedAt(campaign.getCompletedAt()).build();
+    }
+
+    private static final class LeaseLostException extends RuntimeException {
+    }
+}
@@ -3,16 +3,13 @@ package croco.prjcustomernotification.service.implementation;
 import croco.prjcustomernotification.dto.CustomerCreationDto;
 import croco.prjcustomernotification.dto.CustomerDto;
 import croco.prjcustomernotification.dto.CustomerPageResponseDto;
-import croco.prjcustomernotification.enums.AddressType;
 import croco.prjcustomernotification.enums.NotificationType;
 import croco.prjcustomernotification.exception.ResourceNotFoundException;
-import croco.prjcustomernotification.model.Address;
 import croco.prjcustomernotification.model.Customer;
-import croco.prjcustomernotification.model.NotificationPreference;
 import croco.prjcustomernotification.repository.CustomerRepository;
+import croco.prjcustomernotification.repository.CustomerSpecifications;
+import croco.prjcustomernotification.routing.NotificationRouter;
 import croco.prjcustomernotification.service.interfaces.CustomerService;
-import jakarta.persistence.criteria.Join;
-import jakarta.persistence.criteria.JoinType;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.domain.Specification;
@@ -24,9 +21,11 @@ import java.util.Set;
 @Service
 public class CustomerServiceImpl implements CustomerService {
     private final CustomerRepository customerRepository;
+    private final NotificationRouter notificationRouter;
 
-    public CustomerServiceImpl(CustomerRepository customerRepository) {
+    public CustomerServiceImpl(CustomerRepository customerRepository, NotificationRouter notificationRouter) {
         this.customerRepository = customerRepository;
+        this.notificationRouter = notificationRouter;
     }
 
     @Override
@@ -57,6 +56,7 @@ public class CustomerServiceImpl implements CustomerService {
         existingCustomer.setExternalId(customerDto.getExternalId());
 
         Customer updatedCustomer = customerRepository.save(existingCustomer);
+        notificationRouter.invalidate(id);
         return mapToDto(updatedCustomer);
     }
 
@@ -64,44 +64,12 @@ public class CustomerServiceImpl implements CustomerService {
     public void deleteCustomer(Long id) {
         Customer customer = customerRepository.findById(id).orElseThrow(() -> new ResourceNotFoundException("Customer not found with id: " + id));
         customerRepository.delete(customer);
+        notificationRouter.invalidate(id);
     }
 
     @Override
     public CustomerPageResponseDto searchCustomers(String name, String email, String phone, Set<NotificationType> optedInTypes, Pageable pageable) {
-        Specification<Customer> spec = Specification.allOf();
-
-        if (name != null && !name.isEmpty()) {
-            spec = spec.and((root, _, cb) -> cb.or(cb.like(cb.lower(root.get("firstName")), "%" + name.toLowerCase() + "%"), cb.like(cb.lower(root.get("lastName")), "%" + name.toLowerCase() + "%")));
-        }
-
-        if (email != null && !email.isEmpty()) {
-            spec = spec.and((root, _, cb) -> {
-                Join<Customer, Address> addressJoin = root.join("addresses", JoinType.LEFT);
-                return cb.and(cb.equal(addressJoin.get("type"), AddressType.EMAIL), cb.like(cb.lower(addressJoin.get("value")), "%" + email.toLowerCase() + "%"));
-            });
-        }
-
-        if (phone != null && !phone.isEmpty()) {
-            spec = spec.and((root, _, cb) -> {
-                Join<Customer, Address> addressJoin = root.join("addresses", JoinType.LEFT);
-                return cb.and(cb.equal(addressJoin.get("type"), AddressType.SMS), cb.like(addressJoin.get("value"), "%" + phone + "%"));
-            });
-        }
-
-        if (optedInTypes != null && !optedInTypes.isEmpty()) {
-            spec = spec.and((root, _, cb) -> {
-                Join<Customer, NotificationPreference> preferenceJoin = root.join("notificationPreferences", JoinType.LEFT);
-                return cb.and(preferenceJoin.get("type").in(optedInTypes), cb.isTrue(preferenceJoin.get("optedIn")));
-            });
-        }
-
-        if ((email != null && !email.isEmpty()) || (phone != null && !phone.isEmpty()) || (optedInTypes != null && !optedInTypes.isEmpty())) {
-            spec = spec.and((_, query, cb) -> {
-                assert query != null;
-                query.distinct(true);
-                return cb.conjunction();
-            });
-        }
+        Specification<Customer> spec = CustomerSpecifications.matching(name, email, phone, optedInTypes);
 
         Page<Customer> customerPage = customerRepository.findAll(spec, pageable);
         List<CustomerDto> customerDtos = customerPage.getContent().stream().map(this::mapToDto).toList();
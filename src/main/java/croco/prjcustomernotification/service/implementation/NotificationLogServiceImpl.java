@@ -1,172 +1,309 @@
 package croco.prjcustomernotification.service.implementation;
 
+import croco.prjcustomernotification.callback.AppliedCallbacks;
+import croco.prjcustomernotification.callback.ReadEventBuffer;
+import croco.prjcustomernotification.callback.ReadTrackingTokens;
+import croco.prjcustomernotification.callback.StatusCallbackWriter;
+import croco.prjcustomernotification.dispatch.DispatchRequest;
+import croco.prjcustomernotification.dispatch.IdempotencyCache;
+import croco.prjcustomernotification.dispatch.NotificationDispatcher;
+import croco.prjcustomernotification.dto.CustomerNotificationStatsDto;
+import croco.prjcustomernotification.dto.DeliveryLatencyDto;
+import croco.prjcustomernotification.dto.FailureReasonCountDto;
+import croco.prjcustomernotification.dto.NotificationLogCursorPageDto;
 import croco.prjcustomernotification.dto.NotificationLogDto;
+import croco.prjcustomernotification.dto.NotificationStatusCallbackDto;
+import croco.prjcustomernotification.dto.StatusCallbackResultDto;
+import croco.prjcustomernotification.enums.CountMode;
 import croco.prjcustomernotification.enums.NotificationStatus;
 import croco.prjcustomernotification.enums.NotificationType;
+import croco.prjcustomernotification.enums.StatusCallbackOutcome;
+import croco.prjcustomernotification.exception.CallbackBatchTooLargeException;
+import croco.prjcustomernotification.exception.InvalidCursorException;
+import croco.prjcustomernotification.exception.NotificationNotStoredException;
 import croco.prjcustomernotification.exception.ResourceNotFoundException;
-import croco.prjcustomernotification.model.Address;
-import croco.prjcustomernotification.model.Customer;
+import croco.prjcustomernotification.failure.FailureReasonTracker;
+import croco.prjcustomernotification.latency.DeliveryLatencyHistograms;
 import croco.prjcustomernotification.model.NotificationLog;
+import croco.prjcustomernotification.report.NotificationReports;
 import croco.prjcustomernotification.repository.CustomerRepository;
+import croco.prjcustomernotification.repository.NotificationLogFilter;
+import croco.prjcustomernotification.repository.NotificationLogKey;
 import croco.prjcustomernotification.repository.NotificationLogRepository;
+import croco.prjcustomernotification.rollup.CustomerNotificationStats;
+import croco.prjcustomernotification.routing.NotificationRouter;
+import croco.prjcustomernotification.routing.Route;
 import croco.prjcustomernotification.service.interfaces.NotificationLogService;
 import lombok.RequiredArgsConstructor;
-import org.springframework.data.domain.Page;
-import org.springframework.data.domain.Pageable;
-import org.springframework.data.jpa.domain.Specification;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Base64;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 
 @Service
 @RequiredArgsConstructor
 public class NotificationLogServiceImpl implements NotificationLogService {
 
+    private static final int MAX_PAGE_SIZE = 500;
+    private static final LocalDateTime EARLIEST = LocalDateTime.of(1970, 1, 1, 0, 0);
+    private static final LocalDateTime LATEST = LocalDateTime.of(9999, 12, 31, 23, 59, 59);
+
     private final NotificationLogRepository notificationLogRepository;
     private final CustomerRepository customerRepository;
+    private final NotificationDispatcher notificationDispatcher;
+    private final IdempotencyCache idempotencyCache;
+    private final StatusCallbackWriter statusCallbackWriter;
+    private final ReadEventBuffer readEventBuffer;
+    private final ReadTrackingTokens readTrackingTokens;
+    private final NotificationRouter notificationRouter;
+    private final FailureReasonTracker failureReasonTracker;
+    private final DeliveryLatencyHistograms latencyHistograms;
+    private final CustomerNotificationStats customerNotificationStats;
+    private final NotificationReports notificationReports;
 
     @Override
     public NotificationLogDto getNotificationById(Long id) {
-        NotificationLog log = notificationLogRepository.findById(id).orElseThrow(() -> new ResourceNotFoundException("Notification not found"));
-        return mapToDto(log);
+        return notificationLogRepository.findDtoById(id).orElseThrow(() -> new ResourceNotFoundException("Notification not found"));
+    }
+
+    @Override
+    public NotificationLogDto getNotificationByExternalReferenceId(String externalReferenceId) {
+        return notificationLogRepository.findDtoByExternalReferenceId(externalReferenceId).orElseThrow(() -> new ResourceNotFoundException("Notification not found"));
     }
 
     @Override
-    public Page<NotificationLogDto> getNotificationsByCustomerId(Long customerId, Pageable pageable) {
+    public NotificationLogCursorPageDto getNotificationsByCustomerId(Long customerId, String cursor, int size, CountMode count) {
         if (customerId == null) {
             throw new IllegalArgumentException("Customer ID cannot be null");
         }
 
-        Page<NotificationLog> notificationsPage = notificationLogRepository.findByCustomerId(customerId, pageable);
-
-        return notificationsPage.map(this::mapToDto);
+        return findPage(new NotificationLogFilter(customerId, null, null, null, null), cursor, size, count);
     }
 
     @Override
-    public Page<NotificationLogDto> searchNotifications(Long customerId, NotificationType type, NotificationStatus status, LocalDateTime startDate, LocalDateTime endDate, Pageable pageable) {
-
-        Specification<NotificationLog> spec = Specification.allOf();
+    public NotificationLogCursorPageDto searchNotifications(Long customerId, NotificationType type, NotificationStatus status, LocalDateTime startDate, LocalDateTime endDate, String cursor, int size, CountMode count) {
+        return findPage(new NotificationLogFilter(customerId, type, status, startDate, endDate), cursor, size, count);
+    }
 
-        if (customerId != null) {
-            spec = spec.and((root, _, cb) -> cb.equal(root.get("customer").get("id"), customerId));
+    // newest first, seeking past the cursor instead of skipping rows, so every page costs the same
+    private NotificationLogCursorPageDto findPage(NotificationLogFilter filter, String cursor, int size, CountMode count) {
+        int pageSize = Math.clamp(size, 1, MAX_PAGE_SIZE);
+        List<NotificationLogDto> notifications = notificationLogRepository.findPageAfter(filter, decodeCursor(cursor), pageSize + 1);
+        boolean hasNext = notifications.size() > pageSize;
+        if (hasNext) {
+            notifications = notifications.subList(0, pageSize);
         }
 
-        if (type != null) {
-            spec = spec.and((root, _, cb) -> cb.equal(root.get("type"), type));
+        NotificationLogCursorPageDto.NotificationLogCursorPageDtoBuilder page = NotificationLogCursorPageDto.builder()
+                .notifications(notifications)
+                .size(pageSize)
+                .nextCursor(hasNext ? encodeCursor(notifications.getLast()) : null);
+        if (count == CountMode.EXACT) {
+            page.totalElements(notificationLogRepository.countMatching(filter)).totalEstimated(false);
+        } else if (count == CountMode.ESTIMATED) {
+            page.totalElements(notificationLogRepository.estimateMatching(filter)).totalEstimated(true);
         }
+        return page.build();
+    }
 
-        if (status != null) {
-            spec = spec.and((root, _, cb) -> cb.equal(root.get("status"), status));
-        }
+    private static LocalDateTime from(LocalDateTime startDate) {
+        return startDate != null ? startDate : EARLIEST;
+    }
 
-        if (startDate != null) {
-            spec = spec.and((root, _, cb) -> cb.greaterThanOrEqualTo(root.get("createdAt"), startDate));
-        }
+    private static LocalDateTime to(LocalDateTime endDate) {
+        return endDate != null ? endDate : LATEST;
+    }
 
-        if (endDate != null) {
-            spec = spec.and((root, _, cb) -> cb.lessThanOrEqualTo(root.get("createdAt"), endDate));
-        }
+    static String encodeCursor(NotificationLogDto last) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString((last.getCreatedAt() + "|" + last.getId()).getBytes(StandardCharsets.UTF_8));
+    }
 
-        return notificationLogRepository.findAll(spec, pageable).map(this::mapToDto);
+    static NotificationLogKey decodeCursor(String cursor) {
+        if (cursor == null || cursor.isBlank()) {
+            return null;
+        }
+        try {
+            String[] parts = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split("\\|", 2);
+            return new NotificationLogKey(LocalDateTime.parse(parts[0]), Long.parseLong(parts[1]));
+        } catch (RuntimeException e) {
+            throw new InvalidCursorException("Invalid pagination cursor");
+        }
     }
 
     @Override
     public Map<String, Object> getNotificationStatistics(LocalDateTime startDate, LocalDateTime endDate) {
-        Map<String, Object> stats = new HashMap<>();
-
-        Map<NotificationStatus, Long> statusCounts = notificationLogRepository.countByStatusGrouped(startDate, endDate);
-        stats.put("statusCounts", statusCounts);
-
-        Map<NotificationType, Map<NotificationStatus, Long>> typeStats = notificationLogRepository.countByTypeAndStatusGrouped(startDate, endDate);
-        stats.put("typeStatistics", typeStats);
-
-        List<Map<String, Object>> dailyCounts = notificationLogRepository.countByDayInRange(startDate, endDate);
-        stats.put("dailyStatistics", dailyCounts);
-
-        return stats;
+        return notificationReports.statistics(startDate, endDate);
     }
 
     @Override
-    public Map<String, Object> generateCustomerOptInReport(LocalDateTime startDate, LocalDateTime endDate) {
-        Map<String, Object> report = new HashMap<>();
-
-        Map<NotificationType, Long> optInCountsByType = notificationLogRepository.countCustomersByNotificationType(startDate, endDate);
-        report.put("optInCountsByType", optInCountsByType);
-
-        Map<NotificationType, Double> successRateByType = notificationLogRepository.getSuccessRateByType(startDate, endDate);
-        report.put("successRateByType", successRateByType);
-
-        List<Map<String, Object>> failureReasonsList = notificationLogRepository.getTopFailureReasonsByType(startDate, endDate);
-        Map<NotificationType, List<Map<String, Object>>> topFailureReasons = new HashMap<>();
+    public CustomerNotificationStatsDto getCustomerNotificationStatistics(Long customerId, LocalDateTime startDate, LocalDateTime endDate) {
+        if (!customerRepository.existsById(customerId)) {
+            throw new ResourceNotFoundException("Customer not found with id: " + customerId);
+        }
 
-        for (Map<String, Object> item : failureReasonsList) {
-            String typeKey = (String) item.get("type_key");
-            NotificationType notificationType = NotificationType.valueOf(typeKey);
-            @SuppressWarnings("unchecked") List<Map<String, Object>> reasons = (List<Map<String, Object>>) item.get("reasons");
-            topFailureReasons.put(notificationType, reasons);
+        if (startDate == null && endDate == null) {
+            return customerNotificationStats.find(customerId, null, null);
         }
+        return customerNotificationStats.find(customerId, from(startDate), to(endDate));
+    }
 
-        report.put("topFailureReasons", topFailureReasons);
+    @Override
+    public Map<String, Object> generateCustomerOptInReport(LocalDateTime startDate, LocalDateTime endDate, CountMode distinctCount) {
+        return notificationReports.optInReport(startDate, endDate, distinctCount);
+    }
 
-        Map<NotificationType, Double> engagementRateByType = notificationLogRepository.getEngagementRateByType(startDate, endDate);
-        report.put("engagementRateByType", engagementRateByType);
+    @Override
+    public DeliveryLatencyDto getRecentDeliveryLatency(Duration window) {
+        return latencyHistograms.window(window);
+    }
 
-        return report;
+    @Override
+    public List<FailureReasonCountDto> getCurrentTopFailureReasons(NotificationType type) {
+        return failureReasonTracker.currentTop(type);
     }
 
     @Override
-    @Transactional
-    public NotificationLogDto logNotificationSent(Long customerId, NotificationType type, String subject, String content) {
+    public NotificationLogDto logNotificationSent(Long customerId, NotificationType type, String subject, String content, String idempotencyKey) {
+        if (idempotencyKey == null) {
+            return dispatch(customerId, type, subject, content, null);
+        }
 
-        Customer customer = customerRepository.findById(customerId)
-                .orElseThrow(() -> new ResourceNotFoundException("Customer not found"));
+        // a replay returns the original notification, whether it is still cached or only in the database; a keyed send
+        // waits for its row to be committed, so the key never answers with a notification that was not stored
+        String requestHash = IdempotencyCache.requestHash(customerId, type, subject, content);
+        return idempotencyCache.get(idempotencyKey, requestHash, key -> findIdempotent(key).orElseGet(() -> {
+            Route route = notificationRouter.resolve(customerId, type);
+            DispatchRequest request = notificationDispatcher.submit(route, type, subject, content, key);
+            if (idempotencyCache.awaitWritten(request)) {
+                return new IdempotencyCache.Entry(requestHash, toPendingDto(route, request));
+            }
+            // another node claimed the key first, or the address was removed after routing
+            return findIdempotent(key).orElseThrow(() -> new NotificationNotStoredException("Notification could not be stored, retry later"));
+        }));
+    }
 
-        List<Address> addresses = new ArrayList<>(customer.getAddresses());
+    private Optional<IdempotencyCache.Entry> findIdempotent(String idempotencyKey) {
+        return notificationLogRepository.findDtoByIdempotencyKey(idempotencyKey)
+                .map(dto -> new IdempotencyCache.Entry(notificationLogRepository.findRequestHashByIdempotencyKey(idempotencyKey).orElse(null), dto));
+    }
 
-        Address address = addresses.stream()
-                .findFirst()
-                .orElseThrow(() -> new IllegalArgumentException("No suitable address found for this notification type"));
+    private NotificationLogDto dispatch(Long customerId, NotificationType type, String subject, String content, String idempotencyKey) {
+        Route route = notificationRouter.resolve(customerId, type);
+        return toPendingDto(route, notificationDispatcher.submit(route, type, subject, content, idempotencyKey));
+    }
 
-        NotificationLog log = NotificationLog.builder()
-                .customer(customer)
-                .address(address)
-                .type(type)
+    private static NotificationLogDto toPendingDto(Route route, DispatchRequest request) {
+        return NotificationLogDto.builder()
+                .id(request.id())
+                .customerId(route.customerId())
+                .customerName(route.customerName())
+                .addressId(route.addressId())
+                .addressValue(route.addressValue())
+                .type(request.type())
                 .status(NotificationStatus.PENDING)
-                .subject(subject)
-                .content(content)
-                .sentAt(LocalDateTime.now())
+                .subject(request.subject())
+                .content(request.content())
+                .sentAt(request.sentAt())
+                .attemptCount(1)
+                .maxAttempts(request.maxAttempts())
                 .build();
+    }
 
-        NotificationLog savedLog = notificationLogRepository.save(log);
-
-        return mapToDto(savedLog);
+    @Override
+    @Transactional
+    public NotificationLogDto updateNotificationStatus(Long id, NotificationStatus status, String failureReason, LocalDateTime timestamp) {
+        // applied like a bulk callback, so a single update obeys the same ordering rules
+        statusCallbackWriter.applyById(List.of(NotificationStatusCallbackDto.builder().id(id).status(status).failureReason(failureReason).timestamp(timestamp).build()));
+        return notificationLogRepository.findByIdForUpdate(id).map(this::mapToDto).orElseThrow(() -> new ResourceNotFoundException("Notification not found"));
     }
 
     @Override
     @Transactional
-    public NotificationLogDto updateNotificationStatus(Long id, NotificationStatus status, String failureReason) {
-        NotificationLog log = notificationLogRepository.findById(id).orElseThrow(() -> new ResourceNotFoundException("Notification not found"));
+    public NotificationLogDto updateNotificationStatusByExternalReferenceId(String externalReferenceId, NotificationStatus status, String failureReason, LocalDateTime timestamp) {
+        statusCallbackWriter.applyByExternalReference(List.of(NotificationStatusCallbackDto.builder().externalReferenceId(externalReferenceId).status(status)
+                .failureReason(failureReason).timestamp(timestamp).build()));
+        return notificationLogRepository.findByExternalReferenceIdForUpdate(externalReferenceId).map(this::mapToDto)
+                .orElseThrow(() -> new ResourceNotFoundException("Notification not found"));
+    }
 
-        log.setStatus(status);
+    @Override
+    public List<StatusCallbackResultDto> applyStatusCallbacks(List<NotificationStatusCallbackDto> callbacks) {
+        if (callbacks.size() > statusCallbackWriter.getMaxBulkSize()) {
+            throw new CallbackBatchTooLargeException("At most " + statusCallbackWriter.getMaxBulkSize() + " callbacks can be applied per request");
+        }
 
-        if (status == NotificationStatus.DELIVERED && log.getDeliveredAt() == null) {
-            log.setDeliveredAt(LocalDateTime.now());
+        // providers may report the same notification more than once in a burst; the latest report wins
+        Map<Long, NotificationStatusCallbackDto> latestById = new HashMap<>();
+        Map<String, NotificationStatusCallbackDto> latestByReference = new HashMap<>();
+        for (NotificationStatusCallbackDto callback : callbacks) {
+            if (callback.getStatus() == null) {
+                continue;
+            }
+            if (callback.getId() != null) {
+                latestById.merge(callback.getId(), callback, this::later);
+            } else if (callback.getExternalReferenceId() != null) {
+                latestByReference.merge(callback.getExternalReferenceId(), callback, this::later);
+            }
         }
 
-        if (status == NotificationStatus.FAILED) {
-            log.setFailureReason(failureReason);
+        AppliedCallbacks<Long> byId = statusCallbackWriter.applyById(new ArrayList<>(latestById.values()));
+        AppliedCallbacks<String> byReference = statusCallbackWriter.applyByExternalReference(new ArrayList<>(latestByReference.values()));
+
+        List<StatusCallbackResultDto> results = new ArrayList<>(callbacks.size());
+        for (NotificationStatusCallbackDto callback : callbacks) {
+            StatusCallbackOutcome outcome;
+            if (callback.getStatus() == null || (callback.getId() == null && callback.getExternalReferenceId() == null)) {
+                outcome = StatusCallbackOutcome.INVALID;
+            } else if (callback.getId() != null) {
+                outcome = latestById.get(callback.getId()) != callback ? StatusCallbackOutcome.SUPERSEDED : outcome(byId, callback.getId());
+            } else {
+                outcome = latestByReference.get(callback.getExternalReferenceId()) != callback ? StatusCallbackOutcome.SUPERSEDED
+                        : outcome(byReference, callback.getExternalReferenceId());
+            }
+            results.add(StatusCallbackResultDto.builder().id(callback.getId()).externalReferenceId(callback.getExternalReferenceId()).outcome(outcome).build());
         }
+        return results;
+    }
 
-        return mapToDto(notificationLogRepository.save(log));
+    @Override
+    public void recordNotificationRead(Long id) {
+        readEventBuffer.record(id, LocalDateTime.now());
+    }
+
+    @Override
+    public void recordTrackedNotificationRead(Long id, String token) {
+        // a wrong token is answered like an unknown notification, so it tells nothing about the id
+        if (!readTrackingTokens.isValid(id, token)) {
+            throw new ResourceNotFoundException("Notification not found");
+        }
+        readEventBuffer.record(id, LocalDateTime.now());
+    }
+
+    // a key the writer applied is UPDATED, one it found but ignored is SUPERSEDED, and one it did not find is NOT_FOUND
+    private static <K> StatusCallbackOutcome outcome(AppliedCallbacks<K> applied, K key) {
+        if (applied.updated().contains(key)) {
+            return StatusCallbackOutcome.UPDATED;
+        }
+        return applied.ignored().contains(key) ? StatusCallbackOutcome.SUPERSEDED : StatusCallbackOutcome.NOT_FOUND;
+    }
+
+    private NotificationStatusCallbackDto later(NotificationStatusCallbackDto current, NotificationStatusCallbackDto candidate) {
+        if (current.getTimestamp() == null || candidate.getTimestamp() == null) {
+            return candidate;
+        }
+        return candidate.getTimestamp().isBefore(current.getTimestamp()) ? current : candidate;
     }
 
     private NotificationLogDto mapToDto(NotificationLog log) {
-        return NotificationLogDto.builder().id(log.getId()).customerId(log.getCustomer().getId()).customerName(log.getCustomer().getFirstName() + " " + log.getCustomer().getLastName()).addressId(log.getAddress().getId()).addressValue(log.getAddress().getValue()).type(log.getType()).status(log.getStatus()).externalReferenceId(log.getExternalReferenceId()).subject(log.getSubject()).content(log.getContent()).sentAt(log.getSentAt()).deliveredAt(log.getDeliveredAt()).failureReason(log.getFailureReason()).createdAt(log.getCreatedAt()).updatedAt(log.getUpdatedAt()).build();
+        return NotificationLogDto.builder().id(log.getId()).customerId(log.getCustomer().getId()).customerName(log.getCustomer().getFirstName() + " " + log.getCustomer().getLastName()).addressId(log.getAddress().getId()).addressValue(log.getAddress().getValue()).type(log.getType()).status(log.getStatus()).externalReferenceId(log.getExternalReferenceId()).subject(log.getSubject()).content(log.getContent()).sentAt(log.getSentAt()).deliveredAt(log.getDeliveredAt()).readAt(log.getReadAt()).failureReason(log.getFailureReason()).attemptCount(log.getAttemptCount()).maxAttempts(log.getMaxAttempts()).nextAttemptAt(log.getNextAttemptAt()).createdAt(log.getCreatedAt()).updatedAt(log.getUpdatedAt()).build();
     }
 
 }
\ No newline at end of file
@@ -7,6 +7,7 @@ import croco.prjcustomernotification.model.Customer;
 import croco.prjcustomernotification.model.NotificationPreference;
 import croco.prjcustomernotification.repository.CustomerRepository;
 import croco.prjcustomernotification.repository.NotificationPreferenceRepository;
+import croco.prjcustomernotification.routing.NotificationRouter;
 import croco.prjcustomernotification.service.interfaces.NotificationPreferenceService;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
@@ -21,6 +22,7 @@ public class NotificationPreferenceServiceImpl implements NotificationPreference
 
     private final NotificationPreferenceRepository preferenceRepository;
     private final CustomerRepository customerRepository;
+    private final NotificationRouter notificationRouter;
 
     @Override
     public List<NotificationPreferenceDto> getPreferencesByCustomerId(Long customerId) {
@@ -47,6 +49,7 @@ public class NotificationPreferenceServiceImpl implements NotificationPreference
         preference.setCustomer(customer);
 
         NotificationPreference savedPreference = preferenceRepository.save(preference);
+        notificationRouter.invalidate(customerId);
         return mapToDto(savedPreference);
     }
 
@@ -61,6 +64,7 @@ public class NotificationPreferenceServiceImpl implements NotificationPreference
         preference.setOptedIn(preferenceDto.isOptedIn());
 
         NotificationPreference updatedPreference = preferenceRepository.save(preference);
+        notificationRouter.invalidate(customerId);
         return mapToDto(updatedPreference);
     }
 
@@ -72,6 +76,7 @@ public class NotificationPreferenceServiceImpl implements NotificationPreference
             throw new ResourceNotFoundException("Notification preference not found with id: " + id);
         }
         preferenceRepository.deleteById(id);
+        notificationRouter.invalidate(customerId);
     }
 
     private void validateCustomerExists(Long customerId) {
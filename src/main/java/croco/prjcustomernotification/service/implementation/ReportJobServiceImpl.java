@@ -0,0 +1,279 @@
+package croco.prjcustomernotification.service.implementation;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import croco.prjcustomernotification.dto.ReportJobDto;
+import croco.prjcustomernotification.enums.CountMode;
+import croco.prjcustomernotification.enums.ReportJobStatus;
+import croco.prjcustomernotification.enums.ReportType;
+import croco.prjcustomernotification.exception.ReportJobNotCompletedException;
+import croco.prjcustomernotification.exception.ReportJobRejectedException;
+import croco.prjcustomernotification.exception.ReportTimeoutException;
+import croco.prjcustomernotification.exception.ResourceNotFoundException;
+import croco.prjcustomernotification.report.NotificationReports;
+import croco.prjcustomernotification.service.interfaces.ReportJobService;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs reports in the background on a fixed number of workers, so long ranges neither hold a request thread nor
+ * compete with the sends for more than a few connections. Jobs are kept in {@code report_jobs}, so any node can
+ * report their status and result, and run on the node that accepted them, which holds a lease on them while they
+ * are queued or running; a job whose node stops is failed once its lease runs out. Finished jobs are deleted some
+ * time after they finish. A report requested again while an identical one is queued or running, on any node,
+ * joins that job instead of starting another, which also means cancelling it cancels it for everyone who asked.
+ */
+@Slf4j
+@Service
+public class ReportJobServiceImpl implements ReportJobService {
+
+    private static final String SELECT_SQL = "SELECT id, report, start_date, end_date, distinct_count, status, failure_reason, " +
+            "submitted_at, started_at, completed_at FROM report_jobs ";
+
+    // a unique index over the in-flight jobs lets only one of several identical submissions in
+    private static final String INSERT_SQL = "INSERT INTO report_jobs (id, report, start_date, end_date, distinct_count, status, submitted_at, lease_until) " +
+            "VALUES (:id, :report, :startDate, :endDate, :distinctCount, 'QUEUED', :now, :leaseUntil) ON CONFLICT DO NOTHING";
+
+    private static final String IN_FLIGHT_SQL = SELECT_SQL + "WHERE report = :report AND start_date IS NOT DISTINCT FROM :startDate " +
+            "AND end_date IS NOT DISTINCT FROM :endDate AND distinct_count IS NOT DISTINCT FROM :distinctCount AND status IN ('QUEUED', 'RUNNING')";
+
+    private static final String START_SQL = "UPDATE report_jobs SET status = 'RUNNING', started_at = :now WHERE id = :id AND status = 'QUEUED'";
+
+    private static final String FINISH_SQL = "UPDATE report_jobs SET status = :status, result = CAST(:result AS jsonb), failure_reason = :failureReason, " +
+            "completed_at = :now, lease_until = NULL WHERE id = :id AND status = 'RUNNING'";
+
+    private static final String CANCEL_SQL = "UPDATE report_jobs SET status = 'CANCELLED', completed_at = :now, lease_until = NULL " +
+            "WHERE id = :id AND status IN ('QUEUED', 'RUNNING')";
+
+    private static final String RENEW_SQL = "UPDATE report_jobs SET lease_until = :leaseUntil " +
+            "WHERE id IN (:ids) AND status IN ('QUEUED', 'RUNNING') RETURNING id";
+
+    private static final String ABANDON_SQL = "UPDATE report_jobs SET status = 'FAILED', failure_reason = :failureReason, completed_at = :now, lease_until = NULL " +
+            "WHERE status IN ('QUEUED', 'RUNNING') AND %s";
+
+    private static final String ABANDON_EXPIRED_SQL = ABANDON_SQL.formatted("lease_until < :now");
+
+    private static final String ABANDON_BY_ID_SQL = ABANDON_SQL.formatted("id IN (:ids)");
+
+    private static final String PURGE_SQL = "DELETE FROM report_jobs WHERE completed_at < :finishedBefore";
+
+    private static final String NODE_STOPPED = "The node running the report stopped, submit it again";
+
+    private static final RowMapper<ReportJobDto> DTO_MAPPER = (rs, _) -> {
+        String distinctCount = rs.getString("distinct_count");
+        return ReportJobDto.builder()
+                .id(rs.getObject("id", UUID.class))
+                .report(ReportType.valueOf(rs.getString("report")))
+                .startDate(toLocalDateTime(rs.getTimestamp("start_date")))
+                .endDate(toLocalDateTime(rs.getTimestamp("end_date")))
+                .distinctCount(distinctCount != null ? CountMode.valueOf(distinctCount) : null)
+                .status(ReportJobStatus.valueOf(rs.getString("status")))
+                .failureReason(rs.getString("failure_reason"))
+                .submittedAt(toLocalDateTime(rs.getTimestamp("submitted_at")))
+                .startedAt(toLocalDateTime(rs.getTimestamp("started_at")))
+                .completedAt(toLocalDateTime(rs.getTimestamp("completed_at")))
+                .build();
+    };
+
+    private final NotificationReports notificationReports;
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final ObjectMapper objectMapper;
+    private final ThreadPoolExecutor executor;
+    private final Duration timeout;
+    private final Duration retention;
+    private final Duration lease;
+    // the jobs queued or running on this node
+    private final Map<UUID, Future<?>> local = new ConcurrentHashMap<>();
+
+    public ReportJobServiceImpl(NotificationReports notificationReports,
+                                NamedParameterJdbcTemplate jdbcTemplate,
+                                ObjectMapper objectMapper,
+                                @Value("${notification.report-jobs.workers:2}") int workers,
+                                @Value("${notification.report-jobs.queue-capacity:20}") int queueCapacity,
+                                @Value("${notification.report-jobs.timeout:30m}") Duration timeout,
+                                @Value("${notification.report-jobs.retention:1h}") Duration retention,
+                                @Value("${notification.report-jobs.lease:5m}") Duration lease) {
+        this.notificationReports = notificationReports;
+        this.jdbcTemplate = jdbcTemplate;
+        this.objectMapper = objectMapper;
+        this.executor = new ThreadPoolExecutor(workers, workers, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(queueCapacity),
+                Thread.ofVirtual().name("report-job-", 0).factory());
+        this.timeout = timeout;
+        this.retention = retention;
+        this.lease = lease;
+    }
+
+    @Override
+    public ReportJobDto submitReportJob(ReportType report, LocalDateTime startDate, LocalDateTime endDate, CountMode distinctCount) {
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("report", report.name())
+                .addValue("startDate", startDate != null ? Timestamp.valueOf(startDate) : null, Types.TIMESTAMP)
+                .addValue("endDate", endDate != null ? Timestamp.valueOf(endDate) : null, Types.TIMESTAMP)
+                .addValue("distinctCount", report == ReportType.OPT_IN ? distinctCount.name() : null, Types.VARCHAR);
+
+        // the identical job may finish between a lost insert and the lookup, in which case this one goes in next time
+        for (int attempt = 0; attempt < 3; attempt++) {
+            UUID id = UUID.randomUUID();
+            LocalDateTime now = LocalDateTime.now();
+            params.addValue("id", id).addValue("now", Timestamp.valueOf(now)).addValue("leaseUntil", Timestamp.valueOf(now.plus(lease)));
+            if (jdbcTemplate.update(INSERT_SQL, params) == 0) {
+                Optional<ReportJobDto> inFlight = jdbcTemplate.query(IN_FLIGHT_SQL, params, DTO_MAPPER).stream().findFirst();
+                if (inFlight.isPresent()) {
+                    return inFlight.get();
+                }
+                continue;
+            }
+
+            try {
+                local.put(id, executor.submit(() -> run(id)));
+            } catch (RejectedExecutionException e) {
+                jdbcTemplate.update("DELETE FROM report_jobs WHERE id = :id", Map.of("id", id));
+                throw new ReportJobRejectedException("Too many report jobs queued, try again later");
+            }
+            return find(id);
+        }
+        throw new ReportJobRejectedException("Report job could not be queued, try again later");
+    }
+
+    @Override
+    public ReportJobDto getReportJob(UUID id) {
+        return find(id);
+    }
+
+    @Override
+    public Map<String, Object> getReportJobResult(UUID id) {
+        ReportJobDto job = find(id);
+        if (job.getStatus() != ReportJobStatus.COMPLETED) {
+            throw new ReportJobNotCompletedException("Report job " + id + " is " + job.getStatus());
+        }
+        String result = jdbcTemplate.queryForObject("SELECT result FROM report_jobs WHERE id = :id", Map.of("id", id), String.class);
+        try {
+            return objectMapper.readValue(result, new TypeReference<>() {
+            });
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Corrupt report job result", e);
+        }
+    }
+
+    /**
+     * Cancels the job right away on the node running it; elsewhere the running node notices when it next renews
+     * its lease.
+     */
+    @Override
+    public ReportJobDto cancelReportJob(UUID id) {
+        find(id);
+        jdbcTemplate.update(CANCEL_SQL, Map.of("id", id, "now", Timestamp.valueOf(LocalDateTime.now())));
+        cancelLocal(id);
+        return find(id);
+    }
+
+    /**
+     * Renews the leases of the jobs on this node and cancels those cancelled elsewhere, fails the jobs whose node
+     * stopped renewing them, and deletes the jobs finished longer than the retention ago.
+     */
+    @Scheduled(fixedDelayString = "${notification.report-jobs.cleanup-interval:1m}")
+    public void maintainJobs() {
+        LocalDateTime now = LocalDateTime.now();
+        Set<UUID> ids = new HashSet<>(local.keySet());
+        if (!ids.isEmpty()) {
+            List<UUID> renewed = jdbcTemplate.queryForList(RENEW_SQL,
+                    Map.of("ids", ids, "leaseUntil", Timestamp.valueOf(now.plus(lease))), UUID.class);
+            renewed.forEach(ids::remove);
+            ids.forEach(this::cancelLocal);
+        }
+        jdbcTemplate.update(ABANDON_EXPIRED_SQL, Map.of("failureReason", NODE_STOPPED, "now", Timestamp.valueOf(now)));
+        jdbcTemplate.update(PURGE_SQL, Map.of("finishedBefore", Timestamp.valueOf(now.minus(retention))));
+    }
+
+    @PreDestroy
+    public void stop() {
+        executor.shutdownNow();
+        if (local.isEmpty()) {
+            return;
+        }
+        try {
+            jdbcTemplate.update(ABANDON_BY_ID_SQL, Map.of("ids", local.keySet(), "failureReason", NODE_STOPPED, "now", Timestamp.valueOf(LocalDateTime.now())));
+        } catch (RuntimeException e) {
+            log.warn("Could not fail the report jobs of this node on shutdown", e);
+        }
+    }
+
+    private void cancelLocal(UUID id) {
+        Future<?> future = local.remove(id);
+        if (future != null) {
+            // interrupting the worker cancels the report's sections
+            future.cancel(true);
+            executor.purge();
+        }
+    }
+
+    private ReportJobDto find(UUID id) {
+        return jdbcTemplate.query(SELECT_SQL + "WHERE id = :id", Map.of("id", id), DTO_MAPPER).stream().findFirst()
+                .orElseThrow(() -> new ResourceNotFoundException("Report job not found with id: " + id));
+    }
+
+    private void run(UUID id) {
+        try {
+            // a job cancelled while queued is not started
+            if (jdbcTemplate.update(START_SQL, Map.of("id", id, "now", Timestamp.valueOf(LocalDateTime.now()))) == 0) {
+                return;
+            }
+            ReportJobDto job = find(id);
+
+            String result = null;
+            String failureReason = null;
+            try {
+                Map<String, Object> report = job.getReport() == ReportType.STATISTICS
+                        ? notificationReports.statistics(job.getStartDate(), job.getEndDate(), timeout)
+                        : notificationReports.optInReport(job.getStartDate(), job.getEndDate(), job.getDistinctCount(), timeout);
+                result = objectMapper.writeValueAsString(report);
+            } catch (ReportTimeoutException e) {
+                log.warn("Report job {} timed out", id, e);
+                failureReason = e.getMessage();
+            } catch (RuntimeException | JsonProcessingException e) {
+                // the cause stays in the log, as its message may show queries or internals
+                log.warn("Report job {} failed", id, e);
+                failureReason = "Report failed, see the server log for report job " + id;
+            }
+
+            // a cancelled job keeps its status, whatever the interrupted report ended with
+            MapSqlParameterSource params = new MapSqlParameterSource()
+                    .addValue("id", id)
+                    .addValue("status", (failureReason == null ? ReportJobStatus.COMPLETED : ReportJobStatus.FAILED).name())
+                    .addValue("result", result, Types.VARCHAR)
+                    .addValue("failureReason", failureReason, Types.VARCHAR)
+                    .addValue("now", Timestamp.valueOf(LocalDateTime.now()));
+            jdbcTemplate.update(FINISH_SQL, params);
+        } finally {
+            local.remove(id);
+        }
+    }
+
+    private static LocalDateTime toLocalDateTime(Timestamp timestamp) {
+        return timestamp != null ? timestamp.toLocalDateTime() : null;
+    }
+}
@@ -0,0 +1,15 @@
+package croco.prjcustomernotification.service.interfaces;
+
+import croco.prjcustomernotification.dto.CampaignCreationDto;
+import croco.prjcustomernotification.dto.CampaignDto;
+
+import java.util.List;
+
+public interface CampaignService {
+
+    CampaignDto startCampaign(CampaignCreationDto campaignDto);
+
+    CampaignDto getCampaignById(Long id);
+
+    List<CampaignDto> getAllCampaigns();
+}
@@ -1,27 +1,53 @@
 package croco.prjcustomernotification.service.interfaces;
 
+import croco.prjcustomernotification.dto.CustomerNotificationStatsDto;
+import croco.prjcustomernotification.dto.DeliveryLatencyDto;
+import croco.prjcustomernotification.dto.FailureReasonCountDto;
+import croco.prjcustomernotification.dto.NotificationLogCursorPageDto;
 import croco.prjcustomernotification.dto.NotificationLogDto;
+import croco.prjcustomernotification.dto.NotificationStatusCallbackDto;
+import croco.prjcustomernotification.dto.StatusCallbackResultDto;
+import croco.prjcustomernotification.enums.CountMode;
 import croco.prjcustomernotification.enums.NotificationStatus;
 import croco.prjcustomernotification.enums.NotificationType;
-import org.springframework.data.domain.Page;
-import org.springframework.data.domain.Pageable;
 
+import java.time.Duration;
 import java.time.LocalDateTime;
+import java.util.List;
 import java.util.Map;
 
 public interface NotificationLogService {
 
     NotificationLogDto getNotificationById(Long id);
 
-    Page<NotificationLogDto> getNotificationsByCustomerId(Long customerId, Pageable pageable);
+    NotificationLogDto getNotificationByExternalReferenceId(String externalReferenceId);
 
-    Page<NotificationLogDto> searchNotifications(Long customerId, NotificationType type, NotificationStatus status, LocalDateTime startDate, LocalDateTime endDate, Pageable pageable);
+    NotificationLogCursorPageDto getNotificationsByCustomerId(Long customerId, String cursor, int size, CountMode count);
+
+    NotificationLogCursorPageDto searchNotifications(Long customerId, NotificationType type, NotificationStatus status, LocalDateTime startDate, LocalDateTime endDate, String cursor, int size, CountMode count);
 
     Map<String, Object> getNotificationStatistics(LocalDateTime startDate, LocalDateTime endDate);
 
-    Map<String, Object> generateCustomerOptInReport(LocalDateTime startDate, LocalDateTime endDate);
+    CustomerNotificationStatsDto getCustomerNotificationStatistics(Long customerId, LocalDateTime startDate, LocalDateTime endDate);
+
+    Map<String, Object> generateCustomerOptInReport(LocalDateTime startDate, LocalDateTime endDate, CountMode distinctCount);
+
+    List<FailureReasonCountDto> getCurrentTopFailureReasons(NotificationType type);
+
+    DeliveryLatencyDto getRecentDeliveryLatency(Duration window);
+
+    NotificationLogDto logNotificationSent(Long customerId, NotificationType type, String subject, String content, String idempotencyKey);
+
+    NotificationLogDto updateNotificationStatus(Long id, NotificationStatus status, String failureReason, LocalDateTime timestamp);
+
+    NotificationLogDto updateNotificationStatusByExternalReferenceId(String externalReferenceId, NotificationStatus status, String failureReason, LocalDateTime timestamp);
+
+    List<StatusCallbackResultDto> applyStatusCallbacks(List<NotificationStatusCallbackDto> callbacks);
 
-    NotificationLogDto logNotificationSent(Long customerId, NotificationType type, String subject, String content);
+    void recordNotificationRead(Long id);
 
-    NotificationLogDto updateNotificationStatus(Long id, NotificationStatus status, String failureReason);
+    /**
+     * Records a read from the unauthenticated tracking link, which carries a token signing the id.
+     */
+    void recordTrackedNotificationRead(Long id, String token);
 }
\ No newline at end of file
@@ -0,0 +1,20 @@
+package croco.prjcustomernotification.service.interfaces;
+
+import croco.prjcustomernotification.dto.ReportJobDto;
+import croco.prjcustomernotification.enums.CountMode;
+import croco.prjcustomernotification.enums.ReportType;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.UUID;
+
+public interface ReportJobService {
+
+    ReportJobDto submitReportJob(ReportType report, LocalDateTime startDate, LocalDateTime endDate, CountMode distinctCount);
+
+    ReportJobDto getReportJob(UUID id);
+
+    Map<String, Object> getReportJobResult(UUID id);
+
+    ReportJobDto cancelReportJob(UUID id);
+}
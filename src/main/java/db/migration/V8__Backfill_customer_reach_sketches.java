@@ -0,0 +1,79 @@
+package db.migration;
+
+import org.flywaydb.core.api.migration.BaseJavaMigration;
+import org.flywaydb.core.api.migration.Context;
+
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Builds the customer reach sketches of the existing notifications. The hashing cannot be done in SQL, so it is
+ * repeated here rather than taken from {@code HyperLogLog}, which keeps this migration producing the same rows
+ * however that class changes later: dense sketches of 2^14 one-byte registers, a layout {@code HyperLogLog}
+ * still reads. Rows are streamed in creation order and each day is written once it is complete.
+ */
+public class V8__Backfill_customer_reach_sketches extends BaseJavaMigration {
+
+    private static final int PRECISION = 14;
+
+    private static final String SELECT_SQL = "SELECT CAST(created_at AS date) AS day, type, customer_id FROM notification_logs ORDER BY created_at";
+
+    private static final String INSERT_SQL = "INSERT INTO customer_reach_sketches (day, type, registers) VALUES (?, ?, ?)";
+
+    @Override
+    public void migrate(Context context) throws Exception {
+        LocalDate currentDay = null;
+        Map<String, byte[]> sketches = new HashMap<>();
+
+        try (Statement select = context.getConnection().createStatement();
+             PreparedStatement insert = context.getConnection().prepareStatement(INSERT_SQL)) {
+            select.setFetchSize(10000);
+            try (ResultSet rs = select.executeQuery(SELECT_SQL)) {
+                while (rs.next()) {
+                    LocalDate day = rs.getDate("day").toLocalDate();
+                    if (!day.equals(currentDay)) {
+                        write(insert, currentDay, sketches);
+                        currentDay = day;
+                    }
+                    add(sketches.computeIfAbsent(rs.getString("type"), _ -> new byte[1 << PRECISION]), rs.getLong("customer_id"));
+                }
+            }
+            write(insert, currentDay, sketches);
+        }
+    }
+
+    private static void add(byte[] registers, long customerId) {
+        long hash = mix(customerId);
+        int index = (int) (hash >>> (64 - PRECISION));
+        byte rank = (byte) (Long.numberOfLeadingZeros((hash << PRECISION) | (1L << (PRECISION - 1))) + 1);
+        if (rank > registers[index]) {
+            registers[index] = rank;
+        }
+    }
+
+    // SplitMix64 finalizer, as in HyperLogLog
+    private static long mix(long value) {
+        long z = value + 0x9e3779b97f4a7c15L;
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    private static void write(PreparedStatement insert, LocalDate day, Map<String, byte[]> sketches) throws Exception {
+        if (day == null) {
+            return;
+        }
+        for (Map.Entry<String, byte[]> sketch : sketches.entrySet()) {
+            insert.setDate(1, Date.valueOf(day));
+            insert.setString(2, sketch.getKey());
+            insert.setBytes(3, sketch.getValue());
+            insert.executeUpdate();
+        }
+        sketches.clear();
+    }
+}
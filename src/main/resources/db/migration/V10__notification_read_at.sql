@@ -0,0 +1,3 @@
+-- When the recipient first opened the notification, set by read tracking and READ status updates.
+-- Notifications that were marked READ before keep a null read_at.
+ALTER TABLE notification_logs ADD COLUMN read_at TIMESTAMP(6);
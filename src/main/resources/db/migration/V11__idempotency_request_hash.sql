@@ -0,0 +1,3 @@
+-- The hash of the request that claimed the key, so a key reused for a different notification is rejected instead
+-- of answered with the original one. Keys claimed before this column existed have none and are not checked.
+ALTER TABLE notification_idempotency_keys ADD COLUMN request_hash VARCHAR(64);
@@ -0,0 +1,4 @@
+-- A running campaign is written by the one node holding its lease, which it extends with every chunk; a campaign
+-- whose node died is taken over once the lease has run out.
+ALTER TABLE campaigns ADD COLUMN lease_token VARCHAR(36);
+ALTER TABLE campaigns ADD COLUMN lease_until TIMESTAMP(6);
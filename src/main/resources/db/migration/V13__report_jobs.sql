@@ -0,0 +1,23 @@
+-- Background report jobs, readable from every node. A queued or running job is leased by the node running it; the
+-- partial unique index lets only one of several identical reports be in flight at a time.
+CREATE TABLE report_jobs (
+    id             UUID PRIMARY KEY,
+    report         VARCHAR(255) NOT NULL,
+    start_date     TIMESTAMP(6),
+    end_date       TIMESTAMP(6),
+    distinct_count VARCHAR(255),
+    status         VARCHAR(255) NOT NULL,
+    result         JSONB,
+    failure_reason VARCHAR(255),
+    submitted_at   TIMESTAMP(6) NOT NULL,
+    started_at     TIMESTAMP(6),
+    completed_at   TIMESTAMP(6),
+    lease_until    TIMESTAMP(6)
+);
+
+CREATE UNIQUE INDEX uk_report_jobs_in_flight ON report_jobs
+    (report, COALESCE(start_date, '-infinity'), COALESCE(end_date, 'infinity'), COALESCE(distinct_count, ''))
+    WHERE status IN ('QUEUED', 'RUNNING');
+
+CREATE INDEX idx_report_jobs_completed_at ON report_jobs (completed_at);
+CREATE INDEX idx_report_jobs_lease_until ON report_jobs (lease_until) WHERE status IN ('QUEUED', 'RUNNING');
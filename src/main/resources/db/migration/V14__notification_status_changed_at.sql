@@ -0,0 +1,3 @@
+-- The provider's timestamp of the last status callback applied to the current attempt; a callback reported before
+-- it arrived out of order and is ignored. Cleared when a retry starts a new attempt.
+ALTER TABLE notification_logs ADD COLUMN status_changed_at TIMESTAMP(6);
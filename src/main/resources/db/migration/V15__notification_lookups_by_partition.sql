@@ -0,0 +1,37 @@
+-- Lookups by id or provider reference used to probe every monthly partition of notification_logs. New ids carry
+-- their creation month above the sequence value (see NotificationIds), and these functions turn an id into the
+-- range of created_at it was created in, so the lookup is pruned to one partition. Ids without a month, from
+-- before this migration, may be in any partition.
+CREATE FUNCTION notification_created_from(notification_id BIGINT) RETURNS TIMESTAMP
+    LANGUAGE sql IMMUTABLE PARALLEL SAFE AS $$
+    SELECT CASE WHEN notification_id >> 40 = 0 THEN '-infinity'::timestamp
+                ELSE TIMESTAMP '2000-01-01' + make_interval(months => ((notification_id >> 40) - 1)::int) END
+$$;
+
+CREATE FUNCTION notification_created_before(notification_id BIGINT) RETURNS TIMESTAMP
+    LANGUAGE sql IMMUTABLE PARALLEL SAFE AS $$
+    SELECT CASE WHEN notification_id >> 40 = 0 THEN 'infinity'::timestamp
+                ELSE TIMESTAMP '2000-01-01' + make_interval(months => (notification_id >> 40)::int) END
+$$;
+
+-- Rows outside every monthly partition land here instead of failing the insert; NotificationPartitionManager
+-- alerts while it holds any.
+CREATE TABLE notification_logs_default PARTITION OF notification_logs DEFAULT;
+
+-- A partitioned table cannot enforce a unique external_reference_id, so the references are claimed here, which
+-- also gives lookups by reference the created_at to prune by. The first notification to claim a reference keeps it.
+CREATE TABLE notification_external_references (
+    external_reference_id VARCHAR(255) PRIMARY KEY,
+    notification_id       BIGINT       NOT NULL,
+    created_at            TIMESTAMP(6) NOT NULL
+);
+
+CREATE INDEX idx_notification_external_references_created_at ON notification_external_references (created_at);
+
+INSERT INTO notification_external_references (external_reference_id, notification_id, created_at)
+SELECT DISTINCT ON (external_reference_id) external_reference_id, id, created_at
+FROM notification_logs
+WHERE external_reference_id IS NOT NULL
+ORDER BY external_reference_id, created_at, id;
+
+DROP INDEX idx_notification_logs_external_reference_id;
@@ -0,0 +1,15 @@
+-- Outbox rows still unprocessed after notification.outbox.max-attempts claims are moved here by the relay, so a
+-- row that fails every time stops being claimed. They are kept for inspection and replay.
+CREATE TABLE notification_outbox_dead_letters (
+    id               BIGINT       PRIMARY KEY,
+    notification_id  BIGINT       NOT NULL,
+    type             VARCHAR(255) NOT NULL,
+    event_type       VARCHAR(255) NOT NULL,
+    status           VARCHAR(255),
+    previous_status  VARCHAR(255),
+    attempts         INTEGER      NOT NULL,
+    created_at       TIMESTAMP(6),
+    dead_lettered_at TIMESTAMP(6) NOT NULL
+);
+
+CREATE INDEX idx_notification_outbox_dead_letters_dead_lettered_at ON notification_outbox_dead_letters (dead_lettered_at);
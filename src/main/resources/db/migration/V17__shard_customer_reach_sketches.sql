@@ -0,0 +1,8 @@
+-- Every relay worker adding today's customers used to lock the same row per type. Writers now pick one of
+-- notification.customer-reach.shards rows per day and type, and readers merge the shards of a day. Existing
+-- sketches become shard 0.
+ALTER TABLE customer_reach_sketches ADD COLUMN shard SMALLINT NOT NULL DEFAULT 0;
+
+ALTER TABLE customer_reach_sketches DROP CONSTRAINT customer_reach_sketches_pkey;
+
+ALTER TABLE customer_reach_sketches ADD PRIMARY KEY (day, type, shard);
@@ -0,0 +1,108 @@
+-- Schema as previously generated by Hibernate from the entities
+
+CREATE TABLE admins (
+    id         BIGSERIAL PRIMARY KEY,
+    username   VARCHAR(255) NOT NULL UNIQUE,
+    password   VARCHAR(255) NOT NULL,
+    first_name VARCHAR(255),
+    last_name  VARCHAR(255),
+    email      VARCHAR(255),
+    created_at TIMESTAMP(6),
+    updated_at TIMESTAMP(6)
+);
+
+CREATE TABLE customers (
+    id          BIGSERIAL PRIMARY KEY,
+    first_name  VARCHAR(255),
+    last_name   VARCHAR(255),
+    external_id VARCHAR(255) UNIQUE,
+    created_at  TIMESTAMP(6),
+    updated_at  TIMESTAMP(6)
+);
+
+CREATE TABLE addresses (
+    id          BIGSERIAL PRIMARY KEY,
+    type        VARCHAR(255),
+    value       VARCHAR(255),
+    customer_id BIGINT       NOT NULL REFERENCES customers (id),
+    verified    BOOLEAN      NOT NULL,
+    is_primary  BOOLEAN      NOT NULL,
+    created_at  TIMESTAMP(6),
+    updated_at  TIMESTAMP(6)
+);
+
+CREATE TABLE notification_preferences (
+    id           BIGSERIAL PRIMARY KEY,
+    type         VARCHAR(255),
+    channel_type VARCHAR(255),
+    opted_in     BOOLEAN NOT NULL,
+    customer_id  BIGINT  NOT NULL REFERENCES customers (id),
+    created_at   TIMESTAMP(6),
+    updated_at   TIMESTAMP(6)
+);
+
+CREATE SEQUENCE notification_logs_seq START WITH 1 INCREMENT BY 50;
+
+CREATE TABLE notification_logs (
+    id                    BIGINT PRIMARY KEY,
+    customer_id           BIGINT  NOT NULL REFERENCES customers (id),
+    address_id            BIGINT  NOT NULL REFERENCES addresses (id),
+    type                  VARCHAR(255),
+    status                VARCHAR(255),
+    external_reference_id VARCHAR(255),
+    subject               VARCHAR(255),
+    content               VARCHAR(255),
+    sent_at               TIMESTAMP(6),
+    delivered_at          TIMESTAMP(6),
+    failure_reason        VARCHAR(255),
+    attempt_count         INTEGER NOT NULL,
+    max_attempts          INTEGER NOT NULL,
+    next_attempt_at       TIMESTAMP(6),
+    idempotency_key       VARCHAR(255),
+    created_at            TIMESTAMP(6),
+    updated_at            TIMESTAMP(6)
+);
+
+CREATE INDEX idx_notification_logs_next_attempt_at ON notification_logs (next_attempt_at);
+CREATE INDEX idx_notification_logs_customer_created ON notification_logs (customer_id, created_at DESC, id DESC);
+CREATE INDEX idx_notification_logs_created ON notification_logs (created_at DESC, id DESC);
+CREATE UNIQUE INDEX uk_notification_logs_idempotency_key ON notification_logs (idempotency_key);
+CREATE UNIQUE INDEX uk_notification_logs_external_reference_id ON notification_logs (external_reference_id);
+
+CREATE TABLE notification_outbox (
+    id              BIGSERIAL PRIMARY KEY,
+    notification_id BIGINT       NOT NULL,
+    type            VARCHAR(255) NOT NULL,
+    event_type      VARCHAR(255) NOT NULL,
+    status          VARCHAR(255),
+    locked_until    TIMESTAMP(6),
+    attempts        INTEGER      NOT NULL,
+    created_at      TIMESTAMP(6)
+);
+
+CREATE INDEX idx_notification_outbox_notification_id ON notification_outbox (notification_id);
+CREATE INDEX idx_notification_outbox_type_id ON notification_outbox (type, id);
+
+CREATE TABLE campaigns (
+    id                    BIGSERIAL PRIMARY KEY,
+    type                  VARCHAR(255),
+    subject               VARCHAR(255),
+    content               VARCHAR(255),
+    name_filter           VARCHAR(255),
+    email_filter          VARCHAR(255),
+    phone_filter          VARCHAR(255),
+    status                VARCHAR(255),
+    last_customer_id      BIGINT NOT NULL,
+    matched_customers     BIGINT NOT NULL,
+    notifications_created BIGINT NOT NULL,
+    failure_reason        VARCHAR(255),
+    started_at            TIMESTAMP(6),
+    completed_at          TIMESTAMP(6),
+    created_at            TIMESTAMP(6),
+    updated_at            TIMESTAMP(6)
+);
+
+CREATE TABLE campaign_opted_in_types (
+    campaign_id BIGINT NOT NULL REFERENCES campaigns (id),
+    type        VARCHAR(255)
+);
@@ -0,0 +1,71 @@
+-- Range-partition notification_logs by month of created_at. New partitions are created ahead of time and old
+-- ones detached or dropped by NotificationPartitionManager.
+--
+-- A partitioned table only supports unique indexes that include the partition key, so idempotency keys move to
+-- their own table and external_reference_id keeps a plain (per-partition) index.
+
+ALTER TABLE notification_logs RENAME TO notification_logs_unpartitioned;
+ALTER INDEX notification_logs_pkey RENAME TO notification_logs_unpartitioned_pkey;
+ALTER INDEX idx_notification_logs_next_attempt_at RENAME TO idx_notification_logs_unpartitioned_next_attempt_at;
+ALTER INDEX idx_notification_logs_customer_created RENAME TO idx_notification_logs_unpartitioned_customer_created;
+ALTER INDEX idx_notification_logs_created RENAME TO idx_notification_logs_unpartitioned_created;
+
+CREATE TABLE notification_logs (
+    id                    BIGINT       NOT NULL,
+    customer_id           BIGINT       NOT NULL REFERENCES customers (id),
+    address_id            BIGINT       NOT NULL REFERENCES addresses (id),
+    type                  VARCHAR(255),
+    status                VARCHAR(255),
+    external_reference_id VARCHAR(255),
+    subject               VARCHAR(255),
+    content               VARCHAR(255),
+    sent_at               TIMESTAMP(6),
+    delivered_at          TIMESTAMP(6),
+    failure_reason        VARCHAR(255),
+    attempt_count         INTEGER      NOT NULL,
+    max_attempts          INTEGER      NOT NULL,
+    next_attempt_at       TIMESTAMP(6),
+    created_at            TIMESTAMP(6) NOT NULL,
+    updated_at            TIMESTAMP(6),
+    PRIMARY KEY (id, created_at)
+) PARTITION BY RANGE (created_at);
+
+CREATE INDEX idx_notification_logs_next_attempt_at ON notification_logs (next_attempt_at);
+CREATE INDEX idx_notification_logs_customer_created ON notification_logs (customer_id, created_at DESC, id DESC);
+CREATE INDEX idx_notification_logs_created ON notification_logs (created_at DESC, id DESC);
+CREATE INDEX idx_notification_logs_external_reference_id ON notification_logs (external_reference_id);
+
+-- one partition per month from the oldest existing row through two months ahead
+DO $$
+DECLARE
+    partition_month DATE := date_trunc('month', LEAST(COALESCE((SELECT MIN(created_at) FROM notification_logs_unpartitioned), LOCALTIMESTAMP), LOCALTIMESTAMP));
+BEGIN
+    WHILE partition_month <= date_trunc('month', LOCALTIMESTAMP) + INTERVAL '2 months' LOOP
+        EXECUTE format('CREATE TABLE %I PARTITION OF notification_logs FOR VALUES FROM (%L) TO (%L)',
+                       'notification_logs_p' || to_char(partition_month, 'YYYY_MM'), partition_month, partition_month + INTERVAL '1 month');
+        partition_month := partition_month + INTERVAL '1 month';
+    END LOOP;
+END $$;
+
+CREATE TABLE notification_idempotency_keys (
+    idempotency_key VARCHAR(255) PRIMARY KEY,
+    notification_id BIGINT       NOT NULL,
+    created_at      TIMESTAMP(6) NOT NULL
+);
+
+CREATE INDEX idx_notification_idempotency_keys_created_at ON notification_idempotency_keys (created_at);
+
+INSERT INTO notification_logs (id, customer_id, address_id, type, status, external_reference_id, subject, content,
+                               sent_at, delivered_at, failure_reason, attempt_count, max_attempts, next_attempt_at,
+                               created_at, updated_at)
+SELECT id, customer_id, address_id, type, status, external_reference_id, subject, content,
+       sent_at, delivered_at, failure_reason, attempt_count, max_attempts, next_attempt_at,
+       COALESCE(created_at, LOCALTIMESTAMP), updated_at
+FROM notification_logs_unpartitioned;
+
+INSERT INTO notification_idempotency_keys (idempotency_key, notification_id, created_at)
+SELECT idempotency_key, id, COALESCE(created_at, LOCALTIMESTAMP)
+FROM notification_logs_unpartitioned
+WHERE idempotency_key IS NOT NULL;
+
+DROP TABLE notification_logs_unpartitioned;
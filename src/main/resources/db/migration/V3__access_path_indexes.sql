@@ -0,0 +1,23 @@
+-- Indexes for the access paths the application actually runs. Indexes created on the partitioned
+-- notification_logs table are created on every partition, including future ones.
+
+-- report queries: status counts and success rates over a date range
+CREATE INDEX idx_notification_logs_status_created ON notification_logs (status, created_at);
+
+-- report queries grouped by type and status, and top failure reasons per type without touching the heap
+CREATE INDEX idx_notification_logs_type_status_created ON notification_logs (type, status, created_at) INCLUDE (failure_reason);
+
+-- search filtered by type or status, newest first
+CREATE INDEX idx_notification_logs_type_created ON notification_logs (type, created_at DESC, id DESC);
+
+-- retry reload only ever looks at rows with a scheduled attempt
+DROP INDEX idx_notification_logs_next_attempt_at;
+CREATE INDEX idx_notification_logs_next_attempt_at ON notification_logs (next_attempt_at) WHERE next_attempt_at IS NOT NULL;
+
+-- address lookups by customer, by customer and type, and the primary address of a type
+CREATE INDEX idx_addresses_customer_type_primary ON addresses (customer_id, type, is_primary);
+
+-- preference lookups by customer, and the opted-in filter of customer search
+CREATE INDEX idx_notification_preferences_customer_type ON notification_preferences (customer_id, type);
+
+CREATE INDEX idx_campaign_opted_in_types_campaign ON campaign_opted_in_types (campaign_id);
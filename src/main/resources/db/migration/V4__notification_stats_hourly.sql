@@ -0,0 +1,22 @@
+-- Notification counts per creation hour, type, current status and channel, kept up to date by the outbox relay
+-- from the STATUS_CHANGED rows: each row moves one notification from previous_status to status, and a row
+-- without previous_status counts a new notification.
+CREATE TABLE notification_stats_hourly (
+    bucket  TIMESTAMP(6) NOT NULL,
+    type    VARCHAR(255) NOT NULL,
+    status  VARCHAR(255) NOT NULL,
+    channel VARCHAR(255) NOT NULL,
+    count   BIGINT       NOT NULL,
+    PRIMARY KEY (bucket, type, status, channel)
+);
+
+ALTER TABLE notification_outbox ADD COLUMN previous_status VARCHAR(255);
+
+-- pending STATUS_CHANGED rows carry no previous status and are already reflected in the backfill below
+DELETE FROM notification_outbox WHERE event_type = 'STATUS_CHANGED';
+
+INSERT INTO notification_stats_hourly (bucket, type, status, channel, count)
+SELECT date_trunc('hour', n.created_at), n.type, n.status, a.type, COUNT(*)
+FROM notification_logs n
+JOIN addresses a ON a.id = n.address_id
+GROUP BY 1, 2, 3, 4;
@@ -0,0 +1,40 @@
+-- Lifetime notification counts per customer, type and current status, and the customer's latest send and
+-- delivery, kept up to date by the outbox relay together with notification_stats_hourly.
+CREATE TABLE customer_notification_stats (
+    customer_id BIGINT       NOT NULL,
+    type        VARCHAR(255) NOT NULL,
+    status      VARCHAR(255) NOT NULL,
+    count       BIGINT       NOT NULL,
+    PRIMARY KEY (customer_id, type, status)
+);
+
+CREATE TABLE customer_notification_activity (
+    customer_id       BIGINT PRIMARY KEY,
+    last_sent_at      TIMESTAMP(6),
+    last_delivered_at TIMESTAMP(6)
+);
+
+-- STATUS_CHANGED rows still in the outbox are applied by the relay after this migration, so their changes are
+-- taken back out of the current statuses; otherwise the counters would end up counting them twice.
+INSERT INTO customer_notification_stats (customer_id, type, status, count)
+SELECT customer_id, type, status, SUM(delta)
+FROM (SELECT customer_id, type, status, 1 AS delta
+      FROM notification_logs
+      UNION ALL
+      SELECT n.customer_id, n.type, o.status, -1
+      FROM notification_outbox o
+      JOIN notification_logs n ON n.id = o.notification_id
+      WHERE o.event_type = 'STATUS_CHANGED'
+      UNION ALL
+      SELECT n.customer_id, n.type, o.previous_status, 1
+      FROM notification_outbox o
+      JOIN notification_logs n ON n.id = o.notification_id
+      WHERE o.event_type = 'STATUS_CHANGED' AND o.previous_status IS NOT NULL) changes
+GROUP BY customer_id, type, status
+HAVING SUM(delta) <> 0;
+
+-- the latest times are merged with GREATEST, so applying a pending row again does no harm here
+INSERT INTO customer_notification_activity (customer_id, last_sent_at, last_delivered_at)
+SELECT customer_id, MAX(sent_at), MAX(delivered_at)
+FROM notification_logs
+GROUP BY customer_id;
@@ -0,0 +1,23 @@
+-- Hourly snapshots of the Space-Saving failure reason sketches. Nodes add the counts they gathered since their
+-- last flush, so the rows of a window are the merge of every node's sketch. error is the overestimation the
+-- sketch may have added to count.
+CREATE TABLE failure_reason_counts (
+    window_start TIMESTAMP(6)  NOT NULL,
+    type         VARCHAR(255)  NOT NULL,
+    reason       VARCHAR(255)  NOT NULL,
+    count        BIGINT        NOT NULL,
+    error        BIGINT        NOT NULL,
+    PRIMARY KEY (window_start, type, reason)
+);
+
+-- exact counts for the existing failures, keeping the 100 most frequent reasons per hour and type
+INSERT INTO failure_reason_counts (window_start, type, reason, count, error)
+SELECT window_start, type, reason, count, 0
+FROM (SELECT date_trunc('hour', created_at) AS window_start, type,
+             LEFT(COALESCE(NULLIF(failure_reason, ''), 'unspecified'), 255) AS reason,
+             COUNT(*) AS count,
+             row_number() OVER (PARTITION BY date_trunc('hour', created_at), type ORDER BY COUNT(*) DESC) AS rank
+      FROM notification_logs
+      WHERE status = 'FAILED'
+      GROUP BY 1, 2, 3) ranked
+WHERE rank <= 100;
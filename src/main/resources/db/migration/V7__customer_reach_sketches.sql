@@ -0,0 +1,8 @@
+-- HyperLogLog sketches of the distinct customers notified per day and type (see HyperLogLog for the register
+-- layout), kept up to date by the outbox relay. Existing notifications are added by V8.
+CREATE TABLE customer_reach_sketches (
+    day       DATE         NOT NULL,
+    type      VARCHAR(255) NOT NULL,
+    registers BYTEA        NOT NULL,
+    PRIMARY KEY (day, type)
+);
@@ -0,0 +1,9 @@
+-- Sent-to-delivered latency in milliseconds per hour, type and channel, as compressed HdrHistogram encodings.
+-- Every node merges its per-minute histograms into the row of their hour.
+CREATE TABLE delivery_latency_histograms (
+    hour      TIMESTAMP(6) NOT NULL,
+    type      VARCHAR(255) NOT NULL,
+    channel   VARCHAR(255) NOT NULL,
+    histogram BYTEA        NOT NULL,
+    PRIMARY KEY (hour, type, channel)
+);
@@ -0,0 +1,151 @@
+package croco.prjcustomernotification.callback;
+
+import croco.prjcustomernotification.dto.NotificationStatusCallbackDto;
+import croco.prjcustomernotification.enums.AddressType;
+import croco.prjcustomernotification.enums.NotificationStatus;
+import croco.prjcustomernotification.enums.NotificationType;
+import croco.prjcustomernotification.failure.FailureReasonTracker;
+import croco.prjcustomernotification.latency.DeliveryLatencyHistograms;
+import croco.prjcustomernotification.live.LiveNotificationCounters;
+import croco.prjcustomernotification.partition.NotificationIds;
+import croco.prjcustomernotification.retry.RetryPolicy;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
+import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+
+/**
+ * Applies callbacks against the migrated schema in PostgreSQL. The tests run outside a test transaction, so the
+ * writer's own transactions commit and run their after-commit work.
+ */
+@JdbcTest
+@Testcontainers
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@Import(StatusCallbackWriter.class)
+class StatusCallbackWriterTest {
+
+    @Container
+    @ServiceConnection
+    static final PostgreSQLContainer<?> POSTGRES = new PostgreSQLContainer<>("postgres:16-alpine");
+
+    private static final LocalDateTime CREATED_AT = LocalDateTime.of(2026, 5, 4, 10, 15);
+    private static final long ID = NotificationIds.encode(1, CREATED_AT);
+
+    @Autowired
+    private StatusCallbackWriter writer;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @MockitoBean
+    private RetryPolicy retryPolicy;
+
+    @MockitoBean
+    private LiveNotificationCounters liveCounters;
+
+    @MockitoBean
+    private FailureReasonTracker failureReasonTracker;
+
+    @MockitoBean
+    private DeliveryLatencyHistograms latencyHistograms;
+
+    @BeforeEach
+    void insertNotification() {
+        jdbcTemplate.update("INSERT INTO customers (id, first_name) VALUES (1, 'Ada')");
+        jdbcTemplate.update("INSERT INTO addresses (id, type, value, customer_id, verified, is_primary) VALUES (1, 'EMAIL', 'ada@example.com', 1, true, true)");
+        jdbcTemplate.update("INSERT INTO notification_logs (id, customer_id, address_id, type, status, sent_at, attempt_count, max_attempts, created_at) " +
+                "VALUES (?, 1, 1, 'TRANSACTIONAL', 'PENDING', ?, 1, 3, ?)", ID, CREATED_AT, CREATED_AT);
+        jdbcTemplate.update("INSERT INTO notification_external_references (external_reference_id, notification_id, created_at) VALUES ('ref-1', ?, ?)", ID, CREATED_AT);
+    }
+
+    @AfterEach
+    void deleteRows() {
+        jdbcTemplate.update("TRUNCATE notification_outbox, notification_external_references, notification_logs, addresses, customers CASCADE");
+    }
+
+    @Test
+    void appliedStatusChangeIsQueuedAndCountedAfterCommit() {
+        AppliedCallbacks<String> applied = writer.applyByExternalReference(List.of(callback(NotificationStatus.DELIVERED, CREATED_AT.plusMinutes(1))));
+
+        assertThat(applied.updated()).containsExactly("ref-1");
+        assertThat(status()).isEqualTo("DELIVERED");
+        assertThat(jdbcTemplate.queryForList("SELECT previous_status || '>' || status FROM notification_outbox", String.class)).containsExactly("PENDING>DELIVERED");
+        verify(liveCounters).recordStatus(NotificationStatus.DELIVERED, NotificationType.TRANSACTIONAL, AddressType.EMAIL);
+        verify(latencyHistograms).record(NotificationType.TRANSACTIONAL, AddressType.EMAIL, CREATED_AT, CREATED_AT.plusMinutes(1));
+    }
+
+    @Test
+    void callbackReportedBeforeTheLastAppliedOneIsIgnored() {
+        writer.applyById(List.of(byId(NotificationStatus.DELIVERED, CREATED_AT.plusMinutes(2))));
+        jdbcTemplate.update("TRUNCATE notification_outbox");
+
+        AppliedCallbacks<Long> applied = writer.applyById(List.of(byId(NotificationStatus.FAILED, CREATED_AT.plusMinutes(1))));
+
+        assertThat(applied.updated()).isEmpty();
+        assertThat(applied.ignored()).isEqualTo(Set.of(ID));
+        assertThat(status()).isEqualTo("DELIVERED");
+        assertThat(outboxRows()).isZero();
+    }
+
+    @Test
+    void repeatedStatusQueuesNoOutboxRow() {
+        writer.applyById(List.of(byId(NotificationStatus.DELIVERED, CREATED_AT.plusMinutes(1))));
+        jdbcTemplate.update("TRUNCATE notification_outbox");
+
+        AppliedCallbacks<Long> applied = writer.applyById(List.of(byId(NotificationStatus.DELIVERED, CREATED_AT.plusMinutes(2))));
+
+        assertThat(applied.updated()).containsExactly(ID);
+        assertThat(outboxRows()).isZero();
+    }
+
+    @Test
+    void rolledBackChunkRecordsNothingInMemory() {
+        transactionTemplate.executeWithoutResult(status -> {
+            writer.applyById(List.of(byId(NotificationStatus.FAILED, CREATED_AT.plusMinutes(1))));
+            status.setRollbackOnly();
+        });
+
+        assertThat(status()).isEqualTo("PENDING");
+        verifyNoInteractions(liveCounters, failureReasonTracker);
+    }
+
+    private String status() {
+        return jdbcTemplate.queryForObject("SELECT status FROM notification_logs WHERE id = ?", String.class, ID);
+    }
+
+    private long outboxRows() {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM notification_outbox", Long.class);
+    }
+
+    private static NotificationStatusCallbackDto callback(NotificationStatus status, LocalDateTime timestamp) {
+        return NotificationStatusCallbackDto.builder().externalReferenceId("ref-1").status(status).failureReason("bounced").timestamp(timestamp).build();
+    }
+
+    private static NotificationStatusCallbackDto byId(NotificationStatus status, LocalDateTime timestamp) {
+        return NotificationStatusCallbackDto.builder().id(ID).status(status).failureReason("bounced").timestamp(timestamp).build();
+    }
+}
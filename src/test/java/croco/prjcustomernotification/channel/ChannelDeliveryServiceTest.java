@@ -0,0 +1,107 @@
+package croco.prjcustomernotification.channel;
+
+import croco.prjcustomernotification.enums.AddressType;
+import croco.prjcustomernotification.enums.NotificationStatus;
+import croco.prjcustomernotification.enums.NotificationType;
+import croco.prjcustomernotification.enums.OutboxEventType;
+import croco.prjcustomernotification.failure.FailureReasonTracker;
+import croco.prjcustomernotification.lane.LaneProperties;
+import croco.prjcustomernotification.latency.DeliveryLatencyHistograms;
+import croco.prjcustomernotification.live.LiveNotificationCounters;
+import croco.prjcustomernotification.model.OutboxEvent;
+import croco.prjcustomernotification.repository.NotificationLogRepository;
+import croco.prjcustomernotification.repository.OutboxEventRepository;
+import croco.prjcustomernotification.retry.RetryPolicy;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.after;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ChannelDeliveryServiceTest {
+
+    private static final long ID = 42L;
+    private static final ChannelMessage MESSAGE = new ChannelMessage(ID, 7L, NotificationType.TRANSACTIONAL, AddressType.EMAIL, "ada@example.com",
+            "subject", "content", LocalDateTime.now(), 1, 3, "token");
+
+    private final NotificationLogRepository notificationLogRepository = mock(NotificationLogRepository.class);
+    private final OutboxEventRepository outboxEventRepository = mock(OutboxEventRepository.class);
+    private final LiveNotificationCounters liveCounters = mock(LiveNotificationCounters.class);
+    private final ChannelSender sender = mock(ChannelSender.class);
+    private ChannelDeliveryService service;
+
+    @BeforeEach
+    void start() {
+        when(sender.channel()).thenReturn(AddressType.EMAIL);
+        when(sender.send(any())).thenReturn(ChannelSendResult.delivered("ref-1"));
+        service = new ChannelDeliveryService(List.of(sender), new ChannelProperties(Map.of()), new LaneProperties(Map.of()),
+                notificationLogRepository, outboxEventRepository, new TransactionTemplate(mock(PlatformTransactionManager.class)),
+                mock(RetryPolicy.class), mock(ApplicationEventPublisher.class), liveCounters, mock(FailureReasonTracker.class),
+                mock(DeliveryLatencyHistograms.class), new SimpleMeterRegistry());
+        service.start();
+    }
+
+    @AfterEach
+    void stop() throws InterruptedException {
+        service.stop();
+    }
+
+    @Test
+    void deliveredResultIsRecordedWithAStatusChange() {
+        when(notificationLogRepository.lockStatusById(ID)).thenReturn(Optional.of("PENDING"));
+        when(notificationLogRepository.claimExternalReference(ID, "ref-1")).thenReturn(1);
+        when(notificationLogRepository.updateDeliveryResult(eq(ID), eq(NotificationStatus.DELIVERED), eq("ref-1"), any(), isNull(), isNull(), any())).thenReturn(1);
+
+        service.offer(MESSAGE);
+
+        verify(outboxEventRepository, timeout(5000)).save(statusChange(NotificationStatus.PENDING, NotificationStatus.DELIVERED));
+        verify(outboxEventRepository).deleteByNotificationIdAndEventType(ID, OutboxEventType.DELIVERY);
+    }
+
+    @Test
+    void resultOvertakenByACallbackOnlyKeepsTheReference() {
+        when(notificationLogRepository.lockStatusById(ID)).thenReturn(Optional.of("READ"));
+        when(notificationLogRepository.claimExternalReference(ID, "ref-1")).thenReturn(1);
+
+        service.offer(MESSAGE);
+
+        verify(notificationLogRepository, timeout(5000)).updateExternalReference(ID, "ref-1");
+        verify(outboxEventRepository).deleteByNotificationIdAndEventType(ID, OutboxEventType.DELIVERY);
+        verify(outboxEventRepository, never()).save(any());
+        verify(liveCounters, never()).record(any(), any(), any());
+    }
+
+    @Test
+    void resultOfAMissingNotificationWritesNothing() {
+        when(notificationLogRepository.lockStatusById(ID)).thenReturn(Optional.empty());
+
+        service.offer(MESSAGE);
+
+        verify(notificationLogRepository, timeout(5000)).lockStatusById(ID);
+        verify(notificationLogRepository, after(200).never()).claimExternalReference(any(), anyString());
+        verify(outboxEventRepository, never()).save(any());
+    }
+
+    private static OutboxEvent statusChange(NotificationStatus previousStatus, NotificationStatus status) {
+        return argThat(event -> event.getEventType() == OutboxEventType.STATUS_CHANGED && event.getPreviousStatus() == previousStatus && event.getStatus() == status);
+    }
+}
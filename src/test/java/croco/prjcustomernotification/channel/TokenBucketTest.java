@@ -0,0 +1,60 @@
+package croco.prjcustomernotification.channel;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TokenBucketTest {
+
+    @Test
+    void burstIsServedWithoutWaiting() throws InterruptedException {
+        TokenBucket bucket = new TokenBucket(1, 5);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < 5; i++) {
+            bucket.acquire();
+        }
+
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)).isLessThan(500);
+    }
+
+    @Test
+    void callersBeyondTheBurstWaitForTheRate() throws InterruptedException {
+        TokenBucket bucket = new TokenBucket(20, 2);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < 8; i++) {
+            bucket.acquire();
+        }
+
+        // the 6 permits beyond the burst take 6 / 20 s
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)).isGreaterThanOrEqualTo(250);
+    }
+
+    @Test
+    void concurrentCallersShareTheRate() throws InterruptedException {
+        TokenBucket bucket = new TokenBucket(50, 1);
+        Thread[] callers = new Thread[5];
+
+        long start = System.nanoTime();
+        for (int i = 0; i < callers.length; i++) {
+            callers[i] = Thread.ofVirtual().start(() -> {
+                try {
+                    for (int j = 0; j < 5; j++) {
+                        bucket.acquire();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+        }
+        for (Thread caller : callers) {
+            caller.join();
+        }
+
+        // 24 permits beyond the burst at 50 per second
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)).isGreaterThanOrEqualTo(400);
+    }
+}
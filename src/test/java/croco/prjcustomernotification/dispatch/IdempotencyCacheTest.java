@@ -0,0 +1,116 @@
+package croco.prjcustomernotification.dispatch;
+
+import croco.prjcustomernotification.dto.NotificationLogDto;
+import croco.prjcustomernotification.enums.AddressType;
+import croco.prjcustomernotification.enums.NotificationType;
+import croco.prjcustomernotification.exception.IdempotencyKeyReusedException;
+import croco.prjcustomernotification.exception.NotificationNotStoredException;
+import croco.prjcustomernotification.routing.Route;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class IdempotencyCacheTest {
+
+    private static final String HASH = IdempotencyCache.requestHash(1L, NotificationType.TRANSACTIONAL, "subject", "content");
+    private static final NotificationLogDto RESPONSE = NotificationLogDto.builder().id(42L).build();
+
+    private final IdempotencyCache cache = new IdempotencyCache(new SimpleMeterRegistry(), 100, Duration.ofHours(1), Duration.ofMillis(200));
+    private final AtomicInteger loads = new AtomicInteger();
+
+    @Test
+    void repeatedRequestGetsTheFirstResponse() {
+        assertThat(cache.get("key", HASH, this::load)).isSameAs(RESPONSE);
+        assertThat(cache.get("key", HASH, this::load)).isSameAs(RESPONSE);
+
+        assertThat(loads).hasValue(1);
+    }
+
+    @Test
+    void keyReusedForADifferentRequestIsRejected() {
+        cache.get("key", HASH, this::load);
+        String otherHash = IdempotencyCache.requestHash(1L, NotificationType.TRANSACTIONAL, "subject", "other content");
+
+        assertThatThrownBy(() -> cache.get("key", otherHash, this::load)).isInstanceOf(IdempotencyKeyReusedException.class);
+    }
+
+    @Test
+    void keyOfARowStoredWithoutAHashMatchesAnyRequest() {
+        cache.get("key", HASH, _ -> new IdempotencyCache.Entry(null, RESPONSE));
+
+        assertThat(cache.get("key", "another hash", this::load)).isSameAs(RESPONSE);
+    }
+
+    @Test
+    void failedSendCanBeRetriedWithTheSameKey() {
+        assertThatThrownBy(() -> cache.get("key", HASH, _ -> {
+            throw new NotificationNotStoredException("not stored");
+        })).isInstanceOf(NotificationNotStoredException.class);
+
+        assertThat(cache.get("key", HASH, this::load)).isSameAs(RESPONSE);
+        assertThat(loads).hasValue(1);
+    }
+
+    @Test
+    void concurrentRequestWaitsForTheFirst() throws Exception {
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<NotificationLogDto> first = CompletableFuture.supplyAsync(() -> cache.get("key", HASH, key -> {
+            loading.countDown();
+            await(release);
+            return load(key);
+        }));
+        assertThat(loading.await(5, TimeUnit.SECONDS)).isTrue();
+
+        CompletableFuture<NotificationLogDto> second = CompletableFuture.supplyAsync(() -> cache.get("key", HASH, this::load));
+        release.countDown();
+
+        assertThat(first.get(5, TimeUnit.SECONDS)).isSameAs(RESPONSE);
+        assertThat(second.get(5, TimeUnit.SECONDS)).isSameAs(RESPONSE);
+        assertThat(loads).hasValue(1);
+    }
+
+    @Test
+    void blankOrOverlongKeysAreRejected() {
+        assertThatThrownBy(() -> cache.get(" ", HASH, this::load)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> cache.get("k".repeat(IdempotencyCache.MAX_KEY_LENGTH + 1), HASH, this::load)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void movingTextBetweenFieldsChangesTheHash() {
+        assertThat(IdempotencyCache.requestHash(1L, NotificationType.TRANSACTIONAL, "subjectcontent", ""))
+                .isNotEqualTo(IdempotencyCache.requestHash(1L, NotificationType.TRANSACTIONAL, "subject", "content"));
+        assertThat(IdempotencyCache.requestHash(1L, NotificationType.TRANSACTIONAL, null, "content"))
+                .isNotEqualTo(IdempotencyCache.requestHash(1L, NotificationType.TRANSACTIONAL, "", "content"));
+    }
+
+    @Test
+    void sendNotWrittenInTimeIsReportedAsNotStored() {
+        DispatchRequest request = new DispatchRequest(1L, new Route(1L, "Ada", 10L, AddressType.EMAIL, "ada@example.com"), NotificationType.TRANSACTIONAL,
+                "subject", "content", LocalDateTime.now(), 3, "key", new CompletableFuture<>());
+
+        assertThatThrownBy(() -> cache.awaitWritten(request)).isInstanceOf(NotificationNotStoredException.class);
+    }
+
+    private IdempotencyCache.Entry load(String key) {
+        loads.incrementAndGet();
+        return new IdempotencyCache.Entry(HASH, RESPONSE);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
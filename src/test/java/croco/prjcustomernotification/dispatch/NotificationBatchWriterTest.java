@@ -0,0 +1,45 @@
+package croco.prjcustomernotification.dispatch;
+
+import croco.prjcustomernotification.enums.AddressType;
+import croco.prjcustomernotification.enums.NotificationType;
+import croco.prjcustomernotification.partition.NotificationIds;
+import croco.prjcustomernotification.routing.Route;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class NotificationBatchWriterTest {
+
+    private final JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+    private final NotificationBatchWriter writer = new NotificationBatchWriter(jdbcTemplate);
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void requestAcceptedBeforeTheEndOfAMonthIsCreatedInThatMonth() {
+        // accepted in January, written by a worker in February
+        LocalDateTime acceptedAt = LocalDateTime.of(2026, 1, 31, 23, 59, 59, 999_000_000);
+        long id = NotificationIds.encode(4242, acceptedAt);
+        DispatchRequest request = new DispatchRequest(id, new Route(7L, "Ada", 11L, AddressType.EMAIL, "ada@example.com"),
+                NotificationType.TRANSACTIONAL, "subject", "content", acceptedAt, 3, null, new CompletableFuture<>());
+        when(jdbcTemplate.batchUpdate(startsWith("INSERT INTO notification_logs"), anyList())).thenReturn(new int[]{1});
+
+        assertThat(writer.write(List.of(request))).containsExactly(request);
+
+        ArgumentCaptor<List<Object[]>> rows = ArgumentCaptor.forClass(List.class);
+        verify(jdbcTemplate).batchUpdate(startsWith("INSERT INTO notification_logs"), rows.capture());
+        LocalDateTime createdAt = (LocalDateTime) rows.getValue().getFirst()[10];
+        assertThat(createdAt).isEqualTo(acceptedAt);
+        assertThat(createdAt).isAfterOrEqualTo(NotificationIds.createdFrom(id)).isBefore(NotificationIds.createdBefore(id));
+    }
+}
@@ -0,0 +1,125 @@
+package croco.prjcustomernotification.dispatch;
+
+import croco.prjcustomernotification.enums.AddressType;
+import croco.prjcustomernotification.enums.NotificationType;
+import croco.prjcustomernotification.exception.DispatchQueueFullException;
+import croco.prjcustomernotification.lane.LaneProperties;
+import croco.prjcustomernotification.live.LiveNotificationCounters;
+import croco.prjcustomernotification.partition.NotificationIds;
+import croco.prjcustomernotification.retry.RetryPolicy;
+import croco.prjcustomernotification.routing.Route;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class NotificationDispatcherTest {
+
+    private static final Route ROUTE = new Route(7L, "Ada", 11L, AddressType.EMAIL, "ada@example.com");
+
+    private final NotificationBatchWriter batchWriter = mock(NotificationBatchWriter.class);
+    private final NotificationIdAllocator idAllocator = mock(NotificationIdAllocator.class);
+    private final RetryPolicy retryPolicy = mock(RetryPolicy.class);
+    private final AtomicLong sequence = new AtomicLong();
+    private NotificationDispatcher dispatcher;
+
+    @BeforeEach
+    void allocateIds() {
+        when(idAllocator.nextId(any(LocalDateTime.class))).thenAnswer(invocation -> NotificationIds.encode(sequence.incrementAndGet(), invocation.getArgument(0)));
+        when(retryPolicy.maxAttemptsFor(any())).thenReturn(3);
+    }
+
+    @AfterEach
+    void stop() throws InterruptedException {
+        dispatcher.stop();
+    }
+
+    @Test
+    void acceptedRequestIsWrittenWithAnIdEncodingItsCreationTime() throws Exception {
+        start(new LaneProperties(Map.of()), 1);
+        when(batchWriter.write(anyList())).thenAnswer(invocation -> invocation.getArgument(0));
+
+        DispatchRequest request = dispatcher.submit(ROUTE, NotificationType.TRANSACTIONAL, "subject", "content", null);
+
+        assertThat(request.written().get(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(request.sentAt()).isAfterOrEqualTo(NotificationIds.createdFrom(request.id())).isBefore(NotificationIds.createdBefore(request.id()));
+    }
+
+    @Test
+    void failingBatchIsRetriedThenWrittenRowByRowSoOnlyTheBadRowFails() throws Exception {
+        CountDownLatch queued = new CountDownLatch(1);
+        when(batchWriter.write(anyList())).thenAnswer(invocation -> {
+            List<DispatchRequest> requests = invocation.getArgument(0);
+            // holds the worker until the next requests are queued, so they are taken as one batch
+            if (requests.getFirst().subject().equals("first")) {
+                queued.await();
+            }
+            if (requests.stream().anyMatch(request -> request.subject().equals("bad"))) {
+                throw new IllegalStateException("constraint violation");
+            }
+            return requests;
+        });
+        start(new LaneProperties(Map.of()), 1);
+        dispatcher.submit(ROUTE, NotificationType.TRANSACTIONAL, "first", "content", null);
+        while (dispatcher.getQueueDepth() > 0) {
+            Thread.sleep(5);
+        }
+
+        DispatchRequest good = dispatcher.submit(ROUTE, NotificationType.TRANSACTIONAL, "good", "content", null);
+        DispatchRequest bad = dispatcher.submit(ROUTE, NotificationType.TRANSACTIONAL, "bad", "content", null);
+        DispatchRequest other = dispatcher.submit(ROUTE, NotificationType.TRANSACTIONAL, "other", "content", null);
+        queued.countDown();
+
+        assertThat(good.written().get(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(other.written().get(5, TimeUnit.SECONDS)).isTrue();
+        assertThatThrownBy(() -> bad.written().get(5, TimeUnit.SECONDS)).isInstanceOf(ExecutionException.class)
+                .hasCauseInstanceOf(IllegalStateException.class);
+        verify(batchWriter, times(2)).write(argThat(requests -> requests != null && requests.size() == 3));
+    }
+
+    @Test
+    void skippedRowCompletesWithFalse() throws Exception {
+        start(new LaneProperties(Map.of()), 1);
+        when(batchWriter.write(anyList())).thenReturn(List.of());
+
+        DispatchRequest request = dispatcher.submit(ROUTE, NotificationType.MARKETING, "subject", "content", "key-1");
+
+        assertThat(request.written().get(5, TimeUnit.SECONDS)).isFalse();
+    }
+
+    @Test
+    void fullLaneRejectsTheRequest() {
+        // no workers, so nothing leaves the lane of capacity one
+        start(new LaneProperties(Map.of(NotificationType.MARKETING, new LaneProperties.Settings(1, 1, 0, Duration.ofSeconds(1)))), 0);
+
+        dispatcher.submit(ROUTE, NotificationType.MARKETING, "subject", "content", null);
+
+        assertThatThrownBy(() -> dispatcher.submit(ROUTE, NotificationType.MARKETING, "subject", "content", null))
+                .isInstanceOf(DispatchQueueFullException.class);
+    }
+
+    private void start(LaneProperties laneProperties, int workers) {
+        dispatcher = new NotificationDispatcher(batchWriter, idAllocator, retryPolicy, laneProperties,
+                mock(LiveNotificationCounters.class), new SimpleMeterRegistry(), workers, 10, 10, 2, Duration.ofMillis(1));
+        dispatcher.start();
+    }
+}
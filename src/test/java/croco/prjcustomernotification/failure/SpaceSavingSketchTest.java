@@ -0,0 +1,95 @@
+package croco.prjcustomernotification.failure;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SpaceSavingSketchTest {
+
+    @Test
+    void countsExactlyWhileUnderCapacity() {
+        SpaceSavingSketch sketch = new SpaceSavingSketch(3);
+        offer(sketch, "timeout", 5);
+        offer(sketch, "bounced", 2);
+
+        List<SpaceSavingSketch.Counter> top = sketch.top(10);
+
+        assertThat(top).extracting(SpaceSavingSketch.Counter::key).containsExactly("timeout", "bounced");
+        assertThat(top).extracting(SpaceSavingSketch.Counter::count).containsExactly(5L, 2L);
+        assertThat(top).extracting(SpaceSavingSketch.Counter::error).containsExactly(0L, 0L);
+    }
+
+    @Test
+    void newKeyTakesOverTheSmallestCounterAsError() {
+        SpaceSavingSketch sketch = new SpaceSavingSketch(2);
+        offer(sketch, "timeout", 5);
+        offer(sketch, "bounced", 2);
+        offer(sketch, "rejected", 1);
+
+        SpaceSavingSketch.Counter rejected = counters(sketch.top(10)).get("rejected");
+
+        assertThat(counters(sketch.top(10))).doesNotContainKey("bounced");
+        assertThat(rejected.count()).isEqualTo(3);
+        assertThat(rejected.error()).isEqualTo(2);
+    }
+
+    @Test
+    void frequentKeyIsAlwaysTracked() {
+        SpaceSavingSketch sketch = new SpaceSavingSketch(4);
+        for (int i = 0; i < 1000; i++) {
+            sketch.offer(i % 2 == 0 ? "timeout" : "rare-" + i);
+        }
+
+        SpaceSavingSketch.Counter top = sketch.top(1).getFirst();
+
+        assertThat(top.key()).isEqualTo("timeout");
+        assertThat(top.count()).isGreaterThanOrEqualTo(500);
+        assertThat(top.count() - top.error()).isLessThanOrEqualTo(500);
+    }
+
+    @Test
+    void drainDeltasReportsOnlyTheGrowthSinceThePreviousDrain() {
+        SpaceSavingSketch sketch = new SpaceSavingSketch(2);
+        offer(sketch, "timeout", 3);
+        sketch.drainDeltas();
+        offer(sketch, "timeout", 2);
+
+        Map<String, SpaceSavingSketch.Counter> deltas = counters(sketch.drainDeltas());
+
+        assertThat(deltas.get("timeout").count()).isEqualTo(2);
+        assertThat(sketch.drainDeltas()).isEmpty();
+    }
+
+    @Test
+    void drainDeltasKeepsTheGrowthOfEvictedKeysOncePerKey() {
+        SpaceSavingSketch sketch = new SpaceSavingSketch(1);
+        sketch.offer("timeout");
+        sketch.offer("bounced");
+        sketch.offer("timeout");
+
+        List<SpaceSavingSketch.Counter> deltas = sketch.drainDeltas();
+        Map<String, SpaceSavingSketch.Counter> byKey = counters(deltas);
+
+        assertThat(deltas).hasSize(2);
+        assertThat(byKey.get("timeout").count()).isEqualTo(4);
+        assertThat(byKey.get("timeout").error()).isEqualTo(2);
+        assertThat(byKey.get("bounced").count()).isEqualTo(2);
+        assertThat(byKey.get("bounced").error()).isEqualTo(1);
+        // counts less errors add up to what was offered
+        assertThat(deltas.stream().mapToLong(counter -> counter.count() - counter.error()).sum()).isEqualTo(3);
+    }
+
+    private static void offer(SpaceSavingSketch sketch, String key, int times) {
+        for (int i = 0; i < times; i++) {
+            sketch.offer(key);
+        }
+    }
+
+    private static Map<String, SpaceSavingSketch.Counter> counters(List<SpaceSavingSketch.Counter> counters) {
+        return counters.stream().collect(Collectors.toMap(SpaceSavingSketch.Counter::key, counter -> counter));
+    }
+}
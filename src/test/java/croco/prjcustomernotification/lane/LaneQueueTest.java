@@ -0,0 +1,85 @@
+package croco.prjcustomernotification.lane;
+
+import croco.prjcustomernotification.enums.NotificationType;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntUnaryOperator;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LaneQueueTest {
+
+    private final LaneQueue<String> queue = new LaneQueue<>("test", new LaneProperties(Map.of(
+            NotificationType.TRANSACTIONAL, new LaneProperties.Settings(3, 10, 0, Duration.ofSeconds(1)),
+            NotificationType.MARKETING, new LaneProperties.Settings(1, 10, 0, Duration.ofSeconds(1)))),
+            IntUnaryOperator.identity(), new SimpleMeterRegistry());
+
+    @Test
+    void busyLanesAreTakenInProportionToTheirWeights() {
+        fill(NotificationType.MARKETING, 8);
+        fill(NotificationType.TRANSACTIONAL, 8);
+
+        List<String> taken = new ArrayList<>();
+        queue.drainTo(taken, 8);
+
+        assertThat(taken).filteredOn(item -> item.startsWith("TRANSACTIONAL")).hasSize(6);
+        assertThat(taken).filteredOn(item -> item.startsWith("MARKETING")).hasSize(2);
+        // smooth round-robin interleaves the lanes instead of serving one burst after the other
+        assertThat(taken.subList(0, 4)).filteredOn(item -> item.startsWith("MARKETING")).hasSize(1);
+    }
+
+    @Test
+    void singleBusyLaneGetsEveryTake() {
+        fill(NotificationType.MARKETING, 5);
+
+        List<String> taken = new ArrayList<>();
+        queue.drainTo(taken, 10);
+
+        assertThat(taken).containsExactly("MARKETING-0", "MARKETING-1", "MARKETING-2", "MARKETING-3", "MARKETING-4");
+        assertThat(queue.isEmpty()).isTrue();
+    }
+
+    @Test
+    void laneThatRanEmptyStartsOverWithoutItsDebt() {
+        queue.offer(NotificationType.TRANSACTIONAL, "TRANSACTIONAL-0");
+        fill(NotificationType.MARKETING, 3);
+        List<String> taken = new ArrayList<>();
+        queue.drainTo(taken, 1);
+
+        queue.offer(NotificationType.TRANSACTIONAL, "TRANSACTIONAL-1");
+        queue.drainTo(taken, 1);
+
+        assertThat(taken).containsExactly("TRANSACTIONAL-0", "TRANSACTIONAL-1");
+    }
+
+    @Test
+    void fullLaneRejectsWithoutAffectingTheOthers() {
+        fill(NotificationType.MARKETING, 10);
+
+        assertThat(queue.offer(NotificationType.MARKETING, "MARKETING-10")).isFalse();
+        assertThat(queue.offer(NotificationType.TRANSACTIONAL, "TRANSACTIONAL-0")).isTrue();
+        assertThat(queue.size()).isEqualTo(11);
+    }
+
+    @Test
+    void boundConsumerOnlyTakesFromItsLane() throws InterruptedException {
+        fill(NotificationType.MARKETING, 2);
+
+        assertThat(queue.poll(NotificationType.TRANSACTIONAL, 10, TimeUnit.MILLISECONDS)).isNull();
+        queue.offer(NotificationType.TRANSACTIONAL, "TRANSACTIONAL-0");
+        assertThat(queue.poll(NotificationType.TRANSACTIONAL, 10, TimeUnit.MILLISECONDS)).isEqualTo("TRANSACTIONAL-0");
+        assertThat(queue.size()).isEqualTo(2);
+    }
+
+    private void fill(NotificationType type, int count) {
+        for (int i = 0; i < count; i++) {
+            queue.offer(type, type.name() + "-" + i);
+        }
+    }
+}
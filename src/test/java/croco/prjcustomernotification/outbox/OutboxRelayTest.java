@@ -0,0 +1,147 @@
+package croco.prjcustomernotification.outbox;
+
+import croco.prjcustomernotification.callback.ReadTrackingTokens;
+import croco.prjcustomernotification.channel.ChannelDeliveryService;
+import croco.prjcustomernotification.channel.ChannelMessage;
+import croco.prjcustomernotification.enums.AddressType;
+import croco.prjcustomernotification.enums.NotificationStatus;
+import croco.prjcustomernotification.enums.NotificationType;
+import croco.prjcustomernotification.lane.LaneProperties;
+import croco.prjcustomernotification.partition.NotificationIds;
+import croco.prjcustomernotification.report.ReportCache;
+import croco.prjcustomernotification.rollup.CustomerNotificationStats;
+import croco.prjcustomernotification.rollup.CustomerReachSketches;
+import croco.prjcustomernotification.rollup.NotificationStatsRollup;
+import croco.prjcustomernotification.rollup.StatusChange;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
+import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Runs relay passes against the migrated schema in PostgreSQL, with the consumers of the claimed rows mocked.
+ */
+@JdbcTest
+@Testcontainers
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+class OutboxRelayTest {
+
+    @Container
+    @ServiceConnection
+    static final PostgreSQLContainer<?> POSTGRES = new PostgreSQLContainer<>("postgres:16-alpine");
+
+    private static final int MAX_ATTEMPTS = 3;
+    private static final LocalDateTime CREATED_AT = LocalDateTime.of(2026, 5, 4, 10, 15);
+    private static final long ID = NotificationIds.encode(1, CREATED_AT);
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private NamedParameterJdbcTemplate namedParameterJdbcTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    private final ChannelDeliveryService channelDeliveryService = mock(ChannelDeliveryService.class);
+    private final NotificationStatsRollup statsRollup = mock(NotificationStatsRollup.class);
+    private final ApplicationEventPublisher eventPublisher = mock(ApplicationEventPublisher.class);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private OutboxRelay relay;
+
+    @BeforeEach
+    void setUp() {
+        relay = new OutboxRelay(namedParameterJdbcTemplate, channelDeliveryService, statsRollup, mock(CustomerNotificationStats.class),
+                mock(CustomerReachSketches.class), mock(ReportCache.class), new ReadTrackingTokens("secret"), transactionTemplate, eventPublisher,
+                new LaneProperties(null), meterRegistry, 1, 100, 100, Duration.ofMinutes(5), MAX_ATTEMPTS);
+        jdbcTemplate.update("INSERT INTO customers (id, first_name) VALUES (1, 'Ada')");
+        jdbcTemplate.update("INSERT INTO addresses (id, type, value, customer_id, verified, is_primary) VALUES (1, 'EMAIL', 'ada@example.com', 1, true, true)");
+        jdbcTemplate.update("INSERT INTO notification_logs (id, customer_id, address_id, type, status, subject, content, sent_at, attempt_count, max_attempts, created_at) " +
+                "VALUES (?, 1, 1, 'TRANSACTIONAL', 'PENDING', 'subject', 'content', ?, 1, 3, ?)", ID, CREATED_AT, CREATED_AT);
+    }
+
+    @Test
+    void deliveryRowsStayLeasedUntilTheResultIsRecorded() {
+        insertOutboxRow(1L, ID, "DELIVERY", "PENDING", null, 0);
+        when(channelDeliveryService.offer(any())).thenReturn(true);
+
+        relay.relayPass();
+
+        verify(channelDeliveryService).offer(new ChannelMessage(ID, 1L, NotificationType.TRANSACTIONAL, AddressType.EMAIL, "ada@example.com", "subject", "content",
+                CREATED_AT, 1, 3, new ReadTrackingTokens("secret").tokenFor(ID)));
+        assertThat(jdbcTemplate.queryForObject("SELECT attempts FROM notification_outbox WHERE id = 1 AND locked_until IS NOT NULL", Integer.class)).isEqualTo(1);
+    }
+
+    @Test
+    void rowsASaturatedChannelRefusedAreReleasedWithoutUsingAnAttempt() {
+        insertOutboxRow(1L, ID, "DELIVERY", "PENDING", null, 0);
+        when(channelDeliveryService.offer(any())).thenReturn(false);
+
+        relay.relayPass();
+
+        assertThat(jdbcTemplate.queryForObject("SELECT attempts FROM notification_outbox WHERE id = 1 AND locked_until IS NULL", Integer.class)).isZero();
+        assertThat(meterRegistry.counter("notifications.outbox.released").count()).isEqualTo(1);
+    }
+
+    @Test
+    void rowsClaimedMaxAttemptsTimesMoveToTheDeadLetters() {
+        insertOutboxRow(1L, ID, "DELIVERY", "PENDING", null, MAX_ATTEMPTS);
+
+        relay.relayPass();
+
+        verify(channelDeliveryService, never()).offer(any());
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM notification_outbox", Long.class)).isZero();
+        assertThat(jdbcTemplate.queryForObject("SELECT attempts FROM notification_outbox_dead_letters WHERE id = 1 AND notification_id = ?", Integer.class, ID))
+                .isEqualTo(MAX_ATTEMPTS);
+        assertThat(meterRegistry.counter("notifications.outbox.dead_lettered").count()).isEqualTo(1);
+    }
+
+    @Test
+    void statusChangesAreConsumedWithTheRollup() {
+        insertOutboxRow(1L, ID, "STATUS_CHANGED", "DELIVERED", "PENDING", 0);
+
+        relay.relayPass();
+
+        verify(statsRollup).apply(List.of(new StatusChange(ID, 1L, NotificationType.TRANSACTIONAL, AddressType.EMAIL, CREATED_AT, CREATED_AT, null,
+                NotificationStatus.PENDING, NotificationStatus.DELIVERED)));
+        verify(eventPublisher).publishEvent(new NotificationStatusChangedEvent(ID, NotificationStatus.DELIVERED));
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM notification_outbox", Long.class)).isZero();
+    }
+
+    @Test
+    void rowsOfMissingNotificationsAreDropped() {
+        insertOutboxRow(1L, ID + 1, "DELIVERY", "PENDING", null, 0);
+
+        relay.relayPass();
+
+        verify(channelDeliveryService, never()).offer(any());
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM notification_outbox", Long.class)).isZero();
+        assertThat(meterRegistry.counter("notifications.outbox.orphaned").count()).isEqualTo(1);
+    }
+
+    private void insertOutboxRow(Long id, long notificationId, String eventType, String status, String previousStatus, int attempts) {
+        jdbcTemplate.update("INSERT INTO notification_outbox (id, notification_id, type, event_type, status, previous_status, attempts, created_at) " +
+                "VALUES (?, ?, 'TRANSACTIONAL', ?, ?, ?, ?, ?)", id, notificationId, eventType, status, previousStatus, attempts, CREATED_AT);
+    }
+}
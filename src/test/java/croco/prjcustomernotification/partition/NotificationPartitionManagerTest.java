@@ -0,0 +1,74 @@
+package croco.prjcustomernotification.partition;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
+import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Runs partition maintenance against the migrated schema in PostgreSQL, which partitions through two months ahead.
+ */
+@JdbcTest
+@Testcontainers
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+class NotificationPartitionManagerTest {
+
+    @Container
+    @ServiceConnection
+    static final PostgreSQLContainer<?> POSTGRES = new PostgreSQLContainer<>("postgres:16-alpine");
+
+    private static final YearMonth UNPARTITIONED_MONTH = YearMonth.now().plusMonths(3);
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    private NotificationPartitionManager manager;
+
+    @BeforeEach
+    void setUp() {
+        manager = new NotificationPartitionManager(jdbcTemplate, transactionTemplate,
+                new PartitionProperties(3, 12, PartitionProperties.RetentionAction.DETACH, Duration.ofDays(7)), new SimpleMeterRegistry());
+        jdbcTemplate.update("INSERT INTO customers (id, first_name) VALUES (1, 'Ada')");
+        jdbcTemplate.update("INSERT INTO addresses (id, type, value, customer_id, verified, is_primary) VALUES (1, 'EMAIL', 'ada@example.com', 1, true, true)");
+    }
+
+    @Test
+    void rowsOfANewMonthAreMovedOutOfTheDefaultPartition() {
+        LocalDateTime createdAt = UNPARTITIONED_MONTH.atDay(2).atTime(9, 30);
+        long id = NotificationIds.encode(1, createdAt);
+        jdbcTemplate.update("INSERT INTO notification_logs (id, customer_id, address_id, type, status, attempt_count, max_attempts, created_at) " +
+                "VALUES (?, 1, 1, 'TRANSACTIONAL', 'PENDING', 1, 3, ?)", id, createdAt);
+        jdbcTemplate.update("INSERT INTO notification_idempotency_keys (idempotency_key, notification_id, created_at) VALUES ('expired', ?, ?)",
+                id, LocalDateTime.now().minusDays(8));
+        assertThat(rowsIn("notification_logs_default")).isEqualTo(1);
+
+        manager.maintain();
+
+        assertThat(rowsIn("notification_logs_default")).isZero();
+        assertThat(rowsIn("notification_logs_p" + UNPARTITIONED_MONTH.toString().replace('-', '_'))).isEqualTo(1);
+        assertThat(jdbcTemplate.queryForObject("SELECT status FROM notification_logs WHERE id = ?", String.class, id)).isEqualTo("PENDING");
+        // the steps after the partition ran as well
+        assertThat(rowsIn("notification_idempotency_keys")).isZero();
+    }
+
+    private long rowsIn(String table) {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM " + table, Long.class);
+    }
+}
@@ -0,0 +1,89 @@
+package croco.prjcustomernotification.report;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ReportCacheTest {
+
+    private final ReportCache cache = new ReportCache(new SimpleMeterRegistry(), DataSize.ofMegabytes(1), Duration.ofDays(2), Duration.ofHours(1));
+    private final LocalDate today = LocalDate.now();
+    private final List<String> rangeLoads = new ArrayList<>();
+    private final List<String> daysLoads = new ArrayList<>();
+    private final AtomicInteger beforeLoads = new AtomicInteger();
+
+    // the days loader only finds data on every other day
+    private final ReportCache.Section<String> section = new ReportCache.Section<>("test",
+            (from, to) -> {
+                rangeLoads.add(from + "/" + to);
+                return "range " + from.toLocalDate();
+            },
+            (firstDay, lastDay) -> {
+                daysLoads.add(firstDay + "/" + lastDay);
+                Map<LocalDate, String> byDay = new TreeMap<>();
+                for (LocalDate day = firstDay; !day.isAfter(lastDay); day = day.plusDays(2)) {
+                    byDay.put(day, "day " + day);
+                }
+                return byDay;
+            },
+            "empty", String::length);
+
+    @Test
+    void splitsTheRangeIntoPartialOpenAndClosedDays() {
+        LocalDateTime start = today.minusDays(10).atTime(12, 0);
+        LocalDateTime end = today.atTime(6, 0);
+
+        List<String> parts = cache.perDay(section, start, end, beforeLoads::incrementAndGet);
+
+        assertThat(parts).hasSize(11);
+        // the partial first day, the two open days and the partial last day are loaded by range
+        assertThat(rangeLoads).containsExactly(
+                start + "/" + ReportCache.endOfDay(today.minusDays(10)),
+                today.minusDays(2).atStartOfDay() + "/" + ReportCache.endOfDay(today.minusDays(2)),
+                today.minusDays(1).atStartOfDay() + "/" + ReportCache.endOfDay(today.minusDays(1)),
+                today.atStartOfDay() + "/" + end);
+        // the closed days in between with one query, days without data being empty
+        assertThat(daysLoads).containsExactly(today.minusDays(9) + "/" + today.minusDays(3));
+        assertThat(parts.get(1)).isEqualTo("day " + today.minusDays(9));
+        assertThat(parts.get(2)).isEqualTo("empty");
+        assertThat(parts.get(0)).isEqualTo("range " + today.minusDays(10));
+        assertThat(beforeLoads).hasValue(5);
+    }
+
+    @Test
+    void closedDaysAreServedFromTheCacheAfterwards() {
+        LocalDateTime start = today.minusDays(9).atStartOfDay();
+        LocalDateTime end = ReportCache.endOfDay(today.minusDays(3));
+        List<String> first = cache.perDay(section, start, end, beforeLoads::incrementAndGet);
+
+        List<String> second = cache.perDay(section, start, end, beforeLoads::incrementAndGet);
+
+        assertThat(second).isEqualTo(first);
+        assertThat(daysLoads).hasSize(1);
+        assertThat(rangeLoads).isEmpty();
+        assertThat(beforeLoads).hasValue(1);
+    }
+
+    @Test
+    void onlyTheMissingDaysAreLoadedAgain() {
+        LocalDateTime start = today.minusDays(9).atStartOfDay();
+        LocalDateTime end = ReportCache.endOfDay(today.minusDays(3));
+        cache.perDay(section, start, end, beforeLoads::incrementAndGet);
+
+        cache.invalidateDays(List.of(today.minusDays(6), today.minusDays(5), today));
+        cache.perDay(section, start, end, beforeLoads::incrementAndGet);
+
+        assertThat(daysLoads).containsExactly(today.minusDays(9) + "/" + today.minusDays(3), today.minusDays(6) + "/" + today.minusDays(5));
+    }
+}
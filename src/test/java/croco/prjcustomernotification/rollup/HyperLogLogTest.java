@@ -0,0 +1,103 @@
+package croco.prjcustomernotification.rollup;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.within;
+
+class HyperLogLogTest {
+
+    @Test
+    void emptySketchEstimatesZero() {
+        HyperLogLog sketch = new HyperLogLog();
+
+        assertThat(sketch.isEmpty()).isTrue();
+        assertThat(sketch.estimate()).isZero();
+    }
+
+    @Test
+    void addingAValueAgainChangesNothing() {
+        HyperLogLog sketch = new HyperLogLog();
+
+        assertThat(sketch.add(42)).isTrue();
+        assertThat(sketch.add(42)).isFalse();
+        assertThat(sketch.estimate()).isEqualTo(1);
+    }
+
+    @Test
+    void estimatesSmallAndLargeCardinalities() {
+        for (int customers : new int[]{100, 3000, 50_000, 1_000_000}) {
+            HyperLogLog sketch = new HyperLogLog();
+            for (long customerId = 1; customerId <= customers; customerId++) {
+                sketch.add(customerId);
+            }
+
+            assertThat((double) sketch.estimate()).isCloseTo(customers, within(customers * 0.03));
+        }
+    }
+
+    @Test
+    void smallSketchIsStoredSparse() {
+        HyperLogLog sketch = sketchOf(1, 100);
+
+        byte[] bytes = sketch.toBytes();
+
+        assertThat(bytes.length).isLessThan(HyperLogLog.REGISTERS / 10);
+        assertThat(HyperLogLog.fromBytes(bytes)).isEqualTo(sketch);
+        assertThat(HyperLogLog.fromBytes(bytes).estimate()).isEqualTo(sketch.estimate());
+    }
+
+    @Test
+    void largeSketchIsStoredDense() {
+        HyperLogLog sketch = sketchOf(1, 100_000);
+
+        byte[] bytes = sketch.toBytes();
+
+        assertThat(bytes).hasSize(HyperLogLog.REGISTERS);
+        assertThat(HyperLogLog.fromBytes(bytes)).isEqualTo(sketch);
+    }
+
+    @Test
+    void readsDenseSketchesWithFewRegistersSet() {
+        byte[] registers = new byte[HyperLogLog.REGISTERS];
+        registers[7] = 1;
+
+        HyperLogLog sketch = HyperLogLog.fromBytes(registers);
+
+        assertThat(sketch.estimate()).isEqualTo(1);
+        assertThat(sketch.toBytes()).isEqualTo(registers);
+    }
+
+    @Test
+    void mergeEqualsAddingEverythingToOneSketch() {
+        HyperLogLog all = sketchOf(1, 20_000);
+
+        HyperLogLog sparseIntoDense = sketchOf(1, 19_900);
+        assertThat(sparseIntoDense.merge(sketchOf(19_901, 20_000))).isTrue();
+        HyperLogLog denseIntoSparse = sketchOf(19_901, 20_000);
+        assertThat(denseIntoSparse.merge(sketchOf(1, 19_900))).isTrue();
+        HyperLogLog sparseIntoSparse = sketchOf(1, 10);
+        sparseIntoSparse.merge(sketchOf(11, 20));
+
+        assertThat(sparseIntoDense).isEqualTo(all);
+        assertThat(denseIntoSparse).isEqualTo(all);
+        assertThat(sparseIntoSparse).isEqualTo(sketchOf(1, 20));
+        assertThat(all.merge(sketchOf(5, 500))).isFalse();
+    }
+
+    @Test
+    void rejectsBytesThatAreNoSketch() {
+        assertThatThrownBy(() -> HyperLogLog.fromBytes(new byte[0])).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> HyperLogLog.fromBytes(new byte[]{1, 0})).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> HyperLogLog.fromBytes(new byte[]{1, (byte) 0xff, 0, 1})).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static HyperLogLog sketchOf(long firstCustomerId, long lastCustomerId) {
+        HyperLogLog sketch = new HyperLogLog();
+        for (long customerId = firstCustomerId; customerId <= lastCustomerId; customerId++) {
+            sketch.add(customerId);
+        }
+        return sketch;
+    }
+}
@@ -0,0 +1,103 @@
+package croco.prjcustomernotification.rollup;
+
+import croco.prjcustomernotification.enums.AddressType;
+import croco.prjcustomernotification.enums.NotificationStatus;
+import croco.prjcustomernotification.enums.NotificationType;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
+import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Applies status changes against the migrated schema in PostgreSQL, where the deltas are summed by the upsert.
+ */
+@JdbcTest
+@Testcontainers
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import(NotificationStatsRollup.class)
+class NotificationStatsRollupTest {
+
+    @Container
+    @ServiceConnection
+    static final PostgreSQLContainer<?> POSTGRES = new PostgreSQLContainer<>("postgres:16-alpine");
+
+    private static final LocalDateTime CREATED_AT = LocalDateTime.of(2026, 5, 4, 10, 15);
+    private static final LocalDate DAY = CREATED_AT.toLocalDate();
+
+    @Autowired
+    private NotificationStatsRollup rollup;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void newNotificationsAreCountedInTheirCreationHour() {
+        rollup.apply(List.of(
+                created(1L, NotificationType.TRANSACTIONAL, AddressType.EMAIL),
+                created(2L, NotificationType.TRANSACTIONAL, AddressType.EMAIL),
+                created(3L, NotificationType.MARKETING, AddressType.SMS)));
+
+        assertThat(rollup.countByDay(DAY.atStartOfDay(), DAY.atTime(23, 59))).containsExactlyInAnyOrder(
+                new DailyStatusCount(DAY, NotificationType.TRANSACTIONAL, NotificationStatus.PENDING, 2),
+                new DailyStatusCount(DAY, NotificationType.MARKETING, NotificationStatus.PENDING, 1));
+        assertThat(rollup.earliestBucket()).contains(CREATED_AT.withMinute(0));
+    }
+
+    @Test
+    void statusChangesMoveNotificationsBetweenStatuses() {
+        rollup.apply(List.of(
+                created(1L, NotificationType.TRANSACTIONAL, AddressType.EMAIL),
+                created(2L, NotificationType.TRANSACTIONAL, AddressType.EMAIL),
+                created(3L, NotificationType.TRANSACTIONAL, AddressType.EMAIL)));
+
+        rollup.apply(List.of(
+                changed(1L, NotificationStatus.PENDING, NotificationStatus.DELIVERED),
+                changed(2L, NotificationStatus.PENDING, NotificationStatus.FAILED)));
+        rollup.apply(List.of(changed(1L, NotificationStatus.DELIVERED, NotificationStatus.READ)));
+
+        assertThat(rollup.countByDay(DAY.atStartOfDay(), DAY.atTime(23, 59))).containsExactlyInAnyOrder(
+                new DailyStatusCount(DAY, NotificationType.TRANSACTIONAL, NotificationStatus.PENDING, 1),
+                new DailyStatusCount(DAY, NotificationType.TRANSACTIONAL, NotificationStatus.FAILED, 1),
+                new DailyStatusCount(DAY, NotificationType.TRANSACTIONAL, NotificationStatus.READ, 1));
+    }
+
+    @Test
+    void changesThatCancelOutWithinABatchWriteNothing() {
+        rollup.apply(List.of(
+                changed(1L, NotificationStatus.PENDING, NotificationStatus.FAILED),
+                changed(1L, NotificationStatus.FAILED, NotificationStatus.PENDING)));
+
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM notification_stats_hourly", Long.class)).isZero();
+    }
+
+    @Test
+    void emptiedStatusesAreLeftOutOfTheCounts() {
+        rollup.apply(List.of(created(1L, NotificationType.ALERTS, AddressType.PUSH)));
+        rollup.apply(List.of(new StatusChange(1L, 1L, NotificationType.ALERTS, AddressType.PUSH, CREATED_AT, CREATED_AT, CREATED_AT,
+                NotificationStatus.PENDING, NotificationStatus.DELIVERED)));
+
+        assertThat(rollup.countByDays(DAY, DAY.plusDays(1))).containsOnlyKeys(DAY);
+        assertThat(rollup.countByDays(DAY, DAY).get(DAY)).containsExactly(
+                new DailyStatusCount(DAY, NotificationType.ALERTS, NotificationStatus.DELIVERED, 1));
+    }
+
+    private static StatusChange created(Long id, NotificationType type, AddressType channel) {
+        return new StatusChange(id, id, type, channel, CREATED_AT, null, null, null, NotificationStatus.PENDING);
+    }
+
+    private static StatusChange changed(Long id, NotificationStatus previousStatus, NotificationStatus status) {
+        return new StatusChange(id, id, NotificationType.TRANSACTIONAL, AddressType.EMAIL, CREATED_AT, CREATED_AT, null, previousStatus, status);
+    }
+}
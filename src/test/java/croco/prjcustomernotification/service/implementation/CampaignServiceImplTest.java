@@ -0,0 +1,161 @@
+package croco.prjcustomernotification.service.implementation;
+
+import croco.prjcustomernotification.dispatch.DispatchRequest;
+import croco.prjcustomernotification.dispatch.NotificationBatchWriter;
+import croco.prjcustomernotification.dispatch.NotificationIdAllocator;
+import croco.prjcustomernotification.dto.CampaignCreationDto;
+import croco.prjcustomernotification.enums.AddressType;
+import croco.prjcustomernotification.enums.CampaignStatus;
+import croco.prjcustomernotification.enums.NotificationType;
+import croco.prjcustomernotification.model.Campaign;
+import croco.prjcustomernotification.partition.NotificationIds;
+import croco.prjcustomernotification.repository.CampaignRepository;
+import croco.prjcustomernotification.repository.CustomerRepository;
+import croco.prjcustomernotification.retry.RetryPolicy;
+import croco.prjcustomernotification.routing.NotificationRouter;
+import croco.prjcustomernotification.routing.Route;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.after;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class CampaignServiceImplTest {
+
+    private static final long CAMPAIGN_ID = 5L;
+
+    private final CampaignRepository campaignRepository = mock(CampaignRepository.class);
+    private final CustomerRepository customerRepository = mock(CustomerRepository.class);
+    private final NotificationBatchWriter batchWriter = mock(NotificationBatchWriter.class);
+    private final NotificationIdAllocator idAllocator = mock(NotificationIdAllocator.class);
+    private final NotificationRouter notificationRouter = mock(NotificationRouter.class);
+    private final AtomicLong sequence = new AtomicLong();
+    private final Campaign campaign = Campaign.builder().id(CAMPAIGN_ID).type(NotificationType.MARKETING).subject("subject").content("content")
+            .status(CampaignStatus.RUNNING).startedAt(LocalDateTime.now()).build();
+
+    private final CampaignServiceImpl service = new CampaignServiceImpl(campaignRepository, customerRepository, batchWriter, idAllocator,
+            notificationRouter, mock(RetryPolicy.class), new TransactionTemplate(mock(PlatformTransactionManager.class)), 2, Duration.ofMinutes(5), 1);
+
+    @BeforeEach
+    void setUp() {
+        when(campaignRepository.save(any(Campaign.class))).thenAnswer(invocation -> {
+            Campaign saved = invocation.getArgument(0);
+            if (saved.getId() == null) {
+                saved.setId(CAMPAIGN_ID);
+            }
+            return saved;
+        });
+        when(campaignRepository.findById(CAMPAIGN_ID)).thenReturn(Optional.of(campaign));
+        when(campaignRepository.claimLease(eq(CAMPAIGN_ID), anyString(), any(), any())).thenReturn(1);
+        when(campaignRepository.renewLease(eq(CAMPAIGN_ID), anyString(), any())).thenReturn(1);
+        when(idAllocator.nextIds(anyInt(), any(LocalDateTime.class))).thenAnswer(invocation -> {
+            long[] ids = new long[invocation.<Integer>getArgument(0)];
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = NotificationIds.encode(sequence.incrementAndGet(), invocation.getArgument(1));
+            }
+            return ids;
+        });
+        when(notificationRouter.resolveAll(anyCollection(), eq(NotificationType.MARKETING))).thenAnswer(invocation -> {
+            Map<Long, Route> routes = new LinkedHashMap<>();
+            for (Long customerId : invocation.<List<Long>>getArgument(0)) {
+                routes.put(customerId, new Route(customerId, "customer " + customerId, customerId * 10, AddressType.EMAIL, customerId + "@example.com"));
+            }
+            return routes;
+        });
+        when(batchWriter.write(anyList())).thenAnswer(invocation -> invocation.getArgument(0));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void notificationsAreCreatedInTheMonthTheirIdsEncode() {
+        when(customerRepository.findIdsAfter(any(), eq(0L), eq(2))).thenReturn(List.of(1L, 2L));
+        when(customerRepository.findIdsAfter(any(), eq(2L), eq(2))).thenReturn(List.of(3L));
+
+        service.startCampaign(new CampaignCreationDto());
+
+        verify(campaignRepository, timeout(5000)).recordProgress(CAMPAIGN_ID, 3L, 1, 1);
+        ArgumentCaptor<List<DispatchRequest>> chunks = ArgumentCaptor.forClass(List.class);
+        verify(batchWriter, timeout(5000).times(2)).write(chunks.capture());
+        for (DispatchRequest request : chunks.getAllValues().stream().flatMap(List::stream).toList()) {
+            assertThat(request.sentAt()).isAfterOrEqualTo(NotificationIds.createdFrom(request.id())).isBefore(NotificationIds.createdBefore(request.id()));
+        }
+        verify(campaignRepository, timeout(5000)).save(finishedWith(CampaignStatus.COMPLETED));
+    }
+
+    @Test
+    void campaignLeasedByAnotherNodeIsNotRun() {
+        when(campaignRepository.claimLease(eq(CAMPAIGN_ID), anyString(), any(), any())).thenReturn(0);
+
+        when(campaignRepository.findByStatus(CampaignStatus.RUNNING)).thenReturn(List.of(campaign));
+
+        service.resumeRunningCampaigns();
+
+        verify(customerRepository, never()).findIdsAfter(any(), anyLong(), anyInt());
+    }
+
+    @Test
+    void campaignThatLostItsLeaseIsLeftToTheNewHolder() {
+        when(customerRepository.findIdsAfter(any(), eq(0L), eq(2))).thenReturn(List.of(1L, 2L));
+        when(campaignRepository.renewLease(eq(CAMPAIGN_ID), anyString(), any())).thenReturn(0);
+
+        service.startCampaign(new CampaignCreationDto());
+
+        verify(campaignRepository, timeout(5000)).renewLease(eq(CAMPAIGN_ID), anyString(), any());
+        verify(batchWriter, after(200).never()).write(anyList());
+        verify(campaignRepository, never()).save(finishedWith(CampaignStatus.FAILED));
+        verify(campaignRepository, never()).releaseLease(anyLong(), anyString());
+    }
+
+    @Test
+    void transientErrorReleasesTheLeaseAndKeepsTheCampaignRunning() {
+        when(customerRepository.findIdsAfter(any(), eq(0L), eq(2))).thenReturn(List.of(1L, 2L));
+        when(customerRepository.findIdsAfter(any(), eq(2L), eq(2))).thenThrow(new QueryTimeoutException("canceling statement due to statement timeout"));
+
+        service.startCampaign(new CampaignCreationDto());
+
+        verify(campaignRepository, timeout(5000)).releaseLease(eq(CAMPAIGN_ID), anyString());
+        verify(campaignRepository).recordProgress(CAMPAIGN_ID, 2L, 2, 2);
+        verify(campaignRepository, never()).save(finishedWith(CampaignStatus.FAILED));
+        assertThat(campaign.getStatus()).isEqualTo(CampaignStatus.RUNNING);
+    }
+
+    @Test
+    void nonRetryableErrorFailsTheCampaign() {
+        when(customerRepository.findIdsAfter(any(), eq(0L), eq(2))).thenThrow(new DataIntegrityViolationException("violates foreign key constraint"));
+
+        service.startCampaign(new CampaignCreationDto());
+
+        verify(campaignRepository, timeout(5000)).save(finishedWith(CampaignStatus.FAILED));
+        verify(campaignRepository, never()).releaseLease(anyLong(), anyString());
+    }
+
+    private static Campaign finishedWith(CampaignStatus status) {
+        return argThat(campaign -> campaign != null && campaign.getStatus() == status && campaign.getCompletedAt() != null);
+    }
+}
@@ -0,0 +1,54 @@
+package croco.prjcustomernotification.service.implementation;
+
+import croco.prjcustomernotification.dto.NotificationLogDto;
+import croco.prjcustomernotification.exception.InvalidCursorException;
+import croco.prjcustomernotification.repository.NotificationLogKey;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Base64;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class NotificationLogServiceImplTest {
+
+    @Test
+    void cursorDecodesToTheKeyOfTheLastNotification() {
+        LocalDateTime createdAt = LocalDateTime.of(2026, 3, 14, 9, 26, 53, 589_793_000);
+        NotificationLogDto last = NotificationLogDto.builder().id(1_099_511_627_777L).createdAt(createdAt).build();
+
+        String cursor = NotificationLogServiceImpl.encodeCursor(last);
+
+        assertThat(cursor).doesNotContain("=", "+", "/");
+        assertThat(NotificationLogServiceImpl.decodeCursor(cursor)).isEqualTo(new NotificationLogKey(createdAt, 1_099_511_627_777L));
+    }
+
+    @Test
+    void cursorKeepsWholeSecondTimestamps() {
+        LocalDateTime createdAt = LocalDateTime.of(2026, 1, 1, 0, 0);
+        NotificationLogDto last = NotificationLogDto.builder().id(7L).createdAt(createdAt).build();
+
+        assertThat(NotificationLogServiceImpl.decodeCursor(NotificationLogServiceImpl.encodeCursor(last)))
+                .isEqualTo(new NotificationLogKey(createdAt, 7L));
+    }
+
+    @Test
+    void missingCursorStartsAtTheNewest() {
+        assertThat(NotificationLogServiceImpl.decodeCursor(null)).isNull();
+        assertThat(NotificationLogServiceImpl.decodeCursor(" ")).isNull();
+    }
+
+    @Test
+    void malformedCursorIsRejected() {
+        assertThatThrownBy(() -> NotificationLogServiceImpl.decodeCursor("not a cursor!")).isInstanceOf(InvalidCursorException.class);
+        assertThatThrownBy(() -> NotificationLogServiceImpl.decodeCursor(encode("2026-01-01T00:00"))).isInstanceOf(InvalidCursorException.class);
+        assertThatThrownBy(() -> NotificationLogServiceImpl.decodeCursor(encode("yesterday|42"))).isInstanceOf(InvalidCursorException.class);
+        assertThatThrownBy(() -> NotificationLogServiceImpl.decodeCursor(encode("2026-01-01T00:00|x"))).isInstanceOf(InvalidCursorException.class);
+    }
+
+    private static String encode(String value) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+}